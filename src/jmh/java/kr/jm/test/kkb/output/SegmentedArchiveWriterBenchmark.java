@@ -0,0 +1,71 @@
+package kr.jm.test.kkb.output;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Appends length prefixed records, with an fsync every 1000 records for
+ * {@link Durability#FSYNC_EVERY_N_RECORDS}; the retention keeps the
+ * directory small whatever the throughput.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SegmentedArchiveWriterBenchmark {
+
+    @Param({"64", "128", "512"})
+    private int recordLength;
+
+    @Param({"NONE", "FSYNC_EVERY_N_RECORDS"})
+    private Durability durability;
+
+    private Path directory;
+    private SegmentedArchiveWriter segmentedArchiveWriter;
+    private byte[] recordBytes;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+        this.directory =
+                Files.createTempDirectory("SegmentedArchiveWriterBenchmark");
+        this.segmentedArchiveWriter = new SegmentedArchiveWriter(directory,
+                "archive", 64L << 20, TimeUnit.HOURS.toMillis(1), 256L << 20,
+                0, 4096, RecordFraming.LENGTH_PREFIXED, durability, 1000);
+        this.recordBytes = new byte[recordLength];
+        Arrays.fill(recordBytes, (byte) 'x');
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        segmentedArchiveWriter.close();
+        try (Stream<Path> pathStream = Files.walk(directory)) {
+            pathStream.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        }
+    }
+
+    @Benchmark
+    public void appendLine() {
+        segmentedArchiveWriter.appendLine(1526000000000L, recordBytes);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void appendLineContended() {
+        segmentedArchiveWriter.appendLine(1526000000000L, recordBytes);
+    }
+}
@@ -0,0 +1,107 @@
+package kr.jm.test.kkb.transaction;
+
+import kr.jm.test.kkb.transaction.log.NewUser;
+import kr.jm.test.kkb.transaction.log.TransactionLogInterface;
+import kr.jm.test.kkb.transaction.random.TransactionLogRandom;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * The generator is rebuilt every iteration, as the opening accounts it
+ * generates keep growing its index. Each benchmark takes the parameters of
+ * its own state only.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransactionLogGeneratorBenchmark {
+
+    /**
+     * One user with {@code accountCount} accounts.
+     */
+    @State(Scope.Benchmark)
+    public static class SingleUser {
+
+        @Param({"1", "10", "100", "1000"})
+        private int accountCount;
+
+        private TransactionLogGenerator transactionLogGenerator;
+        private int userNumber;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            this.transactionLogGenerator = new TransactionLogGenerator(0, 0,
+                    TransactionLogRandom.seeded(1));
+            this.userNumber = ((NewUser) transactionLogGenerator
+                    .generateNewUserAndAccount("benchmark")[0])
+                    .getUserNumber();
+            for (int i = 1; i < accountCount; i++)
+                transactionLogGenerator.generateOpeningAccount(userNumber);
+        }
+    }
+
+    @Benchmark
+    public TransactionLogInterface generateRandomTransactionLog(
+            SingleUser singleUser) {
+        return singleUser.transactionLogGenerator
+                .generateRandomTransactionLog(singleUser.userNumber);
+    }
+
+    @Benchmark
+    public int getRandomAccountNumber(SingleUser singleUser) {
+        return singleUser.transactionLogGenerator
+                .getRandomAccountNumber(singleUser.userNumber);
+    }
+
+    /**
+     * Generates about 100 logs for each of 64 users on a pool of
+     * {@code threadCount} threads per operation.
+     */
+    @State(Scope.Benchmark)
+    public static class MultiThreaded {
+
+        @Param({"1", "2", "4", "8"})
+        private int threadCount;
+
+        private ForkJoinPool forkJoinPool;
+        private TransactionLogGenerator transactionLogGenerator;
+        private int[] userNumbers;
+
+        @Setup(Level.Trial)
+        public void setUpPool() {
+            this.forkJoinPool = new ForkJoinPool(threadCount);
+        }
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            this.transactionLogGenerator = new TransactionLogGenerator(0, 0,
+                    TransactionLogRandom.seeded(1));
+            String[] userNames = IntStream.range(0, 64)
+                    .mapToObj(i -> "benchmark" + i).toArray(String[]::new);
+            this.userNumbers = IntStream.range(0, userNames.length).toArray();
+            transactionLogGenerator.generateNewUserAndAccount(userNames);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            forkJoinPool.shutdownNow();
+        }
+    }
+
+    @Benchmark
+    public void generateMultiThreaded(MultiThreaded multiThreaded,
+            Blackhole blackhole) {
+        multiThreaded.forkJoinPool.submit(() ->
+                IntStream.of(multiThreaded.userNumbers).parallel()
+                        .forEach(userNumber -> blackhole.consume(
+                                multiThreaded.transactionLogGenerator
+                                        .generateAbout100TransactionLog(
+                                                userNumber)))).join();
+    }
+}
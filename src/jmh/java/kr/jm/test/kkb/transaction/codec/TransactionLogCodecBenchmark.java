@@ -0,0 +1,143 @@
+package kr.jm.test.kkb.transaction.codec;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import kr.jm.test.kkb.transaction.TransactionLogGenerator;
+import kr.jm.test.kkb.transaction.log.*;
+import kr.jm.test.kkb.transaction.random.TransactionLogRandom;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encodes into the thread buffer, as the sinks do, and decodes a whole
+ * record. The JSON string benchmarks compare the codec with the Jackson
+ * path it replaced, {@code writeValueAsString} and a {@code Map} then
+ * {@code deserializeLogWithJsonObject}, as the round trip of
+ * {@code TransactionLogGeneratorTest.testGenerateAll} does for each type;
+ * {@code decodeJsonStringStreaming} is the Jackson streaming fallback of
+ * the codec.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransactionLogCodecBenchmark {
+
+    @Param({"NEW_USER", "OPENING_ACCOUNT", "DEPOSIT", "WITHDRAW",
+            "TRANSFER"})
+    private TransactionType transactionType;
+
+    private TransactionLogJsonCodec transactionLogJsonCodec;
+    private TransactionLogBinaryCodec transactionLogBinaryCodec;
+    private TransactionLogInterface transactionLog;
+    private byte[] jsonBytes;
+    private byte[] binaryBytes;
+    private String jsonString;
+    private ObjectMapper objectMapper;
+    private JsonFactory jsonFactory;
+    private TransactionLogGenerator transactionLogGenerator;
+
+    @Setup
+    public void setUp() {
+        this.transactionLogJsonCodec = new TransactionLogJsonCodec();
+        this.transactionLogBinaryCodec = new TransactionLogBinaryCodec();
+        this.transactionLog = buildTransactionLog(transactionType);
+        this.jsonBytes = transactionLogJsonCodec.encode(transactionLog);
+        this.binaryBytes = transactionLogBinaryCodec.encode(transactionLog);
+        this.jsonString =
+                transactionLogJsonCodec.encodeToString(transactionLog);
+        this.objectMapper = new ObjectMapper();
+        this.jsonFactory = new JsonFactory();
+        this.transactionLogGenerator = new TransactionLogGenerator(0, 0,
+                TransactionLogRandom.seeded(1));
+    }
+
+    private static TransactionLogInterface buildTransactionLog(
+            TransactionType transactionType) {
+        long logTimestamp = 1526000000000L;
+        switch (transactionType) {
+            case NEW_USER:
+                return new NewUser(123, logTimestamp, "benchmark");
+            case OPENING_ACCOUNT:
+                return new OpeningAccount(123, logTimestamp, 12345678);
+            case DEPOSIT:
+                return new Deposit(123, logTimestamp, 12345678, 50000);
+            case WITHDRAW:
+                return new Withdraw(123, logTimestamp, 12345678, 50000);
+            case TRANSFER:
+                return new Transfer(123, logTimestamp, 12345678, 50000,
+                        "Kakao Bank", 87654321, "toAccountUser");
+            default:
+                throw new RuntimeException(
+                        "Wrong Transaction Type Occur !!! - " +
+                                transactionType);
+        }
+    }
+
+    @Benchmark
+    public ByteArrayBuffer encodeJson() {
+        return transactionLogJsonCodec.encodeToThreadBuffer(transactionLog);
+    }
+
+    @Benchmark
+    public TransactionLogInterface decodeJson() throws IOException {
+        return transactionLogJsonCodec.decode(jsonBytes, 0, jsonBytes.length);
+    }
+
+    @Benchmark
+    public TransactionLogInterface decodeJsonString() throws IOException {
+        return transactionLogJsonCodec.decode(jsonString);
+    }
+
+    @Benchmark
+    public TransactionLogInterface decodeJsonStringStreaming()
+            throws IOException {
+        try (JsonParser jsonParser = jsonFactory.createParser(jsonString)) {
+            return transactionLogJsonCodec.decodeNext(jsonParser);
+        }
+    }
+
+    @Benchmark
+    public TransactionLogInterface decodeJsonStringWithJackson()
+            throws IOException {
+        return decodeWithJackson(jsonString);
+    }
+
+    @Benchmark
+    public TransactionLogInterface roundTripJsonString() throws IOException {
+        return transactionLogJsonCodec.decode(
+                transactionLogJsonCodec.encodeToString(transactionLog));
+    }
+
+    @Benchmark
+    public TransactionLogInterface roundTripJsonStringWithJackson()
+            throws IOException {
+        return decodeWithJackson(
+                objectMapper.writeValueAsString(transactionLog));
+    }
+
+    private TransactionLogInterface decodeWithJackson(String jsonString)
+            throws IOException {
+        return transactionLogGenerator.deserializeLogWithJsonObject(
+                objectMapper.readValue(jsonString,
+                        new TypeReference<Map<String, Object>>() {}));
+    }
+
+    @Benchmark
+    public ByteArrayBuffer encodeBinary() {
+        return transactionLogBinaryCodec
+                .encodeToThreadBuffer(transactionLog);
+    }
+
+    @Benchmark
+    public TransactionLogInterface decodeBinary() throws IOException {
+        return transactionLogBinaryCodec.decode(binaryBytes);
+    }
+}
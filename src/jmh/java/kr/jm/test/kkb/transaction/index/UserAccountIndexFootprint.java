@@ -0,0 +1,86 @@
+package kr.jm.test.kkb.transaction.index;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Retained heap of the user to accounts index against the boxed
+ * {@code ConcurrentHashMap} of {@code ConcurrentSkipListSet}s it replaced,
+ * for sequential users with sequential accounts. One structure is measured
+ * per JVM, so the heaps do not mix:
+ * <pre>
+ * mvn -Pjmh compile
+ * java -Xmx4g -cp target/classes \
+ *     kr.jm.test.kkb.transaction.index.UserAccountIndexFootprint \
+ *     index|boxed [userCount=10000000] [accountsPerUser=1]
+ * </pre>
+ */
+public class UserAccountIndexFootprint {
+
+    public static void main(String[] args) {
+        if (args.length < 1 || !args[0].matches("index|boxed")) {
+            System.err.println("Usage: UserAccountIndexFootprint " +
+                    "index|boxed [userCount] [accountsPerUser]");
+            System.exit(1);
+        }
+        int userCount = args.length > 1 ? Integer.parseInt(args[1]) :
+                10_000_000;
+        int accountsPerUser = args.length > 2 ? Integer.parseInt(args[2]) :
+                1;
+        long usedBytes = usedHeapAfterGc();
+        long startNanos = System.nanoTime();
+        Object structure = "index".equals(args[0]) ?
+                buildIndex(userCount, accountsPerUser) :
+                buildBoxed(userCount, accountsPerUser);
+        long buildMillis = (System.nanoTime() - startNanos) / 1_000_000;
+        long retainedBytes = usedHeapAfterGc() - usedBytes;
+        // reads the structure after the measure, so it is still retained
+        long builtUserCount = structure instanceof UserAccountIndex ?
+                ((UserAccountIndex) structure).getUserCount() :
+                ((Map<?, ?>) structure).size();
+        System.out.printf("%s users=%d accountsPerUser=%d retained=%dMB " +
+                        "bytesPerUser=%.1f build=%dms%n", args[0],
+                builtUserCount, accountsPerUser, retainedBytes >> 20,
+                (double) retainedBytes / userCount, buildMillis);
+    }
+
+    private static UserAccountIndex buildIndex(int userCount,
+            int accountsPerUser) {
+        UserAccountIndex userAccountIndex = new UserAccountIndex();
+        for (int userNumber = 0; userNumber < userCount; userNumber++) {
+            userAccountIndex.addUser(userNumber);
+            for (int i = 0; i < accountsPerUser; i++)
+                userAccountIndex.addAccount(userNumber,
+                        userNumber * accountsPerUser + i);
+        }
+        return userAccountIndex;
+    }
+
+    private static Map<Integer, Set<Integer>> buildBoxed(int userCount,
+            int accountsPerUser) {
+        Map<Integer, Set<Integer>> userAccountsMap =
+                new ConcurrentHashMap<>();
+        for (int userNumber = 0; userNumber < userCount; userNumber++) {
+            Set<Integer> accountSet = new ConcurrentSkipListSet<>();
+            for (int i = 0; i < accountsPerUser; i++)
+                accountSet.add(userNumber * accountsPerUser + i);
+            userAccountsMap.put(userNumber, accountSet);
+        }
+        return userAccountsMap;
+    }
+
+    private static long usedHeapAfterGc() {
+        MemoryMXBean memoryMXBean = ManagementFactory.getMemoryMXBean();
+        long usedBytes = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            usedBytes = Math.min(usedBytes,
+                    memoryMXBean.getHeapMemoryUsage().getUsed());
+        }
+        return usedBytes;
+    }
+}
@@ -0,0 +1,134 @@
+package kr.jm.test.kkb.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free histogram of non negative longs with 16 linear sub buckets per
+ * power of two, so every bucket is within about 6% of its values, in a
+ * fixed array of 960 counters whatever the range.
+ */
+public class LogLinearHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT =
+            (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray bucketCounts;
+    private final LongAdder count;
+    private final LongAdder sum;
+    private final LongAccumulator max;
+
+    public LogLinearHistogram() {
+        this.bucketCounts = new AtomicLongArray(BUCKET_COUNT);
+        this.count = new LongAdder();
+        this.sum = new LongAdder();
+        this.max = new LongAccumulator(Math::max, 0);
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT)
+            return (int) Math.max(0, value);
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKET_COUNT +
+                (int) ((value >>> shift) & (SUB_BUCKET_COUNT - 1));
+    }
+
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKET_COUNT)
+            return index;
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        long subBucket = SUB_BUCKET_COUNT + index % SUB_BUCKET_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * Negative values count as 0.
+     */
+    public void record(long value) {
+        bucketCounts.incrementAndGet(bucketIndex(value));
+        count.increment();
+        sum.add(Math.max(0, value));
+        max.accumulate(value);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long count = getCount();
+        return count == 0 ? 0 : (double) sum.sum() / count;
+    }
+
+    /**
+     * @param percentile 0 to 100
+     * @return the upper bound of the bucket holding the percentile, capped
+     * by the max, 0 when empty
+     */
+    public long getPercentile(double percentile) {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++)
+            total += bucketCounts.get(i);
+        if (total == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += bucketCounts.get(i);
+            if (seen >= rank)
+                return Math.min(bucketUpperBound(i), getMax());
+        }
+        return getMax();
+    }
+
+    /**
+     * @return a copy to diff later states against with
+     * {@link #minus(LogLinearHistogram)}
+     */
+    public LogLinearHistogram snapshot() {
+        LogLinearHistogram snapshot = new LogLinearHistogram();
+        for (int i = 0; i < BUCKET_COUNT; i++)
+            snapshot.bucketCounts.set(i, bucketCounts.get(i));
+        snapshot.count.add(count.sum());
+        snapshot.sum.add(sum.sum());
+        snapshot.max.accumulate(max.get());
+        return snapshot;
+    }
+
+    /**
+     * @return the values recorded since the earlier snapshot; the max is
+     * the overall one, capped by the highest bucket of the difference
+     */
+    public LogLinearHistogram minus(LogLinearHistogram earlier) {
+        LogLinearHistogram difference = new LogLinearHistogram();
+        int highestIndex = -1;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long bucketCount =
+                    bucketCounts.get(i) - earlier.bucketCounts.get(i);
+            difference.bucketCounts.set(i, bucketCount);
+            if (bucketCount > 0)
+                highestIndex = i;
+        }
+        difference.count.add(count.sum() - earlier.count.sum());
+        difference.sum.add(sum.sum() - earlier.sum.sum());
+        if (highestIndex >= 0)
+            difference.max.accumulate(
+                    Math.min(getMax(), bucketUpperBound(highestIndex)));
+        return difference;
+    }
+
+    @Override
+    public String toString() {
+        return "LogLinearHistogram(count=" + getCount() + ", mean=" +
+                Math.round(getMean()) + ", p50=" + getPercentile(50) +
+                ", p99=" + getPercentile(99) + ", p999=" +
+                getPercentile(99.9) + ", max=" + getMax() + ")";
+    }
+}
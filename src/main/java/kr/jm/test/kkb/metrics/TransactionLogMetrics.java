@@ -0,0 +1,321 @@
+package kr.jm.test.kkb.metrics;
+
+import kr.jm.test.kkb.transaction.log.TransactionType;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * Hot path counters and latency histograms of the generator and its
+ * outputs: records generated per type, serialization and archive append
+ * time, Kafka send to ack latency and the depths of the queues registered
+ * as gauges.
+ * <p>
+ * A disabled instance only tests a final flag, without reading the clock,
+ * so the components always take one, {@link #DISABLED} by default.
+ * Enabled by the {@code kkb.metrics.interval.ms} system property, it logs
+ * a one line summary per interval and registers itself as an MXBean.
+ */
+public class TransactionLogMetrics
+        implements TransactionLogMetricsMXBean, AutoCloseable {
+
+    private static final org.slf4j.Logger log =
+            org.slf4j.LoggerFactory.getLogger(TransactionLogMetrics.class);
+    public static final String INTERVAL_MS_PROPERTY =
+            "kkb.metrics.interval.ms";
+    private static final TransactionType[] TRANSACTION_TYPES =
+            TransactionType.values();
+    public static final TransactionLogMetrics DISABLED =
+            new TransactionLogMetrics(false);
+
+    private final boolean enabled;
+    private final LongAdder[] generatedCounts;
+    private final LogLinearHistogram serializationNanosHistogram;
+    private final LogLinearHistogram appendNanosHistogram;
+    private final Map<String, LongSupplier> queueDepthGauges;
+    private volatile LogLinearHistogram ackLatencyMicrosHistogram;
+    private ScheduledExecutorService scheduledExecutorService;
+    private ObjectName objectName;
+    private long lastSummaryNanos;
+    private long lastGeneratedCount;
+    private LogLinearHistogram lastSerializationNanosSnapshot;
+    private LogLinearHistogram lastAppendNanosSnapshot;
+    private LogLinearHistogram lastAckLatencyMicrosSnapshot;
+
+    public TransactionLogMetrics() {
+        this(true);
+    }
+
+    private TransactionLogMetrics(boolean enabled) {
+        this.enabled = enabled;
+        this.generatedCounts = new LongAdder[TRANSACTION_TYPES.length];
+        for (int i = 0; i < generatedCounts.length; i++)
+            generatedCounts[i] = new LongAdder();
+        this.serializationNanosHistogram = new LogLinearHistogram();
+        this.appendNanosHistogram = new LogLinearHistogram();
+        this.queueDepthGauges = new ConcurrentSkipListMap<>();
+        this.ackLatencyMicrosHistogram = new LogLinearHistogram();
+        this.lastSummaryNanos = System.nanoTime();
+        this.lastSerializationNanosSnapshot = new LogLinearHistogram();
+        this.lastAppendNanosSnapshot = new LogLinearHistogram();
+        this.lastAckLatencyMicrosSnapshot = new LogLinearHistogram();
+    }
+
+    /**
+     * @return an enabled, reporting and registered instance when the
+     * {@code kkb.metrics.interval.ms} system property is set, otherwise
+     * {@link #DISABLED}
+     */
+    public static TransactionLogMetrics fromSystemProperties() {
+        return Optional.ofNullable(System.getProperty(INTERVAL_MS_PROPERTY))
+                .map(Long::valueOf).map(intervalMillis ->
+                        new TransactionLogMetrics().registerMBean()
+                                .startReporting(intervalMillis))
+                .orElse(DISABLED);
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void countGenerated(TransactionType transactionType) {
+        if (enabled)
+            generatedCounts[transactionType.ordinal()].increment();
+    }
+
+    /**
+     * @return the start to pass to the record methods, 0 when disabled
+     */
+    public long startNanos() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    public void recordSerialization(long startNanos) {
+        if (enabled)
+            serializationNanosHistogram.record(System.nanoTime() - startNanos);
+    }
+
+    public void recordAppend(long startNanos) {
+        if (enabled)
+            appendNanosHistogram.record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Reads the send to ack latency from the histogram an
+     * {@link kr.jm.test.kkb.output.AsyncKafkaSender} records anyway.
+     */
+    public synchronized void bindAckLatencyMicrosHistogram(
+            LogLinearHistogram ackLatencyMicrosHistogram) {
+        if (!enabled)
+            return;
+        this.ackLatencyMicrosHistogram = ackLatencyMicrosHistogram;
+        this.lastAckLatencyMicrosSnapshot = new LogLinearHistogram();
+    }
+
+    public void registerQueueDepth(String name, LongSupplier queueDepth) {
+        if (enabled)
+            queueDepthGauges.put(name, queueDepth);
+    }
+
+    @Override
+    public long getGeneratedCount() {
+        return Arrays.stream(generatedCounts).mapToLong(LongAdder::sum).sum();
+    }
+
+    @Override
+    public Map<String, Long> getGeneratedCounts() {
+        Map<String, Long> generatedCountMap = new LinkedHashMap<>();
+        for (TransactionType transactionType : TRANSACTION_TYPES)
+            generatedCountMap.put(transactionType.name(),
+                    generatedCounts[transactionType.ordinal()].sum());
+        return generatedCountMap;
+    }
+
+    public LogLinearHistogram getSerializationNanosHistogram() {
+        return serializationNanosHistogram;
+    }
+
+    public LogLinearHistogram getAppendNanosHistogram() {
+        return appendNanosHistogram;
+    }
+
+    public LogLinearHistogram getAckLatencyMicrosHistogram() {
+        return ackLatencyMicrosHistogram;
+    }
+
+    @Override
+    public long getSerializationP50Micros() {
+        return TimeUnit.NANOSECONDS
+                .toMicros(serializationNanosHistogram.getPercentile(50));
+    }
+
+    @Override
+    public long getSerializationP99Micros() {
+        return TimeUnit.NANOSECONDS
+                .toMicros(serializationNanosHistogram.getPercentile(99));
+    }
+
+    @Override
+    public long getAppendP50Micros() {
+        return TimeUnit.NANOSECONDS
+                .toMicros(appendNanosHistogram.getPercentile(50));
+    }
+
+    @Override
+    public long getAppendP99Micros() {
+        return TimeUnit.NANOSECONDS
+                .toMicros(appendNanosHistogram.getPercentile(99));
+    }
+
+    @Override
+    public long getAckLatencyP50Micros() {
+        return ackLatencyMicrosHistogram.getPercentile(50);
+    }
+
+    @Override
+    public long getAckLatencyP99Micros() {
+        return ackLatencyMicrosHistogram.getPercentile(99);
+    }
+
+    @Override
+    public Map<String, Long> getQueueDepths() {
+        Map<String, Long> queueDepthMap = new LinkedHashMap<>();
+        queueDepthGauges.forEach((name, queueDepth) -> {
+            try {
+                queueDepthMap.put(name, queueDepth.getAsLong());
+            } catch (Exception e) {
+                queueDepthMap.put(name, -1L);
+            }
+        });
+        return queueDepthMap;
+    }
+
+    /**
+     * @return the throughput and the percentiles since the previous
+     * periodic summary and the totals in one line, without starting a new
+     * interval, so polling it over JMX does not shift the reported window;
+     * the overall percentiles stay on the MXBean
+     */
+    @Override
+    public synchronized String getSummary() {
+        return buildSummary(System.nanoTime(), getGeneratedCount(),
+                serializationNanosHistogram.snapshot(),
+                appendNanosHistogram.snapshot(),
+                ackLatencyMicrosHistogram.snapshot());
+    }
+
+    private synchronized String rollInterval() {
+        long nowNanos = System.nanoTime();
+        long generatedCount = getGeneratedCount();
+        LogLinearHistogram serializationNanosSnapshot =
+                serializationNanosHistogram.snapshot();
+        LogLinearHistogram appendNanosSnapshot =
+                appendNanosHistogram.snapshot();
+        LogLinearHistogram ackLatencyMicrosSnapshot =
+                ackLatencyMicrosHistogram.snapshot();
+        String summary = buildSummary(nowNanos, generatedCount,
+                serializationNanosSnapshot, appendNanosSnapshot,
+                ackLatencyMicrosSnapshot);
+        this.lastSummaryNanos = nowNanos;
+        this.lastGeneratedCount = generatedCount;
+        this.lastSerializationNanosSnapshot = serializationNanosSnapshot;
+        this.lastAppendNanosSnapshot = appendNanosSnapshot;
+        this.lastAckLatencyMicrosSnapshot = ackLatencyMicrosSnapshot;
+        return summary;
+    }
+
+    private String buildSummary(long nowNanos, long generatedCount,
+            LogLinearHistogram serializationNanosSnapshot,
+            LogLinearHistogram appendNanosSnapshot,
+            LogLinearHistogram ackLatencyMicrosSnapshot) {
+        double generatedPerSecond = (generatedCount - lastGeneratedCount) *
+                1e9 / Math.max(1, nowNanos - lastSummaryNanos);
+        LogLinearHistogram serializationNanos = serializationNanosSnapshot
+                .minus(lastSerializationNanosSnapshot);
+        LogLinearHistogram appendNanos =
+                appendNanosSnapshot.minus(lastAppendNanosSnapshot);
+        LogLinearHistogram ackLatencyMicros =
+                ackLatencyMicrosSnapshot.minus(lastAckLatencyMicrosSnapshot);
+        return String.format("TransactionLogMetrics(generated=%d, " +
+                        "rate=%.1f/s, types=%s, " +
+                        "serializeMicros=p50:%d/p99:%d, " +
+                        "appendMicros=p50:%d/p99:%d, " +
+                        "ackMicros=p50:%d/p99:%d, queues=%s)",
+                generatedCount, generatedPerSecond,
+                getGeneratedCounts().values().stream().map(String::valueOf)
+                        .collect(Collectors.joining("/")),
+                TimeUnit.NANOSECONDS
+                        .toMicros(serializationNanos.getPercentile(50)),
+                TimeUnit.NANOSECONDS
+                        .toMicros(serializationNanos.getPercentile(99)),
+                TimeUnit.NANOSECONDS.toMicros(appendNanos.getPercentile(50)),
+                TimeUnit.NANOSECONDS.toMicros(appendNanos.getPercentile(99)),
+                ackLatencyMicros.getPercentile(50),
+                ackLatencyMicros.getPercentile(99), getQueueDepths());
+    }
+
+    public synchronized TransactionLogMetrics startReporting(
+            long intervalMillis) {
+        if (!enabled || scheduledExecutorService != null)
+            return this;
+        this.scheduledExecutorService =
+                Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable,
+                            "TransactionLogMetrics");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        scheduledExecutorService.scheduleAtFixedRate(
+                () -> log.info(rollInterval()), intervalMillis, intervalMillis,
+                TimeUnit.MILLISECONDS);
+        return this;
+    }
+
+    public synchronized TransactionLogMetrics registerMBean() {
+        if (!enabled || objectName != null)
+            return this;
+        try {
+            MBeanServer mBeanServer =
+                    ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(
+                    "kr.jm.test.kkb:type=TransactionLogMetrics,id=" +
+                            System.identityHashCode(this));
+            mBeanServer.registerMBean(this, objectName);
+            this.objectName = objectName;
+        } catch (Exception e) {
+            log.warn("registerMBean()", e);
+        }
+        return this;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (scheduledExecutorService != null) {
+            scheduledExecutorService.shutdownNow();
+            log.info(rollInterval());
+            this.scheduledExecutorService = null;
+        }
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer()
+                        .unregisterMBean(objectName);
+            } catch (Exception e) {
+                log.warn("close() - {}", objectName, e);
+            }
+            this.objectName = null;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package kr.jm.test.kkb.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link TransactionLogMetrics}, latencies in microseconds.
+ */
+public interface TransactionLogMetricsMXBean {
+
+    boolean isEnabled();
+
+    long getGeneratedCount();
+
+    Map<String, Long> getGeneratedCounts();
+
+    long getSerializationP50Micros();
+
+    long getSerializationP99Micros();
+
+    long getAppendP50Micros();
+
+    long getAppendP99Micros();
+
+    long getAckLatencyP50Micros();
+
+    long getAckLatencyP99Micros();
+
+    Map<String, Long> getQueueDepths();
+
+    String getSummary();
+}
@@ -0,0 +1,267 @@
+package kr.jm.test.kkb.output;
+
+import kr.jm.test.kkb.metrics.LogLinearHistogram;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Tunes {@code linger.ms} and {@code batch.size} of the producer behind an
+ * {@link AsyncKafkaSender} within bounds, one step per interval. Kafka reads
+ * both only at construction, so a step recreates the producer.
+ * <p>
+ * {@link Goal#THROUGHPUT} doubles the batch size while the batches come out
+ * nearly full or the records queue longer than the linger and a request,
+ * and halves it while they come out under a quarter full. With one request
+ * in flight per connection a batch waits for the previous request anyway,
+ * so it keeps the linger within half and twice the request latency,
+ * doubling or halving it. {@link Goal#P99_LATENCY} halves the linger, then
+ * the batch size, while the send to ack p99 of the interval is over the
+ * target, and tunes like THROUGHPUT while it is below half of it.
+ * <p>
+ * An interval without records sent, or whose producer metrics are not
+ * known yet, changes nothing.
+ */
+public class AdaptiveBatchingController implements AutoCloseable {
+
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory
+            .getLogger(AdaptiveBatchingController.class);
+    private static final String PRODUCER_METRICS_GROUP = "producer-metrics";
+    private static final long PRODUCER_CLOSE_TIMEOUT_MILLIS = 10000;
+
+    public enum Goal {
+        THROUGHPUT, P99_LATENCY
+    }
+
+    private final AsyncKafkaSender asyncKafkaSender;
+    private final Properties producerProperties;
+    private final Function<Properties, Producer<String, byte[]>>
+            producerFactory;
+    private final Goal goal;
+    private final long targetP99Micros;
+    private final int minLingerMs;
+    private final int maxLingerMs;
+    private final int minBatchSize;
+    private final int maxBatchSize;
+    private final ScheduledExecutorService scheduledExecutorService;
+    private int lingerMs;
+    private int batchSize;
+    private LogLinearHistogram lastAckLatencySnapshot;
+    private long lastSentCount;
+    private int adjustmentCount;
+
+    /**
+     * @param producerProperties the settings the current producer of the
+     *                           sender was built with
+     * @param producerFactory    builds the replacement producers
+     */
+    public AdaptiveBatchingController(AsyncKafkaSender asyncKafkaSender,
+            Properties producerProperties,
+            Function<Properties, Producer<String, byte[]>> producerFactory,
+            Goal goal, long targetP99Millis, int minLingerMs,
+            int maxLingerMs, int minBatchSize, int maxBatchSize) {
+        this.asyncKafkaSender = asyncKafkaSender;
+        this.producerProperties = new Properties();
+        this.producerProperties.putAll(producerProperties);
+        this.producerFactory = producerFactory;
+        this.goal = goal;
+        this.targetP99Micros = TimeUnit.MILLISECONDS.toMicros(targetP99Millis);
+        this.minLingerMs = minLingerMs;
+        this.maxLingerMs = maxLingerMs;
+        this.minBatchSize = minBatchSize;
+        this.maxBatchSize = maxBatchSize;
+        this.scheduledExecutorService =
+                Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable,
+                            "AdaptiveBatchingController");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.lingerMs = getInt(producerProperties,
+                ProducerConfig.LINGER_MS_CONFIG, 0);
+        this.batchSize = getInt(producerProperties,
+                ProducerConfig.BATCH_SIZE_CONFIG, 16384);
+        this.lastAckLatencySnapshot =
+                asyncKafkaSender.getAckLatencyMicrosHistogram().snapshot();
+        this.lastSentCount = asyncKafkaSender.getSentCount();
+        log.info("AdaptiveBatchingController({}, {}ms, linger={}..{}ms, " +
+                        "batch={}..{})", goal, targetP99Millis, minLingerMs,
+                maxLingerMs, minBatchSize, maxBatchSize);
+    }
+
+    /**
+     * Reads the {@code adaptive.batching.} keys of
+     * {@link KafkaProducerProperties}: {@code goal}, {@code p99.target.ms},
+     * {@code linger.ms.min}, {@code linger.ms.max}, {@code batch.size.min},
+     * {@code batch.size.max} and {@code interval.ms}.
+     *
+     * @return the started controller, empty when no goal is configured
+     */
+    public static Optional<AdaptiveBatchingController> startFromProperties(
+            AsyncKafkaSender asyncKafkaSender, Properties properties,
+            Function<Properties, Producer<String, byte[]>> producerFactory) {
+        Properties adaptiveProperties = KafkaProducerProperties.withPrefix(
+                properties, KafkaProducerProperties.ADAPTIVE_BATCHING_PREFIX);
+        return Optional.ofNullable(adaptiveProperties.getProperty("goal"))
+                .map(Goal::valueOf).map(goal -> new AdaptiveBatchingController(
+                        asyncKafkaSender, KafkaProducerProperties
+                        .producerPropertiesOf(properties), producerFactory,
+                        goal, getInt(adaptiveProperties, "p99.target.ms", 100),
+                        getInt(adaptiveProperties, "linger.ms.min", 0),
+                        getInt(adaptiveProperties, "linger.ms.max", 100),
+                        getInt(adaptiveProperties, "batch.size.min", 16384),
+                        getInt(adaptiveProperties, "batch.size.max",
+                                1 << 20)))
+                .map(controller -> controller.start(
+                        getInt(adaptiveProperties, "interval.ms", 5000)));
+    }
+
+    private static int getInt(Properties properties, String key,
+            int defaultValue) {
+        return Optional.ofNullable(properties.get(key)).map(Object::toString)
+                .map(Integer::valueOf).orElse(defaultValue);
+    }
+
+    public AdaptiveBatchingController start(long intervalMillis) {
+        scheduledExecutorService.scheduleWithFixedDelay(() -> {
+            try {
+                adjust();
+            } catch (Exception e) {
+                log.error("adjust()", e);
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        return this;
+    }
+
+    /**
+     * Takes one step toward the goal from the metrics since the last call.
+     *
+     * @return true when the producer was recreated
+     */
+    public synchronized boolean adjust() {
+        Map<MetricName, ? extends Metric> metrics =
+                asyncKafkaSender.getProducer().metrics();
+        double batchSizeAvg = getMetricValue(metrics, "batch-size-avg");
+        double recordQueueTimeAvg =
+                getMetricValue(metrics, "record-queue-time-avg");
+        double requestLatencyAvg =
+                getMetricValue(metrics, "request-latency-avg");
+        long sentCount = asyncKafkaSender.getSentCount();
+        long intervalSentCount = sentCount - lastSentCount;
+        this.lastSentCount = sentCount;
+        LogLinearHistogram ackLatencySnapshot =
+                asyncKafkaSender.getAckLatencyMicrosHistogram().snapshot();
+        LogLinearHistogram intervalAckLatency =
+                ackLatencySnapshot.minus(lastAckLatencySnapshot);
+        this.lastAckLatencySnapshot = ackLatencySnapshot;
+        int[] nextSettings = nextSettings(intervalSentCount, batchSizeAvg,
+                recordQueueTimeAvg, requestLatencyAvg,
+                intervalAckLatency.getCount(),
+                intervalAckLatency.getPercentile(99));
+        log.debug("adjust() - sent={}, batchSizeAvg={}, " +
+                        "recordQueueTimeAvg={}, requestLatencyAvg={}, {}",
+                intervalSentCount, batchSizeAvg, recordQueueTimeAvg,
+                requestLatencyAvg, intervalAckLatency);
+        if (nextSettings[0] == lingerMs && nextSettings[1] == batchSize)
+            return false;
+        this.lingerMs = nextSettings[0];
+        this.batchSize = nextSettings[1];
+        this.adjustmentCount++;
+        producerProperties.put(ProducerConfig.LINGER_MS_CONFIG, lingerMs);
+        producerProperties.put(ProducerConfig.BATCH_SIZE_CONFIG, batchSize);
+        log.info("adjust() - {} linger={}ms batch={} - batchSizeAvg={}, " +
+                        "recordQueueTimeAvg={}, requestLatencyAvg={}, {}",
+                goal, lingerMs, batchSize, batchSizeAvg, recordQueueTimeAvg,
+                requestLatencyAvg, intervalAckLatency);
+        Properties newProducerProperties = new Properties();
+        newProducerProperties.putAll(producerProperties);
+        asyncKafkaSender.replaceProducer(
+                producerFactory.apply(newProducerProperties),
+                PRODUCER_CLOSE_TIMEOUT_MILLIS);
+        return true;
+    }
+
+    private static double getMetricValue(
+            Map<MetricName, ? extends Metric> metrics, String name) {
+        return metrics.entrySet().stream()
+                .filter(entry -> PRODUCER_METRICS_GROUP
+                        .equals(entry.getKey().group()) &&
+                        name.equals(entry.getKey().name()))
+                .mapToDouble(entry -> entry.getValue().value()).findFirst()
+                .orElse(Double.NaN);
+    }
+
+    /**
+     * @param sentCount          records sent in the interval
+     * @param batchSizeAvg       bytes, NaN when unknown
+     * @param recordQueueTimeAvg milliseconds, NaN when unknown
+     * @param requestLatencyAvg  milliseconds, NaN when unknown
+     * @return the next linger.ms and batch.size
+     */
+    int[] nextSettings(long sentCount, double batchSizeAvg,
+            double recordQueueTimeAvg, double requestLatencyAvg,
+            long ackCount, long p99Micros) {
+        int[] unchanged = {lingerMs, batchSize};
+        if (goal == Goal.P99_LATENCY) {
+            if (ackCount == 0)
+                return unchanged;
+            if (p99Micros > targetP99Micros) {
+                if (lingerMs > minLingerMs)
+                    return new int[]{Math.max(minLingerMs, lingerMs / 2),
+                            batchSize};
+                return new int[]{lingerMs,
+                        Math.max(minBatchSize, batchSize / 2)};
+            }
+            if (p99Micros * 2 > targetP99Micros)
+                return unchanged;
+        }
+        if (sentCount == 0 || Double.isNaN(batchSizeAvg) ||
+                Double.isNaN(recordQueueTimeAvg) ||
+                Double.isNaN(requestLatencyAvg))
+            return unchanged;
+        boolean backlogged =
+                recordQueueTimeAvg > lingerMs + requestLatencyAvg;
+        if ((batchSizeAvg >= batchSize * 0.8 || backlogged) &&
+                batchSize < maxBatchSize)
+            return new int[]{lingerMs, Math.min(maxBatchSize, batchSize * 2)};
+        if (batchSizeAvg < batchSize * 0.25 && !backlogged &&
+                batchSize > minBatchSize)
+            return new int[]{lingerMs, Math.max(minBatchSize, batchSize / 2)};
+        if (lingerMs * 2 < requestLatencyAvg && lingerMs < maxLingerMs)
+            return new int[]{Math.min(maxLingerMs, Math.max(1, lingerMs * 2)),
+                    batchSize};
+        if (lingerMs > requestLatencyAvg * 2 && lingerMs > minLingerMs)
+            return new int[]{Math.max(minLingerMs, lingerMs / 2), batchSize};
+        return unchanged;
+    }
+
+    public Goal getGoal() {
+        return goal;
+    }
+
+    public synchronized int getLingerMs() {
+        return lingerMs;
+    }
+
+    public synchronized int getBatchSize() {
+        return batchSize;
+    }
+
+    public synchronized int getAdjustmentCount() {
+        return adjustmentCount;
+    }
+
+    @Override
+    public void close() {
+        scheduledExecutorService.shutdownNow();
+    }
+}
@@ -0,0 +1,561 @@
+package kr.jm.test.kkb.output;
+
+import org.apache.kafka.common.errors.RetriableException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.ToLongFunction;
+
+/**
+ * Ships the records of a {@link SegmentedArchiveWriter} archive to Kafka,
+ * so the archive is the write-ahead log of the topic and a record only
+ * reaches the topic after it is in the archive.
+ * <p>
+ * Only the records up to the durable position of the writer are read, so a
+ * record on the topic is never lost by a crash of the archive, with
+ * {@link Durability#NONE} a crash of the process only.
+ * <p>
+ * One thread reads the segments sequentially in windows of
+ * {@code batchBytes} and hands their complete records back to back to an
+ * {@link AsyncKafkaSender}, whose producer batches them. The sequence number
+ * of a record is its segment sequence and its ordinal in the segment, which
+ * stay the same across restarts. It goes to Kafka in the key of the record,
+ * {@code <userNumber>#<segment>:<ordinal>}, which the
+ * {@link SequencedKeyPartitioner} partitions by the userNumber alone, so
+ * consumers can drop a record sent again after a restart or a resend. A
+ * record failing with a
+ * {@link RetriableException} after the retries of the producer is sent
+ * again until it is acked, as the archive promises it to the topic, and no
+ * record past it is read until then, so only the records already in flight
+ * can overtake it. Any other failure, like a record too large for the
+ * topic, stops the shipper with the checkpoint before that record, as
+ * sending it again would fail the same way.
+ * <p>
+ * The checkpoint holds the position up to which every record is acked and
+ * the sequence numbers acked past it. It is written to a temporary file,
+ * forced to disk and moved over the previous one every
+ * {@code checkpointIntervalMillis} and on close. A restarted shipper skips
+ * the records acked past the position, so only the ones acked after the
+ * last checkpoint can reach the topic twice. The writer keeps the segments
+ * from the checkpointed one on whatever its retention.
+ */
+public class ArchiveOutboxShipper implements AutoCloseable {
+
+    static final String CHECKPOINT_SUFFIX = ".outbox";
+    private static final org.slf4j.Logger log =
+            org.slf4j.LoggerFactory.getLogger(ArchiveOutboxShipper.class);
+    private static final long MAGIC = 0x4B4B424F55544258L;
+    private static final int VERSION = 1;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS
+            .toNanos(1);
+    private static final long DEFAULT_CLOSE_TIMEOUT_MILLIS = 30000;
+
+    private final SegmentedArchiveWriter segmentedArchiveWriter;
+    private final Path directory;
+    private final String prefix;
+    private final RecordFraming recordFraming;
+    private final AsyncKafkaSender asyncKafkaSender;
+    private final ToLongFunction<ByteBuffer> keyExtractor;
+    private final Path checkpointFile;
+    private final int maxPendingRecords;
+    private final long checkpointIntervalMillis;
+    private final TreeMap<Long, BitSet> resumedAckedMap;
+    private final ArrayDeque<Batch> batchDeque;
+    private final Queue<Resend> resendQueue;
+    private final LongAdder shippedCount;
+    private final LongAdder ackedCount;
+    private final LongAdder resentCount;
+    private final AtomicInteger unackedRecords;
+    private final AtomicInteger failedRecords;
+    private final Thread thread;
+    private ByteBuffer readBuffer;
+    private FileChannel segmentChannel;
+    private long segmentSequence;
+    private long segmentOffset;
+    private long segmentOrdinal;
+    private int pendingRecords;
+    private volatile long dedupedCount;
+    private volatile long checkpointSegmentSequence;
+    private volatile long checkpointCount;
+    private volatile long closeDeadlineMillis;
+    private volatile boolean closing;
+    private volatile Exception fatalException;
+
+    /**
+     * Checkpoints to {@code <prefix>.outbox} in the archive directory.
+     *
+     * @param keyExtractor reads the key of a record, its userNumber
+     */
+    public ArchiveOutboxShipper(SegmentedArchiveWriter segmentedArchiveWriter,
+            AsyncKafkaSender asyncKafkaSender,
+            ToLongFunction<ByteBuffer> keyExtractor) {
+        this(segmentedArchiveWriter, asyncKafkaSender, keyExtractor,
+                segmentedArchiveWriter.getDirectory().resolve(
+                        segmentedArchiveWriter.getPrefix() +
+                                CHECKPOINT_SUFFIX), 1 << 20, 1 << 20, 100);
+    }
+
+    /**
+     * Starts from the checkpoint when it exists, else from the active
+     * segment of the writer, as the records archived before went to Kafka
+     * directly.
+     *
+     * @param maxPendingRecords records read past the checkpointable
+     *                          position, after which reading waits for acks
+     */
+    public ArchiveOutboxShipper(SegmentedArchiveWriter segmentedArchiveWriter,
+            AsyncKafkaSender asyncKafkaSender,
+            ToLongFunction<ByteBuffer> keyExtractor, Path checkpointFile,
+            int batchBytes, int maxPendingRecords,
+            long checkpointIntervalMillis) {
+        this.segmentedArchiveWriter = segmentedArchiveWriter;
+        this.directory = segmentedArchiveWriter.getDirectory();
+        this.prefix = segmentedArchiveWriter.getPrefix();
+        this.recordFraming = segmentedArchiveWriter.getRecordFraming();
+        this.asyncKafkaSender = asyncKafkaSender;
+        this.keyExtractor = keyExtractor;
+        this.checkpointFile = checkpointFile;
+        this.maxPendingRecords = maxPendingRecords;
+        this.checkpointIntervalMillis = checkpointIntervalMillis;
+        this.resumedAckedMap = new TreeMap<>();
+        this.batchDeque = new ArrayDeque<>();
+        this.resendQueue = new ConcurrentLinkedQueue<>();
+        this.shippedCount = new LongAdder();
+        this.ackedCount = new LongAdder();
+        this.resentCount = new LongAdder();
+        this.unackedRecords = new AtomicInteger();
+        this.failedRecords = new AtomicInteger();
+        this.readBuffer = ByteBuffer.allocate(batchBytes);
+        if (Files.exists(checkpointFile))
+            readCheckpoint();
+        else {
+            this.segmentSequence =
+                    segmentedArchiveWriter.getActiveSegmentSequence();
+            checkpoint();
+        }
+        this.checkpointSegmentSequence = segmentSequence;
+        segmentedArchiveWriter.setRetentionFloor(
+                () -> checkpointSegmentSequence);
+        this.thread = new Thread(this::run, "ArchiveOutboxShipper-" + prefix);
+        thread.start();
+        log.info("ArchiveOutboxShipper({}, {}, {}, {}, {}) - from {}:{}",
+                directory.toAbsolutePath(), prefix, checkpointFile,
+                batchBytes, maxPendingRecords, segmentSequence,
+                segmentOrdinal);
+    }
+
+    private void readCheckpoint() {
+        try (DataInputStream input = new DataInputStream(
+                new BufferedInputStream(
+                        Files.newInputStream(checkpointFile)))) {
+            if (input.readLong() != MAGIC || input.readInt() != VERSION)
+                throw new IOException("Wrong Magic Or Version");
+            this.segmentSequence = input.readLong();
+            this.segmentOffset = input.readLong();
+            this.segmentOrdinal = input.readLong();
+            for (int entryCount = input.readInt(); entryCount > 0;
+                 entryCount--) {
+                long sequence = input.readLong();
+                long[] words = new long[input.readInt()];
+                for (int i = 0; i < words.length; i++)
+                    words[i] = input.readLong();
+                resumedAckedMap.put(sequence, BitSet.valueOf(words));
+            }
+            if (input.readLong() != MAGIC)
+                throw new IOException("Wrong Magic");
+        } catch (IOException e) {
+            throw new RuntimeException("Wrong Outbox Checkpoint !!! - " +
+                    checkpointFile, e);
+        }
+    }
+
+    private void run() {
+        long nextCheckpointMillis =
+                System.currentTimeMillis() + checkpointIntervalMillis;
+        try {
+            while (true) {
+                if (fatalException != null)
+                    throw fatalException;
+                boolean closed = closing;
+                resendFailed();
+                boolean shipped = failedRecords.get() == 0 &&
+                        pendingRecords < maxPendingRecords && shipNextBatch();
+                completeAckedBatches();
+                long nowMillis = System.currentTimeMillis();
+                if (nowMillis >= nextCheckpointMillis) {
+                    checkpoint();
+                    nextCheckpointMillis = nowMillis + checkpointIntervalMillis;
+                }
+                if (closed && !shipped && (batchDeque.isEmpty() ||
+                        nowMillis >= closeDeadlineMillis))
+                    break;
+                if (!shipped)
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        } catch (Exception e) {
+            log.error("run() - Shipping Stopped !!! - {}", getSummary(), e);
+        }
+        closeSegmentChannel();
+        checkpoint();
+    }
+
+    private void resendFailed() {
+        for (Resend resend; (resend = resendQueue.poll()) != null; ) {
+            resentCount.increment();
+            send(resend.batch, resend.index, resend.key, resend.bytes, true);
+        }
+    }
+
+    /**
+     * @return false when there is nothing new to read
+     */
+    private boolean shipNextBatch() throws IOException {
+        Path segmentPath = SegmentedArchiveWriter
+                .getSegmentPath(directory, prefix, segmentSequence);
+        if (segmentChannel == null) {
+            if (!Files.exists(segmentPath))
+                return skipMissingSegment();
+            this.segmentChannel =
+                    FileChannel.open(segmentPath, StandardOpenOption.READ);
+        }
+        SegmentedArchiveWriter.DurablePosition durablePosition =
+                segmentedArchiveWriter.getDurablePosition();
+        boolean sealed =
+                durablePosition.getSegmentSequence() > segmentSequence;
+        long size = sealed ? segmentChannel.size() :
+                Math.min(segmentChannel.size(), durablePosition.getBytes());
+        if (size > segmentOffset && shipWindow(size))
+            return true;
+        if (!sealed)
+            return false;
+        if (size > segmentOffset)
+            log.warn("shipNextBatch() - Torn Tail Skipped !!! - {} bytes of {}",
+                    size - segmentOffset, segmentPath);
+        moveToSegment(segmentSequence + 1);
+        return true;
+    }
+
+    private boolean skipMissingSegment() {
+        Long nextSequence = SegmentedArchiveWriter
+                .listSegmentSequences(directory, prefix).stream()
+                .filter(sequence -> sequence > segmentSequence).findFirst()
+                .orElse(null);
+        if (nextSequence == null)
+            return false;
+        log.warn("skipMissingSegment() - Segments Lost !!! - {} to {}",
+                segmentSequence, nextSequence - 1);
+        moveToSegment(nextSequence);
+        return true;
+    }
+
+    private void moveToSegment(long sequence) {
+        closeSegmentChannel();
+        this.segmentSequence = sequence;
+        this.segmentOffset = 0;
+        this.segmentOrdinal = 0;
+        resumedAckedMap.headMap(sequence).clear();
+    }
+
+    private void closeSegmentChannel() {
+        if (segmentChannel == null)
+            return;
+        try {
+            segmentChannel.close();
+        } catch (IOException e) {
+            log.warn("closeSegmentChannel() - {}", segmentSequence, e);
+        }
+        this.segmentChannel = null;
+    }
+
+    /**
+     * @return false when the window holds no complete record
+     */
+    private boolean shipWindow(long size) throws IOException {
+        readBuffer.clear();
+        if (size - segmentOffset < readBuffer.capacity())
+            readBuffer.limit((int) (size - segmentOffset));
+        while (readBuffer.hasRemaining())
+            if (segmentChannel.read(readBuffer,
+                    segmentOffset + readBuffer.position()) < 0)
+                break;
+        readBuffer.flip();
+        int completeLength = recordFraming.completeLength(readBuffer, false);
+        if (completeLength == 0) {
+            if (readBuffer.limit() < readBuffer.capacity())
+                return false;
+            this.readBuffer = ByteBuffer.allocate(readBuffer.capacity() * 2);
+            return true;
+        }
+        readBuffer.limit(completeLength);
+        Batch batch = new Batch(segmentSequence, segmentOrdinal,
+                segmentOffset);
+        BitSet resumedAcked = resumedAckedMap.get(segmentSequence);
+        int[] index = {0};
+        recordFraming.scanRecords(readBuffer, record -> {
+            int recordIndex = index[0]++;
+            if (resumedAcked != null &&
+                    resumedAcked.get((int) (segmentOrdinal + recordIndex))) {
+                batch.ack(recordIndex);
+                this.dedupedCount++;
+                return;
+            }
+            String key = SequencedKeyPartitioner.buildKey(
+                    String.valueOf(keyExtractor.applyAsLong(record)),
+                    segmentSequence + ":" + (segmentOrdinal + recordIndex));
+            byte[] bytes = new byte[record.remaining()];
+            record.duplicate().get(bytes);
+            batch.pendingCount.incrementAndGet();
+            unackedRecords.incrementAndGet();
+            shippedCount.increment();
+            send(batch, recordIndex, key, bytes, false);
+        });
+        batch.seal(index[0]);
+        batchDeque.addLast(batch);
+        this.pendingRecords += batch.recordCount;
+        this.segmentOffset += completeLength;
+        this.segmentOrdinal += batch.recordCount;
+        return true;
+    }
+
+    /**
+     * @param resent whether the record failed before
+     */
+    private void send(Batch batch, int index, String key, byte[] bytes,
+            boolean resent) {
+        asyncKafkaSender.send(asyncKafkaSender.getDefaultTopic(), key, bytes,
+                (metadata, exception) -> {
+                    if (exception instanceof RetriableException) {
+                        if (!resent)
+                            failedRecords.incrementAndGet();
+                        resendQueue.add(new Resend(batch, index, key, bytes));
+                        return;
+                    }
+                    if (exception != null) {
+                        log.error("send() - Unshippable Record !!! - {}:{}",
+                                batch.segmentSequence,
+                                batch.firstOrdinal + index, exception);
+                        this.fatalException = exception;
+                        return;
+                    }
+                    if (resent)
+                        failedRecords.decrementAndGet();
+                    batch.ack(index);
+                    batch.pendingCount.decrementAndGet();
+                    unackedRecords.decrementAndGet();
+                    ackedCount.increment();
+                });
+    }
+
+    private void completeAckedBatches() {
+        while (!batchDeque.isEmpty() && batchDeque.peekFirst().isAcked())
+            this.pendingRecords -= batchDeque.pollFirst().recordCount;
+    }
+
+    private void checkpoint() {
+        try {
+            writeCheckpoint();
+        } catch (IOException e) {
+            log.error("checkpoint() - {}", checkpointFile, e);
+        }
+    }
+
+    /**
+     * Layout, big endian: the magic and version, the segment sequence,
+     * offset and ordinal up to which every record is acked, then per
+     * segment with records acked past it the sequence and the words of the
+     * bit set of their ordinals, ending with the magic again.
+     */
+    private void writeCheckpoint() throws IOException {
+        Batch headBatch = batchDeque.peekFirst();
+        long sequence = headBatch == null ? segmentSequence :
+                headBatch.segmentSequence;
+        Map<Long, BitSet> ackedMap = new TreeMap<>(
+                resumedAckedMap.tailMap(sequence));
+        for (Batch batch : batchDeque)
+            batch.addAckedTo(ackedMap.computeIfAbsent(batch.segmentSequence,
+                    segmentSequence -> new BitSet()));
+        Path temporaryFile = checkpointFile.resolveSibling(
+                checkpointFile.getFileName() + ".tmp");
+        try (FileOutputStream fileOutputStream =
+                new FileOutputStream(temporaryFile.toFile());
+             DataOutputStream output = new DataOutputStream(
+                     new BufferedOutputStream(fileOutputStream))) {
+            output.writeLong(MAGIC);
+            output.writeInt(VERSION);
+            output.writeLong(sequence);
+            output.writeLong(headBatch == null ? segmentOffset :
+                    headBatch.startOffset);
+            output.writeLong(headBatch == null ? segmentOrdinal :
+                    headBatch.firstOrdinal);
+            output.writeInt(ackedMap.size());
+            for (Map.Entry<Long, BitSet> entry : ackedMap.entrySet()) {
+                long[] words = entry.getValue().toLongArray();
+                output.writeLong(entry.getKey());
+                output.writeInt(words.length);
+                for (long word : words)
+                    output.writeLong(word);
+            }
+            output.writeLong(MAGIC);
+            output.flush();
+            fileOutputStream.getFD().sync();
+        }
+        Files.move(temporaryFile, checkpointFile,
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        this.checkpointSegmentSequence = sequence;
+        this.checkpointCount++;
+    }
+
+    public Path getCheckpointFile() {
+        return checkpointFile;
+    }
+
+    /**
+     * @return records sent for the first time
+     */
+    public long getShippedCount() {
+        return shippedCount.sum();
+    }
+
+    public long getAckedCount() {
+        return ackedCount.sum();
+    }
+
+    public long getResentCount() {
+        return resentCount.sum();
+    }
+
+    /**
+     * @return records not sent again as the checkpoint had them acked
+     */
+    public long getDedupedCount() {
+        return dedupedCount;
+    }
+
+    public int getUnackedRecords() {
+        return unackedRecords.get();
+    }
+
+    /**
+     * @return the failure which stopped the shipper, null while it runs
+     */
+    public Exception getFatalException() {
+        return fatalException;
+    }
+
+    public String getSummary() {
+        return "ArchiveOutboxShipper(shipped=" + getShippedCount() +
+                ", acked=" + getAckedCount() + ", resent=" +
+                getResentCount() + ", deduped=" + getDedupedCount() +
+                ", unacked=" + getUnackedRecords() + ", failed=" +
+                failedRecords.get() + ", checkpoints=" +
+                checkpointCount + ", position=" + segmentSequence + ":" +
+                segmentOrdinal + ")";
+    }
+
+    @Override
+    public void close() {
+        close(DEFAULT_CLOSE_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Ships what is left in the archive, which should be flushed or closed
+     * by then, waits until it is acked or the timeout passed and writes a
+     * last checkpoint. Leaves the sender open.
+     *
+     * @return {@link #getUnackedRecords()}, shipped again on restart
+     */
+    public long close(long timeoutMillis) {
+        if (!closing) {
+            this.closeDeadlineMillis =
+                    System.currentTimeMillis() + timeoutMillis;
+            this.closing = true;
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        int unackedRecords = getUnackedRecords();
+        if (unackedRecords > 0)
+            log.warn("close({}) - Unacked Records !!! - {}", timeoutMillis,
+                    getSummary());
+        else
+            log.info("close({}) - {}", timeoutMillis, getSummary());
+        return unackedRecords;
+    }
+
+    private static class Batch {
+        private final long segmentSequence;
+        private final long firstOrdinal;
+        private final long startOffset;
+        private final BitSet ackedBitSet;
+        private final AtomicInteger pendingCount;
+        private int recordCount;
+
+        private Batch(long segmentSequence, long firstOrdinal,
+                long startOffset) {
+            this.segmentSequence = segmentSequence;
+            this.firstOrdinal = firstOrdinal;
+            this.startOffset = startOffset;
+            this.ackedBitSet = new BitSet();
+            this.pendingCount = new AtomicInteger(1);
+        }
+
+        private synchronized void ack(int index) {
+            ackedBitSet.set(index);
+        }
+
+        /**
+         * Drops the hold taken at creation, once every record is sent.
+         */
+        private void seal(int recordCount) {
+            this.recordCount = recordCount;
+            pendingCount.decrementAndGet();
+        }
+
+        private boolean isAcked() {
+            return pendingCount.get() == 0;
+        }
+
+        private synchronized void addAckedTo(BitSet ordinalBitSet) {
+            for (int i = ackedBitSet.nextSetBit(0); i >= 0;
+                 i = ackedBitSet.nextSetBit(i + 1))
+                ordinalBitSet.set((int) firstOrdinal + i);
+        }
+    }
+
+    private static class Resend {
+        private final Batch batch;
+        private final int index;
+        private final String key;
+        private final byte[] bytes;
+
+        private Resend(Batch batch, int index, String key, byte[] bytes) {
+            this.batch = batch;
+            this.index = index;
+            this.key = key;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,423 @@
+package kr.jm.test.kkb.output;
+
+import kr.jm.test.kkb.metrics.LogLinearHistogram;
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.utils.Utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Sends keyed records without blocking inside {@link Producer#send}: the
+ * caller first waits for a permit of the in-flight record and byte caps,
+ * which is the backpressure on the generator, and the permits come back
+ * with the completion callback. Keeping the byte cap below
+ * {@code buffer.memory} means the producer never blocks on a full buffer.
+ * <p>
+ * Partitioning and retries are left to the producer, so
+ * {@code partitioner.class} applies and a partition keeps its order with
+ * the {@code max.in.flight.requests.per.connection} of 1 set by
+ * {@link KafkaProducerProperties}. Acks, errors and retries are counted per
+ * topic partition, of the metadata or else of the record. The Kafka
+ * producer gives a failed record no metadata, so its error goes to
+ * partition -1 unless the record was sent to a given partition, and it
+ * reports no retries; a {@link RetryCountingCallback} gets them from the
+ * producers which know them.
+ * <p>
+ * The producer can be replaced at runtime, for settings Kafka only reads at
+ * construction; the records in flight on the old one complete before any
+ * goes to the new one, so a partition keeps its order across the swap.
+ */
+public class AsyncKafkaSender implements AutoCloseable {
+
+    private static final org.slf4j.Logger log =
+            org.slf4j.LoggerFactory.getLogger(AsyncKafkaSender.class);
+    private static final long DEFAULT_CLOSE_TIMEOUT_MILLIS = 30000;
+    private static final int DEFAULT_BUFFER_MEMORY = 33554432;
+
+    private final ReadWriteLock producerLock;
+    private final LogLinearHistogram ackLatencyMicrosHistogram;
+    private volatile Producer<String, byte[]> producer;
+    private final String defaultTopic;
+    private final int maxInFlightRecords;
+    private final int maxInFlightBytes;
+    private final Semaphore inFlightRecordPermits;
+    private final Semaphore inFlightBytePermits;
+    private final ConcurrentMap<TopicPartition, PartitionCounters>
+            partitionCountersMap;
+    private final LongAdder sentCount;
+    private final LongAdder rejectedCount;
+    private final LongAdder backpressureCount;
+    private final LongAdder backpressureNanos;
+    private volatile boolean closed;
+    private volatile long abandonedCount;
+
+    /**
+     * Caps the in-flight bytes at half of the producer's
+     * {@code buffer.memory}.
+     */
+    public AsyncKafkaSender(BytesKafkaProducer bytesKafkaProducer) {
+        this(bytesKafkaProducer, bytesKafkaProducer.getDefaultTopic(),
+                bytesKafkaProducer.getProducerProperties());
+    }
+
+    /**
+     * @param producerProperties the settings the producer was built with
+     * @see #AsyncKafkaSender(BytesKafkaProducer)
+     */
+    public AsyncKafkaSender(Producer<String, byte[]> producer,
+            String defaultTopic, Properties producerProperties) {
+        this(producer, defaultTopic, 10000,
+                resolveBufferMemory(producerProperties) / 2);
+    }
+
+    /**
+     * @param producer closed together with this sender
+     */
+    public AsyncKafkaSender(Producer<String, byte[]> producer,
+            String defaultTopic, int maxInFlightRecords,
+            int maxInFlightBytes) {
+        this.producerLock = new ReentrantReadWriteLock();
+        this.ackLatencyMicrosHistogram = new LogLinearHistogram();
+        this.producer = producer;
+        this.defaultTopic = defaultTopic;
+        this.maxInFlightRecords = maxInFlightRecords;
+        this.maxInFlightBytes = maxInFlightBytes;
+        this.inFlightRecordPermits = new Semaphore(maxInFlightRecords);
+        this.inFlightBytePermits = new Semaphore(maxInFlightBytes);
+        this.partitionCountersMap = new ConcurrentHashMap<>();
+        this.sentCount = new LongAdder();
+        this.rejectedCount = new LongAdder();
+        this.backpressureCount = new LongAdder();
+        this.backpressureNanos = new LongAdder();
+        log.info("AsyncKafkaSender({}, {}, {})", defaultTopic,
+                maxInFlightRecords, maxInFlightBytes);
+    }
+
+    static int resolveBufferMemory(Properties producerProperties) {
+        return Optional.ofNullable(producerProperties)
+                .map(properties -> properties
+                        .get(ProducerConfig.BUFFER_MEMORY_CONFIG))
+                .map(Object::toString).map(Integer::valueOf)
+                .orElse(DEFAULT_BUFFER_MEMORY);
+    }
+
+    /**
+     * The partition the default partitioner picks for a keyed record, for
+     * the key without its sequence number with the
+     * {@link SequencedKeyPartitioner}.
+     */
+    public static int partitionOf(String key, int numPartitions) {
+        return Utils.toPositive(Utils.murmur2(SequencedKeyPartitioner
+                .partitionKeyOf(key).getBytes(StandardCharsets.UTF_8))) %
+                numPartitions;
+    }
+
+    public boolean send(String key, byte[] bytes) {
+        return send(defaultTopic, key, bytes);
+    }
+
+    public boolean send(String topic, String key, byte[] bytes) {
+        return send(topic, key, bytes, null);
+    }
+
+    /**
+     * @see #send(String, Integer, String, byte[], Callback)
+     */
+    public boolean send(String topic, String key, byte[] bytes,
+            Callback callback) {
+        return send(topic, null, key, bytes, callback);
+    }
+
+    /**
+     * Waits while the in-flight caps are reached.
+     *
+     * @param partition null to leave it to the partitioner
+     * @param callback  called once with the final outcome, after the
+     *                  producer's retries, unless the record is still in
+     *                  flight when close runs out of time
+     * @return false when nothing was sent, for null bytes or after close
+     */
+    public boolean send(String topic, Integer partition, String key,
+            byte[] bytes, Callback callback) {
+        if (bytes == null)
+            return false;
+        if (closed) {
+            rejectedCount.increment();
+            log.warn("send({}, {}, {} bytes) - Already Closed !!!", topic, key,
+                    bytes.length);
+            return false;
+        }
+        int bytePermits = Math.min(bytes.length, maxInFlightBytes);
+        acquirePermits(bytePermits);
+        sentCount.increment();
+        long sendNanos = System.nanoTime();
+        producerLock.readLock().lock();
+        try {
+            sendRecord(new ProducerRecord<>(topic, partition, key, bytes),
+                    callback, bytePermits, sendNanos);
+        } finally {
+            producerLock.readLock().unlock();
+        }
+        return true;
+    }
+
+    private void acquirePermits(int bytePermits) {
+        long waitStartNanos = 0;
+        if (!inFlightRecordPermits.tryAcquire()) {
+            waitStartNanos = System.nanoTime();
+            inFlightRecordPermits.acquireUninterruptibly();
+        }
+        if (!inFlightBytePermits.tryAcquire(bytePermits)) {
+            if (waitStartNanos == 0)
+                waitStartNanos = System.nanoTime();
+            inFlightBytePermits.acquireUninterruptibly(bytePermits);
+        }
+        if (waitStartNanos != 0) {
+            backpressureCount.increment();
+            backpressureNanos.add(System.nanoTime() - waitStartNanos);
+        }
+    }
+
+    private void sendRecord(ProducerRecord<String, byte[]> record,
+            Callback callback, int bytePermits, long sendNanos) {
+        RetryCountingCallback recordCallback =
+                (metadata, exception, retries) -> onCompletion(record,
+                        callback, bytePermits, sendNanos, metadata,
+                        exception, retries);
+        try {
+            producer.send(record, recordCallback);
+        } catch (Exception e) {
+            onCompletion(record, callback, bytePermits, sendNanos, null, e,
+                    0);
+        }
+    }
+
+    private void onCompletion(ProducerRecord<String, byte[]> record,
+            Callback callback, int bytePermits, long sendNanos,
+            RecordMetadata metadata, Exception exception, int retries) {
+        PartitionCounters partitionCounters = partitionCountersMap
+                .computeIfAbsent(topicPartitionOf(record, metadata),
+                        topicPartition -> new PartitionCounters());
+        partitionCounters.retryCount.add(retries);
+        if (exception == null) {
+            partitionCounters.ackCount.increment();
+            ackLatencyMicrosHistogram.record(TimeUnit.NANOSECONDS
+                    .toMicros(System.nanoTime() - sendNanos));
+        } else {
+            partitionCounters.errorCount.increment();
+            log.error("onCompletion({}, {})", record.topic(), record.key(),
+                    exception);
+        }
+        inFlightBytePermits.release(bytePermits);
+        inFlightRecordPermits.release();
+        if (callback == null)
+            return;
+        try {
+            callback.onCompletion(metadata, exception);
+        } catch (Exception e) {
+            log.error("onCompletion({}, {}) - callback", record.topic(),
+                    record.key(), e);
+        }
+    }
+
+    private static TopicPartition topicPartitionOf(
+            ProducerRecord<String, byte[]> record, RecordMetadata metadata) {
+        if (metadata != null)
+            return new TopicPartition(metadata.topic(), metadata.partition());
+        return new TopicPartition(record.topic(),
+                record.partition() == null ? -1 : record.partition());
+    }
+
+    /**
+     * Holds back the sends while the old producer flushes, which waits for
+     * the outcome of every record in flight on it, then swaps in the new
+     * producer and closes the old one.
+     */
+    public void replaceProducer(Producer<String, byte[]> newProducer,
+            long closeTimeoutMillis) {
+        Producer<String, byte[]> oldProducer;
+        producerLock.writeLock().lock();
+        try {
+            if (closed)
+                throw new IllegalStateException("Already Closed !!!");
+            oldProducer = this.producer;
+            oldProducer.flush();
+            this.producer = newProducer;
+        } finally {
+            producerLock.writeLock().unlock();
+        }
+        oldProducer.close(closeTimeoutMillis, TimeUnit.MILLISECONDS);
+        log.info("replaceProducer({}) - {}", closeTimeoutMillis, getSummary());
+    }
+
+    public Producer<String, byte[]> getProducer() {
+        return producer;
+    }
+
+    public String getDefaultTopic() {
+        return defaultTopic;
+    }
+
+    /**
+     * @return send to ack latency of the acked records, retries included
+     */
+    public LogLinearHistogram getAckLatencyMicrosHistogram() {
+        return ackLatencyMicrosHistogram;
+    }
+
+    public long getSentCount() {
+        return sentCount.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    public long getAckCount() {
+        return partitionCountersMap.values().stream()
+                .mapToLong(PartitionCounters::getAckCount).sum();
+    }
+
+    public long getErrorCount() {
+        return partitionCountersMap.values().stream()
+                .mapToLong(PartitionCounters::getErrorCount).sum();
+    }
+
+    /**
+     * @return the retries reported by the producer, none by Kafka's
+     */
+    public long getRetryCount() {
+        return partitionCountersMap.values().stream()
+                .mapToLong(PartitionCounters::getRetryCount).sum();
+    }
+
+    public int getInFlightRecords() {
+        return maxInFlightRecords - inFlightRecordPermits.availablePermits();
+    }
+
+    public int getInFlightBytes() {
+        return maxInFlightBytes - inFlightBytePermits.availablePermits();
+    }
+
+    public long getBackpressureCount() {
+        return backpressureCount.sum();
+    }
+
+    public long getAverageBackpressureMicros() {
+        long count = backpressureCount.sum();
+        return count == 0 ? 0 :
+                TimeUnit.NANOSECONDS.toMicros(backpressureNanos.sum() / count);
+    }
+
+    /**
+     * @return records given up on: failed for good, still in flight when
+     * close ran out of time, or offered after close
+     */
+    public long getLostCount() {
+        return getErrorCount() + abandonedCount + getRejectedCount();
+    }
+
+    public Map<TopicPartition, PartitionCounters> getPartitionCounters() {
+        Map<TopicPartition, PartitionCounters> sortedMap = new TreeMap<>(
+                (topicPartition1, topicPartition2) -> topicPartition1
+                        .topic().equals(topicPartition2.topic()) ?
+                        Integer.compare(topicPartition1.partition(),
+                                topicPartition2.partition()) :
+                        topicPartition1.topic()
+                                .compareTo(topicPartition2.topic()));
+        sortedMap.putAll(partitionCountersMap);
+        return sortedMap;
+    }
+
+    public String getSummary() {
+        return "AsyncKafkaSender(sent=" + getSentCount() + ", acked=" +
+                getAckCount() + ", failed=" + getErrorCount() + ", retried=" +
+                getRetryCount() + ", inFlight=" +
+                getInFlightRecords() + ", inFlightBytes=" +
+                getInFlightBytes() + ", backpressure=" +
+                getBackpressureCount() + ", avgBackpressureMicros=" +
+                getAverageBackpressureMicros() + ", ackLatencyMicrosP99=" +
+                ackLatencyMicrosHistogram.getPercentile(99) + ", lost=" +
+                getLostCount() + ")";
+    }
+
+    @Override
+    public void close() {
+        close(DEFAULT_CLOSE_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Stops taking records and waits until the in-flight ones are done or
+     * the timeout passed, then closes the producer with what is left of it.
+     *
+     * @return {@link #getLostCount()}
+     */
+    public synchronized long close(long timeoutMillis) {
+        if (closed)
+            return getLostCount();
+        producerLock.writeLock().lock();
+        try {
+            this.closed = true;
+        } finally {
+            producerLock.writeLock().unlock();
+        }
+        long deadlineMillis = System.currentTimeMillis() + timeoutMillis;
+        while (getInFlightRecords() > 0 &&
+                System.currentTimeMillis() < deadlineMillis) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        producer.close(Math.max(0,
+                deadlineMillis - System.currentTimeMillis()),
+                TimeUnit.MILLISECONDS);
+        this.abandonedCount = getInFlightRecords();
+        long lostCount = getLostCount();
+        if (lostCount > 0)
+            log.warn("close({}) - Lost Records !!! - {} - {}", timeoutMillis,
+                    getSummary(), getPartitionCounters());
+        else
+            log.info("close({}) - {}", timeoutMillis, getSummary());
+        return lostCount;
+    }
+
+    public static class PartitionCounters {
+        private final LongAdder ackCount = new LongAdder();
+        private final LongAdder errorCount = new LongAdder();
+        private final LongAdder retryCount = new LongAdder();
+
+        public long getAckCount() {
+            return ackCount.sum();
+        }
+
+        public long getErrorCount() {
+            return errorCount.sum();
+        }
+
+        public long getRetryCount() {
+            return retryCount.sum();
+        }
+
+        @Override
+        public String toString() {
+            return "PartitionCounters(acked=" + getAckCount() + ", failed=" +
+                    getErrorCount() + ", retried=" + getRetryCount() + ")";
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package kr.jm.test.kkb.output;
+
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.serialization.Serdes;
+
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
+public class BytesKafkaProducer extends KafkaProducer<String, byte[]> {
+
+    private static final org.slf4j.Logger log =
+            org.slf4j.LoggerFactory.getLogger(BytesKafkaProducer.class);
+    private String defaultTopic;
+    private Properties producerProperties;
+
+    public String getDefaultTopic() {
+        return defaultTopic;
+    }
+
+    public Properties getProducerProperties() {
+        return producerProperties;
+    }
+
+    public BytesKafkaProducer(String bootstrapServers,
+            String defaultTopic) {
+        this(bootstrapServers, null, defaultTopic);
+    }
+
+    public BytesKafkaProducer(String bootstrapServers, String producerId,
+            String defaultTopic) {
+        this(bootstrapServers, producerId, defaultTopic, 2, 16384, 33554432, 1);
+    }
+
+    public BytesKafkaProducer(String bootstrapServers, String producerId,
+            String defaultTopic, int retries, int batchSize, int bufferMemory,
+            int lingerMs) {
+        this(StringKafkaProducer
+                .buildProperties(bootstrapServers, producerId, retries,
+                        batchSize, bufferMemory, lingerMs), defaultTopic);
+    }
+
+    public BytesKafkaProducer(Properties producerProperties,
+            String defaultTopic) {
+        super(producerProperties, Serdes.String().serializer(),
+                Serdes.ByteArray().serializer());
+        this.producerProperties = producerProperties;
+        this.defaultTopic = defaultTopic;
+    }
+
+    public Future<RecordMetadata> sendBytesData(String key, byte[] bytesData) {
+        log.debug("sendBytesData({}, {}, {} bytes)", defaultTopic, key,
+                bytesData == null ? 0 : bytesData.length);
+        return Optional.ofNullable(bytesData).map(
+                bytes -> send(new ProducerRecord<>(defaultTopic, key, bytes)))
+                .orElseGet(() -> CompletableFuture.completedFuture(null));
+    }
+
+}
@@ -0,0 +1,21 @@
+package kr.jm.test.kkb.output;
+
+/**
+ * When a {@link SegmentedArchiveWriter} forces its records to disk, besides
+ * on roll and on close.
+ */
+public enum Durability {
+
+    /**
+     * leaves flushing to the page cache of the OS
+     */
+    NONE,
+    /**
+     * at most every interval milliseconds, an idle writer included
+     */
+    FSYNC_EVERY_N_MS,
+    /**
+     * once every interval records
+     */
+    FSYNC_EVERY_N_RECORDS
+}
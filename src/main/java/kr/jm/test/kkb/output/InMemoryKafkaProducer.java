@@ -0,0 +1,279 @@
+package kr.jm.test.kkb.output;
+
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.RecordTooLargeException;
+import org.apache.kafka.common.errors.TimeoutException;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Stand-in for a Kafka cluster which acks every record after a fixed
+ * latency from its own thread, like the I/O thread of a real producer, and
+ * fails a given share of the attempts, with a retriable
+ * {@link TimeoutException} or a fatal {@link RecordTooLargeException}.
+ * <p>
+ * Like a producer with one request in flight per connection, a retriable
+ * failure is retried up to {@link KafkaProducerProperties#DEFAULT_RETRIES}
+ * times, each costing another latency, and holds back the later records of
+ * its partition, so a partition is acked in send order. A
+ * {@link RetryCountingCallback} is told the retries of its record, and a
+ * failed record gets the metadata of its partition with an offset of -1,
+ * as Kafka's interceptors do. Nothing is kept but counters and offsets, so
+ * it can take long load tests.
+ */
+public class InMemoryKafkaProducer implements Producer<String, byte[]> {
+
+    private static final org.slf4j.Logger log =
+            org.slf4j.LoggerFactory.getLogger(InMemoryKafkaProducer.class);
+    private static final Node NODE = new Node(0, "in-memory", 9092);
+
+    private final int numPartitions;
+    private final long ackLatencyMicros;
+    private final double retriableFailureRate;
+    private final double fatalFailureRate;
+    private final AtomicLongArray partitionOffsets;
+    private final AtomicLongArray partitionDueNanos;
+    private final ScheduledThreadPoolExecutor ackExecutor;
+    private final LongAdder sentCount;
+    private final LongAdder ackCount;
+    private final LongAdder failedCount;
+    private final LongAdder retryCount;
+    private final AtomicLong pendingCount;
+    private volatile BiConsumer<ProducerRecord<String, byte[]>,
+            RecordMetadata> ackListener;
+    private volatile boolean closed;
+
+    /**
+     * @param retriableFailureRate share of the attempts failing with a
+     *                             {@link TimeoutException}, 0 to 1
+     * @param fatalFailureRate     share failing with a
+     *                             {@link RecordTooLargeException}
+     */
+    public InMemoryKafkaProducer(int numPartitions, long ackLatencyMicros,
+            double retriableFailureRate, double fatalFailureRate) {
+        if (numPartitions < 1 || retriableFailureRate + fatalFailureRate > 1)
+            throw new IllegalArgumentException(
+                    "Wrong InMemoryKafkaProducer Config !!! - partitions=" +
+                            numPartitions + ", retriableFailureRate=" +
+                            retriableFailureRate + ", fatalFailureRate=" +
+                            fatalFailureRate);
+        this.numPartitions = numPartitions;
+        this.ackLatencyMicros = ackLatencyMicros;
+        this.retriableFailureRate = retriableFailureRate;
+        this.fatalFailureRate = fatalFailureRate;
+        this.partitionOffsets = new AtomicLongArray(numPartitions);
+        this.partitionDueNanos = new AtomicLongArray(numPartitions);
+        this.ackExecutor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "InMemoryKafkaProducer-ack");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.sentCount = new LongAdder();
+        this.ackCount = new LongAdder();
+        this.failedCount = new LongAdder();
+        this.retryCount = new LongAdder();
+        this.pendingCount = new AtomicLong();
+        log.info("InMemoryKafkaProducer({}, {}us, {}, {})", numPartitions,
+                ackLatencyMicros, retriableFailureRate, fatalFailureRate);
+    }
+
+    /**
+     * @param ackListener called on the ack thread for every record acked
+     *                    without error, before its callback
+     */
+    public InMemoryKafkaProducer setAckListener(
+            BiConsumer<ProducerRecord<String, byte[]>, RecordMetadata>
+                    ackListener) {
+        this.ackListener = ackListener;
+        return this;
+    }
+
+    @Override
+    public Future<RecordMetadata> send(
+            ProducerRecord<String, byte[]> record) {
+        return send(record, null);
+    }
+
+    @Override
+    public Future<RecordMetadata> send(ProducerRecord<String, byte[]> record,
+            Callback callback) {
+        if (closed)
+            throw new IllegalStateException(
+                    "Cannot send after the producer is closed.");
+        sentCount.increment();
+        pendingCount.incrementAndGet();
+        CompletableFuture<RecordMetadata> future = new CompletableFuture<>();
+        int partition = Optional.ofNullable(record.partition())
+                .orElseGet(() -> record.key() == null ? 0 :
+                        AsyncKafkaSender.partitionOf(record.key(),
+                                numPartitions));
+        int retries = 0;
+        double failureDraw = drawFailure();
+        while (failureDraw < retriableFailureRate &&
+                retries < KafkaProducerProperties.DEFAULT_RETRIES) {
+            retries++;
+            failureDraw = drawFailure();
+        }
+        retryCount.add(retries);
+        long nowNanos = System.nanoTime();
+        long dueNanos = nowNanos + TimeUnit.MICROSECONDS
+                .toNanos(ackLatencyMicros * (retries + 1));
+        long partitionDue = partitionDueNanos.accumulateAndGet(partition,
+                dueNanos, (previousDue, due) -> Math.max(previousDue + 1, due));
+        double finalDraw = failureDraw;
+        int finalRetries = retries;
+        ackExecutor.schedule(() -> complete(record, partition, callback,
+                future, finalDraw, finalRetries), partitionDue - nowNanos,
+                TimeUnit.NANOSECONDS);
+        return future;
+    }
+
+    private double drawFailure() {
+        return retriableFailureRate + fatalFailureRate > 0 ?
+                ThreadLocalRandom.current().nextDouble() : 1;
+    }
+
+    private void complete(ProducerRecord<String, byte[]> record,
+            int partition, Callback callback,
+            CompletableFuture<RecordMetadata> future, double failureDraw,
+            int retries) {
+        try {
+            Exception exception = failureDraw < retriableFailureRate ?
+                    new TimeoutException("Injected Timeout") :
+                    failureDraw < retriableFailureRate + fatalFailureRate ?
+                            new RecordTooLargeException("Injected Failure") :
+                            null;
+            TopicPartition topicPartition =
+                    new TopicPartition(record.topic(), partition);
+            RecordMetadata metadata;
+            if (exception == null) {
+                metadata = new RecordMetadata(topicPartition,
+                        partitionOffsets.getAndIncrement(partition), 0,
+                        System.currentTimeMillis(), 0,
+                        record.key() == null ? -1 : record.key().length(),
+                        record.value() == null ? -1 : record.value().length);
+                ackCount.increment();
+                BiConsumer<ProducerRecord<String, byte[]>, RecordMetadata>
+                        ackListener = this.ackListener;
+                if (ackListener != null)
+                    ackListener.accept(record, metadata);
+                future.complete(metadata);
+            } else {
+                metadata = new RecordMetadata(topicPartition, -1, -1, -1, -1,
+                        -1, -1);
+                failedCount.increment();
+                future.completeExceptionally(exception);
+            }
+            if (callback instanceof RetryCountingCallback)
+                ((RetryCountingCallback) callback)
+                        .onCompletion(metadata, exception, retries);
+            else if (callback != null)
+                callback.onCompletion(metadata, exception);
+        } catch (Exception e) {
+            log.error("complete({})", record.key(), e);
+        } finally {
+            pendingCount.decrementAndGet();
+        }
+    }
+
+    @Override
+    public void flush() {
+        while (pendingCount.get() > 0 && !ackExecutor.isTerminated()) {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    @Override
+    public List<PartitionInfo> partitionsFor(String topic) {
+        return IntStream.range(0, numPartitions)
+                .mapToObj(partition -> new PartitionInfo(topic, partition,
+                        NODE, new Node[]{NODE}, new Node[]{NODE}))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public Map<MetricName, ? extends Metric> metrics() {
+        return Collections.emptyMap();
+    }
+
+    public long getSentCount() {
+        return sentCount.sum();
+    }
+
+    public long getAckCount() {
+        return ackCount.sum();
+    }
+
+    public long getFailedCount() {
+        return failedCount.sum();
+    }
+
+    /**
+     * @return the retries of the records sent, counted at send
+     */
+    public long getRetryCount() {
+        return retryCount.sum();
+    }
+
+    public long getPendingCount() {
+        return pendingCount.get();
+    }
+
+    @Override
+    public void close() {
+        close(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Acks the pending records until the timeout, dropping the rest.
+     */
+    @Override
+    public void close(long timeout, TimeUnit timeUnit) {
+        this.closed = true;
+        ackExecutor.shutdown();
+        try {
+            if (!ackExecutor.awaitTermination(timeout, timeUnit))
+                log.warn("close() - {} pending records dropped",
+                        ackExecutor.shutdownNow().size());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            ackExecutor.shutdownNow();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "InMemoryKafkaProducer(partitions=" + numPartitions +
+                ", ackLatencyMicros=" + ackLatencyMicros + ", sent=" +
+                getSentCount() + ", acked=" + getAckCount() + ", retried=" +
+                getRetryCount() + ", failed=" + getFailedCount() +
+                ", pending=" + getPendingCount() + ")";
+    }
+}
@@ -0,0 +1,101 @@
+package kr.jm.test.kkb.output;
+
+import org.apache.kafka.clients.producer.ProducerConfig;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+import java.util.Properties;
+
+/**
+ * Producer settings from, in increasing priority, the defaults of
+ * {@link StringKafkaProducer#buildProperties}, the properties file named by
+ * the {@code kkb.kafka.config} system property and {@code kafka.} prefixed
+ * system properties, e.g. {@code -Dkafka.linger.ms=5}.
+ * <p>
+ * The defaults leave retries to the producer with one request in flight
+ * per connection, so a retried batch cannot overtake the next one of its
+ * partition. Record keys go through the {@link SequencedKeyPartitioner}, so
+ * the sequence number the {@link ArchiveOutboxShipper} adds to a key leaves
+ * its partition as it is.
+ * <p>
+ * Keys starting with {@code adaptive.batching.} configure the
+ * {@link AdaptiveBatchingController} and are not passed to Kafka.
+ */
+public class KafkaProducerProperties {
+
+    public static final String CONFIG_FILE_PROPERTY = "kkb.kafka.config";
+    public static final String SYSTEM_PROPERTY_PREFIX = "kafka.";
+    public static final String ADAPTIVE_BATCHING_PREFIX = "adaptive.batching.";
+    public static final int DEFAULT_RETRIES = 10;
+
+    private KafkaProducerProperties() {
+    }
+
+    public static Properties load(String bootstrapServers) {
+        return load(bootstrapServers,
+                Optional.ofNullable(System.getProperty(CONFIG_FILE_PROPERTY))
+                        .map(Paths::get).orElse(null),
+                System.getProperties());
+    }
+
+    /**
+     * @param configFile null for none
+     */
+    public static Properties load(String bootstrapServers, Path configFile,
+            Properties systemProperties) {
+        Properties properties = StringKafkaProducer
+                .buildProperties(bootstrapServers, null, DEFAULT_RETRIES,
+                        16384, 33554432, 1);
+        properties.put(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, 1);
+        properties.put(ProducerConfig.PARTITIONER_CLASS_CONFIG,
+                SequencedKeyPartitioner.class.getName());
+        if (configFile != null)
+            properties.putAll(loadFile(configFile));
+        properties.putAll(withPrefix(systemProperties,
+                SYSTEM_PROPERTY_PREFIX));
+        return properties;
+    }
+
+    public static Properties loadFile(Path configFile) {
+        try (Reader reader = Files
+                .newBufferedReader(configFile, StandardCharsets.UTF_8)) {
+            Properties properties = new Properties();
+            properties.load(reader);
+            return properties;
+        } catch (IOException e) {
+            throw new RuntimeException("Wrong Kafka Config File !!! - " +
+                    configFile, e);
+        }
+    }
+
+    /**
+     * @return the entries whose key starts with the prefix, without it
+     */
+    public static Properties withPrefix(Properties properties,
+            String prefix) {
+        Properties prefixedProperties = new Properties();
+        properties.stringPropertyNames().stream()
+                .filter(key -> key.startsWith(prefix))
+                .forEach(key -> prefixedProperties
+                        .put(key.substring(prefix.length()),
+                                properties.getProperty(key)));
+        return prefixedProperties;
+    }
+
+    /**
+     * @return the properties to construct a producer with
+     */
+    public static Properties producerPropertiesOf(Properties properties) {
+        Properties producerProperties = new Properties();
+        properties.forEach((key, value) -> {
+            if (!key.toString().startsWith(ADAPTIVE_BATCHING_PREFIX))
+                producerProperties.put(key, value);
+        });
+        return producerProperties;
+    }
+}
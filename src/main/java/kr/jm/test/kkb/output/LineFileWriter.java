@@ -1,46 +1,54 @@
 package kr.jm.test.kkb.output;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.Writer;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 
-public class LineFileWriter implements AutoCloseable {
+public class LineFileWriter implements LineWriterInterface {
 
     private static final org.slf4j.Logger log = org.slf4j.LoggerFactory
             .getLogger(LineFileWriter.class);
-    private static final String LINE_SEPARATOR = System.lineSeparator();
-    private Writer writer;
+    private static final byte[] LINE_SEPARATOR_BYTES =
+            System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+    private OutputStream outputStream;
     private Path filePath;
 
     public LineFileWriter(Path filePath) {
         this.filePath = filePath;
-        this.writer = buildBufferedAppendWriter(this.filePath
+        this.outputStream = buildBufferedAppendOutputStream(this.filePath
         );
         log.info("LineFileWriter({})", filePath.toAbsolutePath());
     }
 
-    private Writer buildBufferedAppendWriter(Path path) {
+    private OutputStream buildBufferedAppendOutputStream(Path path) {
         if (!Files.exists(path))
             throw new RuntimeException("No File !!! - " + path);
         try {
-            return Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption
-                    .APPEND);
+            return new BufferedOutputStream(Files.newOutputStream(path,
+                    StandardOpenOption.APPEND), 64 * 1024);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
-    public void appendLine(String line) {
+    @Override
+    public synchronized void appendLine(byte[] bytes, int offset,
+            int length) {
         try {
-            writer.append(line).append(LINE_SEPARATOR);
+            outputStream.write(bytes, offset, length);
+            outputStream.write(LINE_SEPARATOR_BYTES);
         } catch (IOException e) {
-            log.error("appendLine({})", line, e);
+            log.error("appendLine({})",
+                    new String(bytes, offset, length, StandardCharsets.UTF_8),
+                    e);
         }
     }
 
+    @Override
     public Path closeAndGetFilePath() {
         close();
         return filePath;
@@ -49,7 +57,7 @@ public class LineFileWriter implements AutoCloseable {
     @Override
     public void close() {
         try {
-            writer.close();
+            outputStream.close();
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
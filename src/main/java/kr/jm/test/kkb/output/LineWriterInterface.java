@@ -0,0 +1,35 @@
+package kr.jm.test.kkb.output;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+public interface LineWriterInterface extends AutoCloseable {
+
+    default void appendLine(String line) {
+        appendLine(line.getBytes(StandardCharsets.UTF_8));
+    }
+
+    default void appendLine(byte[] lineBytes) {
+        appendLine(lineBytes, 0, lineBytes.length);
+    }
+
+    void appendLine(byte[] bytes, int offset, int length);
+
+    /**
+     * Appends a line with its logTimestamp for writers which index by time.
+     */
+    default void appendLine(long logTimestamp, byte[] lineBytes) {
+        appendLine(lineBytes);
+    }
+
+    /**
+     * Makes the lines written so far visible to readers of the file.
+     */
+    default void flush() {
+    }
+
+    Path closeAndGetFilePath();
+
+    @Override
+    void close();
+}
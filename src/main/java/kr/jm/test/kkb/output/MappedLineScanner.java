@@ -0,0 +1,146 @@
+package kr.jm.test.kkb.output;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * Hands out the lines, or other {@link RecordFraming} records, of a file as
+ * read only slices of memory mapped windows without copying or decoding
+ * them, plus a lookup of top level number fields in a JSON line.
+ */
+public class MappedLineScanner {
+
+    private static final org.slf4j.Logger log =
+            org.slf4j.LoggerFactory.getLogger(MappedLineScanner.class);
+    private static final int MAX_WINDOW_BYTES = 256 << 20;
+
+    private MappedLineScanner() {
+    }
+
+    /**
+     * @return {@code "fieldName":} as ASCII bytes for
+     * {@link #extractLongField(ByteBuffer, byte[])}
+     */
+    public static byte[] buildFieldPrefix(String fieldName) {
+        return ("\"" + fieldName + "\":").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * @param lineConsumer gets every non empty line without its separator,
+     *                     valid only during the call
+     * @return the number of lines
+     */
+    public static long scan(Path filePath, Consumer<ByteBuffer> lineConsumer) {
+        return scan(filePath, RecordFraming.LINE, lineConsumer);
+    }
+
+    /**
+     * A truncated record at the end of the file, as left by a crash during
+     * a write, is skipped.
+     *
+     * @param recordConsumer gets every record without its framing, valid
+     *                       only during the call
+     * @return the number of records
+     */
+    public static long scan(Path filePath, RecordFraming recordFraming,
+            Consumer<ByteBuffer> recordConsumer) {
+        try (FileChannel fileChannel = FileChannel
+                .open(filePath, StandardOpenOption.READ)) {
+            long size = fileChannel.size();
+            long recordCount = 0;
+            for (long position = 0; position < size; ) {
+                MappedByteBuffer window = fileChannel
+                        .map(FileChannel.MapMode.READ_ONLY, position,
+                                Math.min(MAX_WINDOW_BYTES, size - position));
+                boolean endOfInput = position + window.limit() == size;
+                int completeLength =
+                        recordFraming.completeLength(window, endOfInput);
+                if (completeLength == 0) {
+                    if (!endOfInput)
+                        throw new RuntimeException("Too Long Record !!! - " +
+                                filePath + " at " + position);
+                    log.warn("scan() - Skip Truncated Record !!! - {} at {}",
+                            filePath, position);
+                    break;
+                }
+                window.limit(completeLength);
+                recordCount += recordFraming.scanRecords(window,
+                        recordConsumer);
+                position += completeLength;
+            }
+            return recordCount;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static long scanLines(ByteBuffer byteBuffer,
+            Consumer<ByteBuffer> lineConsumer) {
+        long lineCount = 0;
+        int limit = byteBuffer.limit();
+        for (int lineStart = byteBuffer.position(), lineEnd; lineStart < limit;
+             lineStart = lineEnd + 1) {
+            lineEnd = lineStart;
+            while (lineEnd < limit && byteBuffer.get(lineEnd) != '\n')
+                lineEnd++;
+            int contentEnd = lineEnd > lineStart &&
+                    byteBuffer.get(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+            if (contentEnd == lineStart)
+                continue;
+            ByteBuffer line = byteBuffer.duplicate();
+            line.limit(contentEnd).position(lineStart);
+            lineConsumer.accept(line.slice().asReadOnlyBuffer());
+            lineCount++;
+        }
+        return lineCount;
+    }
+
+    /**
+     * Finds the first occurrence of the field prefix between the position
+     * and the limit of the line, which is the top level field for the flat
+     * records of this project.
+     *
+     * @return the integer value of the field, {@link Long#MIN_VALUE} when it
+     * is missing or not an integer
+     */
+    public static long extractLongField(ByteBuffer line, byte[] fieldPrefix) {
+        int end = line.limit();
+        int lastStart = end - fieldPrefix.length;
+        for (int i = line.position(); i <= lastStart; i++) {
+            if (!regionEquals(line, i, fieldPrefix))
+                continue;
+            int position = i + fieldPrefix.length;
+            while (position < end && line.get(position) == ' ')
+                position++;
+            boolean negative = position < end && line.get(position) == '-';
+            if (negative)
+                position++;
+            int digitStart = position;
+            long value = 0;
+            byte b;
+            while (position < end && (b = line.get(position)) >= '0' &&
+                    b <= '9') {
+                value = value * 10 + (b - '0');
+                position++;
+            }
+            if (position == digitStart)
+                return Long.MIN_VALUE;
+            return negative ? -value : value;
+        }
+        return Long.MIN_VALUE;
+    }
+
+    private static boolean regionEquals(ByteBuffer byteBuffer, int start,
+            byte[] expected) {
+        for (int i = 0; i < expected.length; i++)
+            if (byteBuffer.get(start + i) != expected[i])
+                return false;
+        return true;
+    }
+}
@@ -0,0 +1,126 @@
+package kr.jm.test.kkb.output;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * How records are delimited in an archive file.
+ */
+public enum RecordFraming {
+
+    /**
+     * text records, each followed by the line separator
+     */
+    LINE {
+        private final byte[] lineSeparatorBytes =
+                System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+        @Override
+        public int write(OutputStream outputStream, byte[] bytes, int offset,
+                int length) throws IOException {
+            outputStream.write(bytes, offset, length);
+            outputStream.write(lineSeparatorBytes);
+            return length + lineSeparatorBytes.length;
+        }
+
+        @Override
+        public int completeLength(ByteBuffer window, boolean endOfInput) {
+            if (endOfInput)
+                return window.limit();
+            for (int i = window.limit() - 1; i >= window.position(); i--)
+                if (window.get(i) == '\n')
+                    return i + 1;
+            return window.position();
+        }
+
+        @Override
+        public long scanRecords(ByteBuffer window,
+                Consumer<ByteBuffer> recordConsumer) {
+            return MappedLineScanner.scanLines(window, recordConsumer);
+        }
+    },
+
+    /**
+     * binary records, each preceded by its length as an unsigned varint
+     */
+    LENGTH_PREFIXED {
+        @Override
+        public int write(OutputStream outputStream, byte[] bytes, int offset,
+                int length) throws IOException {
+            int headerLength = 1;
+            int value = length;
+            for (; (value & ~0x7F) != 0; value >>>= 7, headerLength++)
+                outputStream.write((value & 0x7F) | 0x80);
+            outputStream.write(value);
+            outputStream.write(bytes, offset, length);
+            return headerLength + length;
+        }
+
+        @Override
+        public int completeLength(ByteBuffer window, boolean endOfInput) {
+            int position = window.position();
+            int next;
+            while ((next = nextRecordEnd(window, position)) > 0)
+                position = next;
+            return position;
+        }
+
+        /**
+         * @return the end of the record starting at the position, -1 when
+         * it is not complete in the buffer
+         */
+        private int nextRecordEnd(ByteBuffer byteBuffer, int position) {
+            int limit = byteBuffer.limit();
+            long length = 0;
+            for (int shift = 0; position < limit && shift < 32; shift += 7) {
+                byte b = byteBuffer.get(position++);
+                length |= (long) (b & 0x7F) << shift;
+                if (b >= 0)
+                    return length <= limit - position ?
+                            position + (int) length : -1;
+            }
+            return -1;
+        }
+
+        @Override
+        public long scanRecords(ByteBuffer window,
+                Consumer<ByteBuffer> recordConsumer) {
+            long recordCount = 0;
+            for (int position = window.position(), next;
+                 (next = nextRecordEnd(window, position)) > 0;
+                 position = next) {
+                int headerEnd = position;
+                while (window.get(headerEnd) < 0)
+                    headerEnd++;
+                ByteBuffer record = window.duplicate();
+                record.limit(next).position(headerEnd + 1);
+                recordConsumer.accept(record.slice().asReadOnlyBuffer());
+                recordCount++;
+            }
+            return recordCount;
+        }
+    };
+
+    /**
+     * @return the number of bytes written
+     */
+    public abstract int write(OutputStream outputStream, byte[] bytes,
+            int offset, int length) throws IOException;
+
+    /**
+     * @return the end of the last complete record from the position of the
+     * window, the position itself when there is none
+     */
+    public abstract int completeLength(ByteBuffer window, boolean endOfInput);
+
+    /**
+     * @param recordConsumer gets a read only slice of every record without
+     *                       its framing, valid only during the call
+     * @return the number of records
+     */
+    public abstract long scanRecords(ByteBuffer window,
+            Consumer<ByteBuffer> recordConsumer);
+}
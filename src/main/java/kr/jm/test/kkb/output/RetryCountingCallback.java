@@ -0,0 +1,25 @@
+package kr.jm.test.kkb.output;
+
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.RecordMetadata;
+
+/**
+ * A {@link Callback} also told how many times its record was retried, by
+ * the producers which know it, like the {@link InMemoryKafkaProducer}. The
+ * Kafka producer keeps its retries to itself and calls
+ * {@link #onCompletion(RecordMetadata, Exception)}, which counts none.
+ */
+@FunctionalInterface
+public interface RetryCountingCallback extends Callback {
+
+    /**
+     * @param retries the attempts before the final one
+     */
+    void onCompletion(RecordMetadata metadata, Exception exception,
+            int retries);
+
+    @Override
+    default void onCompletion(RecordMetadata metadata, Exception exception) {
+        onCompletion(metadata, exception, 0);
+    }
+}
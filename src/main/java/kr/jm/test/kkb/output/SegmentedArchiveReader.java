@@ -0,0 +1,150 @@
+package kr.jm.test.kkb.output;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Reads a time range out of a {@link SegmentedArchiveWriter} archive.
+ * <p>
+ * Every segment is memory mapped only from the end of the last index
+ * interval whose running max is below the range start, and when its index
+ * covers the whole segment, up to the start of the first interval from
+ * which on every min is above the range end. The lines after the last
+ * interval of a segment still being written are always read. Lines inside
+ * that window are filtered by their {@code logTimestamp} field, so lines
+ * appended out of order are found wherever they are.
+ */
+public class SegmentedArchiveReader {
+
+    private static final byte[] LOG_TIMESTAMP_FIELD =
+            MappedLineScanner.buildFieldPrefix("logTimestamp");
+
+    private final Path directory;
+    private final String prefix;
+    private final RecordFraming recordFraming;
+    private final ToLongFunction<ByteBuffer> logTimestampExtractor;
+
+    public SegmentedArchiveReader(Path directory, String prefix) {
+        this(directory, prefix, RecordFraming.LINE, line -> MappedLineScanner
+                .extractLongField(line, LOG_TIMESTAMP_FIELD));
+    }
+
+    /**
+     * @param logTimestampExtractor reads the logTimestamp of a record
+     */
+    public SegmentedArchiveReader(Path directory, String prefix,
+            RecordFraming recordFraming,
+            ToLongFunction<ByteBuffer> logTimestampExtractor) {
+        this.directory = directory;
+        this.prefix = prefix;
+        this.recordFraming = recordFraming;
+        this.logTimestampExtractor = logTimestampExtractor;
+    }
+
+    public List<Path> getSegmentPaths() {
+        return SegmentedArchiveWriter.listSegmentSequences(directory, prefix)
+                .stream().map(sequence -> SegmentedArchiveWriter
+                        .getSegmentPath(directory, prefix, sequence))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @param lineConsumer gets a read only slice of every record in the
+     *                     range, valid only during the call
+     * @return the number of records handed to the consumer
+     */
+    public long readLines(long fromLogTimestamp, long toLogTimestamp,
+            Consumer<ByteBuffer> lineConsumer) {
+        long lineCount = 0;
+        for (long sequence : SegmentedArchiveWriter
+                .listSegmentSequences(directory, prefix))
+            lineCount += readSegmentLines(SegmentedArchiveWriter
+                            .getSegmentPath(directory, prefix, sequence),
+                    readIndex(SegmentedArchiveWriter
+                            .getIndexPath(directory, prefix, sequence)),
+                    fromLogTimestamp, toLogTimestamp, lineConsumer);
+        return lineCount;
+    }
+
+    /**
+     * @return (max logTimestamp, end offset, min logTimestamp) triples
+     * flattened, sorted by the first two
+     */
+    static long[] readIndex(Path indexPath) {
+        if (!Files.exists(indexPath))
+            return new long[0];
+        try (DataInputStream dataInputStream = new DataInputStream(
+                Files.newInputStream(indexPath))) {
+            long[] index = new long[(int) (Files.size(indexPath) / 24) * 3];
+            for (int i = 0; i < index.length; i++)
+                index[i] = dataInputStream.readLong();
+            return index;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private long readSegmentLines(Path segmentPath, long[] index,
+            long fromLogTimestamp, long toLogTimestamp,
+            Consumer<ByteBuffer> lineConsumer) {
+        try (FileChannel fileChannel = FileChannel
+                .open(segmentPath, StandardOpenOption.READ)) {
+            long startOffset = 0;
+            long endOffset = fileChannel.size();
+            for (int i = 0; i < index.length && index[i] < fromLogTimestamp;
+                 i += 3)
+                startOffset = index[i + 1];
+            if (index.length > 0 && index[index.length - 2] >= endOffset) {
+                long suffixMinLogTimestamp = Long.MAX_VALUE;
+                for (int i = index.length - 3; i >= 0; i -= 3) {
+                    suffixMinLogTimestamp =
+                            Math.min(suffixMinLogTimestamp, index[i + 2]);
+                    if (suffixMinLogTimestamp <= toLogTimestamp)
+                        break;
+                    endOffset = i == 0 ? 0 : index[i - 2];
+                }
+            }
+            if (endOffset - startOffset > Integer.MAX_VALUE)
+                throw new RuntimeException("Too Big Segment !!! - " +
+                        segmentPath);
+            if (endOffset <= startOffset)
+                return 0;
+            MappedByteBuffer mappedByteBuffer = fileChannel
+                    .map(FileChannel.MapMode.READ_ONLY, startOffset,
+                            endOffset - startOffset);
+            return scanLines(mappedByteBuffer, fromLogTimestamp,
+                    toLogTimestamp, lineConsumer);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private long scanLines(ByteBuffer byteBuffer, long fromLogTimestamp,
+            long toLogTimestamp, Consumer<ByteBuffer> lineConsumer) {
+        long[] lineCount = {0};
+        recordFraming.scanRecords(byteBuffer, line -> {
+            long logTimestamp = logTimestampExtractor.applyAsLong(line);
+            if (logTimestamp < fromLogTimestamp ||
+                    logTimestamp > toLogTimestamp)
+                return;
+            lineConsumer.accept(line);
+            lineCount[0]++;
+        });
+        return lineCount[0];
+    }
+
+    static long extractLogTimestamp(byte[] bytes, int offset, int length) {
+        return MappedLineScanner.extractLongField(
+                ByteBuffer.wrap(bytes, offset, length), LOG_TIMESTAMP_FIELD);
+    }
+}
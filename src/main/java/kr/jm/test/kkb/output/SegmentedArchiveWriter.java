@@ -0,0 +1,535 @@
+package kr.jm.test.kkb.output;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Record archive split into segments which roll by size or age, so nothing is
+ * deleted on restart and old segments are only dropped by retention.
+ * <p>
+ * Next to every {@code <prefix>-<sequence>.log} segment an {@code .idx} file
+ * gets a (max logTimestamp, end offset, min logTimestamp) triple of longs
+ * for about every {@code indexIntervalBytes} of lines, written once the
+ * interval is complete and for the last one on roll or close. The max is
+ * the running maximum up to the end offset, which keeps the index sorted
+ * even when parallel producers append slightly out of order, so every line
+ * before an entry whose max is below a bound is below it as well. The min
+ * is that of the interval alone, lines appended out of order can still be
+ * anywhere after it.
+ * <p>
+ * Appends go straight into the segment on the caller's thread, the archive
+ * sink of a {@code SinkFanOut} being the async hand-off. The segment and
+ * its index are forced to disk by the {@link Durability}, on roll and on
+ * close, so one fsync covers every line since the last one, the records
+ * per fsync being the size of the group commit.
+ * <p>
+ * The durable position is the end of the lines last forced to disk, up to
+ * which readers like the {@link ArchiveOutboxShipper} may pass them on.
+ * With {@link Durability#NONE} it is the end of the lines last flushed, which
+ * only survive a crash of the process, not one of the machine.
+ * <p>
+ * A failed write or fsync fails the writer for good: the append, flush or
+ * next append after a failed background fsync throws, as do all the ones
+ * after it, so the caller counts the records as lost, and the durable
+ * position stays at the last fsync which succeeded.
+ */
+public class SegmentedArchiveWriter implements LineWriterInterface {
+
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory
+            .getLogger(SegmentedArchiveWriter.class);
+    static final String SEGMENT_SUFFIX = ".log";
+    static final String INDEX_SUFFIX = ".idx";
+    public static final String DURABILITY_PROPERTY = "kkb.archive.durability";
+    public static final String DURABILITY_INTERVAL_PROPERTY =
+            "kkb.archive.durability.interval";
+
+    private final Path directory;
+    private final String prefix;
+    private final long maxSegmentBytes;
+    private final long maxSegmentMillis;
+    private final long retentionBytes;
+    private final int retentionSegmentCount;
+    private final int indexIntervalBytes;
+    private final RecordFraming recordFraming;
+    private final Durability durability;
+    private final long durabilityInterval;
+    private final ScheduledExecutorService syncScheduler;
+    private volatile LongSupplier retentionFloor;
+    private volatile DurablePosition durablePosition;
+    private long segmentSequence;
+    private long segmentOpenedMillis;
+    private FileOutputStream segmentFileOutputStream;
+    private FileOutputStream indexFileOutputStream;
+    private OutputStream segmentOutputStream;
+    private DataOutputStream indexOutputStream;
+    private long segmentBytes;
+    private long lastIndexedBytes;
+    private long maxLogTimestamp;
+    private long intervalMinLogTimestamp;
+    private long unsyncedCount;
+    private long lastSyncNanos;
+    private long fsyncCount;
+    private long syncedRecordCount;
+    private long maxSyncedRecords;
+    private long fsyncNanosSum;
+    private long maxFsyncNanos;
+    private boolean closed;
+    private IOException failure;
+
+    public SegmentedArchiveWriter(Path directory, String prefix) {
+        this(directory, prefix, RecordFraming.LINE);
+    }
+
+    public SegmentedArchiveWriter(Path directory, String prefix,
+            RecordFraming recordFraming) {
+        this(directory, prefix, 64L << 20, TimeUnit.HOURS.toMillis(1),
+                1L << 30, 0, 4096, recordFraming);
+    }
+
+    /**
+     * @param retentionBytes        total size kept, 0 for no limit
+     * @param retentionSegmentCount segments kept, 0 for no limit
+     */
+    public SegmentedArchiveWriter(Path directory, String prefix,
+            long maxSegmentBytes, long maxSegmentMillis, long retentionBytes,
+            int retentionSegmentCount, int indexIntervalBytes) {
+        this(directory, prefix, maxSegmentBytes, maxSegmentMillis,
+                retentionBytes, retentionSegmentCount, indexIntervalBytes,
+                RecordFraming.LINE);
+    }
+
+    public SegmentedArchiveWriter(Path directory, String prefix,
+            long maxSegmentBytes, long maxSegmentMillis, long retentionBytes,
+            int retentionSegmentCount, int indexIntervalBytes,
+            RecordFraming recordFraming) {
+        this(directory, prefix, maxSegmentBytes, maxSegmentMillis,
+                retentionBytes, retentionSegmentCount, indexIntervalBytes,
+                recordFraming, Durability.NONE, 0);
+    }
+
+    /**
+     * @param durabilityInterval milliseconds for
+     *                           {@link Durability#FSYNC_EVERY_N_MS}, records
+     *                           for {@link Durability#FSYNC_EVERY_N_RECORDS}
+     */
+    public SegmentedArchiveWriter(Path directory, String prefix,
+            long maxSegmentBytes, long maxSegmentMillis, long retentionBytes,
+            int retentionSegmentCount, int indexIntervalBytes,
+            RecordFraming recordFraming, Durability durability,
+            long durabilityInterval) {
+        if (durability != Durability.NONE && durabilityInterval < 1)
+            throw new IllegalArgumentException(
+                    "Wrong Durability Interval !!! - " + durability + " " +
+                            durabilityInterval);
+        this.directory = directory;
+        this.prefix = prefix;
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.maxSegmentMillis = maxSegmentMillis;
+        this.retentionBytes = retentionBytes;
+        this.retentionSegmentCount = retentionSegmentCount;
+        this.indexIntervalBytes = indexIntervalBytes;
+        this.recordFraming = recordFraming;
+        this.durability = durability;
+        this.durabilityInterval = durabilityInterval;
+        this.retentionFloor = () -> Long.MAX_VALUE;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        this.segmentSequence = listSegmentSequences(directory, prefix).stream()
+                .mapToLong(Long::longValue).max().orElse(-1);
+        this.maxLogTimestamp = Long.MIN_VALUE;
+        this.lastSyncNanos = System.nanoTime();
+        openNextSegment();
+        this.syncScheduler = durability == Durability.FSYNC_EVERY_N_MS ?
+                startSyncScheduler() : null;
+        log.info("SegmentedArchiveWriter({}, {}, {}, {}, {}, {}, {}, {}, " +
+                        "{}, {})", directory.toAbsolutePath(), prefix,
+                maxSegmentBytes, maxSegmentMillis, retentionBytes,
+                retentionSegmentCount, indexIntervalBytes, recordFraming,
+                durability, durabilityInterval);
+    }
+
+    /**
+     * The default segments and retention with the durability of
+     * {@code kkb.archive.durability}, {@link Durability#NONE} by default,
+     * every {@code kkb.archive.durability.interval}.
+     */
+    public static SegmentedArchiveWriter fromSystemProperties(Path directory,
+            String prefix, RecordFraming recordFraming) {
+        return new SegmentedArchiveWriter(directory, prefix, 64L << 20,
+                TimeUnit.HOURS.toMillis(1), 1L << 30, 0, 4096, recordFraming,
+                Durability.valueOf(System.getProperty(DURABILITY_PROPERTY,
+                        Durability.NONE.name())),
+                Long.getLong(DURABILITY_INTERVAL_PROPERTY, 0));
+    }
+
+    /**
+     * Covers lines appended before an idle period, which no append or
+     * flush would sync.
+     */
+    private ScheduledExecutorService startSyncScheduler() {
+        ScheduledExecutorService scheduledExecutorService =
+                Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable,
+                            "SegmentedArchiveWriter-sync");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        scheduledExecutorService.scheduleWithFixedDelay(this::syncIfDue,
+                durabilityInterval, durabilityInterval,
+                TimeUnit.MILLISECONDS);
+        return scheduledExecutorService;
+    }
+
+    static Path getSegmentPath(Path directory, String prefix, long sequence) {
+        return directory.resolve(buildSegmentName(prefix, sequence) +
+                SEGMENT_SUFFIX);
+    }
+
+    static Path getIndexPath(Path directory, String prefix, long sequence) {
+        return directory.resolve(buildSegmentName(prefix, sequence) +
+                INDEX_SUFFIX);
+    }
+
+    private static String buildSegmentName(String prefix, long sequence) {
+        return String.format("%s-%010d", prefix, sequence);
+    }
+
+    /**
+     * @return the sequences of the segments in the directory, oldest first
+     */
+    static List<Long> listSegmentSequences(Path directory, String prefix) {
+        Pattern segmentPattern = Pattern.compile(
+                Pattern.quote(prefix) + "-(\\d{10,})" +
+                        Pattern.quote(SEGMENT_SUFFIX));
+        try (Stream<Path> pathStream = Files.list(directory)) {
+            return pathStream.map(path -> segmentPattern
+                    .matcher(path.getFileName().toString()))
+                    .filter(Matcher::matches)
+                    .map(matcher -> Long.valueOf(matcher.group(1))).sorted()
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void openNextSegment() {
+        long sequence = segmentSequence + 1;
+        try {
+            this.segmentFileOutputStream = new FileOutputStream(
+                    getSegmentPath(directory, prefix, sequence).toFile());
+            this.indexFileOutputStream = new FileOutputStream(
+                    getIndexPath(directory, prefix, sequence).toFile());
+            this.segmentOutputStream = new BufferedOutputStream(
+                    segmentFileOutputStream, 64 * 1024);
+            this.indexOutputStream = new DataOutputStream(
+                    new BufferedOutputStream(indexFileOutputStream));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        this.segmentSequence = sequence;
+        this.segmentOpenedMillis = System.currentTimeMillis();
+        this.segmentBytes = 0;
+        this.lastIndexedBytes = 0;
+        this.intervalMinLogTimestamp = Long.MAX_VALUE;
+        this.durablePosition = new DurablePosition(sequence, 0);
+    }
+
+    @Override
+    public void appendLine(byte[] bytes, int offset, int length) {
+        appendLine(SegmentedArchiveReader
+                .extractLogTimestamp(bytes, offset, length), bytes, offset,
+                length);
+    }
+
+    @Override
+    public void appendLine(long logTimestamp, byte[] lineBytes) {
+        appendLine(logTimestamp, lineBytes, 0, lineBytes.length);
+    }
+
+    public synchronized void appendLine(long logTimestamp, byte[] bytes,
+            int offset, int length) {
+        checkFailure();
+        try {
+            if (segmentBytes > 0 && (segmentBytes + length > maxSegmentBytes ||
+                    System.currentTimeMillis() - segmentOpenedMillis >=
+                            maxSegmentMillis))
+                roll();
+            if (segmentBytes - lastIndexedBytes >= indexIntervalBytes)
+                writeIndexEntry();
+            this.maxLogTimestamp = Math.max(maxLogTimestamp, logTimestamp);
+            this.intervalMinLogTimestamp =
+                    Math.min(intervalMinLogTimestamp, logTimestamp);
+            this.segmentBytes += recordFraming
+                    .write(segmentOutputStream, bytes, offset, length);
+            this.unsyncedCount++;
+            if (durability == Durability.FSYNC_EVERY_N_RECORDS &&
+                    unsyncedCount >= durabilityInterval)
+                sync();
+        } catch (IOException e) {
+            throw fail(e);
+        }
+    }
+
+    private void checkFailure() {
+        if (failure != null)
+            throw new IllegalStateException("Already Failed !!! - " +
+                    getActiveSegmentPath(), failure);
+    }
+
+    private RuntimeException fail(IOException e) {
+        this.failure = e;
+        log.error("fail() - {} durable={}", getActiveSegmentPath(),
+                durablePosition, e);
+        return new RuntimeException(e);
+    }
+
+    private void writeIndexEntry() throws IOException {
+        indexOutputStream.writeLong(maxLogTimestamp);
+        indexOutputStream.writeLong(segmentBytes);
+        indexOutputStream.writeLong(intervalMinLogTimestamp);
+        this.lastIndexedBytes = segmentBytes;
+        this.intervalMinLogTimestamp = Long.MAX_VALUE;
+    }
+
+    private void roll() throws IOException {
+        closeSegment();
+        openNextSegment();
+        applyRetention();
+    }
+
+    private void closeSegment() throws IOException {
+        if (segmentBytes > lastIndexedBytes)
+            writeIndexEntry();
+        if (durability != Durability.NONE)
+            sync();
+        segmentOutputStream.close();
+        indexOutputStream.close();
+        this.durablePosition =
+                new DurablePosition(segmentSequence, segmentBytes);
+    }
+
+    private void applyRetention() {
+        List<Long> sequences = listSegmentSequences(directory, prefix);
+        long totalBytes = sequences.stream().mapToLong(
+                sequence -> getSegmentPath(directory, prefix, sequence).toFile()
+                        .length()).sum();
+        for (int i = 0; i < sequences.size() - 1; i++) {
+            boolean overCount = retentionSegmentCount > 0 &&
+                    sequences.size() - i > retentionSegmentCount;
+            boolean overBytes = retentionBytes > 0 && totalBytes > retentionBytes;
+            if (!overCount && !overBytes ||
+                    sequences.get(i) >= retentionFloor.getAsLong())
+                return;
+            totalBytes -= deleteSegment(sequences.get(i));
+        }
+    }
+
+    private long deleteSegment(long sequence) {
+        Path segmentPath = getSegmentPath(directory, prefix, sequence);
+        long segmentSize = segmentPath.toFile().length();
+        try {
+            Files.deleteIfExists(segmentPath);
+            Files.deleteIfExists(getIndexPath(directory, prefix, sequence));
+            log.info("deleteSegment({}) - {} bytes", segmentPath, segmentSize);
+        } catch (IOException e) {
+            log.error("deleteSegment({})", segmentPath, e);
+        }
+        return segmentSize;
+    }
+
+    /**
+     * Keeps the segments from the supplied sequence on whatever the
+     * retention, for a reader which has not consumed them yet.
+     */
+    public void setRetentionFloor(LongSupplier retentionFloor) {
+        this.retentionFloor = retentionFloor;
+    }
+
+    private synchronized void syncIfDue() {
+        if (closed || failure != null || unsyncedCount == 0 ||
+                System.nanoTime() - lastSyncNanos <
+                        TimeUnit.MILLISECONDS.toNanos(durabilityInterval))
+            return;
+        try {
+            sync();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Flushes the buffers and forces the segment and its index to disk.
+     */
+    private void sync() throws IOException {
+        long startNanos = System.nanoTime();
+        segmentOutputStream.flush();
+        indexOutputStream.flush();
+        segmentFileOutputStream.getChannel().force(false);
+        indexFileOutputStream.getChannel().force(false);
+        this.lastSyncNanos = System.nanoTime();
+        this.durablePosition =
+                new DurablePosition(segmentSequence, segmentBytes);
+        long fsyncNanos = lastSyncNanos - startNanos;
+        this.syncedRecordCount += unsyncedCount;
+        this.maxSyncedRecords = Math.max(maxSyncedRecords, unsyncedCount);
+        this.unsyncedCount = 0;
+        this.fsyncCount++;
+        this.fsyncNanosSum += fsyncNanos;
+        this.maxFsyncNanos = Math.max(maxFsyncNanos, fsyncNanos);
+    }
+
+    /**
+     * Makes the lines written so far visible to readers of the segment, and
+     * durable as well with {@link Durability#NONE}.
+     */
+    @Override
+    public synchronized void flush() {
+        checkFailure();
+        try {
+            segmentOutputStream.flush();
+            indexOutputStream.flush();
+        } catch (IOException e) {
+            throw fail(e);
+        }
+        if (durability == Durability.NONE)
+            this.durablePosition =
+                    new DurablePosition(segmentSequence, segmentBytes);
+    }
+
+    /**
+     * @return the segment and its bytes last made durable, the segments
+     * before it being durable as a whole
+     */
+    DurablePosition getDurablePosition() {
+        return durablePosition;
+    }
+
+    public synchronized Path getActiveSegmentPath() {
+        return getSegmentPath(directory, prefix, segmentSequence);
+    }
+
+    synchronized long getActiveSegmentSequence() {
+        return segmentSequence;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public RecordFraming getRecordFraming() {
+        return recordFraming;
+    }
+
+    public Durability getDurability() {
+        return durability;
+    }
+
+    public synchronized long getFsyncCount() {
+        return fsyncCount;
+    }
+
+    public synchronized long getAverageFsyncMicros() {
+        return fsyncCount == 0 ? 0 :
+                TimeUnit.NANOSECONDS.toMicros(fsyncNanosSum / fsyncCount);
+    }
+
+    public synchronized long getMaxFsyncMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(maxFsyncNanos);
+    }
+
+    /**
+     * @return the records each fsync covered on average
+     */
+    public synchronized double getAverageRecordsPerFsync() {
+        return fsyncCount == 0 ? 0 : (double) syncedRecordCount / fsyncCount;
+    }
+
+    public synchronized long getMaxRecordsPerFsync() {
+        return maxSyncedRecords;
+    }
+
+    public synchronized String getSummary() {
+        return String.format("SegmentedArchiveWriter(durability=%s, " +
+                        "segment=%d, durable=%s, fsyncs=%d, " +
+                        "avgRecordsPerFsync=%.1f, maxRecordsPerFsync=%d, " +
+                        "avgFsyncMicros=%d, maxFsyncMicros=%d, failed=%s)",
+                durability, segmentSequence, durablePosition, fsyncCount,
+                getAverageRecordsPerFsync(), maxSyncedRecords,
+                getAverageFsyncMicros(), getMaxFsyncMicros(),
+                failure != null);
+    }
+
+    @Override
+    public Path closeAndGetFilePath() {
+        close();
+        return directory;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed)
+            return;
+        this.closed = true;
+        if (syncScheduler != null)
+            syncScheduler.shutdown();
+        if (failure != null) {
+            closeQuietly(segmentOutputStream);
+            closeQuietly(indexOutputStream);
+        } else {
+            try {
+                closeSegment();
+            } catch (IOException e) {
+                throw fail(e);
+            }
+        }
+        log.info("close() - {}", getSummary());
+    }
+
+    private void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            log.warn("closeQuietly() - {}", getActiveSegmentPath(), e);
+        }
+    }
+
+    static final class DurablePosition {
+        private final long segmentSequence;
+        private final long bytes;
+
+        private DurablePosition(long segmentSequence, long bytes) {
+            this.segmentSequence = segmentSequence;
+            this.bytes = bytes;
+        }
+
+        long getSegmentSequence() {
+            return segmentSequence;
+        }
+
+        long getBytes() {
+            return bytes;
+        }
+
+        @Override
+        public String toString() {
+            return segmentSequence + ":" + bytes;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package kr.jm.test.kkb.output;
+
+import org.apache.kafka.clients.producer.Partitioner;
+import org.apache.kafka.clients.producer.internals.DefaultPartitioner;
+import org.apache.kafka.common.Cluster;
+
+import java.util.Map;
+
+/**
+ * Partitions a {@code <key>#<sequence>} key by the key before the
+ * {@code #}, as the default partitioner would the key alone, so a record
+ * can carry its sequence number in its key for consumers to drop the ones
+ * they already have, and still go to the partition of its user. Other keys
+ * are left to the default partitioner.
+ */
+public class SequencedKeyPartitioner implements Partitioner {
+
+    public static final char SEPARATOR = '#';
+
+    private final DefaultPartitioner defaultPartitioner =
+            new DefaultPartitioner();
+
+    public static String buildKey(String key, String sequence) {
+        return key + SEPARATOR + sequence;
+    }
+
+    /**
+     * @return the key without its sequence number
+     */
+    public static String partitionKeyOf(String key) {
+        int separatorIndex = key.indexOf(SEPARATOR);
+        return separatorIndex < 0 ? key : key.substring(0, separatorIndex);
+    }
+
+    /**
+     * @return null for a key without sequence number
+     */
+    public static String sequenceOf(String key) {
+        int separatorIndex = key.indexOf(SEPARATOR);
+        return separatorIndex < 0 ? null : key.substring(separatorIndex + 1);
+    }
+
+    @Override
+    public int partition(String topic, Object key, byte[] keyBytes,
+            Object value, byte[] valueBytes, Cluster cluster) {
+        if (!(key instanceof String) ||
+                ((String) key).indexOf(SEPARATOR) < 0)
+            return defaultPartitioner.partition(topic, key, keyBytes, value,
+                    valueBytes, cluster);
+        return AsyncKafkaSender.partitionOf((String) key,
+                cluster.partitionsForTopic(topic).size());
+    }
+
+    @Override
+    public void configure(Map<String, ?> configs) {
+        defaultPartitioner.configure(configs);
+    }
+
+    @Override
+    public void close() {
+        defaultPartitioner.close();
+    }
+}
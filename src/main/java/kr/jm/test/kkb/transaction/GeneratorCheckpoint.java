@@ -0,0 +1,369 @@
+package kr.jm.test.kkb.transaction;
+
+import kr.jm.test.kkb.transaction.index.BalanceLedger;
+import kr.jm.test.kkb.transaction.index.UserAccountIndex;
+import kr.jm.test.kkb.transaction.random.TransactionLogRandom;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Binary snapshot of the generator state, the users with their accounts,
+ * balances and seeded random states and the positions of the id leases,
+ * so a restarted producer continues with the same users and never reissues
+ * a number.
+ * <p>
+ * A snapshot is taken while the generator runs: the index hands every user
+ * over as a copy of its accounts below the count read at the visit, and an
+ * append moves that count only once its account is in place, so every user
+ * is a complete prefix of its accounts, the ones appended after the visit
+ * waiting for the next snapshot. The lease positions are read after the
+ * scan, past every number in it. It is written to a temporary file,
+ * synced, then moved over the previous one, so a crash leaves the last
+ * complete snapshot. Resuming maps the file and adds its records straight
+ * to the primitive tables, well under a second per million users with no
+ * archive replay.
+ * <p>
+ * The leases run on after a snapshot, so with {@link #reserveLeases(int)}
+ * the striped sources persist a high-water mark to the {@code .leases}
+ * file next to it, some blocks ahead of the leases, and resuming moves
+ * them past it as well; numbers issued after the last snapshot are then
+ * skipped rather than reissued.
+ * <p>
+ * Layout, big endian: the magic, then per user its number, random state and
+ * account count followed by every account number and balance, then a
+ * footer of the counts, the master seed and the lease positions ending
+ * with the magic again.
+ */
+public class GeneratorCheckpoint implements AutoCloseable {
+
+    public static final String CHECKPOINT_FILE_PROPERTY =
+            "kkb.checkpoint.file";
+    public static final String CHECKPOINT_INTERVAL_PROPERTY =
+            "kkb.checkpoint.interval.ms";
+    public static final String LEASE_RESERVE_PROPERTY =
+            "kkb.checkpoint.lease.reserve.blocks";
+    public static final int DEFAULT_LEASE_RESERVE_BLOCKS = 64;
+    private static final org.slf4j.Logger log =
+            org.slf4j.LoggerFactory.getLogger(GeneratorCheckpoint.class);
+    private static final long MAGIC = 0x4B4B42434B505431L;
+    private static final int VERSION = 1;
+    private static final int FOOTER_BYTES = 56;
+
+    private final TransactionLogGenerator transactionLogGenerator;
+    private final Path checkpointFile;
+    private final Path leasesFile;
+    private final long[] reservedPositions;
+    private ScheduledExecutorService scheduledExecutorService;
+
+    public GeneratorCheckpoint(TransactionLogGenerator transactionLogGenerator,
+            Path checkpointFile) {
+        this.transactionLogGenerator = transactionLogGenerator;
+        this.checkpointFile = checkpointFile;
+        this.leasesFile = checkpointFile.resolveSibling(
+                checkpointFile.getFileName() + ".leases");
+        this.reservedPositions = new long[2];
+    }
+
+    /**
+     * Resumes from the {@code kkb.checkpoint.file} when it exists, reserves
+     * the leases {@code kkb.checkpoint.lease.reserve.blocks} ahead and
+     * checkpoints every {@code kkb.checkpoint.interval.ms}, one minute by
+     * default.
+     *
+     * @return empty when the property is not set
+     */
+    public static Optional<GeneratorCheckpoint> fromSystemProperties(
+            TransactionLogGenerator transactionLogGenerator) {
+        return Optional.ofNullable(System.getProperty(CHECKPOINT_FILE_PROPERTY))
+                .map(file -> new GeneratorCheckpoint(transactionLogGenerator,
+                        Paths.get(file))).map(generatorCheckpoint -> {
+                    if (Files.exists(generatorCheckpoint.checkpointFile))
+                        generatorCheckpoint.resume();
+                    else
+                        generatorCheckpoint.resumeReservedLeases();
+                    return generatorCheckpoint.reserveLeases(Integer
+                            .getInteger(LEASE_RESERVE_PROPERTY,
+                                    DEFAULT_LEASE_RESERVE_BLOCKS))
+                            .startPeriodic(Long.getLong(
+                                    CHECKPOINT_INTERVAL_PROPERTY, 60000));
+                });
+    }
+
+    public Path getCheckpointFile() {
+        return checkpointFile;
+    }
+
+    public Path getLeasesFile() {
+        return leasesFile;
+    }
+
+    /**
+     * Has the id sources persist their lease positions reserveBlocks ahead
+     * of the leases, before the generator leases any.
+     */
+    public GeneratorCheckpoint reserveLeases(int reserveBlocks) {
+        transactionLogGenerator.getUserNumberAllocator().getIdBlockSource()
+                .reserveAhead(reserveBlocks,
+                        position -> writeReservedPosition(0, position));
+        transactionLogGenerator.getAccountNumberAllocator()
+                .getIdBlockSource().reserveAhead(reserveBlocks,
+                        position -> writeReservedPosition(1, position));
+        return this;
+    }
+
+    /**
+     * Runs on the leasing thread, which waits for the sync.
+     */
+    private void writeReservedPosition(int sourceIndex, long position) {
+        synchronized (reservedPositions) {
+            reservedPositions[sourceIndex] = position;
+            Path temporaryFile = leasesFile.resolveSibling(
+                    leasesFile.getFileName() + ".tmp");
+            ByteBuffer buffer = ByteBuffer.allocate(3 * Long.BYTES)
+                    .putLong(reservedPositions[0])
+                    .putLong(reservedPositions[1]).putLong(MAGIC);
+            buffer.flip();
+            try (FileChannel fileChannel = FileChannel.open(temporaryFile,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (buffer.hasRemaining())
+                    fileChannel.write(buffer);
+                fileChannel.force(true);
+            } catch (IOException e) {
+                throw new RuntimeException("Lease Reservation Failed !!! - " +
+                        leasesFile, e);
+            }
+            moveDurably(temporaryFile, leasesFile);
+        }
+    }
+
+    /**
+     * Moves the leases past the reserved positions of the {@code .leases}
+     * file, if any.
+     */
+    public void resumeReservedLeases() {
+        if (!Files.exists(leasesFile))
+            return;
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(leasesFile));
+            if (buffer.limit() != 3 * Long.BYTES ||
+                    buffer.getLong(2 * Long.BYTES) != MAGIC)
+                throw new IOException("Wrong Magic Or Size");
+            transactionLogGenerator.getUserNumberAllocator()
+                    .getIdBlockSource().resumeAfter(buffer.getLong(0));
+            transactionLogGenerator.getAccountNumberAllocator()
+                    .getIdBlockSource().resumeAfter(buffer.getLong(Long.BYTES));
+        } catch (IOException e) {
+            throw new RuntimeException("Wrong Lease Reservation !!! - " +
+                    leasesFile, e);
+        }
+    }
+
+    /**
+     * Renames the synced file over the target and then syncs the directory,
+     * so the rename survives a crash where the file system supports it.
+     */
+    private static void moveDurably(Path temporaryFile, Path file) {
+        try {
+            Files.move(temporaryFile, file,
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException("Checkpoint Failed !!! - " + file, e);
+        }
+        try (FileChannel directoryChannel = FileChannel.open(
+                file.toAbsolutePath().getParent(), StandardOpenOption.READ)) {
+            directoryChannel.force(true);
+        } catch (IOException e) {
+            log.debug("moveDurably({}) - directory not synced", file, e);
+        }
+    }
+
+    public synchronized GeneratorCheckpoint startPeriodic(
+            long intervalMillis) {
+        if (scheduledExecutorService != null)
+            return this;
+        this.scheduledExecutorService =
+                Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable,
+                            "GeneratorCheckpoint");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        scheduledExecutorService.scheduleWithFixedDelay(() -> {
+            try {
+                write();
+            } catch (Exception e) {
+                log.error("startPeriodic() - {}", checkpointFile, e);
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        return this;
+    }
+
+    /**
+     * @return the number of users written
+     */
+    public synchronized long write() {
+        long startNanos = System.nanoTime();
+        TransactionLogRandom transactionLogRandom =
+                transactionLogGenerator.getTransactionLogRandom();
+        BalanceLedger balanceLedger = transactionLogGenerator
+                .getBalanceLedger();
+        Path temporaryFile = checkpointFile.resolveSibling(
+                checkpointFile.getFileName() + ".tmp");
+        long[] counts = new long[2];
+        try (FileOutputStream fileOutputStream =
+                new FileOutputStream(temporaryFile.toFile());
+             DataOutputStream output = new DataOutputStream(
+                     new BufferedOutputStream(fileOutputStream, 1 << 20))) {
+            output.writeLong(MAGIC);
+            transactionLogGenerator.getUserAccountIndex()
+                    .forEachUser((accountNumbers, userNumber) -> {
+                        try {
+                            output.writeInt(userNumber);
+                            output.writeLong(transactionLogRandom
+                                    .getUserState(userNumber));
+                            output.writeInt(accountNumbers.length);
+                            for (int accountNumber : accountNumbers) {
+                                output.writeInt(accountNumber);
+                                output.writeLong(balanceLedger
+                                        .getBalance(accountNumber));
+                            }
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        counts[0]++;
+                        counts[1] += accountNumbers.length;
+                    });
+            output.writeLong(counts[0]);
+            output.writeLong(counts[1]);
+            output.writeLong(transactionLogRandom.isSeeded() ?
+                    transactionLogRandom.getMasterSeed() : 0);
+            output.writeInt(transactionLogRandom.isSeeded() ? 1 : 0);
+            output.writeInt(VERSION);
+            output.writeLong(transactionLogGenerator.getUserNumberAllocator()
+                    .getIdBlockSource().getLeasePosition());
+            output.writeLong(transactionLogGenerator
+                    .getAccountNumberAllocator().getIdBlockSource()
+                    .getLeasePosition());
+            output.writeLong(MAGIC);
+            output.flush();
+            fileOutputStream.getFD().sync();
+        } catch (IOException | UncheckedIOException e) {
+            throw new RuntimeException("Checkpoint Failed !!! - " +
+                    checkpointFile, e);
+        }
+        moveDurably(temporaryFile, checkpointFile);
+        log.info("write() - {} users, {} accounts to {} in {}ms", counts[0],
+                counts[1], checkpointFile,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        return counts[0];
+    }
+
+    /**
+     * Loads the snapshot into the generator, which must not have a user yet,
+     * with the leases past the reserved positions as well.
+     *
+     * @return the number of users resumed
+     */
+    public long resume() {
+        if (transactionLogGenerator.getUserCount() > 0)
+            throw new IllegalStateException("Resume Into Used Generator !!! " +
+                    "- " + transactionLogGenerator.getUserCount() + " users");
+        long startNanos = System.nanoTime();
+        try (FileChannel fileChannel = FileChannel
+                .open(checkpointFile, StandardOpenOption.READ)) {
+            if (fileChannel.size() > Integer.MAX_VALUE ||
+                    fileChannel.size() < Long.BYTES + FOOTER_BYTES)
+                throw new IOException("Wrong Size - " + fileChannel.size());
+            MappedByteBuffer buffer = fileChannel
+                    .map(FileChannel.MapMode.READ_ONLY, 0, fileChannel.size());
+            long userCount = readFooterAndResumeLeases(buffer);
+            resumeReservedLeases();
+            resumeUsers(buffer, userCount);
+            log.info("resume() - {} users from {} in {}ms", userCount,
+                    checkpointFile, TimeUnit.NANOSECONDS
+                            .toMillis(System.nanoTime() - startNanos));
+            return userCount;
+        } catch (IOException | RuntimeException e) {
+            throw new RuntimeException("Wrong Checkpoint !!! - " +
+                    checkpointFile, e);
+        }
+    }
+
+    private long readFooterAndResumeLeases(ByteBuffer buffer)
+            throws IOException {
+        int footer = buffer.limit() - FOOTER_BYTES;
+        if (buffer.getLong(0) != MAGIC ||
+                buffer.getLong(footer + FOOTER_BYTES - Long.BYTES) != MAGIC ||
+                buffer.getInt(footer + 28) != VERSION)
+            throw new IOException("Wrong Magic Or Version");
+        TransactionLogRandom transactionLogRandom =
+                transactionLogGenerator.getTransactionLogRandom();
+        boolean seeded = buffer.getInt(footer + 24) == 1;
+        if (seeded && transactionLogRandom.isSeeded() &&
+                buffer.getLong(footer + 16) !=
+                        transactionLogRandom.getMasterSeed())
+            throw new IllegalArgumentException("Wrong Master Seed !!! - " +
+                    transactionLogRandom.getMasterSeed() + " resuming " +
+                    buffer.getLong(footer + 16));
+        transactionLogGenerator.getUserNumberAllocator().getIdBlockSource()
+                .resumeAfter(buffer.getLong(footer + 32));
+        transactionLogGenerator.getAccountNumberAllocator().getIdBlockSource()
+                .resumeAfter(buffer.getLong(footer + 40));
+        return buffer.getLong(footer);
+    }
+
+    private void resumeUsers(ByteBuffer buffer, long userCount) {
+        UserAccountIndex userAccountIndex =
+                transactionLogGenerator.getUserAccountIndex();
+        BalanceLedger balanceLedger =
+                transactionLogGenerator.getBalanceLedger();
+        TransactionLogRandom transactionLogRandom =
+                transactionLogGenerator.getTransactionLogRandom();
+        buffer.position(Long.BYTES);
+        for (long i = 0; i < userCount; i++) {
+            int userNumber = buffer.getInt();
+            transactionLogRandom.setUserState(userNumber, buffer.getLong());
+            userAccountIndex.addUser(userNumber);
+            for (int accountCount = buffer.getInt(); accountCount > 0;
+                 accountCount--) {
+                int accountNumber = buffer.getInt();
+                userAccountIndex.addAccount(userNumber, accountNumber);
+                balanceLedger.deposit(accountNumber, buffer.getLong());
+            }
+        }
+    }
+
+    /**
+     * Stops the periodic checkpoints and writes a last one.
+     */
+    @Override
+    public void close() {
+        if (scheduledExecutorService != null) {
+            scheduledExecutorService.shutdown();
+            try {
+                scheduledExecutorService.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        write();
+    }
+}
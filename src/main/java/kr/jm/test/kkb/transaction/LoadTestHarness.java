@@ -0,0 +1,281 @@
+package kr.jm.test.kkb.transaction;
+
+import kr.jm.test.kkb.metrics.LogLinearHistogram;
+import kr.jm.test.kkb.output.ArchiveOutboxShipper;
+import kr.jm.test.kkb.output.AsyncKafkaSender;
+import kr.jm.test.kkb.output.InMemoryKafkaProducer;
+import kr.jm.test.kkb.output.SegmentedArchiveWriter;
+import kr.jm.test.kkb.transaction.codec.LogFormat;
+import kr.jm.test.kkb.transaction.random.TransactionLogRandom;
+import kr.jm.test.kkb.transaction.schedule.RateController;
+import kr.jm.test.kkb.transaction.sink.SinkFanOut;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Runs the whole {@link TransactionLogProducer} pipeline, archive included,
+ * for a duration at a target rate against {@link InMemoryKafkaProducer}s
+ * and reports the sustained acked throughput, the generation to ack
+ * latency, which the log timestamps only give in milliseconds, and the
+ * records lost on the way.
+ * <p>
+ * Users are added in rounds of {@code userCount} new users generating about
+ * 100 logs each until the duration is over.
+ */
+public class LoadTestHarness {
+
+    private static final org.slf4j.Logger log =
+            org.slf4j.LoggerFactory.getLogger(LoadTestHarness.class);
+    private static final String TOPIC = "load-test";
+
+    private final long durationMillis;
+    private final double targetEventsPerSecond;
+    private final int userCount;
+    private final int numPartitions;
+    private final long ackLatencyMicros;
+    private final double retriableFailureRate;
+    private final double fatalFailureRate;
+    private final LogFormat logFormat;
+    private final Path archiveDirectory;
+
+    /**
+     * @param targetEventsPerSecond 0 for as fast as possible
+     * @param archiveDirectory      the archive is written to
+     */
+    public LoadTestHarness(long durationMillis, double targetEventsPerSecond,
+            int userCount, int numPartitions, long ackLatencyMicros,
+            double retriableFailureRate, double fatalFailureRate,
+            LogFormat logFormat, Path archiveDirectory) {
+        this.durationMillis = durationMillis;
+        this.targetEventsPerSecond = targetEventsPerSecond;
+        this.userCount = userCount;
+        this.numPartitions = numPartitions;
+        this.ackLatencyMicros = ackLatencyMicros;
+        this.retriableFailureRate = retriableFailureRate;
+        this.fatalFailureRate = fatalFailureRate;
+        this.logFormat = logFormat;
+        this.archiveDirectory = archiveDirectory;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Wrong Args !!! - Args: <durationSeconds> " +
+                    "<targetEventsPerSecond:0=max> [userCount:default=10] " +
+                    "[ackLatencyMicros:default=1000] " +
+                    "[retriableFailureRate:default=0] " +
+                    "[fatalFailureRate:default=0] " +
+                    "[minEventsPerSecond:default=0] " +
+                    "[maxP99Millis:default=none] [maxLost:default=0] " +
+                    "[logFormat:default=JSON]");
+            System.exit(2);
+        }
+        Path archiveDirectory = Files.createTempDirectory("load-test");
+        try {
+            Result result = new LoadTestHarness(
+                    TimeUnit.SECONDS.toMillis(Long.valueOf(args[0])),
+                    Double.valueOf(args[1]), intArg(args, 2, 10), 8,
+                    longArg(args, 3, 1000), doubleArg(args, 4, 0),
+                    doubleArg(args, 5, 0), args.length > 9 ?
+                    LogFormat.valueOf(args[9]) : LogFormat.JSON,
+                    archiveDirectory).run();
+            System.out.println(result);
+            List<String> violationList = result.check(doubleArg(args, 6, 0),
+                    longArg(args, 7, Long.MAX_VALUE), longArg(args, 8, 0));
+            if (!violationList.isEmpty()) {
+                System.err.println("Load Test Regressed !!! - " +
+                        violationList);
+                System.exit(1);
+            }
+        } finally {
+            deleteDirectory(archiveDirectory);
+        }
+    }
+
+    private static int intArg(String[] args, int index, int defaultValue) {
+        return args.length > index ? Integer.valueOf(args[index]) :
+                defaultValue;
+    }
+
+    private static long longArg(String[] args, int index, long defaultValue) {
+        return args.length > index ? Long.valueOf(args[index]) :
+                defaultValue;
+    }
+
+    private static double doubleArg(String[] args, int index,
+            double defaultValue) {
+        return args.length > index ? Double.valueOf(args[index]) :
+                defaultValue;
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> pathStream = Files.walk(directory)) {
+            pathStream.sorted(Comparator.reverseOrder())
+                    .forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private InMemoryKafkaProducer buildInMemoryKafkaProducer(
+            LogLinearHistogram endToEndMillisHistogram) {
+        return new InMemoryKafkaProducer(numPartitions, ackLatencyMicros,
+                retriableFailureRate, fatalFailureRate)
+                .setAckListener((record, metadata) -> endToEndMillisHistogram
+                        .record(System.currentTimeMillis() - logFormat
+                                .extractLogTimestamp(
+                                        ByteBuffer.wrap(record.value()))));
+    }
+
+    public Result run() {
+        LogLinearHistogram endToEndMillisHistogram = new LogLinearHistogram();
+        List<InMemoryKafkaProducer> inMemoryKafkaProducerList =
+                new ArrayList<>();
+        TransactionLogProducer transactionLogProducer =
+                new TransactionLogProducer(producerProperties -> {
+                    InMemoryKafkaProducer inMemoryKafkaProducer =
+                            buildInMemoryKafkaProducer(
+                                    endToEndMillisHistogram);
+                    inMemoryKafkaProducerList.add(inMemoryKafkaProducer);
+                    return inMemoryKafkaProducer;
+                }, "in-memory", TOPIC, TransactionLogRandom.unseeded(),
+                        new SegmentedArchiveWriter(archiveDirectory,
+                                "archive", logFormat.getRecordFraming()),
+                        logFormat, logFormat);
+        RateController rateController =
+                RateController.ofEventsPerSecond(targetEventsPerSecond);
+        long startNanos = System.nanoTime();
+        long deadlineNanos =
+                startNanos + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+        for (int round = 0; System.nanoTime() < deadlineNanos; round++) {
+            int userRound = round;
+            transactionLogProducer.generateTransactionLog(rateController,
+                    IntStream.range(0, userCount)
+                            .mapToObj(i -> "user-" + userRound + "-" + i)
+                            .toArray(String[]::new));
+        }
+        long generatedNanos = System.nanoTime() - startNanos;
+        SinkFanOut sinkFanOut = transactionLogProducer.getSinkFanOut();
+        AsyncKafkaSender asyncKafkaSender =
+                transactionLogProducer.getAsyncKafkaSender();
+        transactionLogProducer.close();
+        long elapsedNanos = System.nanoTime() - startNanos;
+        long sinkLostCount = sinkFanOut.getSinkMetricsList().stream()
+                .mapToLong(sinkMetrics -> sinkMetrics.getDroppedCount() +
+                        sinkMetrics.getFailedCount()).sum() +
+                transactionLogProducer.getOutboxShipperList().stream()
+                        .mapToLong(ArchiveOutboxShipper::getUnackedRecords)
+                        .sum();
+        Result result = new Result(sinkFanOut.getPublishedCount(),
+                asyncKafkaSender.getAckCount(),
+                asyncKafkaSender.getLostCount() + sinkLostCount,
+                inMemoryKafkaProducerList.stream()
+                        .mapToLong(InMemoryKafkaProducer::getRetryCount).sum(),
+                generatedNanos,
+                elapsedNanos, endToEndMillisHistogram,
+                asyncKafkaSender.getAckLatencyMicrosHistogram());
+        log.info("run() - {} - {}", result, inMemoryKafkaProducerList);
+        return result;
+    }
+
+    public static class Result {
+        private final long generatedCount;
+        private final long ackCount;
+        private final long lostCount;
+        private final long retryCount;
+        private final long generatedNanos;
+        private final long elapsedNanos;
+        private final LogLinearHistogram endToEndMillisHistogram;
+        private final LogLinearHistogram ackLatencyMicrosHistogram;
+
+        private Result(long generatedCount, long ackCount, long lostCount,
+                long retryCount, long generatedNanos, long elapsedNanos,
+                LogLinearHistogram endToEndMillisHistogram,
+                LogLinearHistogram ackLatencyMicrosHistogram) {
+            this.generatedCount = generatedCount;
+            this.ackCount = ackCount;
+            this.lostCount = lostCount;
+            this.retryCount = retryCount;
+            this.generatedNanos = generatedNanos;
+            this.elapsedNanos = elapsedNanos;
+            this.endToEndMillisHistogram = endToEndMillisHistogram;
+            this.ackLatencyMicrosHistogram = ackLatencyMicrosHistogram;
+        }
+
+        public long getGeneratedCount() {
+            return generatedCount;
+        }
+
+        public long getAckCount() {
+            return ackCount;
+        }
+
+        public long getLostCount() {
+            return lostCount;
+        }
+
+        public long getRetryCount() {
+            return retryCount;
+        }
+
+        /**
+         * @return the acked records per second from the start until every
+         * record was acked or given up on
+         */
+        public double getAckedEventsPerSecond() {
+            return ackCount * 1e9 / Math.max(1, elapsedNanos);
+        }
+
+        public double getGeneratedEventsPerSecond() {
+            return generatedCount * 1e9 / Math.max(1, generatedNanos);
+        }
+
+        public LogLinearHistogram getEndToEndMillisHistogram() {
+            return endToEndMillisHistogram;
+        }
+
+        public LogLinearHistogram getAckLatencyMicrosHistogram() {
+            return ackLatencyMicrosHistogram;
+        }
+
+        /**
+         * @return a description of every threshold crossed, empty when none
+         */
+        public List<String> check(double minEventsPerSecond,
+                long maxP99Millis, long maxLostCount) {
+            List<String> violationList = new ArrayList<>();
+            if (getAckedEventsPerSecond() < minEventsPerSecond)
+                violationList.add(String.format("acked %.1f/s < %.1f/s",
+                        getAckedEventsPerSecond(), minEventsPerSecond));
+            long p99Millis = endToEndMillisHistogram.getPercentile(99);
+            if (p99Millis > maxP99Millis)
+                violationList.add("endToEnd p99 " + p99Millis + "ms > " +
+                        maxP99Millis + "ms");
+            if (lostCount > maxLostCount)
+                violationList.add("lost " + lostCount + " > " + maxLostCount);
+            return violationList;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("LoadTestHarness.Result(generated=%d, " +
+                            "generatedRate=%.1f/s, acked=%d, " +
+                            "ackedRate=%.1f/s, lost=%d, retried=%d, " +
+                            "endToEndMillis=p50:%d/p99:%d/max:%d, " +
+                            "ackMicros=p50:%d/p99:%d)", generatedCount,
+                    getGeneratedEventsPerSecond(), ackCount,
+                    getAckedEventsPerSecond(), lostCount, retryCount,
+                    endToEndMillisHistogram.getPercentile(50),
+                    endToEndMillisHistogram.getPercentile(99),
+                    endToEndMillisHistogram.getMax(),
+                    ackLatencyMicrosHistogram.getPercentile(50),
+                    ackLatencyMicrosHistogram.getPercentile(99));
+        }
+    }
+}
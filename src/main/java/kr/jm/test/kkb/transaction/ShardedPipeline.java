@@ -0,0 +1,173 @@
+package kr.jm.test.kkb.transaction;
+
+import kr.jm.test.kkb.output.AsyncKafkaSender;
+import kr.jm.test.kkb.transaction.log.NewUser;
+import kr.jm.test.kkb.transaction.log.TransactionLogInterface;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Routes the transaction logs by userNumber to single threaded shards, each
+ * with its own bounded queue and consumer, so serialization and sending
+ * scale with the cores while the records of a user keep their order.
+ * <p>
+ * A record goes to the shard {@code partition % shardCount} of the Kafka
+ * partition its userNumber key is sent to, so every shard owns a fixed set
+ * of partitions. Callers block while the queue of the shard is full.
+ */
+public class ShardedPipeline
+        implements Consumer<TransactionLogInterface>, AutoCloseable {
+
+    private static final org.slf4j.Logger log =
+            org.slf4j.LoggerFactory.getLogger(ShardedPipeline.class);
+    private static final TransactionLogInterface CLOSE_SIGNAL =
+            new NewUser(-1, -1, "CLOSE_SIGNAL");
+
+    private final int numPartitions;
+    private final List<Shard> shardList;
+    private volatile boolean closed;
+
+    /**
+     * @param numPartitions        of the topic the records are keyed for
+     * @param shardConsumerFactory builds the consumer of every shard index,
+     *                             which only that shard's thread calls
+     */
+    public ShardedPipeline(int shardCount, int numPartitions,
+            int queueCapacity, IntFunction<Consumer<TransactionLogInterface>>
+            shardConsumerFactory) {
+        if (shardCount < 1 || numPartitions < 1)
+            throw new IllegalArgumentException("Wrong Shard Count !!! - " +
+                    shardCount + " shards for " + numPartitions +
+                    " partitions");
+        if (numPartitions < shardCount)
+            log.warn("ShardedPipeline() - {} of {} shards get no partition",
+                    shardCount - numPartitions, shardCount);
+        this.numPartitions = numPartitions;
+        this.shardList = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++)
+            shardList.add(new Shard(i, queueCapacity,
+                    shardConsumerFactory.apply(i)));
+        log.info("ShardedPipeline({}, {}, {})", shardCount, numPartitions,
+                queueCapacity);
+    }
+
+    public static int shardOf(int userNumber, int numPartitions,
+            int shardCount) {
+        return AsyncKafkaSender.partitionOf(String.valueOf(userNumber),
+                numPartitions) % shardCount;
+    }
+
+    @Override
+    public void accept(TransactionLogInterface transactionLog) {
+        if (transactionLog == null)
+            return;
+        if (closed)
+            throw new IllegalStateException("Already Closed !!!");
+        shardList.get(shardOf(transactionLog.getUserNumber(), numPartitions,
+                shardList.size())).put(transactionLog);
+    }
+
+    public int getShardCount() {
+        return shardList.size();
+    }
+
+    public long getProcessedCount() {
+        return shardList.stream().mapToLong(shard -> shard.processedCount.sum())
+                .sum();
+    }
+
+    public long getQueuedCount() {
+        return shardList.stream().mapToLong(shard -> shard.queue.size()).sum();
+    }
+
+    public String getSummary() {
+        return "ShardedPipeline(" + shardList.stream().map(Shard::toString)
+                .collect(Collectors.joining(", ")) + ")";
+    }
+
+    /**
+     * Lets every shard finish its queue.
+     */
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        this.closed = true;
+        shardList.forEach(shard -> shard.put(CLOSE_SIGNAL));
+        for (Shard shard : shardList) {
+            try {
+                shard.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        log.info("close() - {}", getSummary());
+    }
+
+    private static class Shard {
+        private final int index;
+        private final BlockingQueue<TransactionLogInterface> queue;
+        private final Thread thread;
+        private final LongAdder processedCount;
+        private final LongAdder failedCount;
+        private final LongAdder backpressureCount;
+
+        private Shard(int index, int queueCapacity,
+                Consumer<TransactionLogInterface> consumer) {
+            this.index = index;
+            this.queue = new ArrayBlockingQueue<>(queueCapacity);
+            this.processedCount = new LongAdder();
+            this.failedCount = new LongAdder();
+            this.backpressureCount = new LongAdder();
+            this.thread = new Thread(() -> run(consumer),
+                    "ShardedPipeline-" + index);
+            this.thread.start();
+        }
+
+        private void put(TransactionLogInterface transactionLog) {
+            if (queue.offer(transactionLog))
+                return;
+            backpressureCount.increment();
+            try {
+                queue.put(transactionLog);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+
+        private void run(Consumer<TransactionLogInterface> consumer) {
+            try {
+                for (TransactionLogInterface transactionLog;
+                     (transactionLog = queue.take()) != CLOSE_SIGNAL; ) {
+                    try {
+                        consumer.accept(transactionLog);
+                        processedCount.increment();
+                    } catch (Exception e) {
+                        failedCount.increment();
+                        log.error("run() - shard {} {}", index,
+                                transactionLog, e);
+                    }
+                }
+            } catch (InterruptedException e) {
+                log.warn("run() - shard {} Interrupted !!!", index);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return index + "=(processed=" + processedCount.sum() +
+                    ", failed=" + failedCount.sum() + ", queued=" +
+                    queue.size() + ", backpressure=" +
+                    backpressureCount.sum() + ")";
+        }
+    }
+}
@@ -0,0 +1,390 @@
+package kr.jm.test.kkb.transaction;
+
+import kr.jm.test.kkb.transaction.codec.LogFormat;
+import kr.jm.test.kkb.transaction.log.NewUser;
+import kr.jm.test.kkb.transaction.log.TransactionLogInterface;
+import kr.jm.test.kkb.transaction.random.SplitMix64;
+import kr.jm.test.kkb.transaction.random.TransactionLogRandom;
+import kr.jm.test.kkb.transaction.schedule.RateController;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+/**
+ * Continuous generation for soak tests: a population of active users is
+ * kept while new users arrive and the oldest retire at their own rates,
+ * the retired users' state being evicted so the heap stays flat however
+ * long it runs.
+ * <p>
+ * Every worker thread owns its share of the users in arrival order, so the
+ * logs of a user keep their order. The oldest users of a worker retire
+ * when it is past its share of the target population, or at the
+ * retirement rate as long as it keeps one user. Every report interval the
+ * retired chunks are evicted and an {@link IntervalStats} with the
+ * throughput and the heap used, after the last GC too, is logged.
+ */
+public class SoakRunner {
+
+    private static final org.slf4j.Logger log =
+            org.slf4j.LoggerFactory.getLogger(SoakRunner.class);
+
+    private final TransactionLogGenerator transactionLogGenerator;
+    private final Consumer<TransactionLogInterface> transactionLogConsumer;
+    private final int targetActiveUsers;
+    private final double arrivalsPerSecond;
+    private final double retirementsPerSecond;
+    private final int parallelism;
+    private final LongAdder generatedCount;
+    private final LongAdder arrivedCount;
+    private final LongAdder retiredCount;
+    private final LongAdder evictedChunkCount;
+    private volatile Consumer<IntervalStats> intervalStatsListener;
+    private volatile boolean stopped;
+
+    public SoakRunner(TransactionLogGenerator transactionLogGenerator,
+            Consumer<TransactionLogInterface> transactionLogConsumer,
+            int targetActiveUsers, double arrivalsPerSecond,
+            double retirementsPerSecond, int parallelism) {
+        if (targetActiveUsers < parallelism || parallelism < 1 ||
+                arrivalsPerSecond < 0 || retirementsPerSecond < 0)
+            throw new IllegalArgumentException("Wrong Soak Config !!! - " +
+                    "targetActiveUsers=" + targetActiveUsers +
+                    ", parallelism=" + parallelism + ", arrivals=" +
+                    arrivalsPerSecond + "/s, retirements=" +
+                    retirementsPerSecond + "/s");
+        this.transactionLogGenerator = transactionLogGenerator;
+        this.transactionLogConsumer = transactionLogConsumer;
+        this.targetActiveUsers = targetActiveUsers;
+        this.arrivalsPerSecond = arrivalsPerSecond;
+        this.retirementsPerSecond = retirementsPerSecond;
+        this.parallelism = parallelism;
+        this.generatedCount = new LongAdder();
+        this.arrivedCount = new LongAdder();
+        this.retiredCount = new LongAdder();
+        this.evictedChunkCount = new LongAdder();
+        this.intervalStatsListener =
+                intervalStats -> log.info("{}", intervalStats);
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 5) {
+            System.err.println("Wrong Args !!! - Args: <kafkaConnect> " +
+                    "<topic> <activeUsers> <eventsPerSecond:0=max> " +
+                    "<arrivalsPerSecond> " +
+                    "[retirementsPerSecond:default=arrivals] " +
+                    "[durationSeconds:default=0=forever] " +
+                    "[reportIntervalSeconds:default=10] " +
+                    "[logFormat:default=JSON]\n" +
+                    "  -Dkkb.seed=<long> repeats the random decisions of " +
+                    "every user, a random seed being logged when unset; " +
+                    "the logs are not byte-identical, as the workers " +
+                    "take account numbers and read the wall clock in " +
+                    "thread order");
+            System.exit(2);
+        }
+        double arrivalsPerSecond = Double.valueOf(args[4]);
+        LogFormat logFormat = args.length > 8 ? LogFormat.valueOf(args[8]) :
+                LogFormat.JSON;
+        try (TransactionLogProducer transactionLogProducer =
+                new TransactionLogProducer(args[0], args[1],
+                        TransactionLogRandom.fromSystemProperties(), logFormat,
+                        logFormat)) {
+            IntervalStats total = transactionLogProducer.soak(
+                    Integer.valueOf(args[2]), arrivalsPerSecond,
+                    args.length > 5 ? Double.valueOf(args[5]) :
+                            arrivalsPerSecond,
+                    RateController.ofEventsPerSecond(Double.valueOf(args[3])),
+                    TimeUnit.SECONDS.toMillis(args.length > 6 ?
+                            Long.valueOf(args[6]) : 0),
+                    TimeUnit.SECONDS.toMillis(args.length > 7 ?
+                            Long.valueOf(args[7]) : 10));
+            System.out.println(total);
+        }
+    }
+
+    /**
+     * @param intervalStatsListener called on the reporting thread, logging
+     *                              by default
+     */
+    public SoakRunner setIntervalStatsListener(
+            Consumer<IntervalStats> intervalStatsListener) {
+        this.intervalStatsListener = intervalStatsListener;
+        return this;
+    }
+
+    /**
+     * Generates until the duration is over or {@link #stop()}.
+     *
+     * @param durationMillis 0 to run until stopped
+     * @return the stats of the whole run
+     */
+    public IntervalStats run(RateController rateController,
+            long durationMillis, long reportIntervalMillis) {
+        long startNanos = System.nanoTime();
+        long deadlineNanos = durationMillis > 0 ?
+                startNanos + TimeUnit.MILLISECONDS.toNanos(durationMillis) :
+                Long.MAX_VALUE;
+        List<Worker> workerList = buildWorkers();
+        IntervalStats[] lastStats = {new IntervalStats(0, 0, 0, 0, 0, 0, 0,
+                0, 0, 0)};
+        ScheduledExecutorService reporter =
+                Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "SoakRunner-report");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        reporter.scheduleAtFixedRate(() -> {
+            lastStats[0] = report(startNanos, lastStats[0]);
+            intervalStatsListener.accept(lastStats[0]);
+        }, reportIntervalMillis, reportIntervalMillis, TimeUnit.MILLISECONDS);
+        List<Thread> threadList = new ArrayList<>();
+        for (Worker worker : workerList) {
+            Thread thread = new Thread(() -> worker.run(rateController,
+                    startNanos, deadlineNanos),
+                    "SoakRunner-" + threadList.size());
+            thread.start();
+            threadList.add(thread);
+        }
+        try {
+            for (Thread thread : threadList)
+                thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stop();
+        } finally {
+            reporter.shutdownNow();
+        }
+        IntervalStats total = report(startNanos,
+                new IntervalStats(0, 0, 0, 0, 0, 0, 0, 0, 0, 0));
+        log.info("run() - {}", total);
+        return total;
+    }
+
+    private List<Worker> buildWorkers() {
+        int[] userNumbers = Arrays.stream(transactionLogGenerator
+                .generateNewUserAndAccount(IntStream.range(0,
+                        targetActiveUsers).mapToObj(i ->
+                        transactionLogGenerator.getRandomUserName())
+                        .toArray(String[]::new)))
+                .peek(transactionLogConsumer)
+                .mapToInt(TransactionLogInterface::getUserNumber).distinct()
+                .toArray();
+        List<Worker> workerList = new ArrayList<>(parallelism);
+        for (int i = 0; i < parallelism; i++) {
+            int worker = i;
+            workerList.add(new Worker(IntStream.range(0, userNumbers.length)
+                    .filter(index -> index % parallelism == worker)
+                    .map(index -> userNumbers[index]).toArray()));
+        }
+        return workerList;
+    }
+
+    private IntervalStats report(long startNanos, IntervalStats previous) {
+        evictedChunkCount.add(transactionLogGenerator.evictRetiredUsers());
+        long heapUsedBytes = 0;
+        long heapUsedAfterGcBytes = 0;
+        for (MemoryPoolMXBean memoryPoolMXBean : ManagementFactory
+                .getMemoryPoolMXBeans()) {
+            if (memoryPoolMXBean.getType() != MemoryType.HEAP)
+                continue;
+            heapUsedBytes += memoryPoolMXBean.getUsage().getUsed();
+            MemoryUsage collectionUsage =
+                    memoryPoolMXBean.getCollectionUsage();
+            if (collectionUsage != null)
+                heapUsedAfterGcBytes += collectionUsage.getUsed();
+        }
+        return new IntervalStats(
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos),
+                previous.elapsedMillis, generatedCount.sum(),
+                previous.generatedCount, transactionLogGenerator.getUserCount(),
+                arrivedCount.sum(), retiredCount.sum(),
+                evictedChunkCount.sum(), heapUsedBytes, heapUsedAfterGcBytes);
+    }
+
+    public void stop() {
+        this.stopped = true;
+    }
+
+    public long getGeneratedCount() {
+        return generatedCount.sum();
+    }
+
+    public long getArrivedCount() {
+        return arrivedCount.sum();
+    }
+
+    public long getRetiredCount() {
+        return retiredCount.sum();
+    }
+
+    private class Worker {
+        private final int targetUsers;
+        private int[] userRing;
+        private int head;
+        private int size;
+        private long arrivalsDone;
+        private long retirementsDone;
+
+        private Worker(int[] userNumbers) {
+            this.targetUsers = userNumbers.length;
+            this.userRing = new int[targetUsers * 2];
+            System.arraycopy(userNumbers, 0, userRing, 0, targetUsers);
+            this.size = targetUsers;
+        }
+
+        private void run(RateController rateController, long startNanos,
+                long deadlineNanos) {
+            SplitMix64 random = transactionLogGenerator
+                    .getTransactionLogRandom().forCurrentThread();
+            long now;
+            while (!stopped && (now = System.nanoTime()) < deadlineNanos) {
+                churn((now - startNanos) / 1e9);
+                rateController.acquire();
+                TransactionLogInterface transactionLog =
+                        transactionLogGenerator.generateRandomTransactionLog(
+                                userRing[(head + random.nextInt(size)) %
+                                        userRing.length]);
+                if (transactionLog == null)
+                    continue;
+                transactionLogConsumer.accept(transactionLog);
+                generatedCount.increment();
+            }
+        }
+
+        private void churn(double elapsedSeconds) {
+            for (long due = (long) (elapsedSeconds * arrivalsPerSecond /
+                    parallelism); arrivalsDone < due; arrivalsDone++)
+                arrive();
+            for (long due = (long) (elapsedSeconds * retirementsPerSecond /
+                    parallelism); retirementsDone < due; retirementsDone++)
+                if (size > 1)
+                    retireOldest();
+            while (size > targetUsers)
+                retireOldest();
+        }
+
+        private void arrive() {
+            NewUser newUser = transactionLogGenerator.generateNewUser(
+                    transactionLogGenerator.getRandomUserName());
+            transactionLogConsumer.accept(newUser);
+            transactionLogConsumer.accept(transactionLogGenerator
+                    .generateOpeningAccount(newUser.getUserNumber()));
+            if (size == userRing.length)
+                growUserRing();
+            userRing[(head + size++) % userRing.length] =
+                    newUser.getUserNumber();
+            arrivedCount.increment();
+        }
+
+        private void growUserRing() {
+            int[] grown = new int[userRing.length * 2];
+            for (int i = 0; i < size; i++)
+                grown[i] = userRing[(head + i) % userRing.length];
+            this.userRing = grown;
+            this.head = 0;
+        }
+
+        private void retireOldest() {
+            transactionLogGenerator.retireUser(userRing[head]);
+            head = (head + 1) % userRing.length;
+            size--;
+            retiredCount.increment();
+        }
+    }
+
+    public static class IntervalStats {
+        private final long elapsedMillis;
+        private final long intervalMillis;
+        private final long generatedCount;
+        private final long intervalGeneratedCount;
+        private final long activeUserCount;
+        private final long arrivedCount;
+        private final long retiredCount;
+        private final long evictedChunkCount;
+        private final long heapUsedBytes;
+        private final long heapUsedAfterGcBytes;
+
+        private IntervalStats(long elapsedMillis, long previousElapsedMillis,
+                long generatedCount, long previousGeneratedCount,
+                long activeUserCount, long arrivedCount, long retiredCount,
+                long evictedChunkCount, long heapUsedBytes,
+                long heapUsedAfterGcBytes) {
+            this.elapsedMillis = elapsedMillis;
+            this.intervalMillis = elapsedMillis - previousElapsedMillis;
+            this.generatedCount = generatedCount;
+            this.intervalGeneratedCount =
+                    generatedCount - previousGeneratedCount;
+            this.activeUserCount = activeUserCount;
+            this.arrivedCount = arrivedCount;
+            this.retiredCount = retiredCount;
+            this.evictedChunkCount = evictedChunkCount;
+            this.heapUsedBytes = heapUsedBytes;
+            this.heapUsedAfterGcBytes = heapUsedAfterGcBytes;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        public long getGeneratedCount() {
+            return generatedCount;
+        }
+
+        public double getIntervalEventsPerSecond() {
+            return intervalGeneratedCount * 1000d /
+                    Math.max(1, intervalMillis);
+        }
+
+        public long getActiveUserCount() {
+            return activeUserCount;
+        }
+
+        public long getArrivedCount() {
+            return arrivedCount;
+        }
+
+        public long getRetiredCount() {
+            return retiredCount;
+        }
+
+        public long getEvictedChunkCount() {
+            return evictedChunkCount;
+        }
+
+        public long getHeapUsedBytes() {
+            return heapUsedBytes;
+        }
+
+        /**
+         * @return the heap used after the last collection of every pool, the
+         * figure to watch for a leak
+         */
+        public long getHeapUsedAfterGcBytes() {
+            return heapUsedAfterGcBytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("SoakRunner.IntervalStats(elapsed=%ds, " +
+                            "rate=%.1f/s, generated=%d, activeUsers=%d, " +
+                            "arrived=%d, retired=%d, evictedChunks=%d, " +
+                            "heapUsedMB=%d, heapUsedAfterGcMB=%d)",
+                    TimeUnit.MILLISECONDS.toSeconds(elapsedMillis),
+                    getIntervalEventsPerSecond(), generatedCount,
+                    activeUserCount, arrivedCount, retiredCount,
+                    evictedChunkCount, heapUsedBytes >> 20,
+                    heapUsedAfterGcBytes >> 20);
+        }
+    }
+}
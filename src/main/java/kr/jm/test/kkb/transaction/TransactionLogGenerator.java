@@ -1,58 +1,180 @@
 package kr.jm.test.kkb.transaction;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import kr.jm.test.kkb.metrics.TransactionLogMetrics;
+import kr.jm.test.kkb.transaction.codec.TransactionLogJsonCodec;
+import kr.jm.test.kkb.transaction.flow.TransactionLogPublisher;
+import kr.jm.test.kkb.transaction.id.IdAllocator;
+import kr.jm.test.kkb.transaction.index.BalanceLedger;
+import kr.jm.test.kkb.transaction.index.UserAccountIndex;
 import kr.jm.test.kkb.transaction.log.*;
+import kr.jm.test.kkb.transaction.random.SplitMix64;
+import kr.jm.test.kkb.transaction.random.TransactionLogRandom;
+import kr.jm.test.kkb.transaction.schedule.LogClock;
+import kr.jm.test.kkb.transaction.schedule.RateController;
+import kr.jm.test.kkb.transaction.schedule.SimulatedClock;
+import kr.jm.test.kkb.transaction.workload.AliasSampler;
+import kr.jm.test.kkb.transaction.workload.KeyDistribution;
+import kr.jm.test.kkb.transaction.workload.WorkloadProfile;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Map;
-import java.util.Random;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentSkipListSet;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
+import static kr.jm.test.kkb.transaction.log.TransactionLogDictionary.BANK_NAMES;
+import static kr.jm.test.kkb.transaction.log.TransactionLogDictionary.USER_NAMES;
+
 @Slf4j
 public class TransactionLogGenerator {
 
+    private static final int DEBUG_LOG_SAMPLE_EVERY = 1000;
+    private static final long AMOUNT_UNIT = 100;
+    private static final int MAX_FUNDING_ATTEMPTS = 4;
+    private static final int MAX_TYPE_RESAMPLES = 8;
+
     private ObjectMapper objectMapper;
-    private AtomicInteger userNumberSupplier;
-    private AtomicInteger accountNumberSupplier;
-    private Map<Integer, Set<Integer>> userNumberAccountsMap;
-    private String[] bankNames =
-            {"카카오", "국민", "신한", "하나", "우리", "외환", "농협", "SC"};
-    private String[] userNames =
-            {"라이언", "jm", "영희", "바둑이", "순희", "유제석", "감호동"};
+    private IdAllocator userNumberAllocator;
+    private IdAllocator accountNumberAllocator;
+    private UserAccountIndex userAccountIndex;
+    private BalanceLedger balanceLedger;
+    private TransactionLogRandom transactionLogRandom;
+    private TransactionLogJsonCodec transactionLogJsonCodec;
+    private TransactionLogMetrics transactionLogMetrics;
+    private WorkloadProfile workloadProfile;
+    private LogClock logClock;
+    private AtomicLong debugLogCounter;
+    private LongAdder unfundedCount;
 
 
     public TransactionLogGenerator(int initialUserNumber,
             int initialAccountNumber) {
+        this(initialUserNumber, initialAccountNumber,
+                TransactionLogRandom.unseeded());
+    }
+
+    public TransactionLogGenerator(int initialUserNumber,
+            int initialAccountNumber,
+            TransactionLogRandom transactionLogRandom) {
+        this(IdAllocator.sequential(initialUserNumber),
+                IdAllocator.sequential(initialAccountNumber),
+                transactionLogRandom);
+    }
+
+    /**
+     * @param userNumberAllocator    of the instance, leasing disjoint ranges
+     *                               from the other instances
+     * @param accountNumberAllocator the same for account numbers
+     */
+    public TransactionLogGenerator(IdAllocator userNumberAllocator,
+            IdAllocator accountNumberAllocator,
+            TransactionLogRandom transactionLogRandom) {
         this.objectMapper = new ObjectMapper();
-        this.userNumberSupplier = new AtomicInteger(initialUserNumber);
-        this.accountNumberSupplier = new AtomicInteger(initialAccountNumber);
-        this.userNumberAccountsMap = new ConcurrentHashMap<>();
+        this.transactionLogJsonCodec = new TransactionLogJsonCodec();
+        this.transactionLogRandom = transactionLogRandom;
+        this.userNumberAllocator = userNumberAllocator;
+        this.accountNumberAllocator = accountNumberAllocator;
+        this.userAccountIndex = new UserAccountIndex();
+        this.balanceLedger = new BalanceLedger();
+        this.transactionLogMetrics = TransactionLogMetrics.DISABLED;
+        this.workloadProfile = WorkloadProfile.DEFAULT;
+        this.logClock = LogClock.SYSTEM;
+        this.debugLogCounter = new AtomicLong();
+        this.unfundedCount = new LongAdder();
+    }
+
+    public void setTransactionLogMetrics(
+            TransactionLogMetrics transactionLogMetrics) {
+        this.transactionLogMetrics = transactionLogMetrics;
+    }
+
+    public void setWorkloadProfile(WorkloadProfile workloadProfile) {
+        this.workloadProfile = workloadProfile;
+    }
+
+    public WorkloadProfile getWorkloadProfile() {
+        return workloadProfile;
+    }
+
+    UserAccountIndex getUserAccountIndex() {
+        return userAccountIndex;
+    }
+
+    BalanceLedger getBalanceLedger() {
+        return balanceLedger;
+    }
+
+    IdAllocator getUserNumberAllocator() {
+        return userNumberAllocator;
+    }
+
+    IdAllocator getAccountNumberAllocator() {
+        return accountNumberAllocator;
+    }
+
+    public TransactionLogRandom getTransactionLogRandom() {
+        return transactionLogRandom;
+    }
+
+    public void setLogClock(LogClock logClock) {
+        this.logClock = logClock;
+    }
+
+    public LogClock getLogClock() {
+        return logClock;
+    }
+
+    /**
+     * Takes user numbers for users whose logs are generated later by
+     * {@link #generateNewUser(int, String)}.
+     */
+    public int[] allocateUserNumbers(int count) {
+        return userNumberAllocator.next(count);
+    }
+
+    /**
+     * Takes account numbers for accounts whose logs are generated later by
+     * {@link #generateOpeningAccount(int, int)}.
+     */
+    public int[] allocateAccountNumbers(int count) {
+        return accountNumberAllocator.next(count);
     }
 
     public TransactionLogInterface[] generateNewUserAndAccount(
             String... userNames) {
-        return Arrays.stream(userNames).parallel().map(this::generateNewUser)
-                .map(newUser -> new TransactionLogInterface[]{newUser,
-                        generateOpeningAccount(newUser.getUserNumber())})
-                .flatMap(Arrays::stream)
+        // numbers are taken before the parallel part so they follow the
+        // order of names
+        int[] userNumbers = allocateUserNumbers(userNames.length);
+        int[] accountNumbers = allocateAccountNumbers(userNames.length);
+        // seeded, the clock is read in the order of names as well
+        IntStream indexStream = IntStream.range(0, userNames.length);
+        return (transactionLogRandom.isSeeded() ? indexStream :
+                indexStream.parallel()).mapToObj(i -> {
+                    NewUser newUser = generateNewUser(userNumbers[i],
+                            userNames[i]);
+                    return new TransactionLogInterface[]{newUser,
+                            generateOpeningAccount(newUser.getUserNumber(),
+                                    accountNumbers[i])};
+                }).flatMap(Arrays::stream)
                 .toArray(TransactionLogInterface[]::new);
     }
 
+    /**
+     * Generates the users one after the other, so with a seeded
+     * {@link TransactionLogRandom} and a {@link SimulatedClock} the same
+     * names replay byte-identical logs, which the parallel methods do not.
+     */
     public TransactionLogInterface[] generateAbout100TransactionLogEach(
             String... userNames) {
         return Stream
                 .concat(Arrays.stream(generateNewUserAndAccount(userNames)),
-                        this.userNumberAccountsMap.keySet().stream()
+                        this.userAccountIndex.userNumbers().boxed()
                                 .map(this::generateAbout100TransactionLog)
                                 .flatMap(Arrays::stream))
                 .toArray(TransactionLogInterface[]::new);
@@ -61,131 +183,445 @@ public class TransactionLogGenerator {
     public void generateAbout100TransactionLogEach(
             Consumer<TransactionLogInterface> transactionLogConsumer,
             long delayMillis, String... userNames) {
-        Arrays.stream(generateNewUserAndAccount(userNames))
-                .peek(transactionLogConsumer)
+        generateAbout100TransactionLogEach(transactionLogConsumer,
+                RateController.unlimited(),
+                delayMillis > 0 ? 1000d / delayMillis : 0, userNames);
+    }
+
+    /**
+     * The user distribution of the workload profile scales the about 100
+     * logs and the rate of each user by its weight, the first users being
+     * the hottest, keeping about 100 per user on average.
+     */
+    public void generateAbout100TransactionLogEach(
+            Consumer<TransactionLogInterface> transactionLogConsumer,
+            RateController rateController, double eventsPerSecondPerUser,
+            String... userNames) {
+        // handed over in order before the parallel part, which would
+        // otherwise also run the consumer of these in parallel
+        TransactionLogInterface[] newUserAndAccountLogs =
+                generateNewUserAndAccount(userNames);
+        Arrays.stream(newUserAndAccountLogs).forEach(transactionLogConsumer);
+        int[] userNumbers = Arrays.stream(newUserAndAccountLogs)
+                .mapToInt(TransactionLogInterface::getUserNumber).distinct()
+                .toArray();
+        double[] userScales = buildUserScales(userNumbers.length);
+        IntStream.range(0, userNumbers.length).parallel().forEach(
+                i -> generateAbout100TransactionLog(transactionLogConsumer,
+                        rateController, RateController.ofEventsPerSecond(
+                                eventsPerSecondPerUser * userScales[i]),
+                        userNumbers[i], userScales[i]));
+    }
+
+    /**
+     * @return the weights of the user distribution over the ranks, scaled
+     * to an average of 1
+     */
+    private double[] buildUserScales(int userCount) {
+        double[] weights = workloadProfile.getUserDistribution()
+                .weights(userCount);
+        double sum = Arrays.stream(weights).sum();
+        return Arrays.stream(weights).map(weight -> weight * userCount / sum)
+                .toArray();
+    }
+
+    /**
+     * Creates the users, then generates eventCount logs, each for a user
+     * picked by the user distribution of the workload profile, the first
+     * users being the hottest. The logs are generated on the calling thread
+     * so those of a user keep their order.
+     */
+    public void generateWithWorkloadProfile(
+            Consumer<TransactionLogInterface> transactionLogConsumer,
+            RateController rateController, long eventCount,
+            String... userNames) {
+        TransactionLogInterface[] newUserAndAccountLogs =
+                generateNewUserAndAccount(userNames);
+        Arrays.stream(newUserAndAccountLogs).forEach(transactionLogConsumer);
+        int[] userNumbers = Arrays.stream(newUserAndAccountLogs)
+                .mapToInt(TransactionLogInterface::getUserNumber).distinct()
+                .toArray();
+        if (userNumbers.length == 0)
+            return;
+        AliasSampler userSampler =
+                workloadProfile.buildUserSampler(userNumbers.length);
+        SplitMix64 userRandom = this.transactionLogRandom.forCurrentThread();
+        for (long i = 0; i < eventCount; i++) {
+            rateController.acquire();
+            transactionLogConsumer.accept(generateRandomTransactionLog(
+                    userNumbers[KeyDistribution.sample(userSampler,
+                            userNumbers.length, userRandom)]));
+        }
+    }
+
+    /**
+     * Stamps the logs with the simulated clock from now on and fills its
+     * timeline as fast as the consumer takes them: the users are dealt to
+     * parallelism workers, each generating for users of its own picked by
+     * the user distribution of the workload profile, so the logs of a user
+     * come from one thread in timestamp order.
+     *
+     * @return the number of logs generated
+     */
+    public long backfill(
+            Consumer<TransactionLogInterface> transactionLogConsumer,
+            SimulatedClock simulatedClock, int parallelism,
+            String... userNames) {
+        setLogClock(simulatedClock);
+        TransactionLogInterface[] newUserAndAccountLogs =
+                generateNewUserAndAccount(userNames);
+        Arrays.stream(newUserAndAccountLogs).forEach(transactionLogConsumer);
+        int[] userNumbers = Arrays.stream(newUserAndAccountLogs)
                 .mapToInt(TransactionLogInterface::getUserNumber).distinct()
-                .parallel().forEach(
-                userNumber -> generateAbout100TransactionLog(
-                        transactionLogConsumer, delayMillis, userNumber));
+                .toArray();
+        int workerCount = Math.min(Math.max(1, parallelism),
+                userNumbers.length);
+        return newUserAndAccountLogs.length + IntStream.range(0, workerCount)
+                .parallel().mapToLong(worker -> backfillWorker(
+                        transactionLogConsumer, simulatedClock,
+                        IntStream.range(0, userNumbers.length)
+                                .filter(i -> i % workerCount == worker)
+                                .map(i -> userNumbers[i]).toArray()))
+                .sum();
+    }
+
+    /**
+     * @return a publisher generating eventCount logs for the users only as
+     * its subscriber requests them, keeping the order of every user's logs
+     * @see TransactionLogPublisher
+     */
+    public TransactionLogPublisher publisher(long eventCount,
+            int parallelism, String... userNames) {
+        return new TransactionLogPublisher(this, eventCount, parallelism,
+                userNames);
+    }
+
+    private long backfillWorker(
+            Consumer<TransactionLogInterface> transactionLogConsumer,
+            SimulatedClock simulatedClock, int[] userNumbers) {
+        AliasSampler userSampler =
+                workloadProfile.buildUserSampler(userNumbers.length);
+        SplitMix64 userRandom = this.transactionLogRandom.forCurrentThread();
+        long count = 0;
+        for (; !simulatedClock.isExhausted(); count++)
+            transactionLogConsumer.accept(generateRandomTransactionLog(
+                    userNumbers[KeyDistribution.sample(userSampler,
+                            userNumbers.length, userRandom)]));
+        return count;
     }
 
     public TransactionLogInterface[] generateAbout100TransactionLog(
             int userNumber) {
-        if (!this.userNumberAccountsMap.containsKey(userNumber))
+        if (!this.userAccountIndex.containsUser(userNumber))
             return logNotExistAndReturnNull("generateAbout100TransactionLog",
                     "userNumber", userNumber);
-        return IntStream.range(0, new Random().nextInt(110 - 90) + 90).mapToObj
-                (i -> generateRandomTransactionLog(userNumber))
-                .toArray(TransactionLogInterface[]::new);
+        SplitMix64 random = this.transactionLogRandom.forUser(userNumber);
+        try {
+            return IntStream.range(0, getRandomAbout100Count(random))
+                    .mapToObj(i -> generateRandomTransactionLog(userNumber,
+                            random)).toArray(TransactionLogInterface[]::new);
+        } finally {
+            this.transactionLogRandom.store(userNumber, random);
+        }
     }
 
     public void generateAbout100TransactionLog(
             Consumer<TransactionLogInterface> transactionLogConsumer,
             long delayMillis, int userNumber) {
-        if (!this.userNumberAccountsMap.containsKey(userNumber))
-            logNotExistAndReturnNull("generateAbout100TransactionLog",
-                    "userNumber", userNumber);
-        IntStream.range(0, new Random().nextInt(110 - 90) + 90).mapToObj
-                (i -> generateRandomTransactionLog(userNumber))
-                .peek(t -> sleep(delayMillis)).forEach(transactionLogConsumer);
+        generateAbout100TransactionLog(transactionLogConsumer,
+                RateController.unlimited(),
+                RateController.ofIntervalMillis(delayMillis), userNumber);
+    }
+
+    public void generateAbout100TransactionLog(
+            Consumer<TransactionLogInterface> transactionLogConsumer,
+            RateController rateController, RateController userRateController,
+            int userNumber) {
+        generateAbout100TransactionLog(transactionLogConsumer, rateController,
+                userRateController, userNumber, 1);
     }
 
-    private void sleep(long delayMillis) {
+    private void generateAbout100TransactionLog(
+            Consumer<TransactionLogInterface> transactionLogConsumer,
+            RateController rateController, RateController userRateController,
+            int userNumber, double countScale) {
+        if (!this.userAccountIndex.containsUser(userNumber)) {
+            logNotExistAndReturnNull("generateAbout100TransactionLog",
+                    "userNumber", userNumber);
+            return;
+        }
+        SplitMix64 random = this.transactionLogRandom.forUser(userNumber);
         try {
-            Thread.sleep(delayMillis);
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
+            IntStream.range(0, (int) Math
+                    .round(getRandomAbout100Count(random) * countScale))
+                    .peek(i -> acquire(rateController, userRateController))
+                    .mapToObj(i -> generateRandomTransactionLog(userNumber,
+                            random)).forEach(transactionLogConsumer);
+        } finally {
+            this.transactionLogRandom.store(userNumber, random);
         }
     }
 
+    private void acquire(RateController rateController,
+            RateController userRateController) {
+        // the per-user slot is awaited first so it never wastes a global slot
+        userRateController.acquire();
+        rateController.acquire();
+    }
+
     public TransactionLogInterface generateRandomTransactionLog(
             int userNumber) {
-        if (!this.userNumberAccountsMap.containsKey(userNumber))
+        if (!this.userAccountIndex.containsUser(userNumber))
             return logNotExistAndReturnNull("generateRandomTransactionLog",
                     "userNumber",
                     userNumber);
-        switch ((int) (Math.random() * 10)) {
-            case 0:
+        SplitMix64 random = this.transactionLogRandom.forUser(userNumber);
+        try {
+            return generateRandomTransactionLog(userNumber, random);
+        } finally {
+            this.transactionLogRandom.store(userNumber, random);
+        }
+    }
+
+    /**
+     * Resamples the type when a withdraw or a transfer finds no funded
+     * account, so low balances skip those events, counted as unfunded,
+     * instead of turning them into deposits; only after
+     * {@value #MAX_TYPE_RESAMPLES} skips in a row, as with a profile of no
+     * deposits, does it deposit.
+     */
+    private TransactionLogInterface generateRandomTransactionLog(
+            int userNumber, SplitMix64 random) {
+        for (int i = 0; i < MAX_TYPE_RESAMPLES; i++) {
+            TransactionLogInterface transactionLog =
+                    generateRandomTransactionLog(userNumber,
+                            workloadProfile.sampleTransactionType(random),
+                            random);
+            if (transactionLog != null)
+                return transactionLog;
+            this.unfundedCount.increment();
+        }
+        return generateDeposit(userNumber,
+                getRandomAccountNumber(userNumber, random),
+                getRandomAmount(random));
+    }
+
+    /**
+     * @return null when a withdraw or a transfer finds no funded account
+     */
+    private TransactionLogInterface generateRandomTransactionLog(
+            int userNumber, TransactionType transactionType,
+            SplitMix64 random) {
+        switch (transactionType) {
+            case OPENING_ACCOUNT:
                 return generateOpeningAccount(userNumber);
-            case 1:
-            case 2:
-            case 3:
-            case 4:
-            case 5:
+            case DEPOSIT:
                 return generateDeposit(userNumber,
-                        getRandomAccountNumber(userNumber),
-                        getRandomAmount());
-            case 6:
-            case 7:
-                return generateWithdraw(userNumber,
-                        getRandomAccountNumber(userNumber),
-                        getRandomAmount());
-            case 8:
-            case 9:
-                return generateTransfer(userNumber,
-                        getRandomAccountNumber(userNumber),
-                        getRandomAmount(), getRandomBankName(),
-                        getRandomAccountNumber(), getRandomUserName());
+                        getRandomAccountNumber(userNumber, random),
+                        getRandomAmount(random));
+            case WITHDRAW:
+                return generateWithdrawWithinBalance(userNumber,
+                        getRandomAmount(random), random);
+            case TRANSFER:
+                return generateTransferWithinBalance(userNumber,
+                        getRandomAmount(random), getRandomBankName(random),
+                        getRandomAccountNumber(random),
+                        getRandomUserName(random), random);
             default:
                 return null;
         }
     }
 
+    /**
+     * Withdraws as much of the amount as the balance allows from the first
+     * of up to {@value #MAX_FUNDING_ATTEMPTS} accounts picked which holds
+     * at least one unit.
+     *
+     * @return null when none of them does
+     */
+    private TransactionLogInterface generateWithdrawWithinBalance(
+            int userNumber, long amount, SplitMix64 random) {
+        for (int i = 0; i < MAX_FUNDING_ATTEMPTS; i++) {
+            int accountNumber = getRandomAccountNumber(userNumber, random);
+            long withdrawAmount = balanceLedger
+                    .withdrawUpTo(accountNumber, amount, AMOUNT_UNIT);
+            if (withdrawAmount > 0)
+                return logAndReturn(new Withdraw(userNumber,
+                        logClock.currentTimeMillis(), accountNumber,
+                        withdrawAmount));
+        }
+        return null;
+    }
+
+    /**
+     * @see #generateWithdrawWithinBalance(int, long, SplitMix64)
+     */
+    private TransactionLogInterface generateTransferWithinBalance(
+            int userNumber, long amount, String toBank, int toAccountNumber,
+            String toAccountUser, SplitMix64 random) {
+        for (int i = 0; i < MAX_FUNDING_ATTEMPTS; i++) {
+            int accountNumber = getRandomAccountNumber(userNumber, random);
+            long transferAmount = balanceLedger
+                    .withdrawUpTo(accountNumber, amount, AMOUNT_UNIT);
+            if (transferAmount > 0)
+                return logAndReturn(new Transfer(userNumber,
+                        logClock.currentTimeMillis(), accountNumber,
+                        transferAmount, toBank, toAccountNumber,
+                        toAccountUser));
+        }
+        return null;
+    }
+
+    /**
+     * @return the withdraws and transfers skipped as no account of the user
+     * was funded
+     */
+    public long getUnfundedCount() {
+        return unfundedCount.sum();
+    }
+
+    /**
+     * Removes the user with its accounts, balances and random stream; its
+     * numbers are not reused.
+     *
+     * @return false when the user does not exist
+     */
+    public boolean retireUser(int userNumber) {
+        int[] accountNumbers = this.userAccountIndex.removeUser(userNumber);
+        if (accountNumbers == null)
+            return false;
+        for (int accountNumber : accountNumbers)
+            this.balanceLedger.clear(accountNumber);
+        this.transactionLogRandom.evict(userNumber);
+        return true;
+    }
+
+    /**
+     * Gives back the memory of the chunks of 64K user or account numbers
+     * which were all retired.
+     *
+     * @return the number of chunks released
+     */
+    public int evictRetiredUsers() {
+        return this.userAccountIndex.releaseEmptyChunks(
+                this.transactionLogRandom::releaseChunkOf,
+                this.balanceLedger::releaseChunkOf);
+    }
+
+    public long getUserCount() {
+        return this.userAccountIndex.getUserCount();
+    }
+
+    public long getBalance(int accountNumber) {
+        return balanceLedger.getBalance(accountNumber);
+    }
+
+    public int getRandomAbout100Count() {
+        return getRandomAbout100Count(
+                this.transactionLogRandom.forCurrentThread());
+    }
+
+    public int getRandomAbout100Count(SplitMix64 random) {
+        return random.nextInt(90, 110);
+    }
+
     public String getRandomUserName() {
-        return userNames[new Random().nextInt(userNames.length)];
+        return getRandomUserName(this.transactionLogRandom.forCurrentThread());
+    }
+
+    public String getRandomUserName(SplitMix64 random) {
+        return USER_NAMES.get(random.nextInt(USER_NAMES.size()));
     }
 
     public int getRandomAccountNumber() {
-        return (int) (Math.random() * 1000000000);
+        return getRandomAccountNumber(
+                this.transactionLogRandom.forCurrentThread());
+    }
+
+    public int getRandomAccountNumber(SplitMix64 random) {
+        return random.nextInt(1000000000);
     }
 
     public String getRandomBankName() {
-        return bankNames[new Random().nextInt(bankNames.length)];
+        return getRandomBankName(this.transactionLogRandom.forCurrentThread());
+    }
+
+    public String getRandomBankName(SplitMix64 random) {
+        return BANK_NAMES.get(random.nextInt(BANK_NAMES.size()));
     }
 
     public long getRandomAmount() {
-        return (new Random().nextInt(1000 - 100) + 100) * 100;
+        return getRandomAmount(this.transactionLogRandom.forCurrentThread());
+    }
+
+    public long getRandomAmount(SplitMix64 random) {
+        return workloadProfile.sampleAmount(random);
     }
 
     public int getRandomAccountNumber(int userNumber) {
-        return getRandomAccountNumber(
-                this.userNumberAccountsMap.get(userNumber));
+        return getRandomAccountNumber(userNumber,
+                this.transactionLogRandom.forCurrentThread());
     }
 
-    public int getRandomAccountNumber(Set<Integer> accountNumberSet) {
-        return accountNumberSet.stream()
-                .skip(new Random().nextInt(accountNumberSet.size())).findFirst()
-                .orElseThrow(() -> new RuntimeException("Wrong Size !!!"));
+    public int getRandomAccountNumber(int userNumber, SplitMix64 random) {
+        return this.userAccountIndex
+                .selectAccountNumber(userNumber, accountCount ->
+                        workloadProfile.sampleAccountIndex(accountCount,
+                                random));
     }
 
     private <T extends TransactionLogInterface> T logAndReturn(
             T transactionLog) {
-        log.info("generateLog - {}", transactionLog);
+        transactionLogMetrics
+                .countGenerated(transactionLog.getTransactionType());
+        if (log.isDebugEnabled() && debugLogCounter.getAndIncrement() %
+                DEBUG_LOG_SAMPLE_EVERY == 0)
+            log.debug("generateLog - 1 of every {} - {}",
+                    DEBUG_LOG_SAMPLE_EVERY, transactionLog);
         return transactionLog;
     }
 
 
     public NewUser generateNewUser(String userName) {
-        NewUser newUser = new NewUser(this.userNumberSupplier.getAndIncrement(),
-                System.currentTimeMillis(), userName);
-        this.userNumberAccountsMap.computeIfAbsent(newUser.getUserNumber(),
-                i -> new ConcurrentSkipListSet<>());
+        return generateNewUser(this.userNumberAllocator.next(),
+                userName);
+    }
+
+    public NewUser generateNewUser(int userNumber, String userName) {
+        NewUser newUser = new NewUser(userNumber, logClock.currentTimeMillis(),
+                userName);
+        this.userAccountIndex.addUser(newUser.getUserNumber());
         return logAndReturn(newUser);
     }
 
     public OpeningAccount generateOpeningAccount(int userNumber) {
-        if (!this.userNumberAccountsMap.containsKey(userNumber))
+        if (!this.userAccountIndex.containsUser(userNumber))
             return logNotExistAndReturnNull("generateOpeningAccount",
                     "userNumber",
                     userNumber);
+        return generateOpeningAccount(userNumber,
+                this.accountNumberAllocator.next());
+    }
+
+    public OpeningAccount generateOpeningAccount(int userNumber,
+            int accountNumber) {
         OpeningAccount openingAccount =
-                new OpeningAccount(userNumber, System.currentTimeMillis(),
-                        this.accountNumberSupplier.getAndIncrement());
-        this.userNumberAccountsMap.get(userNumber).add(openingAccount
-                .getAccountNumber());
+                new OpeningAccount(userNumber, logClock.currentTimeMillis(),
+                        accountNumber);
+        this.userAccountIndex.addAccount(userNumber,
+                openingAccount.getAccountNumber());
         return logAndReturn(openingAccount);
     }
 
+    private <T> T logInsufficientBalanceAndReturnNull(String methodName,
+            int accountNumber, long amount) {
+        log.warn("{} Failure Occur !!! - Insufficient Balance = {} < {} of " +
+                        "accountNumber = {}", methodName,
+                balanceLedger.getBalance(accountNumber), amount,
+                accountNumber);
+        return null;
+    }
+
     private <T> T logNotExistAndReturnNull(
             String methodName, String numberName, int notExistNumber) {
         log.error("{} Failure Occur !!! - No {} = {}", methodName,
@@ -195,49 +631,59 @@ public class TransactionLogGenerator {
 
     public Deposit generateDeposit(int userNumber, int depositAccountNumber,
             long depositAmount) {
-        if (!this.userNumberAccountsMap.containsKey(userNumber))
+        if (!this.userAccountIndex.containsUser(userNumber))
             return logNotExistAndReturnNull("generateDeposit", "userNumber",
                     userNumber);
-        if (!this.userNumberAccountsMap.get(userNumber)
-                .contains(depositAccountNumber))
+        if (!this.userAccountIndex.containsAccount(userNumber,
+                depositAccountNumber))
             return logNotExistAndReturnNull("generateDeposit",
                     "depositAccountNumber",
                     depositAccountNumber);
-        return logAndReturn(new Deposit(userNumber, System.currentTimeMillis(),
+        balanceLedger.deposit(depositAccountNumber, depositAmount);
+        return logAndReturn(new Deposit(userNumber, logClock.currentTimeMillis(),
                 depositAccountNumber, depositAmount));
     }
 
     public Withdraw generateWithdraw(int userNumber, int withdrawAccountNumber,
             long withdrawAmount) {
-        if (!this.userNumberAccountsMap.containsKey(userNumber))
+        if (!this.userAccountIndex.containsUser(userNumber))
             return logNotExistAndReturnNull("generateWithdraw", "userNumber",
                     userNumber);
-        if (!this.userNumberAccountsMap.get(userNumber)
-                .contains(withdrawAccountNumber))
+        if (!this.userAccountIndex.containsAccount(userNumber,
+                withdrawAccountNumber))
             return logNotExistAndReturnNull("generateWithdraw",
                     "withdrawAccountNumber",
                     withdrawAccountNumber);
-        return logAndReturn(new Withdraw(userNumber, System.currentTimeMillis(),
+        if (!balanceLedger.tryWithdraw(withdrawAccountNumber, withdrawAmount))
+            return logInsufficientBalanceAndReturnNull("generateWithdraw",
+                    withdrawAccountNumber, withdrawAmount);
+        return logAndReturn(new Withdraw(userNumber, logClock.currentTimeMillis(),
                 withdrawAccountNumber, withdrawAmount));
     }
 
     public Transfer generateTransfer(int userNumber, int transferAccountNumber,
             long transferAmount, String toBank, int toAccountNumber,
             String toAccountUser) {
-        if (!this.userNumberAccountsMap.containsKey(userNumber))
+        if (!this.userAccountIndex.containsUser(userNumber))
             return logNotExistAndReturnNull("generateTransfer", "userNumber",
                     userNumber);
-        if (!this.userNumberAccountsMap.get(userNumber)
-                .contains(transferAccountNumber))
+        if (!this.userAccountIndex.containsAccount(userNumber,
+                transferAccountNumber))
             return logNotExistAndReturnNull("generateTransfer",
                     "transferAccountNumber",
                     transferAccountNumber);
-        return logAndReturn(new Transfer(userNumber, System.currentTimeMillis(),
+        if (!balanceLedger.tryWithdraw(transferAccountNumber, transferAmount))
+            return logInsufficientBalanceAndReturnNull("generateTransfer",
+                    transferAccountNumber, transferAmount);
+        return logAndReturn(new Transfer(userNumber, logClock.currentTimeMillis(),
                 transferAccountNumber, transferAmount, toBank, toAccountNumber,
                 toAccountUser));
     }
 
     public String toJsonStringLog(Object object) {
+        if (object instanceof TransactionLogInterface)
+            return transactionLogJsonCodec
+                    .encodeToString((TransactionLogInterface) object);
         try {
             return objectMapper.writeValueAsString(object);
         } catch (JsonProcessingException e) {
@@ -278,9 +724,7 @@ public class TransactionLogGenerator {
     public TransactionLogInterface deserializeLogWithJsonString(
             String jsonString) {
         try {
-            return deserializeLogWithJsonObject(objectMapper
-                    .readValue(jsonString, new TypeReference<Map<String,
-                            Object>>() {}));
+            return transactionLogJsonCodec.decode(jsonString);
         } catch (IOException e) {
             log.error("deserializeLogWithJsonString({})", jsonString, e);
             return null;
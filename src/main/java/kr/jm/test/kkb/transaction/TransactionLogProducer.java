@@ -1,64 +1,203 @@
 package kr.jm.test.kkb.transaction;
 
-import com.fasterxml.jackson.databind.DeserializationFeature;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import kr.jm.test.kkb.output.LineFileWriter;
-import kr.jm.test.kkb.output.StringKafkaProducer;
+import kr.jm.test.kkb.metrics.TransactionLogMetrics;
+import kr.jm.test.kkb.output.AdaptiveBatchingController;
+import kr.jm.test.kkb.output.ArchiveOutboxShipper;
+import kr.jm.test.kkb.output.AsyncKafkaSender;
+import kr.jm.test.kkb.output.BytesKafkaProducer;
+import kr.jm.test.kkb.output.KafkaProducerProperties;
+import kr.jm.test.kkb.output.LineWriterInterface;
+import kr.jm.test.kkb.output.SegmentedArchiveWriter;
+import kr.jm.test.kkb.transaction.codec.LogFormat;
+import kr.jm.test.kkb.transaction.flow.ConsumerSubscriber;
+import kr.jm.test.kkb.transaction.flow.TransactionLogPublisher;
+import kr.jm.test.kkb.transaction.id.IdAllocator;
 import kr.jm.test.kkb.transaction.log.TransactionLogInterface;
+import kr.jm.test.kkb.transaction.random.TransactionLogRandom;
+import kr.jm.test.kkb.transaction.schedule.RateController;
+import kr.jm.test.kkb.transaction.schedule.SimulatedClock;
+import kr.jm.test.kkb.transaction.schedule.UserSimulationEngine;
+import kr.jm.test.kkb.transaction.sink.ArchiveSink;
+import kr.jm.test.kkb.transaction.sink.ConsoleSink;
+import kr.jm.test.kkb.transaction.sink.KafkaSink;
+import kr.jm.test.kkb.transaction.sink.SinkFanOut;
+import kr.jm.test.kkb.transaction.workload.WorkloadProfile;
+import org.apache.kafka.clients.producer.Producer;
 
-import java.io.IOException;
 import java.nio.file.FileSystems;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntFunction;
 
 public class TransactionLogProducer implements AutoCloseable {
 
+    public static final String BACKFILL_FROM_PROPERTY = "kkb.backfill.from";
+    public static final String BACKFILL_TO_PROPERTY = "kkb.backfill.to";
+    public static final String BACKFILL_PARALLELISM_PROPERTY =
+            "kkb.backfill.parallelism";
+    public static final String OUTBOX_PROPERTY = "kkb.outbox";
     private static final org.slf4j.Logger log =
             org.slf4j.LoggerFactory.getLogger(TransactionLogProducer.class);
+    private static final int SINK_RING_CAPACITY = 8192;
 
-    private ObjectMapper objectMapper;
     private TransactionLogGenerator transactionLogGenerator;
-    private LineFileWriter lineFileWriter;
-    private StringKafkaProducer stringKafkaProducer;
+    private LogFormat kafkaLogFormat;
+    private LogFormat archiveLogFormat;
+    private AsyncKafkaSender asyncKafkaSender;
+    private Optional<AdaptiveBatchingController> adaptiveBatchingController;
+    private Optional<GeneratorCheckpoint> generatorCheckpoint;
+    private Consumer<TransactionLogInterface> transactionLogConsumer;
+    private ShardedPipeline shardedPipeline;
+    private SinkFanOut sinkFanOut;
+    private List<SinkFanOut> shardSinkFanOutList;
+    private boolean outbox;
+    private List<ArchiveOutboxShipper> outboxShipperList;
+    private int consoleSampleEvery;
+    private TransactionLogMetrics transactionLogMetrics;
 
     public TransactionLogProducer(String bootstrapServers,
             String defaultTopic) {
-        this.objectMapper = new ObjectMapper()
-                .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
-                .enable(DeserializationFeature.READ_UNKNOWN_ENUM_VALUES_AS_NULL);
-        this.transactionLogGenerator = new TransactionLogGenerator(100,
-                12345678);
-        Path archiveFilePath = FileSystems.getDefault().getPath("archive.log")
-                .toAbsolutePath();
-        try {
-            Files.deleteIfExists(archiveFilePath);
-            Files.createFile(archiveFilePath);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        this.lineFileWriter =
-                new LineFileWriter(archiveFilePath);
-        this.stringKafkaProducer =
-                new StringKafkaProducer(bootstrapServers, defaultTopic);
+        this(bootstrapServers, defaultTopic, TransactionLogRandom.unseeded());
+    }
+
+    public TransactionLogProducer(String bootstrapServers,
+            String defaultTopic, TransactionLogRandom transactionLogRandom) {
+        this(bootstrapServers, defaultTopic, transactionLogRandom,
+                LogFormat.JSON, LogFormat.JSON);
+    }
+
+    public TransactionLogProducer(String bootstrapServers,
+            String defaultTopic, TransactionLogRandom transactionLogRandom,
+            LogFormat kafkaLogFormat, LogFormat archiveLogFormat) {
+        this(bootstrapServers, defaultTopic, transactionLogRandom,
+                SegmentedArchiveWriter.fromSystemProperties(
+                        getDefaultArchiveDirectory(), "archive",
+                        archiveLogFormat.getRecordFraming()),
+                kafkaLogFormat, archiveLogFormat);
+    }
+
+    public TransactionLogProducer(String bootstrapServers,
+            String defaultTopic, TransactionLogRandom transactionLogRandom,
+            LineWriterInterface lineFileWriter) {
+        this(bootstrapServers, defaultTopic, transactionLogRandom,
+                lineFileWriter, LogFormat.JSON, LogFormat.JSON);
+    }
+
+    /**
+     * @param lineFileWriter must frame the records the way the archive
+     *                       format needs, see
+     *                       {@link LogFormat#getRecordFraming()}
+     */
+    public TransactionLogProducer(String bootstrapServers,
+            String defaultTopic, TransactionLogRandom transactionLogRandom,
+            LineWriterInterface lineFileWriter, LogFormat kafkaLogFormat,
+            LogFormat archiveLogFormat) {
+        this(producerProperties -> new BytesKafkaProducer(producerProperties,
+                        defaultTopic), bootstrapServers, defaultTopic,
+                transactionLogRandom, lineFileWriter, kafkaLogFormat,
+                archiveLogFormat);
+    }
+
+    /**
+     * @param producerFactory builds the Kafka producer from the
+     *                        {@link KafkaProducerProperties}, also when the
+     *                        {@link AdaptiveBatchingController} replaces it
+     */
+    public TransactionLogProducer(
+            Function<Properties, Producer<String, byte[]>> producerFactory,
+            String bootstrapServers, String defaultTopic,
+            TransactionLogRandom transactionLogRandom,
+            LineWriterInterface lineFileWriter, LogFormat kafkaLogFormat,
+            LogFormat archiveLogFormat) {
+        this.transactionLogMetrics =
+                TransactionLogMetrics.fromSystemProperties();
+        this.transactionLogGenerator = new TransactionLogGenerator(
+                IdAllocator.fromSystemProperties("user-number", 100),
+                IdAllocator.fromSystemProperties("account-number", 12345678),
+                transactionLogRandom);
+        transactionLogGenerator.setTransactionLogMetrics(transactionLogMetrics);
+        this.generatorCheckpoint = GeneratorCheckpoint
+                .fromSystemProperties(transactionLogGenerator);
+        this.kafkaLogFormat = kafkaLogFormat;
+        this.archiveLogFormat = archiveLogFormat;
+        Properties kafkaProperties =
+                KafkaProducerProperties.load(bootstrapServers);
+        Properties producerProperties =
+                KafkaProducerProperties.producerPropertiesOf(kafkaProperties);
+        this.asyncKafkaSender = new AsyncKafkaSender(
+                producerFactory.apply(producerProperties), defaultTopic,
+                producerProperties);
+        this.adaptiveBatchingController = AdaptiveBatchingController
+                .startFromProperties(asyncKafkaSender, kafkaProperties,
+                        producerFactory);
+        transactionLogMetrics.bindAckLatencyMicrosHistogram(
+                asyncKafkaSender.getAckLatencyMicrosHistogram());
+        transactionLogMetrics.registerQueueDepth("kafka.inFlight",
+                asyncKafkaSender::getInFlightRecords);
+        this.outbox = Boolean.getBoolean(OUTBOX_PROPERTY);
+        this.outboxShipperList = new ArrayList<>();
+        this.sinkFanOut = buildSinkFanOut("", lineFileWriter);
+        this.transactionLogConsumer = sinkFanOut;
+        this.shardSinkFanOutList = new ArrayList<>();
     }
 
     public static void main(String[] args) {
         if (args.length < 3) {
             String message =
                     "Wrong Args !!! - Args: <kafkaConnect> <topic> " +
-                            "<userNamesAsCSV> [delayMillis:default=100]";
+                            "<userNamesAsCSV> " +
+                            "[targetEventsPerSecond:default=10*users] " +
+                            "[kafkaLogFormat:default=JSON] " +
+                            "[archiveLogFormat:default=JSON] " +
+                            "[shardCount:default=0=off] " +
+                            "[consoleSampleEvery:default=1,0=off]\n" +
+                            "  -Dkkb.seed=<long> repeats the random " +
+                            "decisions of every user, a random seed being " +
+                            "logged when unset\n" +
+                            "  byte-identical logs also take the simulated " +
+                            "clock of -Dkkb.backfill.from and " +
+                            "-Dkkb.backfill.to with " +
+                            "-Dkkb.backfill.parallelism=1," +
+                            " as parallel workers take account numbers " +
+                            "and read the clock in thread order";
             System.err.println(message);
         }
 
         String bootstrapServers = args[0];
         String defaultTopic = args[1];
         String[] userNames = args[2].split(",");
-        long delayMillis = args.length > 3 ? Long.valueOf(args[3]) : 100;
+        double targetEventsPerSecond = args.length > 3 ?
+                Double.valueOf(args[3]) : 10d * userNames.length;
+        LogFormat kafkaLogFormat = args.length > 4 ?
+                LogFormat.valueOf(args[4]) : LogFormat.JSON;
+        LogFormat archiveLogFormat = args.length > 5 ?
+                LogFormat.valueOf(args[5]) : LogFormat.JSON;
+        int shardCount = args.length > 6 ? Integer.valueOf(args[6]) : 0;
+        int consoleSampleEvery =
+                args.length > 7 ? Integer.valueOf(args[7]) : 1;
+        WorkloadProfile workloadProfile =
+                WorkloadProfile.fromSystemProperties();
+        RateController rateController = RateController.ofEventsPerSecond(
+                targetEventsPerSecond, workloadProfile.getRateShape());
+        SimulatedClock simulatedClock =
+                buildBackfillClock(targetEventsPerSecond);
+        int backfillParallelism = Integer.getInteger(
+                BACKFILL_PARALLELISM_PROPERTY,
+                Runtime.getRuntime().availableProcessors());
+        TransactionLogRandom transactionLogRandom =
+                TransactionLogRandom.fromSystemProperties();
+        Object progress =
+                simulatedClock == null ? rateController : simulatedClock;
 
         ExecutorService executorService = Executors.newSingleThreadExecutor();
 
@@ -66,19 +205,30 @@ public class TransactionLogProducer implements AutoCloseable {
 
         executorService.execute(() -> {
             TransactionLogProducer transactionLogProducer =
-                    new TransactionLogProducer(bootstrapServers, defaultTopic);
+                    new TransactionLogProducer(bootstrapServers, defaultTopic,
+                            transactionLogRandom, kafkaLogFormat,
+                            archiveLogFormat);
+            if (consoleSampleEvery > 0)
+                transactionLogProducer.enableConsole(consoleSampleEvery);
+            if (shardCount > 0)
+                transactionLogProducer.enableSharding(shardCount);
+            transactionLogProducer.setWorkloadProfile(workloadProfile);
             System.out.println(
                     LocalDateTime
                             .ofInstant(Instant.ofEpochMilli(startTimestamp),
                                     ZoneId.systemDefault()) +
                             " TransactionLogGenerator Start !!!" +
-                            " - " +
+                            " - " + workloadProfile + " " +
                             bootstrapServers + " " + defaultTopic + " " +
                             args[2] +
                             " " +
-                            delayMillis + "ms");
-            transactionLogProducer
-                    .generateTransactionLog(delayMillis, userNames);
+                            targetEventsPerSecond + "/s");
+            if (simulatedClock != null)
+                transactionLogProducer.backfill(simulatedClock,
+                        backfillParallelism, userNames);
+            else
+                transactionLogProducer
+                        .generateTransactionLog(rateController, userNames);
             transactionLogProducer.close();
         });
         executorService.shutdown();
@@ -88,46 +238,259 @@ public class TransactionLogProducer implements AutoCloseable {
             } catch (InterruptedException e) {
                 e.printStackTrace();
             }
-            System.out.println(System.currentTimeMillis());
+            System.out.println(System.currentTimeMillis() + " " + progress);
         }
         long stopTimestamp = System.currentTimeMillis();
         System.out.println(
                 LocalDateTime.ofInstant(Instant.ofEpochMilli(stopTimestamp),
                         ZoneId.systemDefault()) +
                         " TransactionLogGenerator Stop !!! - tookMills = " +
-                        (stopTimestamp - startTimestamp));
+                        (stopTimestamp - startTimestamp) + " - " + progress);
+    }
+
+    /**
+     * @return the clock of the {@code kkb.backfill.from} to
+     * {@code kkb.backfill.to} ISO-8601 instants at the simulated rate, null
+     * when they are not both set
+     */
+    private static SimulatedClock buildBackfillClock(
+            double simulatedEventsPerSecond) {
+        String from = System.getProperty(BACKFILL_FROM_PROPERTY);
+        String to = System.getProperty(BACKFILL_TO_PROPERTY);
+        return from == null || to == null ? null :
+                new SimulatedClock(Instant.parse(from).toEpochMilli(),
+                        Instant.parse(to).toEpochMilli(),
+                        simulatedEventsPerSecond);
+    }
+
+    private static Path getDefaultArchiveDirectory() {
+        return FileSystems.getDefault().getPath("archive").toAbsolutePath();
+    }
+
+    /**
+     * Fans out to an {@link ArchiveSink} and a {@link KafkaSink}, which the
+     * producer waits for when they fall a ring behind, and the console
+     * when enabled. With {@code kkb.outbox} an
+     * {@link ArchiveOutboxShipper} ships the archive instead of the
+     * {@link KafkaSink}.
+     */
+    private SinkFanOut buildSinkFanOut(String namePrefix,
+            LineWriterInterface lineWriter) {
+        SinkFanOut sinkFanOut = new SinkFanOut(SINK_RING_CAPACITY)
+                .addSink(new ArchiveSink(namePrefix + "archive",
+                        archiveLogFormat, lineWriter, transactionLogMetrics),
+                        SinkFanOut.OverflowPolicy.BLOCK);
+        if (outbox)
+            startOutboxShipper(namePrefix, lineWriter);
+        else
+            sinkFanOut.addSink(new KafkaSink(namePrefix + "kafka",
+                            kafkaLogFormat, asyncKafkaSender,
+                            transactionLogMetrics),
+                    SinkFanOut.OverflowPolicy.BLOCK);
+        if (consoleSampleEvery > 0)
+            sinkFanOut.addSink(new ConsoleSink(namePrefix + "console",
+                    System.out, consoleSampleEvery),
+                    SinkFanOut.OverflowPolicy.DROP);
+        registerSinkLags(sinkFanOut);
+        return sinkFanOut;
+    }
+
+    /**
+     * The archive records go to Kafka as they are, so Kafka gets the
+     * archive format.
+     */
+    private void startOutboxShipper(String namePrefix,
+            LineWriterInterface lineWriter) {
+        if (!(lineWriter instanceof SegmentedArchiveWriter))
+            throw new IllegalArgumentException(
+                    "Wrong Outbox Archive !!! - " + lineWriter);
+        if (kafkaLogFormat != archiveLogFormat)
+            log.warn("startOutboxShipper() - ships {} instead of {}",
+                    archiveLogFormat, kafkaLogFormat);
+        ArchiveOutboxShipper archiveOutboxShipper = new ArchiveOutboxShipper(
+                (SegmentedArchiveWriter) lineWriter, asyncKafkaSender,
+                archiveLogFormat::extractUserNumber);
+        outboxShipperList.add(archiveOutboxShipper);
+        transactionLogMetrics.registerQueueDepth(namePrefix + "outbox.unacked",
+                archiveOutboxShipper::getUnackedRecords);
+    }
+
+    private void registerSinkLags(SinkFanOut sinkFanOut) {
+        sinkFanOut.getSinkMetricsList().forEach(sinkMetrics ->
+                transactionLogMetrics.registerQueueDepth(
+                        "sink." + sinkMetrics.getName(),
+                        sinkMetrics::getLag));
+    }
+
+    /**
+     * Prints every {@code sampleEvery}th record as JSON to stdout, dropping
+     * what the console can not keep up with. Call it before
+     * {@link #enableSharding(int)} to print the records of the shards too.
+     */
+    public synchronized void enableConsole(int sampleEvery) {
+        if (consoleSampleEvery > 0)
+            throw new IllegalStateException("Already Console Enabled !!!");
+        this.consoleSampleEvery = sampleEvery;
+        sinkFanOut.addSink(new ConsoleSink(sampleEvery),
+                SinkFanOut.OverflowPolicy.DROP);
+        registerSinkLags(sinkFanOut);
+    }
+
+    public SinkFanOut getSinkFanOut() {
+        return sinkFanOut;
+    }
+
+    public AsyncKafkaSender getAsyncKafkaSender() {
+        return asyncKafkaSender;
+    }
+
+    public List<ArchiveOutboxShipper> getOutboxShipperList() {
+        return outboxShipperList;
+    }
+
+    public TransactionLogMetrics getTransactionLogMetrics() {
+        return transactionLogMetrics;
+    }
+
+    /**
+     * Shards into {@code archive/shard-<index>} segment directories.
+     *
+     * @see #enableSharding(int, IntFunction)
+     */
+    public ShardedPipeline enableSharding(int shardCount) {
+        return enableSharding(shardCount, shardIndex ->
+                SegmentedArchiveWriter.fromSystemProperties(
+                        getDefaultArchiveDirectory()
+                                .resolve("shard-" + shardIndex), "archive",
+                        archiveLogFormat.getRecordFraming()));
+    }
+
+    /**
+     * Hands the generated logs to a {@link ShardedPipeline} whose shards
+     * publish to their own {@link SinkFanOut}, archiving to their own
+     * writer, with one shard per fixed set of partitions of the topic.
+     *
+     * @param shardLineWriterFactory builds the archive writer of every shard
+     *                               index
+     */
+    public synchronized ShardedPipeline enableSharding(int shardCount,
+            IntFunction<LineWriterInterface> shardLineWriterFactory) {
+        if (shardedPipeline != null)
+            throw new IllegalStateException("Already Sharded !!!");
+        int numPartitions = asyncKafkaSender.getProducer()
+                .partitionsFor(asyncKafkaSender.getDefaultTopic()).size();
+        this.shardedPipeline = new ShardedPipeline(shardCount, numPartitions,
+                4096, shardIndex -> {
+            SinkFanOut shardSinkFanOut = buildSinkFanOut(
+                    "shard-" + shardIndex + "-",
+                    shardLineWriterFactory.apply(shardIndex));
+            shardSinkFanOutList.add(shardSinkFanOut);
+            return shardSinkFanOut;
+        });
+        transactionLogMetrics.registerQueueDepth("shards.queued",
+                shardedPipeline::getQueuedCount);
+        this.transactionLogConsumer = shardedPipeline;
+        return shardedPipeline;
     }
 
     public void generateTransactionLog(long delayMillis, String... userNames) {
         this.transactionLogGenerator
-                .generateAbout100TransactionLogEach(this::writeAndSend,
+                .generateAbout100TransactionLogEach(transactionLogConsumer,
                         delayMillis, userNames);
     }
 
-    public void writeAndSend(
-            TransactionLogInterface transactionLog) {
-        String jsonTransactionLog = buildJsonString(transactionLog);
-        log.info(jsonTransactionLog);
-        System.out.println(jsonTransactionLog);
-        this.lineFileWriter.appendLine(jsonTransactionLog);
-        this.stringKafkaProducer
-                .sendStringData(String.valueOf(transactionLog.getUserNumber()),
-                        jsonTransactionLog);
-    }
-
-    private String buildJsonString(Object dataObject) {
-        try {
-            return objectMapper.writeValueAsString(dataObject);
-        } catch (Exception e) {
-            log.error("buildJSonString({})", dataObject, e);
-            return null;
+    public void generateTransactionLog(RateController rateController,
+            String... userNames) {
+        this.transactionLogGenerator
+                .generateAbout100TransactionLogEach(transactionLogConsumer,
+                        rateController, 0, userNames);
+    }
+
+    /**
+     * Generates eventCount logs for users picked by the user distribution
+     * of the workload profile.
+     *
+     * @see TransactionLogGenerator#generateWithWorkloadProfile
+     */
+    public void generateTransactionLog(RateController rateController,
+            long eventCount, String... userNames) {
+        this.transactionLogGenerator
+                .generateWithWorkloadProfile(transactionLogConsumer,
+                        rateController, eventCount, userNames);
+    }
+
+    /**
+     * Generates eventCount logs as fast as the sinks take them, requesting
+     * more from a {@link TransactionLogPublisher} only as they are consumed.
+     *
+     * @return the number of logs handed to the sinks
+     */
+    public long publishTransactionLog(long eventCount, int parallelism,
+            String... userNames) {
+        ConsumerSubscriber<TransactionLogInterface> consumerSubscriber =
+                new ConsumerSubscriber<>(transactionLogConsumer,
+                        SINK_RING_CAPACITY);
+        this.transactionLogGenerator.publisher(eventCount, parallelism,
+                userNames).subscribe(consumerSubscriber);
+        return consumerSubscriber.getCompletion().join();
+    }
+
+    public void setWorkloadProfile(WorkloadProfile workloadProfile) {
+        this.transactionLogGenerator.setWorkloadProfile(workloadProfile);
+    }
+
+    /**
+     * @see TransactionLogGenerator#backfill
+     */
+    public long backfill(SimulatedClock simulatedClock, int parallelism,
+            String... userNames) {
+        return this.transactionLogGenerator
+                .backfill(transactionLogConsumer, simulatedClock,
+                        parallelism, userNames);
+    }
+
+    /**
+     * @see SoakRunner#run(RateController, long, long)
+     */
+    public SoakRunner.IntervalStats soak(int targetActiveUsers,
+            double arrivalsPerSecond, double retirementsPerSecond,
+            RateController rateController, long durationMillis,
+            long reportIntervalMillis) {
+        return new SoakRunner(this.transactionLogGenerator,
+                transactionLogConsumer, targetActiveUsers, arrivalsPerSecond,
+                retirementsPerSecond, Math.min(targetActiveUsers,
+                Runtime.getRuntime().availableProcessors()))
+                .run(rateController, durationMillis, reportIntervalMillis);
+    }
+
+    public void simulateTransactionLog(long meanThinkTimeMillis,
+            String... userNames) {
+        try (UserSimulationEngine userSimulationEngine =
+                new UserSimulationEngine(this.transactionLogGenerator)) {
+            userSimulationEngine.simulate(transactionLogConsumer,
+                    meanThinkTimeMillis, userNames).join();
         }
     }
 
+    public void writeAndSend(
+            TransactionLogInterface transactionLog) {
+        sinkFanOut.publish(transactionLog);
+    }
 
     @Override
     public void close() {
-        this.lineFileWriter.close();
-        this.stringKafkaProducer.close();
+        if (this.shardedPipeline != null) {
+            this.shardedPipeline.close();
+            this.shardSinkFanOutList.forEach(SinkFanOut::close);
+        }
+        this.sinkFanOut.close();
+        this.outboxShipperList.forEach(ArchiveOutboxShipper::close);
+        this.adaptiveBatchingController
+                .ifPresent(AdaptiveBatchingController::close);
+        this.asyncKafkaSender.close();
+        this.transactionLogMetrics.close();
+        this.generatorCheckpoint.ifPresent(GeneratorCheckpoint::close);
+        this.transactionLogGenerator.getUserNumberAllocator().close();
+        this.transactionLogGenerator.getAccountNumberAllocator().close();
     }
 }
@@ -0,0 +1,302 @@
+package kr.jm.test.kkb.transaction;
+
+import kr.jm.test.kkb.output.AdaptiveBatchingController;
+import kr.jm.test.kkb.output.AsyncKafkaSender;
+import kr.jm.test.kkb.output.BytesKafkaProducer;
+import kr.jm.test.kkb.output.KafkaProducerProperties;
+import kr.jm.test.kkb.output.MappedLineScanner;
+import kr.jm.test.kkb.output.SegmentedArchiveReader;
+import kr.jm.test.kkb.transaction.codec.LogFormat;
+import kr.jm.test.kkb.transaction.log.TransactionLogInterface;
+import kr.jm.test.kkb.transaction.log.TransactionType;
+import kr.jm.test.kkb.transaction.schedule.RateController;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Re-publishes an archive keyed by userNumber, either on the original
+ * timeline scaled by a speed multiplier or as fast as possible.
+ * <p>
+ * Records come from {@link MappedLineScanner}; only the userNumber and
+ * logTimestamp fields are looked up in the raw bytes, and a record is
+ * decoded only when a filter has to see it. Every record is intended to be
+ * sent at {@code start + (logTimestamp - firstLogTimestamp) / speed}, and
+ * how late it actually went out is accounted as lag.
+ */
+public class TransactionLogReplayer {
+
+    private static final org.slf4j.Logger log =
+            org.slf4j.LoggerFactory.getLogger(TransactionLogReplayer.class);
+    private static final long NOT_STARTED = Long.MIN_VALUE;
+
+    private final BiConsumer<String, byte[]> keyedBytesConsumer;
+    private final double speed;
+    private final Predicate<TransactionLogInterface> transactionLogFilter;
+    private final LogFormat logFormat;
+    private final LongAdder replayedCount;
+    private final LongAdder filteredCount;
+    private final LongAdder skippedCount;
+    private final LongAdder lagNanosSum;
+    private final AtomicLong maxLagNanos;
+    private volatile long currentLagNanos;
+    private volatile long startNanos;
+    private volatile long firstLogTimestamp;
+    private volatile long lastLogTimestamp;
+
+    /**
+     * @param speed 1 for the original timeline, 2 for twice as fast, 0 or
+     *              less for as fast as possible
+     */
+    public TransactionLogReplayer(BiConsumer<String, byte[]> keyedBytesConsumer,
+            double speed) {
+        this(keyedBytesConsumer, speed, null);
+    }
+
+    /**
+     * @param transactionLogFilter null to replay every record without
+     *                             decoding it
+     */
+    public TransactionLogReplayer(BiConsumer<String, byte[]> keyedBytesConsumer,
+            double speed,
+            Predicate<TransactionLogInterface> transactionLogFilter) {
+        this(keyedBytesConsumer, speed, transactionLogFilter, LogFormat.JSON);
+    }
+
+    /**
+     * @param logFormat format of the archive, records are sent as they are
+     */
+    public TransactionLogReplayer(BiConsumer<String, byte[]> keyedBytesConsumer,
+            double speed,
+            Predicate<TransactionLogInterface> transactionLogFilter,
+            LogFormat logFormat) {
+        this.keyedBytesConsumer = keyedBytesConsumer;
+        this.speed = speed;
+        this.transactionLogFilter = transactionLogFilter;
+        this.logFormat = logFormat;
+        this.replayedCount = new LongAdder();
+        this.filteredCount = new LongAdder();
+        this.skippedCount = new LongAdder();
+        this.lagNanosSum = new LongAdder();
+        this.maxLagNanos = new AtomicLong();
+        this.startNanos = NOT_STARTED;
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 3) {
+            String message =
+                    "Wrong Args !!! - Args: <kafkaConnect> <topic> " +
+                            "<archiveFileOrDirectory> " +
+                            "[speed:default=1,0=max] " +
+                            "[transactionTypesAsCSV:default=all] " +
+                            "[logFormat:default=JSON]";
+            System.err.println(message);
+            return;
+        }
+        String bootstrapServers = args[0];
+        String defaultTopic = args[1];
+        List<Path> archivePaths = resolveArchivePaths(Paths.get(args[2]));
+        double speed = args.length > 3 ? Double.valueOf(args[3]) : 1d;
+        Predicate<TransactionLogInterface> transactionLogFilter =
+                args.length > 4 && !"all".equals(args[4]) ?
+                        buildTransactionTypeFilter(args[4]) : null;
+        LogFormat logFormat = args.length > 5 ? LogFormat.valueOf(args[5]) :
+                LogFormat.JSON;
+
+        Properties kafkaProperties =
+                KafkaProducerProperties.load(bootstrapServers);
+        AsyncKafkaSender asyncKafkaSender = new AsyncKafkaSender(
+                new BytesKafkaProducer(KafkaProducerProperties
+                        .producerPropertiesOf(kafkaProperties), defaultTopic));
+        Optional<AdaptiveBatchingController> adaptiveBatchingController =
+                AdaptiveBatchingController.startFromProperties(
+                        asyncKafkaSender, kafkaProperties,
+                        producerProperties -> new BytesKafkaProducer(
+                                producerProperties, defaultTopic));
+        TransactionLogReplayer transactionLogReplayer =
+                new TransactionLogReplayer(asyncKafkaSender::send,
+                        speed, transactionLogFilter, logFormat);
+        System.out.println(LocalDateTime.now() +
+                " TransactionLogReplayer Start !!! - " + bootstrapServers +
+                " " + defaultTopic + " " + archivePaths + " speed=" + speed);
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        executorService.execute(() -> {
+            transactionLogReplayer.replay(archivePaths);
+            adaptiveBatchingController
+                    .ifPresent(AdaptiveBatchingController::close);
+            asyncKafkaSender.close();
+        });
+        executorService.shutdown();
+        try {
+            while (!executorService.awaitTermination(1, TimeUnit.SECONDS))
+                System.out.println(System.currentTimeMillis() + " " +
+                        transactionLogReplayer.getSummary());
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+        System.out.println(LocalDateTime.now() +
+                " TransactionLogReplayer Stop !!! - " +
+                transactionLogReplayer.getSummary() + " - " +
+                asyncKafkaSender.getSummary());
+    }
+
+    /**
+     * @return the segments in order for a segmented archive directory,
+     * otherwise the file itself
+     */
+    public static List<Path> resolveArchivePaths(Path archivePath) {
+        if (!Files.exists(archivePath))
+            throw new RuntimeException("No File !!! - " + archivePath);
+        return Files.isDirectory(archivePath) ?
+                new SegmentedArchiveReader(archivePath, "archive")
+                        .getSegmentPaths() :
+                Collections.singletonList(archivePath);
+    }
+
+    public static Predicate<TransactionLogInterface> buildTransactionTypeFilter(
+            String transactionTypesAsCSV) {
+        EnumSet<TransactionType> transactionTypes = Arrays
+                .stream(transactionTypesAsCSV.split(",")).map(String::trim)
+                .map(TransactionType::valueOf).collect(Collectors
+                        .toCollection(() -> EnumSet.noneOf(
+                                TransactionType.class)));
+        return transactionLog -> transactionTypes
+                .contains(transactionLog.getTransactionType());
+    }
+
+    /**
+     * @return the number of replayed records
+     */
+    public long replay(List<Path> archivePaths) {
+        long before = getReplayedCount();
+        for (Path archivePath : archivePaths) {
+            log.info("replay() - {}", archivePath);
+            MappedLineScanner.scan(archivePath,
+                    logFormat.getRecordFraming(), this::replayLine);
+        }
+        return getReplayedCount() - before;
+    }
+
+    private void replayLine(ByteBuffer line) {
+        long logTimestamp = logFormat.extractLogTimestamp(line);
+        long userNumber = logFormat.extractUserNumber(line);
+        byte[] bytes = new byte[line.remaining()];
+        line.get(bytes);
+        if (logTimestamp == Long.MIN_VALUE || userNumber == Long.MIN_VALUE) {
+            skippedCount.increment();
+            log.warn("replayLine() - Skip Wrong Line !!! - {}",
+                    logFormat == LogFormat.JSON ?
+                            new String(bytes, StandardCharsets.UTF_8) :
+                            bytes.length + " bytes");
+            return;
+        }
+        if (transactionLogFilter != null && !isAccepted(bytes)) {
+            filteredCount.increment();
+            return;
+        }
+        awaitOriginalTimeline(logTimestamp);
+        keyedBytesConsumer.accept(String.valueOf(userNumber), bytes);
+        replayedCount.increment();
+    }
+
+    private boolean isAccepted(byte[] bytes) {
+        try {
+            return transactionLogFilter.test(logFormat.decode(bytes));
+        } catch (IOException e) {
+            log.error("isAccepted() - Skip Wrong Line !!!", e);
+            return false;
+        }
+    }
+
+    private void awaitOriginalTimeline(long logTimestamp) {
+        if (startNanos == NOT_STARTED) {
+            this.firstLogTimestamp = logTimestamp;
+            this.lastLogTimestamp = logTimestamp;
+            this.startNanos = System.nanoTime();
+        }
+        this.lastLogTimestamp = Math.max(lastLogTimestamp, logTimestamp);
+        if (speed <= 0)
+            return;
+        long lagNanos = RateController.parkUntil(startNanos + (long) (
+                TimeUnit.MILLISECONDS.toNanos(logTimestamp -
+                        firstLogTimestamp) / speed));
+        this.currentLagNanos = lagNanos;
+        lagNanosSum.add(lagNanos);
+        long max;
+        while (lagNanos > (max = maxLagNanos.get()) &&
+                !maxLagNanos.compareAndSet(max, lagNanos))
+            ;
+    }
+
+    public long getReplayedCount() {
+        return replayedCount.sum();
+    }
+
+    public long getFilteredCount() {
+        return filteredCount.sum();
+    }
+
+    public long getSkippedCount() {
+        return skippedCount.sum();
+    }
+
+    public long getAverageLagMicros() {
+        long replayed = replayedCount.sum();
+        return replayed == 0 ? 0 :
+                TimeUnit.NANOSECONDS.toMicros(lagNanosSum.sum() / replayed);
+    }
+
+    public long getMaxLagMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(maxLagNanos.get());
+    }
+
+    public long getCurrentLagMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(currentLagNanos);
+    }
+
+    public double getAchievedEventsPerSecond() {
+        long start = startNanos;
+        return start == NOT_STARTED ? 0 : replayedCount.sum() * 1e9 /
+                Math.max(1, System.nanoTime() - start);
+    }
+
+    /**
+     * @return the rate of the replayed part on the original timeline
+     */
+    public double getOriginalEventsPerSecond() {
+        return startNanos == NOT_STARTED ? 0 : replayedCount.sum() * 1e3 /
+                Math.max(1, lastLogTimestamp - firstLogTimestamp);
+    }
+
+    public String getSummary() {
+        return String.format(
+                "TransactionLogReplayer(speed=%s, replayed=%d, filtered=%d, " +
+                        "skipped=%d, achieved=%.1f/s, original=%.1f/s, " +
+                        "avgLagMicros=%d, maxLagMicros=%d, " +
+                        "currentLagMicros=%d)",
+                speed > 0 ? String.valueOf(speed) : "max",
+                getReplayedCount(), getFilteredCount(), getSkippedCount(),
+                getAchievedEventsPerSecond(), getOriginalEventsPerSecond(),
+                getAverageLagMicros(), getMaxLagMicros(),
+                getCurrentLagMicros());
+    }
+}
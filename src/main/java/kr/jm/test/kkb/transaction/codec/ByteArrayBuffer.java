@@ -0,0 +1,99 @@
+package kr.jm.test.kkb.transaction.codec;
+
+import java.util.Arrays;
+
+/**
+ * Growable byte array meant to be reset and reused per record.
+ */
+public class ByteArrayBuffer {
+
+    private static final byte[] LONG_MIN_VALUE_BYTES =
+            String.valueOf(Long.MIN_VALUE).getBytes();
+
+    private byte[] bytes;
+    private int size;
+
+    public ByteArrayBuffer(int initialCapacity) {
+        this.bytes = new byte[initialCapacity];
+    }
+
+    public ByteArrayBuffer reset() {
+        this.size = 0;
+        return this;
+    }
+
+    private void ensureCapacity(int additional) {
+        if (size + additional > bytes.length)
+            bytes = Arrays.copyOf(bytes,
+                    Math.max(bytes.length << 1, size + additional));
+    }
+
+    public ByteArrayBuffer write(int b) {
+        ensureCapacity(1);
+        bytes[size++] = (byte) b;
+        return this;
+    }
+
+    public ByteArrayBuffer write(byte[] source) {
+        return write(source, 0, source.length);
+    }
+
+    public ByteArrayBuffer write(byte[] source, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(source, offset, bytes, size, length);
+        size += length;
+        return this;
+    }
+
+    /**
+     * Writes the decimal ASCII form, same as {@link Long#toString(long)}.
+     */
+    public ByteArrayBuffer writeDecimal(long value) {
+        if (value == Long.MIN_VALUE)
+            return write(LONG_MIN_VALUE_BYTES);
+        if (value < 0) {
+            write('-');
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10)
+            digits++;
+        ensureCapacity(digits);
+        for (int i = size + digits - 1; i >= size; i--) {
+            bytes[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        size += digits;
+        return this;
+    }
+
+    /**
+     * Writes 7 bits per byte, low group first, with the high bit set on all
+     * but the last byte.
+     */
+    public ByteArrayBuffer writeVarLong(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[size++] = (byte) value;
+        return this;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the backing array, valid up to {@link #size()} until the next
+     * write
+     */
+    public byte[] array() {
+        return bytes;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(bytes, size);
+    }
+}
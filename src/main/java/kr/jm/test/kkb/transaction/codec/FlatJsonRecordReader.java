@@ -0,0 +1,321 @@
+package kr.jm.test.kkb.transaction.codec;
+
+import kr.jm.test.kkb.transaction.log.TransactionLogDictionary;
+import kr.jm.test.kkb.transaction.log.TransactionLogInterface;
+import kr.jm.test.kkb.transaction.log.TransactionType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Stream;
+
+/**
+ * Hand written reader for one flat transaction log object, the shape the
+ * codec writes, over UTF-8 bytes or directly over a {@link String}. Anything
+ * outside that shape - escapes, unknown fields, fractions, nested values or
+ * malformed input - makes it give up with {@code null} so the caller can
+ * fall back to the Jackson streaming parser, which also produces the proper
+ * error.
+ */
+abstract class FlatJsonRecordReader {
+
+    private static final String[] FIELD_NAMES =
+            {"transactionType", "userNumber", "logTimestamp", "userName",
+                    "accountNumber", "amount", "toBank", "toAccountNumber",
+                    "toAccountUser"};
+    private static final TransactionType[] TRANSACTION_TYPES =
+            TransactionType.values();
+    private static final String[] TRANSACTION_TYPE_NAMES = Stream
+            .of(TRANSACTION_TYPES).map(TransactionType::name)
+            .toArray(String[]::new);
+    private static final String[] DICTIONARY_NAMES =
+            Stream.concat(TransactionLogDictionary.BANK_NAMES.stream(),
+                    TransactionLogDictionary.USER_NAMES.stream())
+                    .toArray(String[]::new);
+
+    protected final int end;
+    protected int position;
+
+    private FlatJsonRecordReader(int offset, int end) {
+        this.position = offset;
+        this.end = end;
+    }
+
+    static TransactionLogInterface read(byte[] bytes, int offset, int length) {
+        return new BytesReader(bytes, offset, offset + length).readRecord();
+    }
+
+    static TransactionLogInterface read(String string) {
+        return new StringReader(string).readRecord();
+    }
+
+    protected abstract int at(int index);
+
+    protected abstract boolean regionEquals(int start, int length,
+            String ascii);
+
+    /**
+     * @param from the index tried first, the names after it and then those
+     *             before it follow
+     * @return index of the ASCII name equal to the region, -1 when none
+     */
+    protected int indexOfAscii(int start, int length, String[] asciiNames,
+            int from) {
+        for (int i = 0; i < asciiNames.length; i++) {
+            int index = (from + i) % asciiNames.length;
+            if (regionEquals(start, length, asciiNames[index]))
+                return index;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the dictionary instance equal to the region or a new string
+     */
+    protected abstract String toDictionaryString(int start, int length);
+
+    final TransactionLogInterface readRecord() {
+        TransactionType transactionType = null;
+        long userNumber = 0;
+        long logTimestamp = 0;
+        String userName = null;
+        long accountNumber = 0;
+        long amount = 0;
+        String toBank = null;
+        long toAccountNumber = 0;
+        String toAccountUser = null;
+        int field = -1;
+        if (!consume('{') || consume('}'))
+            return null;
+        do {
+            // the codec writes the fields in FIELD_NAMES order
+            field = readFieldName(field + 1);
+            if (field < 0 || !consume(':'))
+                return null;
+            skipWhitespace();
+            switch (field) {
+                case 0:
+                    if ((transactionType = readTransactionType()) == null)
+                        return null;
+                    break;
+                case 3:
+                case 6:
+                case 8:
+                    String string = readNullableString();
+                    if (string == null && position < 0)
+                        return null;
+                    if (field == 3)
+                        userName = string;
+                    else if (field == 6)
+                        toBank = string;
+                    else
+                        toAccountUser = string;
+                    break;
+                default:
+                    long number = readLong();
+                    if (position < 0 || (field != 2 && field != 5 &&
+                            number != (int) number))
+                        return null;
+                    if (field == 1)
+                        userNumber = number;
+                    else if (field == 2)
+                        logTimestamp = number;
+                    else if (field == 4)
+                        accountNumber = number;
+                    else if (field == 5)
+                        amount = number;
+                    else
+                        toAccountNumber = number;
+            }
+        } while (consume(','));
+        if (position < 0 || !consume('}') || transactionType == null)
+            return null;
+        skipWhitespace();
+        if (position != end)
+            return null;
+        return TransactionLogJsonCodec.buildTransactionLog(transactionType,
+                (int) userNumber, logTimestamp, userName, (int) accountNumber,
+                amount, toBank, (int) toAccountNumber, toAccountUser);
+    }
+
+    private void skipWhitespace() {
+        while (position >= 0 && position < end) {
+            int c = at(position);
+            if (c != ' ' && c != '\t' && c != '\r' && c != '\n')
+                return;
+            position++;
+        }
+    }
+
+    private boolean consume(char expected) {
+        skipWhitespace();
+        if (position < 0 || position >= end || at(position) != expected)
+            return false;
+        position++;
+        return true;
+    }
+
+    /**
+     * @return the start of the raw string content with {@link #position}
+     * right after the closing quote, -1 when escaped or unterminated
+     */
+    private int readRawString() {
+        if (position >= end || at(position) != '"')
+            return position = -1;
+        int start = ++position;
+        while (position < end) {
+            int c = at(position);
+            if (c == '"') {
+                position++;
+                return start;
+            }
+            if (c == '\\' || (c >= 0 && c < 0x20))
+                return position = -1;
+            position++;
+        }
+        return position = -1;
+    }
+
+    /**
+     * Compares the quoted name in place, so the expected name is read once.
+     */
+    private boolean consumeQuoted(String ascii) {
+        int length = ascii.length();
+        if (position + length + 2 > end || at(position) != '"' ||
+                at(position + length + 1) != '"' ||
+                !regionEquals(position + 1, length, ascii))
+            return false;
+        position += length + 2;
+        return true;
+    }
+
+    private int readFieldName(int expectedField) {
+        skipWhitespace();
+        if (expectedField < FIELD_NAMES.length &&
+                consumeQuoted(FIELD_NAMES[expectedField]))
+            return expectedField;
+        int start = readRawString();
+        return start < 0 ? -1 : indexOfAscii(start, position - 1 - start,
+                FIELD_NAMES, expectedField);
+    }
+
+    private TransactionType readTransactionType() {
+        int start = readRawString();
+        if (start < 0)
+            return null;
+        int index = indexOfAscii(start, position - 1 - start,
+                TRANSACTION_TYPE_NAMES, 0);
+        return index < 0 ? null : TRANSACTION_TYPES[index];
+    }
+
+    /**
+     * @return the string or null for a JSON null, with {@link #position} set
+     * to -1 on failure
+     */
+    private String readNullableString() {
+        if (position < end && at(position) == 'n') {
+            if (position + 4 <= end && at(position + 1) == 'u' &&
+                    at(position + 2) == 'l' && at(position + 3) == 'l')
+                position += 4;
+            else
+                position = -1;
+            return null;
+        }
+        int start = readRawString();
+        return start < 0 ? null :
+                toDictionaryString(start, position - 1 - start);
+    }
+
+    private long readLong() {
+        boolean negative = position < end && at(position) == '-';
+        if (negative)
+            position++;
+        int start = position;
+        long value = 0;
+        int c = 0;
+        while (position < end && (c = at(position)) >= '0' && c <= '9') {
+            value = value * 10 + (c - '0');
+            position++;
+        }
+        int digits = position - start;
+        if (digits == 0 || digits > 18 ||
+                position < end && (c == '.' || c == 'e' || c == 'E')) {
+            position = -1;
+            return 0;
+        }
+        return negative ? -value : value;
+    }
+
+    private static class BytesReader extends FlatJsonRecordReader {
+
+        private static final byte[][] DICTIONARY_NAME_BYTES =
+                Stream.of(DICTIONARY_NAMES)
+                        .map(name -> name.getBytes(StandardCharsets.UTF_8))
+                        .toArray(byte[][]::new);
+
+        private final byte[] bytes;
+
+        private BytesReader(byte[] bytes, int offset, int end) {
+            super(offset, end);
+            this.bytes = bytes;
+        }
+
+        @Override
+        protected int at(int index) {
+            return bytes[index];
+        }
+
+        @Override
+        protected boolean regionEquals(int start, int length, String ascii) {
+            if (length != ascii.length())
+                return false;
+            for (int i = 0; i < length; i++)
+                if (bytes[start + i] != ascii.charAt(i))
+                    return false;
+            return true;
+        }
+
+        @Override
+        protected String toDictionaryString(int start, int length) {
+            for (int i = 0; i < DICTIONARY_NAME_BYTES.length; i++)
+                if (regionEquals(start, length, DICTIONARY_NAME_BYTES[i]))
+                    return DICTIONARY_NAMES[i];
+            return new String(bytes, start, length, StandardCharsets.UTF_8);
+        }
+
+        private boolean regionEquals(int start, int length, byte[] expected) {
+            if (length != expected.length)
+                return false;
+            for (int i = 0; i < length; i++)
+                if (bytes[start + i] != expected[i])
+                    return false;
+            return true;
+        }
+    }
+
+    private static class StringReader extends FlatJsonRecordReader {
+
+        private final String string;
+
+        private StringReader(String string) {
+            super(0, string.length());
+            this.string = string;
+        }
+
+        @Override
+        protected int at(int index) {
+            return string.charAt(index);
+        }
+
+        @Override
+        protected boolean regionEquals(int start, int length, String ascii) {
+            return ascii.length() == length &&
+                    string.regionMatches(start, ascii, 0, length);
+        }
+
+        @Override
+        protected String toDictionaryString(int start, int length) {
+            int index = indexOfAscii(start, length, DICTIONARY_NAMES, 0);
+            return index < 0 ? string.substring(start, start + length) :
+                    DICTIONARY_NAMES[index];
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package kr.jm.test.kkb.transaction.codec;
+
+import kr.jm.test.kkb.output.MappedLineScanner;
+import kr.jm.test.kkb.output.RecordFraming;
+import kr.jm.test.kkb.transaction.log.TransactionLogInterface;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Serialized form of a transaction log record, for the Kafka value as well
+ * as for the archive, together with the framing it needs in a file.
+ */
+public enum LogFormat {
+
+    JSON(RecordFraming.LINE) {
+        @Override
+        public byte[] encode(TransactionLogInterface transactionLog) {
+            return Codecs.JSON_CODEC.encode(transactionLog);
+        }
+
+        @Override
+        public TransactionLogInterface decode(byte[] bytes, int offset,
+                int length) throws IOException {
+            return Codecs.JSON_CODEC.decode(bytes, offset, length);
+        }
+
+        @Override
+        public long extractUserNumber(ByteBuffer record) {
+            return MappedLineScanner
+                    .extractLongField(record, Codecs.USER_NUMBER_FIELD);
+        }
+
+        @Override
+        public long extractLogTimestamp(ByteBuffer record) {
+            return MappedLineScanner
+                    .extractLongField(record, Codecs.LOG_TIMESTAMP_FIELD);
+        }
+    },
+
+    BINARY(RecordFraming.LENGTH_PREFIXED) {
+        @Override
+        public byte[] encode(TransactionLogInterface transactionLog) {
+            return Codecs.BINARY_CODEC.encode(transactionLog);
+        }
+
+        @Override
+        public TransactionLogInterface decode(byte[] bytes, int offset,
+                int length) throws IOException {
+            return Codecs.BINARY_CODEC.decode(bytes, offset, length);
+        }
+
+        @Override
+        public long extractUserNumber(ByteBuffer record) {
+            return TransactionLogBinaryCodec.extractUserNumber(record);
+        }
+
+        @Override
+        public long extractLogTimestamp(ByteBuffer record) {
+            return TransactionLogBinaryCodec.extractLogTimestamp(record);
+        }
+    };
+
+    private final RecordFraming recordFraming;
+
+    LogFormat(RecordFraming recordFraming) {
+        this.recordFraming = recordFraming;
+    }
+
+    public RecordFraming getRecordFraming() {
+        return recordFraming;
+    }
+
+    public abstract byte[] encode(TransactionLogInterface transactionLog);
+
+    public TransactionLogInterface decode(byte[] bytes) throws IOException {
+        return decode(bytes, 0, bytes.length);
+    }
+
+    public abstract TransactionLogInterface decode(byte[] bytes, int offset,
+            int length) throws IOException;
+
+    /**
+     * Reads the userNumber of a single record without decoding it.
+     *
+     * @return {@link Long#MIN_VALUE} when the record has none
+     */
+    public abstract long extractUserNumber(ByteBuffer record);
+
+    /**
+     * @see #extractUserNumber(ByteBuffer)
+     */
+    public abstract long extractLogTimestamp(ByteBuffer record);
+
+    private static class Codecs {
+        private static final TransactionLogJsonCodec JSON_CODEC =
+                new TransactionLogJsonCodec();
+        private static final TransactionLogBinaryCodec BINARY_CODEC =
+                new TransactionLogBinaryCodec();
+        private static final byte[] USER_NUMBER_FIELD =
+                MappedLineScanner.buildFieldPrefix("userNumber");
+        private static final byte[] LOG_TIMESTAMP_FIELD =
+                MappedLineScanner.buildFieldPrefix("logTimestamp");
+    }
+}
@@ -0,0 +1,272 @@
+package kr.jm.test.kkb.transaction.codec;
+
+import kr.jm.test.kkb.transaction.log.*;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Compact binary form of the transaction logs.
+ * <p>
+ * A record is a type tag byte, {@code ordinal + 1}, followed by zigzag
+ * varints of userNumber, logTimestamp and the fields of the type in
+ * declaration order. A string is a varint code: 0 for null, 1 to n for the
+ * {@link TransactionLogDictionary} bank names and then user names, so those
+ * lists may only grow at their end, and n + 1 followed by the length and the
+ * UTF-8 bytes for any other string.
+ * <p>
+ * Records are encoded one at a time, the Kafka value and the archive frame
+ * each hold a single record, so every logTimestamp is absolute.
+ */
+public class TransactionLogBinaryCodec {
+
+    private static final String[] DICTIONARY = Stream
+            .concat(TransactionLogDictionary.BANK_NAMES.stream(),
+                    TransactionLogDictionary.USER_NAMES.stream())
+            .toArray(String[]::new);
+    private static final Map<String, Integer> DICTIONARY_CODES =
+            buildDictionaryCodes();
+    private static final int NULL_CODE = 0;
+    private static final int LITERAL_CODE = DICTIONARY.length + 1;
+    private static final TransactionType[] TRANSACTION_TYPES =
+            TransactionType.values();
+
+    private final ThreadLocal<ByteArrayBuffer> threadBuffer;
+
+    public TransactionLogBinaryCodec() {
+        this.threadBuffer =
+                ThreadLocal.withInitial(() -> new ByteArrayBuffer(256));
+    }
+
+    private static Map<String, Integer> buildDictionaryCodes() {
+        Map<String, Integer> dictionaryCodes = new HashMap<>();
+        for (int i = 0; i < DICTIONARY.length; i++)
+            dictionaryCodes.putIfAbsent(DICTIONARY[i], i + 1);
+        return dictionaryCodes;
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * @return the thread's buffer holding the encoded record, valid until
+     * the next call on the same thread
+     */
+    public ByteArrayBuffer encodeToThreadBuffer(
+            TransactionLogInterface transactionLog) {
+        return encode(transactionLog, threadBuffer.get().reset());
+    }
+
+    public byte[] encode(TransactionLogInterface transactionLog) {
+        return encodeToThreadBuffer(transactionLog).toByteArray();
+    }
+
+    public ByteArrayBuffer encode(TransactionLogInterface transactionLog,
+            ByteArrayBuffer buffer) {
+        TransactionType transactionType = transactionLog.getTransactionType();
+        if (transactionType == null || !isConcreteClass(transactionType,
+                transactionLog))
+            throw new RuntimeException("Wrong Transaction Log !!! - " +
+                    transactionLog);
+        buffer.write(transactionType.ordinal() + 1)
+                .writeVarLong(zigZag(transactionLog.getUserNumber()))
+                .writeVarLong(zigZag(transactionLog.getLogTimestamp()));
+        switch (transactionType) {
+            case NEW_USER:
+                return writeString(buffer,
+                        ((NewUser) transactionLog).getUserName());
+            case OPENING_ACCOUNT:
+                return buffer.writeVarLong(zigZag(
+                        ((OpeningAccount) transactionLog).getAccountNumber()));
+            default:
+                AbstractAmountTransactionLog amountLog =
+                        (AbstractAmountTransactionLog) transactionLog;
+                buffer.writeVarLong(zigZag(amountLog.getAccountNumber()))
+                        .writeVarLong(zigZag(amountLog.getAmount()));
+                if (transactionType != TransactionType.TRANSFER)
+                    return buffer;
+                Transfer transfer = (Transfer) transactionLog;
+                writeString(buffer, transfer.getToBank())
+                        .writeVarLong(zigZag(transfer.getToAccountNumber()));
+                return writeString(buffer, transfer.getToAccountUser());
+        }
+    }
+
+    private static boolean isConcreteClass(TransactionType transactionType,
+            TransactionLogInterface transactionLog) {
+        switch (transactionType) {
+            case NEW_USER:
+                return transactionLog.getClass() == NewUser.class;
+            case OPENING_ACCOUNT:
+                return transactionLog.getClass() == OpeningAccount.class;
+            case DEPOSIT:
+                return transactionLog.getClass() == Deposit.class;
+            case WITHDRAW:
+                return transactionLog.getClass() == Withdraw.class;
+            default:
+                return transactionLog.getClass() == Transfer.class;
+        }
+    }
+
+    private static ByteArrayBuffer writeString(ByteArrayBuffer buffer,
+            String string) {
+        if (string == null)
+            return buffer.writeVarLong(NULL_CODE);
+        Integer code = DICTIONARY_CODES.get(string);
+        if (code != null)
+            return buffer.writeVarLong(code);
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        return buffer.writeVarLong(LITERAL_CODE).writeVarLong(bytes.length)
+                .write(bytes);
+    }
+
+    public TransactionLogInterface decode(byte[] bytes) throws IOException {
+        return decode(bytes, 0, bytes.length);
+    }
+
+    public TransactionLogInterface decode(byte[] bytes, int offset,
+            int length) throws IOException {
+        RecordReader recordReader =
+                new RecordReader(bytes, offset, offset + length);
+        TransactionLogInterface transactionLog = recordReader.readRecord();
+        if (recordReader.position != recordReader.end)
+            throw new IOException("Wrong Trailing Bytes !!! - " +
+                    (recordReader.end - recordReader.position));
+        return transactionLog;
+    }
+
+    /**
+     * Reads the userNumber from the header of a single record between the
+     * position and the limit, without decoding the rest.
+     *
+     * @return {@link Long#MIN_VALUE} when it is no valid record header
+     */
+    public static long extractUserNumber(ByteBuffer record) {
+        return extractHeaderField(record, 0);
+    }
+
+    /**
+     * @see #extractUserNumber(ByteBuffer)
+     */
+    public static long extractLogTimestamp(ByteBuffer record) {
+        return extractHeaderField(record, 1);
+    }
+
+    private static long extractHeaderField(ByteBuffer record, int fieldIndex) {
+        int position = record.position();
+        int end = record.limit();
+        if (position >= end || record.get(position) < 1 ||
+                record.get(position) > TRANSACTION_TYPES.length)
+            return Long.MIN_VALUE;
+        position++;
+        for (int field = 0; ; field++) {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                if (position >= end || shift > 63)
+                    return Long.MIN_VALUE;
+                b = record.get(position++);
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            if (field == fieldIndex)
+                return unZigZag(value);
+        }
+    }
+
+    private static class RecordReader {
+        private final byte[] bytes;
+        private final int end;
+        private int position;
+
+        private RecordReader(byte[] bytes, int offset, int end) {
+            this.bytes = bytes;
+            this.position = offset;
+            this.end = end;
+        }
+
+        private TransactionLogInterface readRecord() throws IOException {
+            int tag = readByte();
+            if (tag < 1 || tag > TRANSACTION_TYPES.length)
+                throw new IOException("Wrong Type Tag !!! - " + tag);
+            TransactionType transactionType = TRANSACTION_TYPES[tag - 1];
+            int userNumber = readInt();
+            long logTimestamp = readZigZagLong();
+            switch (transactionType) {
+                case NEW_USER:
+                    return new NewUser(userNumber, logTimestamp, readString());
+                case OPENING_ACCOUNT:
+                    return new OpeningAccount(userNumber, logTimestamp,
+                            readInt());
+                default:
+                    int accountNumber = readInt();
+                    long amount = readZigZagLong();
+                    if (transactionType != TransactionType.TRANSFER)
+                        return TransactionLogJsonCodec.buildTransactionLog(
+                                transactionType, userNumber, logTimestamp,
+                                null, accountNumber, amount, null, 0, null);
+                    String toBank = readString();
+                    int toAccountNumber = readInt();
+                    return new Transfer(userNumber, logTimestamp,
+                            accountNumber, amount, toBank, toAccountNumber,
+                            readString());
+            }
+        }
+
+        private int readByte() throws IOException {
+            if (position >= end)
+                throw new EOFException("Wrong Binary Transaction Log !!!");
+            return bytes[position++] & 0xFF;
+        }
+
+        private long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if (b < 0x80)
+                    return value;
+            }
+            throw new IOException("Wrong Varint !!! - position = " + position);
+        }
+
+        private long readZigZagLong() throws IOException {
+            return unZigZag(readVarLong());
+        }
+
+        private int readInt() throws IOException {
+            long value = readZigZagLong();
+            if (value != (int) value)
+                throw new IOException("Wrong Int !!! - " + value);
+            return (int) value;
+        }
+
+        private String readString() throws IOException {
+            long code = readVarLong();
+            if (code == NULL_CODE)
+                return null;
+            if (code < LITERAL_CODE)
+                return DICTIONARY[(int) code - 1];
+            if (code != LITERAL_CODE)
+                throw new IOException("Wrong String Code !!! - " + code);
+            long length = readVarLong();
+            if (length > end - position)
+                throw new EOFException("Wrong String Length !!! - " + length);
+            String string = new String(bytes, position, (int) length,
+                    StandardCharsets.UTF_8);
+            position += (int) length;
+            return string;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package kr.jm.test.kkb.transaction.codec;
+
+import kr.jm.test.kkb.output.MappedLineScanner;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Converts records and whole archive files between the {@link LogFormat}s.
+ * <p>
+ * Both formats carry exactly the fields of the log classes, so a record
+ * written by this project converts back to the identical bytes; only
+ * unknown JSON fields, which the log classes cannot hold, are dropped.
+ */
+public class TransactionLogFormatConverter {
+
+    private TransactionLogFormatConverter() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 4) {
+            String message = "Wrong Args !!! - Args: " +
+                    "<fromFormat:JSON|BINARY> <toFormat:JSON|BINARY> " +
+                    "<inputFile> <outputFile>";
+            System.err.println(message);
+            return;
+        }
+        long recordCount = convertFile(LogFormat.valueOf(args[0]),
+                LogFormat.valueOf(args[1]), Paths.get(args[2]),
+                Paths.get(args[3]));
+        System.out.println("Converted " + recordCount + " records - " +
+                args[2] + " -> " + args[3]);
+    }
+
+    public static byte[] jsonToBinary(byte[] jsonBytes) throws IOException {
+        return convert(LogFormat.JSON, LogFormat.BINARY, jsonBytes);
+    }
+
+    public static byte[] binaryToJson(byte[] binaryBytes) throws IOException {
+        return convert(LogFormat.BINARY, LogFormat.JSON, binaryBytes);
+    }
+
+    public static byte[] convert(LogFormat fromLogFormat, LogFormat toLogFormat,
+            byte[] bytes) throws IOException {
+        return fromLogFormat == toLogFormat ? bytes :
+                toLogFormat.encode(fromLogFormat.decode(bytes));
+    }
+
+    /**
+     * @return the number of converted records
+     */
+    public static long convertFile(LogFormat fromLogFormat,
+            LogFormat toLogFormat, Path inputPath, Path outputPath)
+            throws IOException {
+        try (OutputStream outputStream = new BufferedOutputStream(
+                Files.newOutputStream(outputPath), 64 * 1024)) {
+            return MappedLineScanner.scan(inputPath,
+                    fromLogFormat.getRecordFraming(), record -> {
+                        byte[] bytes = new byte[record.remaining()];
+                        record.get(bytes);
+                        try {
+                            byte[] converted = convert(fromLogFormat,
+                                    toLogFormat, bytes);
+                            toLogFormat.getRecordFraming().write(outputStream,
+                                    converted, 0, converted.length);
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    });
+        }
+    }
+}
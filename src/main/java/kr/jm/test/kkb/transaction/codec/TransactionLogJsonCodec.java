@@ -0,0 +1,368 @@
+package kr.jm.test.kkb.transaction.codec;
+
+import com.fasterxml.jackson.core.*;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import kr.jm.test.kkb.transaction.log.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Writes the transaction logs as JSON straight into a reusable
+ * {@link ByteArrayBuffer}, byte for byte what {@link ObjectMapper} writes for
+ * them, with every field name and the dictionary names encoded once.
+ * <p>
+ * Reading is a single streaming pass: the fields are collected into locals
+ * and the concrete log class is built from {@code transactionType} at the
+ * end of the object, wherever that field appears. Unknown fields are
+ * skipped.
+ */
+public class TransactionLogJsonCodec {
+
+    private static final byte[][] TYPE_PREFIXES = Stream
+            .of(TransactionType.values()).map(transactionType -> ascii(
+                    "{\"transactionType\":\"" + transactionType.name() +
+                            "\",\"userNumber\":")).toArray(byte[][]::new);
+    private static final byte[] NULL_TYPE_PREFIX =
+            ascii("{\"transactionType\":null,\"userNumber\":");
+    private static final byte[] LOG_TIMESTAMP = ascii(",\"logTimestamp\":");
+    private static final byte[] USER_NAME = ascii(",\"userName\":");
+    private static final byte[] ACCOUNT_NUMBER = ascii(",\"accountNumber\":");
+    private static final byte[] AMOUNT = ascii(",\"amount\":");
+    private static final byte[] TO_BANK = ascii(",\"toBank\":");
+    private static final byte[] TO_ACCOUNT_NUMBER =
+            ascii(",\"toAccountNumber\":");
+    private static final byte[] TO_ACCOUNT_USER = ascii(",\"toAccountUser\":");
+    private static final byte[] NULL = ascii("null");
+    private static final byte[] HEX = ascii("0123456789ABCDEF");
+    private static final Map<String, byte[]> QUOTED_DICTIONARY_NAMES =
+            buildQuotedDictionaryNames();
+
+    private final ObjectMapper objectMapper;
+    private final JsonFactory jsonFactory;
+    private final ThreadLocal<ByteArrayBuffer> threadBuffer;
+
+    public TransactionLogJsonCodec() {
+        this.objectMapper = new ObjectMapper();
+        this.jsonFactory = objectMapper.getFactory();
+        this.threadBuffer =
+                ThreadLocal.withInitial(() -> new ByteArrayBuffer(256));
+    }
+
+    private static byte[] ascii(String string) {
+        return string.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static Map<String, byte[]> buildQuotedDictionaryNames() {
+        Map<String, byte[]> quotedNames = new HashMap<>();
+        Stream.concat(TransactionLogDictionary.BANK_NAMES.stream(),
+                TransactionLogDictionary.USER_NAMES.stream())
+                .forEach(name -> quotedNames.put(name, ("\"" + name + "\"")
+                        .getBytes(StandardCharsets.UTF_8)));
+        return quotedNames;
+    }
+
+    /**
+     * @return the thread's buffer holding the encoded record, valid until
+     * the next call on the same thread
+     */
+    public ByteArrayBuffer encodeToThreadBuffer(
+            TransactionLogInterface transactionLog) {
+        return encode(transactionLog, threadBuffer.get().reset());
+    }
+
+    public byte[] encode(TransactionLogInterface transactionLog) {
+        return encodeToThreadBuffer(transactionLog).toByteArray();
+    }
+
+    public String encodeToString(TransactionLogInterface transactionLog) {
+        ByteArrayBuffer buffer = encodeToThreadBuffer(transactionLog);
+        return isAscii(buffer) ? toAsciiString(buffer) : new String(
+                buffer.array(), 0, buffer.size(), StandardCharsets.UTF_8);
+    }
+
+    private static boolean isAscii(ByteArrayBuffer buffer) {
+        byte[] bytes = buffer.array();
+        for (int i = buffer.size() - 1; i >= 0; i--)
+            if (bytes[i] < 0)
+                return false;
+        return true;
+    }
+
+    /**
+     * Decodes pure ASCII output, the common case for numbers and enum names,
+     * as ISO-8859-1, which maps every byte to its char without the
+     * validation of the UTF-8 decoder.
+     */
+    private static String toAsciiString(ByteArrayBuffer buffer) {
+        return new String(buffer.array(), 0, buffer.size(),
+                StandardCharsets.ISO_8859_1);
+    }
+
+    public ByteArrayBuffer encode(TransactionLogInterface transactionLog,
+            ByteArrayBuffer buffer) {
+        if (transactionLog instanceof AbstractAmountTransactionLog)
+            return encodeAmountLog((AbstractAmountTransactionLog)
+                    transactionLog, buffer);
+        if (transactionLog instanceof OpeningAccount) {
+            writeHeader(transactionLog, buffer).write(ACCOUNT_NUMBER)
+                    .writeDecimal(((OpeningAccount) transactionLog)
+                            .getAccountNumber());
+            return buffer.write('}');
+        }
+        if (transactionLog instanceof NewUser) {
+            writeString(writeHeader(transactionLog, buffer).write(USER_NAME),
+                    ((NewUser) transactionLog).getUserName());
+            return buffer.write('}');
+        }
+        return encodeWithObjectMapper(transactionLog, buffer);
+    }
+
+    private ByteArrayBuffer encodeAmountLog(
+            AbstractAmountTransactionLog amountLog, ByteArrayBuffer buffer) {
+        if (!(amountLog instanceof Deposit || amountLog instanceof Withdraw ||
+                amountLog instanceof Transfer))
+            return encodeWithObjectMapper(amountLog, buffer);
+        writeHeader(amountLog, buffer).write(ACCOUNT_NUMBER)
+                .writeDecimal(amountLog.getAccountNumber()).write(AMOUNT)
+                .writeDecimal(amountLog.getAmount());
+        if (amountLog instanceof Transfer) {
+            Transfer transfer = (Transfer) amountLog;
+            writeString(buffer.write(TO_BANK), transfer.getToBank())
+                    .write(TO_ACCOUNT_NUMBER)
+                    .writeDecimal(transfer.getToAccountNumber());
+            writeString(buffer.write(TO_ACCOUNT_USER),
+                    transfer.getToAccountUser());
+        }
+        return buffer.write('}');
+    }
+
+    private ByteArrayBuffer writeHeader(TransactionLogInterface transactionLog,
+            ByteArrayBuffer buffer) {
+        TransactionType transactionType = transactionLog.getTransactionType();
+        return buffer.write(transactionType == null ? NULL_TYPE_PREFIX :
+                TYPE_PREFIXES[transactionType.ordinal()])
+                .writeDecimal(transactionLog.getUserNumber())
+                .write(LOG_TIMESTAMP)
+                .writeDecimal(transactionLog.getLogTimestamp());
+    }
+
+    private ByteArrayBuffer encodeWithObjectMapper(Object object,
+            ByteArrayBuffer buffer) {
+        try {
+            return buffer.write(objectMapper.writeValueAsBytes(object));
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static ByteArrayBuffer writeString(ByteArrayBuffer buffer, String string) {
+        if (string == null)
+            return buffer.write(NULL);
+        byte[] quotedName = QUOTED_DICTIONARY_NAMES.get(string);
+        if (quotedName != null)
+            return buffer.write(quotedName);
+        buffer.write('"');
+        for (int i = 0, length = string.length(); i < length; i++) {
+            char c = string.charAt(i);
+            if (c < 0x80)
+                writeAsciiEscaped(buffer, c);
+            else if (c < 0x800)
+                buffer.write(0xC0 | c >> 6).write(0x80 | c & 0x3F);
+            else if (Character.isHighSurrogate(c) && i + 1 < length &&
+                    Character.isLowSurrogate(string.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, string.charAt(++i));
+                buffer.write(0xF0 | codePoint >> 18)
+                        .write(0x80 | codePoint >> 12 & 0x3F)
+                        .write(0x80 | codePoint >> 6 & 0x3F)
+                        .write(0x80 | codePoint & 0x3F);
+            } else if (Character.isSurrogate(c))
+                buffer.write('?');
+            else
+                buffer.write(0xE0 | c >> 12).write(0x80 | c >> 6 & 0x3F)
+                        .write(0x80 | c & 0x3F);
+        }
+        return buffer.write('"');
+    }
+
+    private static void writeAsciiEscaped(ByteArrayBuffer buffer, char c) {
+        switch (c) {
+            case '"':
+            case '\\':
+                buffer.write('\\').write(c);
+                return;
+            case '\b':
+                buffer.write('\\').write('b');
+                return;
+            case '\t':
+                buffer.write('\\').write('t');
+                return;
+            case '\n':
+                buffer.write('\\').write('n');
+                return;
+            case '\f':
+                buffer.write('\\').write('f');
+                return;
+            case '\r':
+                buffer.write('\\').write('r');
+                return;
+            default:
+                if (c < 0x20)
+                    buffer.write('\\').write('u').write('0').write('0')
+                            .write(HEX[c >> 4]).write(HEX[c & 0xF]);
+                else
+                    buffer.write(c);
+        }
+    }
+
+    public TransactionLogInterface decode(String jsonString)
+            throws IOException {
+        TransactionLogInterface transactionLog =
+                FlatJsonRecordReader.read(jsonString);
+        if (transactionLog != null)
+            return transactionLog;
+        try (JsonParser jsonParser = jsonFactory.createParser(jsonString)) {
+            return decodeNext(jsonParser);
+        }
+    }
+
+    public TransactionLogInterface decode(byte[] bytes, int offset,
+            int length) throws IOException {
+        TransactionLogInterface transactionLog =
+                FlatJsonRecordReader.read(bytes, offset, length);
+        if (transactionLog != null)
+            return transactionLog;
+        try (JsonParser jsonParser = jsonFactory
+                .createParser(bytes, offset, length)) {
+            return decodeNext(jsonParser);
+        }
+    }
+
+    /**
+     * Decodes a buffer of newline delimited records, skipping blank lines.
+     */
+    public void decodeLines(byte[] bytes, int offset, int length,
+            Consumer<TransactionLogInterface> transactionLogConsumer)
+            throws IOException {
+        int end = offset + length;
+        for (int lineStart = offset, lineEnd; lineStart < end;
+             lineStart = lineEnd + 1) {
+            lineEnd = lineStart;
+            while (lineEnd < end && bytes[lineEnd] != '\n')
+                lineEnd++;
+            if (!isBlank(bytes, lineStart, lineEnd))
+                transactionLogConsumer.accept(
+                        decode(bytes, lineStart, lineEnd - lineStart));
+        }
+    }
+
+    private static boolean isBlank(byte[] bytes, int start, int end) {
+        for (int i = start; i < end; i++)
+            if (bytes[i] != ' ' && bytes[i] != '\t' && bytes[i] != '\r')
+                return false;
+        return true;
+    }
+
+    public List<TransactionLogInterface> decodeLines(byte[] bytes)
+            throws IOException {
+        List<TransactionLogInterface> transactionLogList = new ArrayList<>();
+        decodeLines(bytes, 0, bytes.length, transactionLogList::add);
+        return transactionLogList;
+    }
+
+    /**
+     * @return the next record of the parser, null at the end of input
+     */
+    public TransactionLogInterface decodeNext(JsonParser jsonParser)
+            throws IOException {
+        JsonToken token = jsonParser.nextToken();
+        if (token == null)
+            return null;
+        if (token != JsonToken.START_OBJECT)
+            throw new JsonParseException(jsonParser,
+                    "Wrong Token Occur !!! - " + token);
+        String transactionType = null;
+        int userNumber = 0;
+        long logTimestamp = 0;
+        String userName = null;
+        int accountNumber = 0;
+        long amount = 0;
+        String toBank = null;
+        int toAccountNumber = 0;
+        String toAccountUser = null;
+        while (jsonParser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = jsonParser.getCurrentName();
+            jsonParser.nextToken();
+            switch (fieldName) {
+                case "transactionType":
+                    transactionType = jsonParser.getValueAsString();
+                    break;
+                case "userNumber":
+                    userNumber = jsonParser.getValueAsInt();
+                    break;
+                case "logTimestamp":
+                    logTimestamp = jsonParser.getValueAsLong();
+                    break;
+                case "userName":
+                    userName = jsonParser.getValueAsString();
+                    break;
+                case "accountNumber":
+                    accountNumber = jsonParser.getValueAsInt();
+                    break;
+                case "amount":
+                    amount = jsonParser.getValueAsLong();
+                    break;
+                case "toBank":
+                    toBank = jsonParser.getValueAsString();
+                    break;
+                case "toAccountNumber":
+                    toAccountNumber = jsonParser.getValueAsInt();
+                    break;
+                case "toAccountUser":
+                    toAccountUser = jsonParser.getValueAsString();
+                    break;
+                default:
+                    jsonParser.skipChildren();
+            }
+        }
+        if (transactionType == null)
+            throw new JsonParseException(jsonParser,
+                    "No transactionType !!!");
+        return buildTransactionLog(TransactionType.valueOf(transactionType),
+                userNumber, logTimestamp, userName, accountNumber, amount,
+                toBank, toAccountNumber, toAccountUser);
+    }
+
+    static TransactionLogInterface buildTransactionLog(
+            TransactionType transactionType, int userNumber,
+            long logTimestamp, String userName, int accountNumber,
+            long amount, String toBank, int toAccountNumber,
+            String toAccountUser) {
+        switch (transactionType) {
+            case NEW_USER:
+                return new NewUser(userNumber, logTimestamp, userName);
+            case OPENING_ACCOUNT:
+                return new OpeningAccount(userNumber, logTimestamp,
+                        accountNumber);
+            case DEPOSIT:
+                return new Deposit(userNumber, logTimestamp, accountNumber,
+                        amount);
+            case WITHDRAW:
+                return new Withdraw(userNumber, logTimestamp, accountNumber,
+                        amount);
+            case TRANSFER:
+                return new Transfer(userNumber, logTimestamp, accountNumber,
+                        amount, toBank, toAccountNumber, toAccountUser);
+            default:
+                throw new RuntimeException(
+                        "Wrong Transaction Type Occur !!! - " +
+                                transactionType);
+        }
+    }
+}
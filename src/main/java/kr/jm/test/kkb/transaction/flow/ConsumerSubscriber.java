@@ -0,0 +1,73 @@
+package kr.jm.test.kkb.transaction.flow;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Hands the items to a {@link Consumer}, such as a
+ * {@link kr.jm.test.kkb.transaction.sink.SinkFanOut} which blocks while its
+ * slowest sink is a ring behind, and requests more only as they are
+ * consumed, keeping at most {@code batchSize} outstanding.
+ */
+public class ConsumerSubscriber<T> implements Subscriber<T> {
+
+    private final Consumer<? super T> consumer;
+    private final int batchSize;
+    private final int refillSize;
+    private final CompletableFuture<Long> completion;
+    private Subscription subscription;
+    private long consumedCount;
+    private int sinceRefillCount;
+
+    public ConsumerSubscriber(Consumer<? super T> consumer, int batchSize) {
+        if (batchSize < 1)
+            throw new IllegalArgumentException("Wrong Batch Size !!! - " +
+                    batchSize);
+        this.consumer = consumer;
+        this.batchSize = batchSize;
+        this.refillSize = Math.max(1, batchSize / 2);
+        this.completion = new CompletableFuture<>();
+    }
+
+    /**
+     * @return completes with the number of items consumed, or exceptionally
+     * with the error of the publisher or of the consumer
+     */
+    public CompletableFuture<Long> getCompletion() {
+        return completion;
+    }
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+        this.subscription = subscription;
+        subscription.request(batchSize);
+    }
+
+    @Override
+    public void onNext(T item) {
+        if (completion.isDone())
+            return;
+        try {
+            consumer.accept(item);
+        } catch (RuntimeException e) {
+            subscription.cancel();
+            completion.completeExceptionally(e);
+            return;
+        }
+        this.consumedCount++;
+        if (++sinceRefillCount == refillSize) {
+            this.sinceRefillCount = 0;
+            subscription.request(refillSize);
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        completion.completeExceptionally(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        completion.complete(consumedCount);
+    }
+}
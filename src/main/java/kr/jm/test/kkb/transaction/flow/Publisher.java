@@ -0,0 +1,19 @@
+package kr.jm.test.kkb.transaction.flow;
+
+/**
+ * A source of items sent to its subscribers only as they request them,
+ * with the contract and method signatures of the Reactive Streams
+ * {@code org.reactivestreams.Publisher} and of
+ * {@code java.util.concurrent.Flow.Publisher}, which Java 8 lacks, so
+ * adapting to either takes a one line lambda per method.
+ */
+@FunctionalInterface
+public interface Publisher<T> {
+
+    /**
+     * The subscriber gets {@link Subscriber#onSubscribe(Subscription)}
+     * first, then no more {@link Subscriber#onNext(Object)} calls than it
+     * requested, one at a time, and at most one terminal signal.
+     */
+    void subscribe(Subscriber<? super T> subscriber);
+}
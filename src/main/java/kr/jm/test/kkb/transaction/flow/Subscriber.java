@@ -0,0 +1,16 @@
+package kr.jm.test.kkb.transaction.flow;
+
+/**
+ * The receiving side of a {@link Publisher}, called by one thread at a
+ * time.
+ */
+public interface Subscriber<T> {
+
+    void onSubscribe(Subscription subscription);
+
+    void onNext(T item);
+
+    void onError(Throwable throwable);
+
+    void onComplete();
+}
@@ -0,0 +1,16 @@
+package kr.jm.test.kkb.transaction.flow;
+
+/**
+ * The link between a {@link Publisher} and one {@link Subscriber}, through
+ * which the subscriber signals the demand it can take.
+ */
+public interface Subscription {
+
+    /**
+     * Adds n to the outstanding demand, a total of {@link Long#MAX_VALUE}
+     * or more meaning unbounded; n below 1 fails the subscription.
+     */
+    void request(long n);
+
+    void cancel();
+}
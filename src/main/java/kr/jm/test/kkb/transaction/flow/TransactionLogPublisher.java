@@ -0,0 +1,375 @@
+package kr.jm.test.kkb.transaction.flow;
+
+import kr.jm.test.kkb.transaction.TransactionLogGenerator;
+import kr.jm.test.kkb.transaction.log.TransactionLogInterface;
+import kr.jm.test.kkb.transaction.workload.AliasSampler;
+import kr.jm.test.kkb.transaction.workload.KeyDistribution;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.IntStream;
+
+/**
+ * Generates transaction logs for the demand of its single subscriber
+ * instead of pushing them: the user and account numbers are taken at the
+ * first request, and the users are dealt to lanes. A lane first generates
+ * the NewUser and OpeningAccount logs of its users, then every log for a
+ * user picked by the user distribution of the workload profile, up to
+ * eventCount of them, each of them only for a requested one.
+ * <p>
+ * With a parallelism of 1 the logs are generated on the thread calling
+ * {@link Subscription#request(long)}. Above it every lane has a worker
+ * thread generating only for demand it claimed, into a queue drained to the
+ * subscriber by one thread at a time. The logs of a user come from one
+ * thread through that FIFO queue, so they keep their order, and the queue
+ * never holds more than the outstanding demand.
+ */
+public class TransactionLogPublisher
+        implements Publisher<TransactionLogInterface> {
+
+    private static final org.slf4j.Logger log =
+            org.slf4j.LoggerFactory.getLogger(TransactionLogPublisher.class);
+    private static final long IDLE_PARK_NANOS =
+            TimeUnit.MILLISECONDS.toNanos(1);
+    private static final Subscription CANCELLED_SUBSCRIPTION =
+            new Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            };
+
+    private final TransactionLogGenerator transactionLogGenerator;
+    private final long eventCount;
+    private final int parallelism;
+    private final String[] userNames;
+    private final AtomicBoolean subscribed;
+    private final LongAdder generatedCount;
+
+    /**
+     * @param eventCount logs generated after those of the new users,
+     *                   {@link Long#MAX_VALUE} for no end; a log the
+     *                   generator skips counts but is not sent
+     */
+    public TransactionLogPublisher(
+            TransactionLogGenerator transactionLogGenerator, long eventCount,
+            int parallelism, String... userNames) {
+        if (eventCount < 0 || parallelism < 1)
+            throw new IllegalArgumentException(
+                    "Wrong TransactionLogPublisher Config !!! - eventCount=" +
+                            eventCount + ", parallelism=" + parallelism);
+        this.transactionLogGenerator = transactionLogGenerator;
+        this.eventCount = eventCount;
+        this.parallelism = parallelism;
+        this.userNames = userNames;
+        this.subscribed = new AtomicBoolean();
+        this.generatedCount = new LongAdder();
+    }
+
+    /**
+     * Only the first subscriber is served, later ones get an
+     * {@link IllegalStateException}.
+     */
+    @Override
+    public void subscribe(
+            Subscriber<? super TransactionLogInterface> subscriber) {
+        Objects.requireNonNull(subscriber);
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(CANCELLED_SUBSCRIPTION);
+            subscriber.onError(new IllegalStateException(
+                    "Already Subscribed !!!"));
+            return;
+        }
+        subscriber.onSubscribe(new GeneratorSubscription(subscriber));
+    }
+
+    /**
+     * @return the logs generated so far, new users' included
+     */
+    public long getGeneratedCount() {
+        return generatedCount.sum();
+    }
+
+    private static void addCapped(AtomicLong atomicLong, long n) {
+        atomicLong.getAndUpdate(value ->
+                value > Long.MAX_VALUE - n ? Long.MAX_VALUE : value + n);
+    }
+
+    private class GeneratorSubscription implements Subscription {
+        private final Subscriber<? super TransactionLogInterface> subscriber;
+        private final Queue<TransactionLogInterface> queue;
+        private final AtomicLong requested;
+        private final AtomicLong credits;
+        private final AtomicLong remainingEvents;
+        private final AtomicInteger wip;
+        private final AtomicInteger runningWorkers;
+        private final List<Thread> workerThreadList;
+        private Lane inlineLane;
+        private boolean started;
+        private boolean terminated;
+        private volatile boolean generationDone;
+        private volatile boolean cancelled;
+        private volatile Throwable error;
+
+        private GeneratorSubscription(
+                Subscriber<? super TransactionLogInterface> subscriber) {
+            this.subscriber = subscriber;
+            this.queue = new ConcurrentLinkedQueue<>();
+            this.requested = new AtomicLong();
+            this.credits = new AtomicLong();
+            this.remainingEvents = new AtomicLong(eventCount);
+            this.wip = new AtomicInteger();
+            this.runningWorkers = new AtomicInteger();
+            this.workerThreadList = new ArrayList<>();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n < 1) {
+                this.error = new IllegalArgumentException(
+                        "Wrong Request !!! - " + n);
+                drain();
+                return;
+            }
+            addCapped(requested, n);
+            addCapped(credits, n);
+            if (!started) {
+                this.started = true;
+                start();
+            } else
+                workerThreadList.forEach(LockSupport::unpark);
+            drain();
+        }
+
+        /**
+         * Runs on the first request, which the subscriber makes on one
+         * thread at a time. The numbers are taken here in the order of the
+         * names, the logs of the new users are left to the lanes.
+         */
+        private void start() {
+            try {
+                int[] userNumbers = transactionLogGenerator
+                        .allocateUserNumbers(userNames.length);
+                int[] accountNumbers = transactionLogGenerator
+                        .allocateAccountNumbers(userNames.length);
+                if (userNumbers.length == 0)
+                    this.generationDone = true;
+                else if (parallelism == 1)
+                    this.inlineLane = new Lane(userNumbers, accountNumbers,
+                            IntStream.range(0, userNumbers.length).toArray());
+                else
+                    startWorkers(userNumbers, accountNumbers);
+            } catch (RuntimeException e) {
+                this.error = e;
+            }
+        }
+
+        private void startWorkers(int[] userNumbers, int[] accountNumbers) {
+            int workerCount = Math.min(parallelism, userNumbers.length);
+            runningWorkers.set(workerCount);
+            for (int i = 0; i < workerCount; i++) {
+                int worker = i;
+                Lane lane = new Lane(userNumbers, accountNumbers,
+                        IntStream.range(0, userNumbers.length)
+                                .filter(index -> index % workerCount == worker)
+                                .toArray());
+                Thread thread = new Thread(() -> runWorker(lane),
+                        "TransactionLogPublisher-" + worker);
+                thread.setDaemon(true);
+                workerThreadList.add(thread);
+            }
+            workerThreadList.forEach(Thread::start);
+        }
+
+        private void runWorker(Lane lane) {
+            try {
+                while (!cancelled &&
+                        (lane.hasNewUserLogs() || claimEvent())) {
+                    while (!claimCredit()) {
+                        if (cancelled)
+                            return;
+                        LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                    }
+                    TransactionLogInterface transactionLog = lane.next();
+                    if (transactionLog == null) {
+                        addCapped(credits, 1);
+                        continue;
+                    }
+                    queue.offer(transactionLog);
+                    drain();
+                }
+            } catch (Throwable throwable) {
+                this.error = throwable;
+                log.error("runWorker() - {}", Thread.currentThread()
+                        .getName(), throwable);
+            } finally {
+                if (runningWorkers.decrementAndGet() == 0) {
+                    this.generationDone = true;
+                    drain();
+                }
+            }
+        }
+
+        private boolean claimEvent() {
+            return eventCount == Long.MAX_VALUE ||
+                    remainingEvents.getAndDecrement() > 0;
+        }
+
+        private boolean claimCredit() {
+            while (true) {
+                long credit = credits.get();
+                if (credit < 1)
+                    return false;
+                if (credit == Long.MAX_VALUE ||
+                        credits.compareAndSet(credit, credit - 1))
+                    return true;
+            }
+        }
+
+        /**
+         * @return null when the events are used up
+         */
+        private TransactionLogInterface generateInline() {
+            if (inlineLane.hasNewUserLogs())
+                return inlineLane.next();
+            while (claimEvent()) {
+                TransactionLogInterface transactionLog = inlineLane.next();
+                if (transactionLog != null)
+                    return transactionLog;
+            }
+            this.generationDone = true;
+            return null;
+        }
+
+        /**
+         * Emits on whichever thread gets here first while the others only
+         * leave a missed mark, so the subscriber is called serially.
+         */
+        private void drain() {
+            if (wip.getAndIncrement() != 0)
+                return;
+            int missed = 1;
+            do {
+                emit();
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void emit() {
+            while (!terminated) {
+                if (cancelled) {
+                    queue.clear();
+                    return;
+                }
+                if (error != null) {
+                    terminate();
+                    subscriber.onError(error);
+                    return;
+                }
+                long outstanding = requested.get();
+                TransactionLogInterface transactionLog =
+                        outstanding == 0 ? null : queue.poll();
+                if (transactionLog == null && outstanding > 0 &&
+                        inlineLane != null && !generationDone) {
+                    try {
+                        transactionLog = generateInline();
+                    } catch (RuntimeException e) {
+                        this.error = e;
+                        continue;
+                    }
+                }
+                if (transactionLog == null) {
+                    if (generationDone && queue.isEmpty()) {
+                        terminate();
+                        subscriber.onComplete();
+                    }
+                    return;
+                }
+                if (outstanding != Long.MAX_VALUE)
+                    requested.decrementAndGet();
+                subscriber.onNext(transactionLog);
+            }
+        }
+
+        private void terminate() {
+            this.terminated = true;
+            this.cancelled = true;
+            queue.clear();
+            workerThreadList.forEach(LockSupport::unpark);
+        }
+
+        @Override
+        public void cancel() {
+            this.cancelled = true;
+            workerThreadList.forEach(LockSupport::unpark);
+            drain();
+        }
+    }
+
+    /**
+     * Creates the users of one generating thread and picks them.
+     */
+    private class Lane {
+        private final int[] userNumbers;
+        private final int[] accountNumbers;
+        private final String[] userNames;
+        private final AliasSampler userSampler;
+        private int newUserLogCount;
+
+        /**
+         * @param indexes of the users of the lane in the numbers and names
+         */
+        private Lane(int[] userNumbers, int[] accountNumbers, int[] indexes) {
+            this.userNumbers = Arrays.stream(indexes)
+                    .map(index -> userNumbers[index]).toArray();
+            this.accountNumbers = Arrays.stream(indexes)
+                    .map(index -> accountNumbers[index]).toArray();
+            this.userNames = Arrays.stream(indexes)
+                    .mapToObj(index -> TransactionLogPublisher.this
+                            .userNames[index]).toArray(String[]::new);
+            this.userSampler = transactionLogGenerator.getWorkloadProfile()
+                    .buildUserSampler(this.userNumbers.length);
+        }
+
+        private boolean hasNewUserLogs() {
+            return newUserLogCount < userNumbers.length * 2;
+        }
+
+        private TransactionLogInterface next() {
+            TransactionLogInterface transactionLog = hasNewUserLogs() ?
+                    nextNewUserLog() : transactionLogGenerator
+                    .generateRandomTransactionLog(userNumbers[KeyDistribution
+                            .sample(userSampler, userNumbers.length,
+                                    transactionLogGenerator
+                                            .getTransactionLogRandom()
+                                            .forCurrentThread())]);
+            if (transactionLog != null)
+                generatedCount.increment();
+            return transactionLog;
+        }
+
+        /**
+         * The NewUser log of a user, then its OpeningAccount log.
+         */
+        private TransactionLogInterface nextNewUserLog() {
+            int index = newUserLogCount / 2;
+            return newUserLogCount++ % 2 == 0 ? transactionLogGenerator
+                    .generateNewUser(userNumbers[index], userNames[index]) :
+                    transactionLogGenerator.generateOpeningAccount(
+                            userNumbers[index], accountNumbers[index]);
+        }
+    }
+}
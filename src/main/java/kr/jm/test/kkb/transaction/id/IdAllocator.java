@@ -0,0 +1,98 @@
+package kr.jm.test.kkb.transaction.id;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+
+/**
+ * Unique int ids without a shared counter: every thread takes ids from a
+ * block of its own, leased from an {@link IdBlockSource} when used up, so
+ * the only contention left is one lease per block. The ids of a thread
+ * increase; those of different threads interleave by block.
+ */
+public class IdAllocator implements AutoCloseable {
+
+    public static final String INSTANCE_INDEX_PROPERTY = "kkb.instance.index";
+    public static final String INSTANCE_COUNT_PROPERTY = "kkb.instance.count";
+    public static final String LEASE_DIRECTORY_PROPERTY =
+            "kkb.id.lease.dir";
+    public static final String BLOCK_SIZE_PROPERTY = "kkb.id.block.size";
+    public static final int DEFAULT_BLOCK_SIZE = 1024;
+
+    private final IdBlockSource idBlockSource;
+    // {next, end} of the block of the thread
+    private final ThreadLocal<int[]> threadBlock;
+
+    public IdAllocator(IdBlockSource idBlockSource) {
+        this.idBlockSource = idBlockSource;
+        this.threadBlock = ThreadLocal.withInitial(() -> new int[2]);
+    }
+
+    /**
+     * A single instance counting from the first id.
+     */
+    public static IdAllocator sequential(int firstId) {
+        return new IdAllocator(
+                new StripedIdBlockSource(firstId, DEFAULT_BLOCK_SIZE, 0, 1));
+    }
+
+    /**
+     * Leases from {@code <kkb.id.lease.dir>/<name>.lease} when the
+     * directory is set, else from the stripe of {@code kkb.instance.index}
+     * in {@code kkb.instance.count}, 0 in 1 by default, in blocks of
+     * {@code kkb.id.block.size}.
+     */
+    public static IdAllocator fromSystemProperties(String name, int firstId) {
+        int blockSize = Integer.getInteger(BLOCK_SIZE_PROPERTY,
+                DEFAULT_BLOCK_SIZE);
+        return new IdAllocator(Optional.ofNullable(
+                System.getProperty(LEASE_DIRECTORY_PROPERTY))
+                .map(directory -> Paths.get(directory, name + ".lease"))
+                .<IdBlockSource>map(leaseFile -> new LeaseFileIdBlockSource(
+                        leaseFile, firstId, blockSize))
+                .orElseGet(() -> new StripedIdBlockSource(firstId, blockSize,
+                        Integer.getInteger(INSTANCE_INDEX_PROPERTY, 0),
+                        Integer.getInteger(INSTANCE_COUNT_PROPERTY, 1))));
+    }
+
+    public static IdAllocator ofLeaseFile(Path leaseFile, int firstId) {
+        return new IdAllocator(new LeaseFileIdBlockSource(leaseFile, firstId,
+                DEFAULT_BLOCK_SIZE));
+    }
+
+    public int next() {
+        int[] block = threadBlock.get();
+        if (block[0] == block[1]) {
+            block[0] = idBlockSource.leaseBlock();
+            block[1] = block[0] + idBlockSource.getBlockSize();
+        }
+        return block[0]++;
+    }
+
+    /**
+     * @return count ids in increasing order
+     */
+    public int[] next(int count) {
+        int[] ids = new int[count];
+        for (int i = 0; i < count; i++)
+            ids[i] = next();
+        return ids;
+    }
+
+    public IdBlockSource getIdBlockSource() {
+        return idBlockSource;
+    }
+
+    /**
+     * Closes the {@link IdBlockSource}, the lease file of one.
+     */
+    @Override
+    public void close() {
+        idBlockSource.close();
+    }
+
+    @Override
+    public String toString() {
+        return "IdAllocator(" + idBlockSource + ")";
+    }
+}
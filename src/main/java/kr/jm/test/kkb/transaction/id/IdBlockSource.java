@@ -0,0 +1,47 @@
+package kr.jm.test.kkb.transaction.id;
+
+import java.util.function.LongConsumer;
+
+/**
+ * Hands out disjoint blocks of int ids, each {@link #getBlockSize()} long.
+ */
+public interface IdBlockSource extends AutoCloseable {
+
+    int getBlockSize();
+
+    /**
+     * @return the first id of a block no other lease got
+     */
+    int leaseBlock();
+
+    /**
+     * @return where the leases are, for a checkpoint, 0 when the source
+     * keeps it durably itself
+     */
+    default long getLeasePosition() {
+        return 0;
+    }
+
+    /**
+     * Moves the leases past the position of a checkpoint.
+     */
+    default void resumeAfter(long leasePosition) {
+    }
+
+    /**
+     * Has the writer persist a lease position before any lease reaches it,
+     * reserveBlocks ahead, so resuming after a crash from an older
+     * checkpoint also skips what was leased after it. Nothing by default,
+     * for a source keeping its position durably itself.
+     */
+    default void reserveAhead(int reserveBlocks,
+            LongConsumer reservationWriter) {
+    }
+
+    /**
+     * Releases what the source holds open, nothing by default.
+     */
+    @Override
+    default void close() {
+    }
+}
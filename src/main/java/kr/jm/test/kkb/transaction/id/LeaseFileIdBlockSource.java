@@ -0,0 +1,116 @@
+package kr.jm.test.kkb.transaction.id;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Blocks leased from a file holding the next free id, shared by any number
+ * of processes on a host: every lease takes an exclusive lock on the file,
+ * reads the next id, writes it past the block and forces it to disk before
+ * the lock is released, so leases survive restarts and never overlap.
+ * <p>
+ * File locks are per process, so sources of one JVM on the same file also
+ * take a lock of the JVM first.
+ */
+public class LeaseFileIdBlockSource implements IdBlockSource {
+
+    private static final ConcurrentMap<Path, Object> JVM_LOCKS =
+            new ConcurrentHashMap<>();
+
+    private final Path leaseFile;
+    private final int firstId;
+    private final int blockSize;
+    private final Object jvmLock;
+    private final FileChannel fileChannel;
+    private final ByteBuffer buffer;
+
+    /**
+     * @param firstId the next free id of a new lease file
+     */
+    public LeaseFileIdBlockSource(Path leaseFile, int firstId,
+            int blockSize) {
+        if (blockSize < 1)
+            throw new IllegalArgumentException("Wrong Block Size !!! - " +
+                    blockSize);
+        this.leaseFile = leaseFile.toAbsolutePath().normalize();
+        this.firstId = firstId;
+        this.blockSize = blockSize;
+        this.jvmLock =
+                JVM_LOCKS.computeIfAbsent(this.leaseFile, path -> new Object());
+        try {
+            this.fileChannel = FileChannel.open(this.leaseFile,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new RuntimeException("Wrong Lease File !!! - " + leaseFile,
+                    e);
+        }
+        this.buffer = ByteBuffer.allocate(Long.BYTES);
+    }
+
+    @Override
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    @Override
+    public int leaseBlock() {
+        synchronized (jvmLock) {
+            try {
+                FileLock fileLock = fileChannel.lock();
+                try {
+                    return leaseBlockLocked();
+                } finally {
+                    fileLock.release();
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Lease Failed !!! - " + leaseFile,
+                        e);
+            }
+        }
+    }
+
+    private int leaseBlockLocked() throws IOException {
+        long start = readNextId();
+        if (start + blockSize - 1 > Integer.MAX_VALUE)
+            throw new IllegalStateException(
+                    "Id Range Exhausted !!! - " + leaseFile);
+        buffer.clear();
+        buffer.putLong(start + blockSize).flip();
+        while (buffer.hasRemaining())
+            fileChannel.write(buffer, buffer.position());
+        fileChannel.force(false);
+        return (int) start;
+    }
+
+    private long readNextId() throws IOException {
+        if (fileChannel.size() < Long.BYTES)
+            return firstId;
+        buffer.clear();
+        while (buffer.hasRemaining())
+            if (fileChannel.read(buffer, buffer.position()) < 0)
+                throw new IOException("Truncated Lease File - " + leaseFile);
+        return buffer.getLong(0);
+    }
+
+    @Override
+    public void close() {
+        try {
+            fileChannel.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LeaseFileIdBlockSource(" + leaseFile + ", blockSize=" +
+                blockSize + ")";
+    }
+}
@@ -0,0 +1,105 @@
+package kr.jm.test.kkb.transaction.id;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+/**
+ * Blocks striped over the instances of a deployment: the n-th block of the
+ * instance of index i in count starts at
+ * {@code firstId + (n * instanceCount + i) * blockSize}, so instances
+ * configured with their own index never overlap without talking to each
+ * other.
+ */
+public class StripedIdBlockSource implements IdBlockSource {
+
+    private final int firstId;
+    private final int blockSize;
+    private final int instanceIndex;
+    private final int instanceCount;
+    private final AtomicLong blockSequence;
+    private final Object reservationLock;
+    private volatile long reservedPosition;
+    private int reserveBlocks;
+    private LongConsumer reservationWriter;
+
+    public StripedIdBlockSource(int firstId, int blockSize, int instanceIndex,
+            int instanceCount) {
+        if (blockSize < 1 || instanceCount < 1 || instanceIndex < 0 ||
+                instanceIndex >= instanceCount)
+            throw new IllegalArgumentException("Wrong Id Stripe !!! - " +
+                    "blockSize=" + blockSize + ", instance=" + instanceIndex +
+                    "/" + instanceCount);
+        this.firstId = firstId;
+        this.blockSize = blockSize;
+        this.instanceIndex = instanceIndex;
+        this.instanceCount = instanceCount;
+        this.blockSequence = new AtomicLong();
+        this.reservationLock = new Object();
+        this.reservedPosition = Long.MAX_VALUE;
+    }
+
+    @Override
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    @Override
+    public int leaseBlock() {
+        long sequence = blockSequence.getAndIncrement();
+        if (sequence >= reservedPosition)
+            reserveThrough(sequence);
+        long start = firstId + (sequence * instanceCount + instanceIndex) *
+                blockSize;
+        if (start + blockSize - 1 > Integer.MAX_VALUE)
+            throw new IllegalStateException("Id Range Exhausted !!! - " +
+                    this);
+        return (int) start;
+    }
+
+    @Override
+    public long getLeasePosition() {
+        return blockSequence.get();
+    }
+
+    @Override
+    public void resumeAfter(long leasePosition) {
+        blockSequence.accumulateAndGet(leasePosition, Math::max);
+    }
+
+    @Override
+    public void reserveAhead(int reserveBlocks,
+            LongConsumer reservationWriter) {
+        if (reserveBlocks < 1)
+            throw new IllegalArgumentException("Wrong Reserve Blocks !!! - " +
+                    reserveBlocks);
+        synchronized (reservationLock) {
+            this.reserveBlocks = reserveBlocks;
+            this.reservationWriter = reservationWriter;
+            this.reservedPosition = Long.MIN_VALUE;
+            reserveThrough(blockSequence.get());
+        }
+    }
+
+    /**
+     * Blocks the leases reaching the reserved position until the writer
+     * persisted the next one.
+     */
+    private void reserveThrough(long sequence) {
+        synchronized (reservationLock) {
+            if (sequence < reservedPosition)
+                return;
+            long position = Math.max(sequence, blockSequence.get()) +
+                    reserveBlocks;
+            reservationWriter.accept(position);
+            this.reservedPosition = position;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "StripedIdBlockSource(firstId=" + firstId + ", blockSize=" +
+                blockSize + ", instance=" + instanceIndex + "/" +
+                instanceCount + ", leased=" + blockSequence.get() +
+                ", reserved=" + reservedPosition + ")";
+    }
+}
@@ -0,0 +1,76 @@
+package kr.jm.test.kkb.transaction.index;
+
+/**
+ * Lock-free balance per account number on a {@link ChunkedLongArray}, so
+ * an account costs 8 bytes, 10M sequential accounts about 80MB, and no
+ * object. Debits are CAS loops on the account's own slot and never take
+ * the balance below 0; generators working on different accounts never
+ * contend.
+ */
+public class BalanceLedger {
+
+    private final ChunkedLongArray balances;
+
+    public BalanceLedger() {
+        this.balances = new ChunkedLongArray();
+    }
+
+    public long getBalance(int accountNumber) {
+        return balances.get(accountNumber);
+    }
+
+    /**
+     * @return the new balance
+     */
+    public long deposit(int accountNumber, long amount) {
+        if (amount < 0)
+            throw new IllegalArgumentException("Wrong Amount !!! - " + amount);
+        return balances.addAndGet(accountNumber, amount);
+    }
+
+    /**
+     * @return false, without a change, when the balance is below the amount
+     */
+    public boolean tryWithdraw(int accountNumber, long amount) {
+        if (amount < 0)
+            throw new IllegalArgumentException("Wrong Amount !!! - " + amount);
+        long balance;
+        do {
+            if ((balance = balances.get(accountNumber)) < amount)
+                return false;
+        } while (!balances.compareAndSet(accountNumber, balance,
+                balance - amount));
+        return true;
+    }
+
+    /**
+     * Withdraws the amount, or as many whole units as the balance holds
+     * when it is lower.
+     *
+     * @return the withdrawn amount, 0 when the balance is below one unit
+     */
+    public long withdrawUpTo(int accountNumber, long maxAmount, long unit) {
+        long balance;
+        long amount;
+        do {
+            balance = balances.get(accountNumber);
+            amount = Math.min(maxAmount, balance - balance % unit);
+            if (amount <= 0)
+                return 0;
+        } while (!balances.compareAndSet(accountNumber, balance,
+                balance - amount));
+        return amount;
+    }
+
+    public void clear(int accountNumber) {
+        if (balances.get(accountNumber) != 0)
+            balances.set(accountNumber, 0);
+    }
+
+    /**
+     * @see ChunkedLongArray#releaseChunkOf(int)
+     */
+    public void releaseChunkOf(int accountNumber) {
+        balances.releaseChunkOf(accountNumber);
+    }
+}
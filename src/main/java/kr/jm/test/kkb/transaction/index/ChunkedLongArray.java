@@ -0,0 +1,65 @@
+package kr.jm.test.kkb.transaction.index;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Sparse long array indexed by the whole int range, allocated in 64K-slot
+ * chunks on first write. Unwritten slots read as 0.
+ */
+public class ChunkedLongArray {
+
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int DIRECTORY_SIZE = 1 << (32 - CHUNK_BITS);
+
+    private final AtomicReferenceArray<AtomicLongArray> directory;
+
+    public ChunkedLongArray() {
+        this.directory = new AtomicReferenceArray<>(DIRECTORY_SIZE);
+    }
+
+    private AtomicLongArray getOrCreateChunk(int index) {
+        int chunkIndex = index >>> CHUNK_BITS;
+        AtomicLongArray chunk = directory.get(chunkIndex);
+        if (chunk == null && !directory.compareAndSet(chunkIndex, null,
+                chunk = new AtomicLongArray(CHUNK_SIZE)))
+            chunk = directory.get(chunkIndex);
+        return chunk;
+    }
+
+    public long get(int index) {
+        AtomicLongArray chunk = directory.get(index >>> CHUNK_BITS);
+        return chunk == null ? 0 : chunk.get(index & CHUNK_MASK);
+    }
+
+    public void set(int index, long value) {
+        getOrCreateChunk(index).set(index & CHUNK_MASK, value);
+    }
+
+    public boolean compareAndSet(int index, long expect, long update) {
+        return getOrCreateChunk(index)
+                .compareAndSet(index & CHUNK_MASK, expect, update);
+    }
+
+    public long addAndGet(int index, long delta) {
+        return getOrCreateChunk(index).addAndGet(index & CHUNK_MASK, delta);
+    }
+
+    /**
+     * Drops the 64K-slot chunk holding the index, which then reads as 0;
+     * only for chunks no other thread is still writing.
+     */
+    public void releaseChunkOf(int index) {
+        directory.set(index >>> CHUNK_BITS, null);
+    }
+
+    public long getAllocatedChunkCount() {
+        long count = 0;
+        for (int i = 0; i < DIRECTORY_SIZE; i++)
+            if (directory.get(i) != null)
+                count++;
+        return count;
+    }
+}
@@ -0,0 +1,418 @@
+package kr.jm.test.kkb.transaction.index;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+import java.util.function.IntUnaryOperator;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+/**
+ * Concurrent user to accounts index on primitive arrays.
+ * <p>
+ * Both user and account numbers address lazily allocated chunks of a
+ * directory covering the whole int range, so lookups are two array reads
+ * and no number is ever boxed. A user's accounts are an
+ * {@link AtomicIntegerArray} of the count followed by the slots, replaced
+ * by a copy twice as large when full. An append claims the empty slot at
+ * the count with a CAS and then moves the count over it, any thread finding
+ * a claimed slot at the count moving it as well, so no append waits for
+ * another one; appends are amortized O(1), and reads and random selection
+ * are O(1) over the accounts below the count they read. A removal detaches
+ * the list and freezes its count as the complement, and an append that
+ * claimed a slot past the frozen count gives its account back. Membership
+ * is answered by the account to owner table. With sequential numbers, a
+ * user with one account takes about 48 bytes; {@code
+ * UserAccountIndexFootprint} under {@code src/jmh} measures it against a
+ * {@code ConcurrentHashMap} of {@code ConcurrentSkipListSet}s.
+ * <p>
+ * Every chunk counts its live users or accounts, so the chunks whose
+ * numbers were all removed can be released and the memory of retired
+ * users given back.
+ */
+public class UserAccountIndex {
+
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int DIRECTORY_SIZE = 1 << (32 - CHUNK_BITS);
+    private static final int NO_OWNER = Integer.MIN_VALUE;
+    private static final int RELEASING = Integer.MIN_VALUE;
+    private static final int EMPTY = Integer.MIN_VALUE;
+    /**
+     * The accounts of a user without any, shared as it has no slot to claim.
+     */
+    private static final AtomicIntegerArray NO_ACCOUNTS =
+            new AtomicIntegerArray(1);
+
+    private final AtomicReferenceArray<UserChunk> userAccountsDirectory;
+    private final AtomicReferenceArray<AtomicIntegerArray>
+            accountOwnerDirectory;
+    private final AtomicIntegerArray userChunkLiveCounts;
+    private final AtomicIntegerArray accountChunkLiveCounts;
+    private final LongAdder userCount;
+
+    public UserAccountIndex() {
+        this.userAccountsDirectory =
+                new AtomicReferenceArray<>(DIRECTORY_SIZE);
+        this.accountOwnerDirectory =
+                new AtomicReferenceArray<>(DIRECTORY_SIZE);
+        this.userChunkLiveCounts = new AtomicIntegerArray(DIRECTORY_SIZE);
+        this.accountChunkLiveCounts = new AtomicIntegerArray(DIRECTORY_SIZE);
+        this.userCount = new LongAdder();
+    }
+
+    private static int chunkIndex(int number) {
+        return number >>> CHUNK_BITS;
+    }
+
+    private static int slotIndex(int number) {
+        return number & CHUNK_MASK;
+    }
+
+    private UserChunk getUserChunk(int userNumber) {
+        return userAccountsDirectory.get(chunkIndex(userNumber));
+    }
+
+    /**
+     * Counts one more live number on the chunk of the given number, creating
+     * the chunk when missing, so it cannot be released until the count is
+     * given back.
+     */
+    private static <T> T reserveChunk(AtomicReferenceArray<T> directory,
+            AtomicIntegerArray liveCounts, int number,
+            Supplier<T> chunkFactory) {
+        int chunkIndex = chunkIndex(number);
+        while (true) {
+            T chunk = directory.get(chunkIndex);
+            if (chunk == null && !directory.compareAndSet(chunkIndex, null,
+                    chunk = chunkFactory.get()))
+                continue;
+            int liveCount = liveCounts.get(chunkIndex);
+            if (liveCount == RELEASING) {
+                Thread.yield();
+                continue;
+            }
+            if (!liveCounts.compareAndSet(chunkIndex, liveCount,
+                    liveCount + 1))
+                continue;
+            // released and replaced between the read and the count
+            if (directory.get(chunkIndex) == chunk)
+                return chunk;
+            liveCounts.decrementAndGet(chunkIndex);
+        }
+    }
+
+    private static AtomicIntegerArray newOwnerChunk() {
+        int[] owners = new int[CHUNK_SIZE];
+        Arrays.fill(owners, NO_OWNER);
+        return new AtomicIntegerArray(owners);
+    }
+
+    public boolean addUser(int userNumber) {
+        if (userNumber == NO_OWNER)
+            throw new IllegalArgumentException(
+                    "Reserved userNumber !!! - " + userNumber);
+        boolean added = reserveChunk(userAccountsDirectory,
+                userChunkLiveCounts, userNumber, UserChunk::new).accounts
+                .compareAndSet(slotIndex(userNumber), null, NO_ACCOUNTS);
+        if (added)
+            userCount.increment();
+        else
+            userChunkLiveCounts.decrementAndGet(chunkIndex(userNumber));
+        return added;
+    }
+
+    public boolean containsUser(int userNumber) {
+        UserChunk chunk = getUserChunk(userNumber);
+        return chunk != null &&
+                chunk.accounts.get(slotIndex(userNumber)) != null;
+    }
+
+    public boolean addAccount(int userNumber, int accountNumber) {
+        if (accountNumber == EMPTY)
+            throw new IllegalArgumentException(
+                    "Reserved accountNumber !!! - " + accountNumber);
+        UserChunk chunk = getUserChunk(userNumber);
+        if (chunk == null)
+            return false;
+        AtomicIntegerArray ownerChunk = reserveChunk(accountOwnerDirectory,
+                accountChunkLiveCounts, accountNumber,
+                UserAccountIndex::newOwnerChunk);
+        if (!ownerChunk.compareAndSet(slotIndex(accountNumber), NO_OWNER,
+                userNumber)) {
+            accountChunkLiveCounts.decrementAndGet(chunkIndex(accountNumber));
+            return false;
+        }
+        if (chunk.appendAccount(slotIndex(userNumber), accountNumber))
+            return true;
+        releaseAccount(userNumber, accountNumber);
+        return false;
+    }
+
+    /**
+     * Gives the account back to no owner, once only, as the owner of the
+     * account must still be the user.
+     */
+    private void releaseAccount(int userNumber, int accountNumber) {
+        if (accountOwnerDirectory.get(chunkIndex(accountNumber))
+                .compareAndSet(slotIndex(accountNumber), userNumber, NO_OWNER))
+            accountChunkLiveCounts.decrementAndGet(chunkIndex(accountNumber));
+    }
+
+    /**
+     * Removes the user and gives its account numbers back to no owner; the
+     * numbers are not meant to be added again.
+     *
+     * @return the accounts the user had, null when not existing
+     */
+    public int[] removeUser(int userNumber) {
+        UserChunk chunk = getUserChunk(userNumber);
+        if (chunk == null)
+            return null;
+        int[] accounts = chunk.removeAccounts(slotIndex(userNumber));
+        if (accounts == null)
+            return null;
+        userCount.decrement();
+        userChunkLiveCounts.decrementAndGet(chunkIndex(userNumber));
+        for (int accountNumber : accounts)
+            releaseAccount(userNumber, accountNumber);
+        return accounts;
+    }
+
+    /**
+     * Releases the chunks without a live user or account. The listeners run
+     * before a number can be added to the chunk again, so they may drop any
+     * data kept for its range.
+     *
+     * @param releasedUserChunkListener    gets the first user number of
+     *                                     every released chunk
+     * @param releasedAccountChunkListener the same for account numbers
+     * @return the number of chunks released
+     */
+    public int releaseEmptyChunks(IntConsumer releasedUserChunkListener,
+            IntConsumer releasedAccountChunkListener) {
+        return releaseEmptyChunks(userAccountsDirectory, userChunkLiveCounts,
+                releasedUserChunkListener) +
+                releaseEmptyChunks(accountOwnerDirectory,
+                        accountChunkLiveCounts, releasedAccountChunkListener);
+    }
+
+    private static <T> int releaseEmptyChunks(
+            AtomicReferenceArray<T> directory, AtomicIntegerArray liveCounts,
+            IntConsumer releasedChunkListener) {
+        int released = 0;
+        for (int chunkIndex = 0; chunkIndex < DIRECTORY_SIZE; chunkIndex++) {
+            if (directory.get(chunkIndex) == null ||
+                    !liveCounts.compareAndSet(chunkIndex, 0, RELEASING))
+                continue;
+            directory.set(chunkIndex, null);
+            try {
+                releasedChunkListener.accept(chunkIndex << CHUNK_BITS);
+            } finally {
+                liveCounts.set(chunkIndex, 0);
+            }
+            released++;
+        }
+        return released;
+    }
+
+    public int getAllocatedChunkCount() {
+        int count = 0;
+        for (int i = 0; i < DIRECTORY_SIZE; i++)
+            count += (userAccountsDirectory.get(i) == null ? 0 : 1) +
+                    (accountOwnerDirectory.get(i) == null ? 0 : 1);
+        return count;
+    }
+
+    public int getOwnerUserNumber(int accountNumber) {
+        AtomicIntegerArray chunk =
+                accountOwnerDirectory.get(chunkIndex(accountNumber));
+        return chunk == null ? NO_OWNER : chunk.get(slotIndex(accountNumber));
+    }
+
+    public boolean containsAccount(int userNumber, int accountNumber) {
+        return userNumber != NO_OWNER &&
+                getOwnerUserNumber(accountNumber) == userNumber;
+    }
+
+    public int getAccountCount(int userNumber) {
+        UserChunk chunk = getUserChunk(userNumber);
+        return chunk == null ? 0 :
+                chunk.getAccountCount(slotIndex(userNumber));
+    }
+
+    /**
+     * Picks one account of the user from a single consistent snapshot of its
+     * account list.
+     *
+     * @param indexSelector maps the account count to the index to pick
+     */
+    public int selectAccountNumber(int userNumber,
+            IntUnaryOperator indexSelector) {
+        UserChunk chunk = getUserChunk(userNumber);
+        AtomicIntegerArray accounts = chunk == null ? null :
+                chunk.accounts.get(slotIndex(userNumber));
+        int count = accounts == null ? 0 : readCount(accounts);
+        if (count == 0)
+            throw new RuntimeException("Wrong Size !!! - userNumber = " +
+                    userNumber);
+        return accounts.get(1 + indexSelector.applyAsInt(count));
+    }
+
+    /**
+     * Visits every user with a copy of its accounts as they are at the
+     * visit.
+     */
+    public void forEachUser(ObjIntConsumer<int[]> userAccountsConsumer) {
+        for (int chunkIndex = 0; chunkIndex < DIRECTORY_SIZE; chunkIndex++) {
+            UserChunk chunk = userAccountsDirectory.get(chunkIndex);
+            if (chunk == null)
+                continue;
+            for (int slotIndex = 0; slotIndex < CHUNK_SIZE; slotIndex++) {
+                int[] accounts = chunk.getAccounts(slotIndex);
+                if (accounts != null)
+                    userAccountsConsumer.accept(accounts,
+                            chunkIndex << CHUNK_BITS | slotIndex);
+            }
+        }
+    }
+
+    /**
+     * @return a copy of the accounts below the count, null when not existing
+     */
+    public int[] getAccountNumbers(int userNumber) {
+        UserChunk chunk = getUserChunk(userNumber);
+        return chunk == null ? null : chunk.getAccounts(slotIndex(userNumber));
+    }
+
+    private static int readCount(AtomicIntegerArray accounts) {
+        int count = accounts.get(0);
+        return count < 0 ? ~count : count;
+    }
+
+    public long getUserCount() {
+        return userCount.sum();
+    }
+
+    public IntStream userNumbers() {
+        return IntStream.range(0, DIRECTORY_SIZE)
+                .filter(chunkIndex -> userAccountsDirectory.get(chunkIndex) !=
+                        null).flatMap(chunkIndex -> {
+                    UserChunk chunk = userAccountsDirectory.get(chunkIndex);
+                    return IntStream.range(0, CHUNK_SIZE)
+                            .filter(slotIndex ->
+                                    chunk.accounts.get(slotIndex) != null)
+                            .map(slotIndex -> chunkIndex << CHUNK_BITS |
+                                    slotIndex);
+                });
+    }
+
+    /**
+     * The accounts of a chunk of users, each slot holding its count in the
+     * first element, the complement once removed, and {@code EMPTY} in the
+     * slots not claimed yet.
+     */
+    private static class UserChunk {
+        private final AtomicReferenceArray<AtomicIntegerArray> accounts;
+
+        private UserChunk() {
+            this.accounts = new AtomicReferenceArray<>(CHUNK_SIZE);
+        }
+
+        private int getAccountCount(int slotIndex) {
+            AtomicIntegerArray accounts = this.accounts.get(slotIndex);
+            return accounts == null ? 0 : readCount(accounts);
+        }
+
+        private int[] getAccounts(int slotIndex) {
+            AtomicIntegerArray accounts = this.accounts.get(slotIndex);
+            return accounts == null ? null :
+                    copyAccounts(accounts, readCount(accounts));
+        }
+
+        /**
+         * @return false when the user is missing or was removed before the
+         * count moved over the account
+         */
+        private boolean appendAccount(int slotIndex, int accountNumber) {
+            while (true) {
+                AtomicIntegerArray accounts = this.accounts.get(slotIndex);
+                if (accounts == null)
+                    return false;
+                int count = settleCount(accounts);
+                if (count < 0)
+                    return false;
+                if (count == accounts.length() - 1)
+                    this.accounts.compareAndSet(slotIndex, accounts,
+                            grow(accounts, count));
+                else if (accounts.compareAndSet(count + 1, EMPTY,
+                        accountNumber)) {
+                    accounts.compareAndSet(0, count, count + 1);
+                    int settledCount = accounts.get(0);
+                    return settledCount >= 0 || ~settledCount > count;
+                }
+            }
+        }
+
+        /**
+         * Detaches the accounts of the user and freezes their count, so the
+         * appends still working on them either made it below the count or
+         * give their account back.
+         *
+         * @return the accounts below the frozen count, null when not existing
+         */
+        private int[] removeAccounts(int slotIndex) {
+            AtomicIntegerArray accounts = this.accounts.getAndSet(slotIndex,
+                    null);
+            if (accounts == null)
+                return null;
+            if (accounts == NO_ACCOUNTS)
+                return new int[0];
+            int count;
+            do {
+                count = settleCount(accounts);
+            } while (!accounts.compareAndSet(0, count, ~count));
+            return copyAccounts(accounts, count);
+        }
+
+        /**
+         * Moves the count over the slots already claimed past it.
+         *
+         * @return the count, negative once removed
+         */
+        private static int settleCount(AtomicIntegerArray accounts) {
+            int count = accounts.get(0);
+            while (count >= 0 && count < accounts.length() - 1 &&
+                    accounts.get(count + 1) != EMPTY) {
+                accounts.compareAndSet(0, count, count + 1);
+                count = accounts.get(0);
+            }
+            return count;
+        }
+
+        /**
+         * Only called on full accounts, which no append writes any more.
+         */
+        private static AtomicIntegerArray grow(AtomicIntegerArray accounts,
+                int count) {
+            int[] grown = new int[1 + Math.max(1, count * 2)];
+            grown[0] = count;
+            for (int i = 1; i <= count; i++)
+                grown[i] = accounts.get(i);
+            Arrays.fill(grown, count + 1, grown.length, EMPTY);
+            return new AtomicIntegerArray(grown);
+        }
+
+        private static int[] copyAccounts(AtomicIntegerArray accounts,
+                int count) {
+            int[] copy = new int[count];
+            for (int i = 0; i < count; i++)
+                copy[i] = accounts.get(i + 1);
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package kr.jm.test.kkb.transaction.log;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class TransactionLogDictionary {
+
+    public static final List<String> BANK_NAMES = Collections
+            .unmodifiableList(Arrays.asList("카카오", "국민", "신한", "하나", "우리",
+                    "외환", "농협", "SC"));
+    public static final List<String> USER_NAMES = Collections
+            .unmodifiableList(Arrays.asList("라이언", "jm", "영희", "바둑이", "순희",
+                    "유제석", "감호동"));
+
+    private TransactionLogDictionary() {
+    }
+}
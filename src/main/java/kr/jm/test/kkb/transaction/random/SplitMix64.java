@@ -0,0 +1,53 @@
+package kr.jm.test.kkb.transaction.random;
+
+/**
+ * The SplitMix64 generator of {@link java.util.SplittableRandom} with an
+ * accessible state, so a stream can be parked in a primitive slot and
+ * resumed later without allocating a new generator per draw.
+ */
+public class SplitMix64 {
+
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private long state;
+
+    public SplitMix64(long state) {
+        this.state = state;
+    }
+
+    public static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Derives an independent stream state for the key, e.g. a user or thread
+     * number, from a master seed.
+     */
+    public static long split(long masterSeed, long key) {
+        return mix64(mix64(masterSeed) + GOLDEN_GAMMA * (key + 1));
+    }
+
+    public long getState() {
+        return state;
+    }
+
+    public long nextLong() {
+        return mix64(state += GOLDEN_GAMMA);
+    }
+
+    public int nextInt(int bound) {
+        if (bound <= 0)
+            throw new IllegalArgumentException("Wrong Bound !!! - " + bound);
+        return (int) (((nextLong() >>> 32) * bound) >>> 32);
+    }
+
+    public int nextInt(int origin, int bound) {
+        return origin + nextInt(bound - origin);
+    }
+
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+}
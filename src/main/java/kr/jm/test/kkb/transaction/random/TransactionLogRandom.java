@@ -0,0 +1,126 @@
+package kr.jm.test.kkb.transaction.random;
+
+import kr.jm.test.kkb.transaction.index.ChunkedLongArray;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Source of the generator's random streams.
+ * <p>
+ * When seeded, every user owns a stream split from the master seed and its
+ * state is parked in a primitive table between calls, so the same seed and
+ * user numbers replay the same decisions per user no matter which thread
+ * runs them. Unseeded, or for work not tied to a user, each thread has its
+ * own stream. Neither path shares a mutable generator across threads.
+ * <p>
+ * Only the decisions are replayed: when users are generated in parallel
+ * the accounts they open on the way take numbers, and the log clock is
+ * read, in whatever order the threads get there. Byte-identical output
+ * takes sequential generation and a deterministic log clock.
+ */
+public class TransactionLogRandom {
+
+    public static final String SEED_PROPERTY = "kkb.seed";
+    private static final org.slf4j.Logger log =
+            org.slf4j.LoggerFactory.getLogger(TransactionLogRandom.class);
+    private static final long UNSET_STATE = 0;
+
+    private final boolean seeded;
+    private final long masterSeed;
+    private final ChunkedLongArray userStates;
+    private final AtomicLong threadSequence;
+    private final ThreadLocal<SplitMix64> threadRandom;
+
+    private TransactionLogRandom(boolean seeded, long masterSeed) {
+        this.seeded = seeded;
+        this.masterSeed = masterSeed;
+        this.userStates = seeded ? new ChunkedLongArray() : null;
+        this.threadSequence = new AtomicLong();
+        this.threadRandom = ThreadLocal.withInitial(() -> new SplitMix64(
+                seeded ? SplitMix64.split(~masterSeed,
+                        threadSequence.getAndIncrement()) :
+                        ThreadLocalRandom.current().nextLong()));
+    }
+
+    public static TransactionLogRandom seeded(long masterSeed) {
+        return new TransactionLogRandom(true, masterSeed);
+    }
+
+    public static TransactionLogRandom unseeded() {
+        return new TransactionLogRandom(false, 0);
+    }
+
+    /**
+     * Seeded with the {@code kkb.seed} system property, or with a random
+     * master seed when it is not set; the seed is logged either way, so any
+     * run can be repeated with it.
+     */
+    public static TransactionLogRandom fromSystemProperties() {
+        Long seed = Long.getLong(SEED_PROPERTY);
+        long masterSeed =
+                seed != null ? seed : ThreadLocalRandom.current().nextLong();
+        log.info("fromSystemProperties() - {}={}{}", SEED_PROPERTY,
+                masterSeed, seed != null ? "" : " (random)");
+        return seeded(masterSeed);
+    }
+
+    public boolean isSeeded() {
+        return seeded;
+    }
+
+    public long getMasterSeed() {
+        return masterSeed;
+    }
+
+    public SplitMix64 forCurrentThread() {
+        return threadRandom.get();
+    }
+
+    /**
+     * Resumes the user's stream. Hand it back with
+     * {@link #store(int, SplitMix64)} when done; only one thread may work on
+     * a user at a time.
+     */
+    public SplitMix64 forUser(int userNumber) {
+        if (!seeded)
+            return forCurrentThread();
+        long state = userStates.get(userNumber);
+        return new SplitMix64(state != UNSET_STATE ? state :
+                SplitMix64.split(masterSeed, userNumber));
+    }
+
+    public void store(int userNumber, SplitMix64 random) {
+        if (seeded)
+            userStates.set(userNumber, random.getState());
+    }
+
+    /**
+     * @return the parked state of the user's stream, 0 when it has none or
+     * when unseeded
+     */
+    public long getUserState(int userNumber) {
+        return seeded ? userStates.get(userNumber) : UNSET_STATE;
+    }
+
+    public void setUserState(int userNumber, long state) {
+        if (seeded && state != UNSET_STATE)
+            userStates.set(userNumber, state);
+    }
+
+    /**
+     * Forgets the stream of a retired user.
+     */
+    public void evict(int userNumber) {
+        if (seeded && userStates.get(userNumber) != UNSET_STATE)
+            userStates.set(userNumber, UNSET_STATE);
+    }
+
+    /**
+     * @see ChunkedLongArray#releaseChunkOf(int)
+     */
+    public void releaseChunkOf(int userNumber) {
+        if (seeded)
+            userStates.releaseChunkOf(userNumber);
+    }
+}
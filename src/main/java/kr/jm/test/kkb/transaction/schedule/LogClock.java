@@ -0,0 +1,12 @@
+package kr.jm.test.kkb.transaction.schedule;
+
+/**
+ * Source of the log timestamps, read once per generated log.
+ */
+@FunctionalInterface
+public interface LogClock {
+
+    LogClock SYSTEM = System::currentTimeMillis;
+
+    long currentTimeMillis();
+}
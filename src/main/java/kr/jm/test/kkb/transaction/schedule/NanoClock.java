@@ -0,0 +1,35 @@
+package kr.jm.test.kkb.transaction.schedule;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Source of the nanos a {@link RateController} paces against, and the way
+ * it waits on them.
+ */
+public interface NanoClock {
+
+    NanoClock SYSTEM = new NanoClock() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+
+        @Override
+        public void sleepNanos(long nanos, long spinThresholdNanos) {
+            if (nanos > spinThresholdNanos)
+                LockSupport.parkNanos(nanos - spinThresholdNanos);
+            else
+                Thread.yield();
+        }
+    };
+
+    long nanoTime();
+
+    /**
+     * Waits for at most about the given nanos, the caller checks the time
+     * again after it.
+     *
+     * @param spinThresholdNanos under which yielding beats parking
+     */
+    void sleepNanos(long nanos, long spinThresholdNanos);
+}
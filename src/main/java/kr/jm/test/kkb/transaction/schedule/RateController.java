@@ -0,0 +1,221 @@
+package kr.jm.test.kkb.transaction.schedule;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Open-loop pacing of events against a schedule of intended send times.
+ * <p>
+ * The n-th permit is intended to be issued at {@code start + n * interval}
+ * no matter how long the caller took to handle the previous one, so a slow
+ * consumer does not lower the offered load. Instead, the difference between
+ * the intended and the actual issue time is accounted as schedule lag.
+ * <p>
+ * With a {@link RateShape} every slot is one interval of the rate at its
+ * own intended time after the previous one. The times are those of a
+ * {@link NanoClock}, {@link System#nanoTime()} by default.
+ */
+public class RateController {
+
+    private static final long SPIN_THRESHOLD_NANOS =
+            TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long NOT_STARTED = Long.MIN_VALUE;
+
+    private final double eventsPerSecond;
+    private final long intervalNanos;
+    private final RateShape rateShape;
+    private final NanoClock nanoClock;
+    private final AtomicLong nextOffsetNanos;
+    private final AtomicLong startNanos;
+    private final AtomicLong sequence;
+    private final LongAdder lagNanosSum;
+    private final LongAdder laggedCount;
+    private final AtomicLong maxLagNanos;
+
+    private RateController(double eventsPerSecond, RateShape rateShape,
+            NanoClock nanoClock) {
+        this.eventsPerSecond = eventsPerSecond;
+        this.intervalNanos = eventsPerSecond > 0 ? Math
+                .max(1, Math.round(TimeUnit.SECONDS.toNanos(1) /
+                        eventsPerSecond)) : 0;
+        this.rateShape = rateShape;
+        this.nanoClock = nanoClock;
+        this.nextOffsetNanos = new AtomicLong();
+        this.startNanos = new AtomicLong(NOT_STARTED);
+        this.sequence = new AtomicLong();
+        this.lagNanosSum = new LongAdder();
+        this.laggedCount = new LongAdder();
+        this.maxLagNanos = new AtomicLong();
+    }
+
+    public static RateController ofEventsPerSecond(double eventsPerSecond) {
+        return ofEventsPerSecond(eventsPerSecond, RateShape.CONSTANT);
+    }
+
+    /**
+     * @param eventsPerSecond the base rate the shape multiplies
+     */
+    public static RateController ofEventsPerSecond(double eventsPerSecond,
+            RateShape rateShape) {
+        return ofEventsPerSecond(eventsPerSecond, rateShape, NanoClock.SYSTEM);
+    }
+
+    public static RateController ofEventsPerSecond(double eventsPerSecond,
+            RateShape rateShape, NanoClock nanoClock) {
+        return new RateController(eventsPerSecond, rateShape, nanoClock);
+    }
+
+    public static RateController ofIntervalMillis(long intervalMillis) {
+        return ofEventsPerSecond(intervalMillis > 0 ?
+                1000d / intervalMillis : 0);
+    }
+
+    public static RateController unlimited() {
+        return ofEventsPerSecond(0);
+    }
+
+    public boolean isUnlimited() {
+        return intervalNanos == 0;
+    }
+
+    public double getEventsPerSecond() {
+        return eventsPerSecond;
+    }
+
+    public RateShape getRateShape() {
+        return rateShape;
+    }
+
+    /**
+     * Reserves the next slot of the schedule without waiting.
+     *
+     * @return the intended issue time of the slot in
+     * {@link NanoClock#nanoTime()}
+     */
+    public long reserve() {
+        long now = nanoClock.nanoTime();
+        long start = startNanos.get();
+        if (start == NOT_STARTED) {
+            startNanos.compareAndSet(NOT_STARTED, now);
+            start = startNanos.get();
+        }
+        long slot = sequence.getAndIncrement();
+        if (isUnlimited())
+            return now;
+        return rateShape.isConstant() ? start + slot * intervalNanos :
+                start + reserveShapedOffsetNanos();
+    }
+
+    private long reserveShapedOffsetNanos() {
+        long offset;
+        long next;
+        do {
+            offset = nextOffsetNanos.get();
+            next = offset + Math.max(1, Math.round(intervalNanos / rateShape
+                    .multiplierAt(TimeUnit.NANOSECONDS.toMillis(offset))));
+        } while (!nextOffsetNanos.compareAndSet(offset, next));
+        return offset;
+    }
+
+    /**
+     * Waits until the intended time and records the lag when it is already
+     * past.
+     *
+     * @return the schedule lag in nanos, 0 when the slot was on time
+     */
+    public long await(long intendedNanos) {
+        long lagNanos = parkUntil(nanoClock, intendedNanos);
+        if (!isUnlimited() && lagNanos > SPIN_THRESHOLD_NANOS)
+            recordLag(lagNanos);
+        return lagNanos;
+    }
+
+    /**
+     * Parks, then yields for the last microseconds, until the given
+     * {@link System#nanoTime()}.
+     *
+     * @return how late the caller was woken up or already was, in nanos
+     */
+    public static long parkUntil(long intendedNanos) {
+        return parkUntil(NanoClock.SYSTEM, intendedNanos);
+    }
+
+    private static long parkUntil(NanoClock nanoClock, long intendedNanos) {
+        long remaining;
+        while ((remaining = intendedNanos - nanoClock.nanoTime()) > 0) {
+            nanoClock.sleepNanos(remaining, SPIN_THRESHOLD_NANOS);
+            if (Thread.interrupted())
+                throw new RuntimeException(new InterruptedException());
+        }
+        return -remaining;
+    }
+
+    public long acquire() {
+        return await(reserve());
+    }
+
+    private void recordLag(long lagNanos) {
+        lagNanosSum.add(lagNanos);
+        laggedCount.increment();
+        long max;
+        while (lagNanos > (max = maxLagNanos.get()) &&
+                !maxLagNanos.compareAndSet(max, lagNanos))
+            ;
+    }
+
+    public long getIssuedCount() {
+        return sequence.get();
+    }
+
+    public long getLaggedCount() {
+        return laggedCount.sum();
+    }
+
+    public long getMaxLagMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(maxLagNanos.get());
+    }
+
+    public long getAverageLagMicros() {
+        long lagged = laggedCount.sum();
+        return lagged == 0 ? 0 :
+                TimeUnit.NANOSECONDS.toMicros(lagNanosSum.sum() / lagged);
+    }
+
+    /**
+     * @return how far the schedule is behind right now, 0 when ahead
+     */
+    public long getCurrentLagMicros() {
+        long start = startNanos.get();
+        if (isUnlimited() || start == NOT_STARTED)
+            return 0;
+        long nextIntended = start + (rateShape.isConstant() ?
+                sequence.get() * intervalNanos : nextOffsetNanos.get());
+        return TimeUnit.NANOSECONDS
+                .toMicros(Math.max(0, nanoClock.nanoTime() - nextIntended));
+    }
+
+    public double getAchievedEventsPerSecond() {
+        long start = startNanos.get();
+        if (start == NOT_STARTED)
+            return 0;
+        long elapsedNanos = Math.max(1, nanoClock.nanoTime() - start);
+        return sequence.get() * 1e9 / elapsedNanos;
+    }
+
+    public String getSummary() {
+        return String.format(
+                "RateController(target=%.1f/s, shape=%s, achieved=%.1f/s, " +
+                        "issued=%d, lagged=%d, avgLagMicros=%d, " +
+                        "maxLagMicros=%d, currentLagMicros=%d)",
+                eventsPerSecond, rateShape,
+                getAchievedEventsPerSecond(), getIssuedCount(),
+                getLaggedCount(), getAverageLagMicros(), getMaxLagMicros(),
+                getCurrentLagMicros());
+    }
+
+    @Override
+    public String toString() {
+        return getSummary();
+    }
+}
@@ -0,0 +1,101 @@
+package kr.jm.test.kkb.transaction.schedule;
+
+/**
+ * Multiplier of the base rate over the elapsed time: {@code constant},
+ * {@code diurnal:<periodMillis>:<amplitude>}, a sine of mean 1, or
+ * {@code burst:<periodMillis>:<burstMillis>:<multiplier>}, the first
+ * burstMillis of every period at multiplier times the base rate.
+ */
+public class RateShape {
+
+    public static final RateShape CONSTANT = new RateShape(Kind.CONSTANT, 1,
+            0, 1);
+    private static final double MIN_MULTIPLIER = 1e-3;
+
+    private enum Kind {
+        CONSTANT, DIURNAL, BURST
+    }
+
+    private final Kind kind;
+    private final long periodMillis;
+    private final long burstMillis;
+    private final double factor;
+
+    private RateShape(Kind kind, long periodMillis, long burstMillis,
+            double factor) {
+        if (periodMillis < 1 || factor < 0)
+            throw new IllegalArgumentException("Wrong Rate Shape !!! - " +
+                    kind + ", period=" + periodMillis + ", factor=" + factor);
+        this.kind = kind;
+        this.periodMillis = periodMillis;
+        this.burstMillis = burstMillis;
+        this.factor = factor;
+    }
+
+    /**
+     * @param amplitude below 1 so the rate never stops
+     */
+    public static RateShape diurnal(long periodMillis, double amplitude) {
+        return new RateShape(Kind.DIURNAL, periodMillis, 0, amplitude);
+    }
+
+    public static RateShape burst(long periodMillis, long burstMillis,
+            double multiplier) {
+        return new RateShape(Kind.BURST, periodMillis, burstMillis,
+                multiplier);
+    }
+
+    public static RateShape parse(String spec) {
+        String[] parts = spec.trim().split(":");
+        try {
+            switch (parts[0].toLowerCase()) {
+                case "constant":
+                    return CONSTANT;
+                case "diurnal":
+                    return diurnal(Long.valueOf(parts[1]),
+                            Double.valueOf(parts[2]));
+                case "burst":
+                    return burst(Long.valueOf(parts[1]),
+                            Long.valueOf(parts[2]), Double.valueOf(parts[3]));
+                default:
+            }
+        } catch (RuntimeException e) {
+            throw new RuntimeException("Wrong Rate Shape !!! - " + spec, e);
+        }
+        throw new RuntimeException("Wrong Rate Shape !!! - " + spec);
+    }
+
+    public boolean isConstant() {
+        return kind == Kind.CONSTANT;
+    }
+
+    /**
+     * @return the share of the base rate at the elapsed time, at least 0.001
+     */
+    public double multiplierAt(long elapsedMillis) {
+        switch (kind) {
+            case DIURNAL:
+                return Math.max(MIN_MULTIPLIER, 1 + factor * Math.sin(
+                        2 * Math.PI * (elapsedMillis % periodMillis) /
+                                periodMillis));
+            case BURST:
+                return elapsedMillis % periodMillis < burstMillis ?
+                        Math.max(MIN_MULTIPLIER, factor) : 1;
+            default:
+                return 1;
+        }
+    }
+
+    @Override
+    public String toString() {
+        switch (kind) {
+            case DIURNAL:
+                return "diurnal:" + periodMillis + ":" + factor;
+            case BURST:
+                return "burst:" + periodMillis + ":" + burstMillis + ":" +
+                        factor;
+            default:
+                return "constant";
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package kr.jm.test.kkb.transaction.schedule;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Virtual timeline from a start to an end time at a simulated event rate,
+ * for backfilling history as fast as the sinks take it: every read is the
+ * next event and returns {@code start + n / eventsPerSecond}.
+ * <p>
+ * Reads are ordered by one counter, so the successive reads of a thread
+ * never go back in time, whatever the other threads do.
+ */
+public class SimulatedClock implements LogClock {
+
+    private final long startMillis;
+    private final long endMillis;
+    private final double eventsPerSecond;
+    private final long eventCount;
+    private final AtomicLong sequence;
+
+    public SimulatedClock(long startMillis, long endMillis,
+            double eventsPerSecond) {
+        if (endMillis <= startMillis || eventsPerSecond <= 0)
+            throw new IllegalArgumentException("Wrong Simulated Clock !!! - " +
+                    startMillis + " ~ " + endMillis + ", " + eventsPerSecond +
+                    "/s");
+        this.startMillis = startMillis;
+        this.endMillis = endMillis;
+        this.eventsPerSecond = eventsPerSecond;
+        this.eventCount = (long) ((endMillis - startMillis) / 1000d *
+                eventsPerSecond);
+        this.sequence = new AtomicLong();
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return startMillis +
+                (long) (sequence.getAndIncrement() * 1000 / eventsPerSecond);
+    }
+
+    /**
+     * @return whether the timeline reached the end time, past which a read
+     * stays a few events at most when threads race on the last ones
+     */
+    public boolean isExhausted() {
+        return sequence.get() >= eventCount;
+    }
+
+    public long getEventCount() {
+        return eventCount;
+    }
+
+    public long getReadCount() {
+        return sequence.get();
+    }
+
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    public long getEndMillis() {
+        return endMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SimulatedClock(start=%d, end=%d, rate=%.1f/s, " +
+                        "events=%d/%d)", startMillis, endMillis,
+                eventsPerSecond, getReadCount(), eventCount);
+    }
+}
@@ -0,0 +1,166 @@
+package kr.jm.test.kkb.transaction.schedule;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed timer wheel which hands expired tasks to an executor.
+ * <p>
+ * Scheduling is an enqueue into a lock-free queue and expiry costs O(1) per
+ * task, so hundreds of thousands of pending timeouts don't need a thread
+ * each. Every dispatched task accounts the gap between its deadline and the
+ * moment a worker started it as scheduler lag.
+ */
+public class TimerWheel implements AutoCloseable {
+
+    private static final org.slf4j.Logger log =
+            org.slf4j.LoggerFactory.getLogger(TimerWheel.class);
+
+    private final long tickNanos;
+    private final int mask;
+    private final List<ArrayDeque<Timeout>> buckets;
+    private final Queue<Timeout> pendingTimeouts;
+    private final Executor executor;
+    private final Thread tickThread;
+    private final long startNanos;
+    private final LongAdder dispatchedCount;
+    private final LongAdder lagNanosSum;
+    private final AtomicLong maxLagNanos;
+    private volatile boolean running;
+    private long tick;
+
+    public TimerWheel(Executor executor) {
+        this(executor, 1, TimeUnit.MILLISECONDS, 1024);
+    }
+
+    public TimerWheel(Executor executor, long tickDuration, TimeUnit unit,
+            int ticksPerWheel) {
+        if (Integer.bitCount(ticksPerWheel) != 1)
+            throw new IllegalArgumentException(
+                    "ticksPerWheel Must Be Power Of Two !!! - " +
+                            ticksPerWheel);
+        this.executor = executor;
+        this.tickNanos = unit.toNanos(tickDuration);
+        this.mask = ticksPerWheel - 1;
+        this.buckets = new ArrayList<>(ticksPerWheel);
+        for (int i = 0; i < ticksPerWheel; i++)
+            this.buckets.add(new ArrayDeque<>());
+        this.pendingTimeouts = new ConcurrentLinkedQueue<>();
+        this.dispatchedCount = new LongAdder();
+        this.lagNanosSum = new LongAdder();
+        this.maxLagNanos = new AtomicLong();
+        this.startNanos = System.nanoTime();
+        this.running = true;
+        this.tickThread = new Thread(this::runTicks, "timer-wheel");
+        this.tickThread.setDaemon(true);
+        this.tickThread.start();
+    }
+
+    public void schedule(Runnable task, long delay, TimeUnit unit) {
+        pendingTimeouts.offer(new Timeout(task,
+                System.nanoTime() + Math.max(0, unit.toNanos(delay))));
+    }
+
+    private void runTicks() {
+        while (running) {
+            long tickDeadline = startNanos + (tick + 1) * tickNanos;
+            long sleepNanos;
+            while (running &&
+                    (sleepNanos = tickDeadline - System.nanoTime()) > 0)
+                LockSupport.parkNanos(sleepNanos);
+            transferPendingTimeouts();
+            expireTimeouts(buckets.get((int) (tick & mask)));
+            tick++;
+        }
+    }
+
+    private void transferPendingTimeouts() {
+        Timeout timeout;
+        while ((timeout = pendingTimeouts.poll()) != null) {
+            long calculatedTick = (timeout.deadlineNanos - startNanos) /
+                    tickNanos;
+            timeout.remainingRounds = (calculatedTick - tick) / buckets.size();
+            buckets.get((int) (Math.max(calculatedTick, tick) & mask))
+                    .add(timeout);
+        }
+    }
+
+    private void expireTimeouts(ArrayDeque<Timeout> bucket) {
+        for (int i = bucket.size(); i > 0; i--) {
+            Timeout timeout = bucket.poll();
+            if (timeout.remainingRounds <= 0)
+                dispatch(timeout);
+            else {
+                timeout.remainingRounds--;
+                bucket.add(timeout);
+            }
+        }
+    }
+
+    private void dispatch(Timeout timeout) {
+        try {
+            executor.execute(timeout);
+        } catch (Exception e) {
+            log.error("dispatch({})", timeout.task, e);
+        }
+    }
+
+    private void recordLag(long lagNanos) {
+        dispatchedCount.increment();
+        lagNanosSum.add(lagNanos);
+        long max;
+        while (lagNanos > (max = maxLagNanos.get()) &&
+                !maxLagNanos.compareAndSet(max, lagNanos))
+            ;
+    }
+
+    public long getDispatchedCount() {
+        return dispatchedCount.sum();
+    }
+
+    public long getAverageLagMicros() {
+        long dispatched = dispatchedCount.sum();
+        return dispatched == 0 ? 0 : TimeUnit.NANOSECONDS
+                .toMicros(lagNanosSum.sum() / dispatched);
+    }
+
+    public long getMaxLagMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(maxLagNanos.get());
+    }
+
+    @Override
+    public void close() {
+        this.running = false;
+        LockSupport.unpark(tickThread);
+        try {
+            tickThread.join();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private class Timeout implements Runnable {
+        private final Runnable task;
+        private final long deadlineNanos;
+        private long remainingRounds;
+
+        private Timeout(Runnable task, long deadlineNanos) {
+            this.task = task;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        @Override
+        public void run() {
+            recordLag(Math.max(0, System.nanoTime() - deadlineNanos));
+            task.run();
+        }
+    }
+}
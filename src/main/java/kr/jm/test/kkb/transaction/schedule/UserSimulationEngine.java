@@ -0,0 +1,208 @@
+package kr.jm.test.kkb.transaction.schedule;
+
+import kr.jm.test.kkb.transaction.TransactionLogGenerator;
+import kr.jm.test.kkb.transaction.log.TransactionLogInterface;
+import kr.jm.test.kkb.transaction.random.SplitMix64;
+import kr.jm.test.kkb.transaction.random.TransactionLogRandom;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Runs every simulated user as a small state machine on a {@link TimerWheel}
+ * instead of a blocking sleep loop.
+ * <p>
+ * A user only occupies a worker while it generates one record; between
+ * records it waits as a pending timeout with an exponentially distributed
+ * think time, so the number of concurrent users is bounded by memory rather
+ * than by the number of threads. The think times are drawn from the user's
+ * stream of the generator's {@link TransactionLogRandom}, so a seeded run
+ * repeats them as well.
+ * <p>
+ * Closing drops the pending timeouts with the wheel and cancels the futures
+ * of the simulations still running.
+ */
+public class UserSimulationEngine implements AutoCloseable {
+
+    private static final org.slf4j.Logger log =
+            org.slf4j.LoggerFactory.getLogger(UserSimulationEngine.class);
+
+    private final TransactionLogGenerator transactionLogGenerator;
+    private final TransactionLogRandom transactionLogRandom;
+    private final ForkJoinPool workerPool;
+    private final TimerWheel timerWheel;
+    private final AtomicInteger activeUserCount;
+    private final LongAdder generatedCount;
+    private final Map<CompletableFuture<Void>, AtomicInteger>
+            remainingUsersMap;
+    private final long startNanos;
+
+    public UserSimulationEngine(
+            TransactionLogGenerator transactionLogGenerator) {
+        this(transactionLogGenerator,
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    public UserSimulationEngine(
+            TransactionLogGenerator transactionLogGenerator,
+            int workerThreads) {
+        this.transactionLogGenerator = transactionLogGenerator;
+        this.transactionLogRandom =
+                transactionLogGenerator.getTransactionLogRandom();
+        this.workerPool = new ForkJoinPool(workerThreads,
+                ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+        this.timerWheel = new TimerWheel(workerPool);
+        this.activeUserCount = new AtomicInteger();
+        this.generatedCount = new LongAdder();
+        this.remainingUsersMap = new ConcurrentHashMap<>();
+        this.startNanos = System.nanoTime();
+    }
+
+    public CompletableFuture<Void> simulate(
+            Consumer<TransactionLogInterface> transactionLogConsumer,
+            long meanThinkTimeMillis, String... userNames) {
+        return simulate(transactionLogConsumer, meanThinkTimeMillis,
+                transactionLogGenerator::getRandomAbout100Count, userNames);
+    }
+
+    public CompletableFuture<Void> simulate(
+            Consumer<TransactionLogInterface> transactionLogConsumer,
+            long meanThinkTimeMillis, IntSupplier transactionCountSupplier,
+            String... userNames) {
+        int[] userNumbers = Arrays.stream(transactionLogGenerator
+                .generateNewUserAndAccount(userNames))
+                .peek(transactionLogConsumer)
+                .mapToInt(TransactionLogInterface::getUserNumber).distinct()
+                .toArray();
+        CompletableFuture<Void> completion = new CompletableFuture<>();
+        if (userNumbers.length == 0) {
+            completion.complete(null);
+            return completion;
+        }
+        AtomicInteger remainingUsers = new AtomicInteger(userNumbers.length);
+        activeUserCount.addAndGet(userNumbers.length);
+        remainingUsersMap.put(completion, remainingUsers);
+        long thinkTimeNanos = TimeUnit.MILLISECONDS.toNanos(
+                meanThinkTimeMillis);
+        for (int userNumber : userNumbers)
+            new SimulatedUser(userNumber,
+                    transactionCountSupplier.getAsInt(), thinkTimeNanos,
+                    transactionLogConsumer, () -> {
+                // close() may have taken the remaining users already
+                int remaining = remainingUsers
+                        .getAndUpdate(count -> Math.max(0, count - 1));
+                if (remaining > 0)
+                    activeUserCount.decrementAndGet();
+                if (remaining == 1) {
+                    remainingUsersMap.remove(completion);
+                    completion.complete(null);
+                }
+            }).scheduleNext(drawNanos(userNumber,
+                    random -> nextUniform(random, thinkTimeNanos)));
+        return completion;
+    }
+
+    private long drawNanos(int userNumber, ToLongFunction<SplitMix64> draw) {
+        SplitMix64 random = transactionLogRandom.forUser(userNumber);
+        try {
+            return draw.applyAsLong(random);
+        } finally {
+            transactionLogRandom.store(userNumber, random);
+        }
+    }
+
+    private static long nextUniform(SplitMix64 random, long meanNanos) {
+        return meanNanos > 0 ? (long) (random.nextDouble() * meanNanos) : 0;
+    }
+
+    private static long nextExponential(SplitMix64 random, long meanNanos) {
+        return meanNanos > 0 ? (long) (-meanNanos *
+                Math.log(1 - random.nextDouble())) : 0;
+    }
+
+    public int getActiveUserCount() {
+        return activeUserCount.get();
+    }
+
+    public long getGeneratedCount() {
+        return generatedCount.sum();
+    }
+
+    public long getSchedulerAverageLagMicros() {
+        return timerWheel.getAverageLagMicros();
+    }
+
+    public long getSchedulerMaxLagMicros() {
+        return timerWheel.getMaxLagMicros();
+    }
+
+    public String getSummary() {
+        return String.format(
+                "UserSimulationEngine(activeUsers=%d, generated=%d, " +
+                        "achieved=%.1f/s, schedulerAvgLagMicros=%d, " +
+                        "schedulerMaxLagMicros=%d)", getActiveUserCount(),
+                getGeneratedCount(), getGeneratedCount() * 1e9 /
+                        Math.max(1, System.nanoTime() - startNanos),
+                getSchedulerAverageLagMicros(), getSchedulerMaxLagMicros());
+    }
+
+    @Override
+    public void close() {
+        timerWheel.close();
+        workerPool.shutdown();
+        remainingUsersMap.forEach((completion, remainingUsers) -> {
+            activeUserCount.addAndGet(-remainingUsers.getAndSet(0));
+            completion.cancel(false);
+        });
+        remainingUsersMap.clear();
+        log.info("close() - {}", getSummary());
+    }
+
+    private class SimulatedUser implements Runnable {
+        private final int userNumber;
+        private final long meanThinkTimeNanos;
+        private final Consumer<TransactionLogInterface> transactionLogConsumer;
+        private final Runnable onCompletion;
+        private int remainingCount;
+
+        private SimulatedUser(int userNumber, int transactionCount,
+                long meanThinkTimeNanos,
+                Consumer<TransactionLogInterface> transactionLogConsumer,
+                Runnable onCompletion) {
+            this.userNumber = userNumber;
+            this.remainingCount = transactionCount;
+            this.meanThinkTimeNanos = meanThinkTimeNanos;
+            this.transactionLogConsumer = transactionLogConsumer;
+            this.onCompletion = onCompletion;
+        }
+
+        private void scheduleNext(long delayNanos) {
+            if (remainingCount-- > 0)
+                timerWheel.schedule(this, delayNanos, TimeUnit.NANOSECONDS);
+            else
+                onCompletion.run();
+        }
+
+        @Override
+        public void run() {
+            try {
+                transactionLogConsumer.accept(transactionLogGenerator
+                        .generateRandomTransactionLog(userNumber));
+                generatedCount.increment();
+            } catch (Exception e) {
+                log.error("run() - userNumber = {}", userNumber, e);
+            }
+            scheduleNext(drawNanos(userNumber,
+                    random -> nextExponential(random, meanThinkTimeNanos)));
+        }
+    }
+}
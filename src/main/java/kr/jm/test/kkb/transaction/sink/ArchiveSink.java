@@ -0,0 +1,57 @@
+package kr.jm.test.kkb.transaction.sink;
+
+import kr.jm.test.kkb.metrics.TransactionLogMetrics;
+import kr.jm.test.kkb.output.LineWriterInterface;
+import kr.jm.test.kkb.transaction.codec.LogFormat;
+
+/**
+ * Appends the records to a {@link LineWriterInterface}, which it owns.
+ */
+public class ArchiveSink implements TransactionLogSink {
+
+    private final String name;
+    private final LogFormat logFormat;
+    private final LineWriterInterface lineWriter;
+    private final TransactionLogMetrics transactionLogMetrics;
+
+    public ArchiveSink(String name, LogFormat logFormat,
+            LineWriterInterface lineWriter) {
+        this(name, logFormat, lineWriter, TransactionLogMetrics.DISABLED);
+    }
+
+    /**
+     * @param lineWriter must frame the records the way the format needs
+     */
+    public ArchiveSink(String name, LogFormat logFormat,
+            LineWriterInterface lineWriter,
+            TransactionLogMetrics transactionLogMetrics) {
+        this.name = name;
+        this.logFormat = logFormat;
+        this.lineWriter = lineWriter;
+        this.transactionLogMetrics = transactionLogMetrics;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void accept(SinkRecord sinkRecord) {
+        byte[] bytes = sinkRecord.getBytes(logFormat, transactionLogMetrics);
+        long startNanos = transactionLogMetrics.startNanos();
+        lineWriter.appendLine(sinkRecord.getTransactionLog().getLogTimestamp(),
+                bytes);
+        transactionLogMetrics.recordAppend(startNanos);
+    }
+
+    @Override
+    public void flush() {
+        lineWriter.flush();
+    }
+
+    @Override
+    public void close() {
+        lineWriter.close();
+    }
+}
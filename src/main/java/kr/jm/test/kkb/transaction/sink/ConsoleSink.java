@@ -0,0 +1,58 @@
+package kr.jm.test.kkb.transaction.sink;
+
+import kr.jm.test.kkb.transaction.codec.LogFormat;
+
+import java.io.PrintStream;
+
+/**
+ * Prints every {@code sampleEvery}th record as JSON, meant to be added with
+ * {@link SinkFanOut.OverflowPolicy#DROP} so a slow console never holds back
+ * the other sinks.
+ */
+public class ConsoleSink implements TransactionLogSink {
+
+    private final String name;
+    private final PrintStream printStream;
+    private final int sampleEvery;
+    private long count;
+
+    public ConsoleSink(int sampleEvery) {
+        this("console", System.out, sampleEvery);
+    }
+
+    public ConsoleSink(String name, PrintStream printStream,
+            int sampleEvery) {
+        if (sampleEvery < 1)
+            throw new IllegalArgumentException("Wrong Sample Every !!! - " +
+                    sampleEvery);
+        this.name = name;
+        this.printStream = printStream;
+        this.sampleEvery = sampleEvery;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void accept(SinkRecord sinkRecord) {
+        if (count++ % sampleEvery != 0)
+            return;
+        byte[] jsonBytes = sinkRecord.getBytes(LogFormat.JSON);
+        synchronized (printStream) {
+            printStream.write(jsonBytes, 0, jsonBytes.length);
+            printStream.println();
+        }
+    }
+
+    @Override
+    public void flush() {
+        printStream.flush();
+    }
+
+    @Override
+    public void close() {
+        printStream.flush();
+    }
+}
@@ -0,0 +1,48 @@
+package kr.jm.test.kkb.transaction.sink;
+
+import kr.jm.test.kkb.metrics.TransactionLogMetrics;
+import kr.jm.test.kkb.output.AsyncKafkaSender;
+import kr.jm.test.kkb.transaction.codec.LogFormat;
+
+/**
+ * Sends the records keyed by userNumber through a shared
+ * {@link AsyncKafkaSender}, which its owner closes.
+ */
+public class KafkaSink implements TransactionLogSink {
+
+    private final String name;
+    private final LogFormat logFormat;
+    private final AsyncKafkaSender asyncKafkaSender;
+    private final TransactionLogMetrics transactionLogMetrics;
+
+    public KafkaSink(String name, LogFormat logFormat,
+            AsyncKafkaSender asyncKafkaSender) {
+        this(name, logFormat, asyncKafkaSender,
+                TransactionLogMetrics.DISABLED);
+    }
+
+    public KafkaSink(String name, LogFormat logFormat,
+            AsyncKafkaSender asyncKafkaSender,
+            TransactionLogMetrics transactionLogMetrics) {
+        this.name = name;
+        this.logFormat = logFormat;
+        this.asyncKafkaSender = asyncKafkaSender;
+        this.transactionLogMetrics = transactionLogMetrics;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void accept(SinkRecord sinkRecord) {
+        asyncKafkaSender.send(String.valueOf(
+                sinkRecord.getTransactionLog().getUserNumber()),
+                sinkRecord.getBytes(logFormat, transactionLogMetrics));
+    }
+
+    @Override
+    public void close() {
+    }
+}
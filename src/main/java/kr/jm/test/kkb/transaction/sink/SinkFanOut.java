@@ -0,0 +1,516 @@
+package kr.jm.test.kkb.transaction.sink;
+
+import kr.jm.test.kkb.transaction.codec.LogFormat;
+import kr.jm.test.kkb.transaction.log.TransactionLogInterface;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Hands every published transaction log to a set of
+ * {@link TransactionLogSink}s through one shared ring buffer. Every sink
+ * reads the ring with its own cursor on its own thread, so a slow sink only
+ * holds back the others as far as its {@link OverflowPolicy} says. The
+ * records go out as {@link SinkRecord}s, so the sinks of one format share
+ * a single encoding.
+ * <p>
+ * Publishers claim their sequence with a CAS on the published count, so
+ * several threads publish without a lock. The ring keeps the sequence of
+ * every slot next to it, written after the record, so a sink reads only
+ * whole records and notices when it was lapped, and a publisher takes over
+ * a slot only once the record of the previous lap is in it.
+ */
+public class SinkFanOut
+        implements Consumer<TransactionLogInterface>, AutoCloseable {
+
+    private static final org.slf4j.Logger log =
+            org.slf4j.LoggerFactory.getLogger(SinkFanOut.class);
+    private static final long IDLE_PARK_NANOS = 100_000;
+    private static final long BLOCK_PARK_NANOS = 50_000;
+    private static final long CLOSED_BIT = Long.MIN_VALUE;
+    private static final long WRITING = Long.MIN_VALUE;
+
+    /**
+     * What the publisher does when a sink is a whole ring behind.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Waits for the sink.
+         */
+        BLOCK,
+        /**
+         * Overwrites the records, which the sink skips and counts.
+         */
+        DROP,
+        /**
+         * Moves the oldest record of the sink into its spill file, which
+         * the sink drains before it reads the ring again.
+         */
+        SPILL
+    }
+
+    private final int mask;
+    private final AtomicReferenceArray<SinkRecord> slots;
+    private final AtomicLongArray slotSequences;
+    private final Path spillDirectory;
+    private final List<SinkRunner> sinkRunnerList;
+    private final LongAdder backpressureCount;
+    /**
+     * The published count, with {@link #CLOSED_BIT} set once closed.
+     */
+    private final AtomicLong claimedCount;
+
+    public SinkFanOut(int capacity) {
+        this(capacity, Paths.get(System.getProperty("java.io.tmpdir")));
+    }
+
+    /**
+     * @param capacity       rounded up to a power of two
+     * @param spillDirectory where the {@link OverflowPolicy#SPILL} sinks
+     *                       spill to
+     */
+    public SinkFanOut(int capacity, Path spillDirectory) {
+        if (capacity < 1 || capacity > 1 << 30)
+            throw new IllegalArgumentException("Wrong Capacity !!! - " +
+                    capacity);
+        int ringSize =
+                capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = ringSize - 1;
+        this.slots = new AtomicReferenceArray<>(ringSize);
+        this.slotSequences = new AtomicLongArray(ringSize);
+        for (int i = 0; i < ringSize; i++)
+            slotSequences.set(i, i - ringSize);
+        this.spillDirectory = spillDirectory;
+        this.sinkRunnerList = new CopyOnWriteArrayList<>();
+        this.backpressureCount = new LongAdder();
+        this.claimedCount = new AtomicLong();
+    }
+
+    /**
+     * Starts the thread of the sink, which gets the records published from
+     * now on.
+     */
+    public synchronized SinkFanOut addSink(TransactionLogSink sink,
+            OverflowPolicy overflowPolicy) {
+        if (isClosed())
+            throw new IllegalStateException("Already Closed !!!");
+        SinkRunner sinkRunner =
+                new SinkRunner(sink, overflowPolicy, getPublishedCount());
+        sinkRunnerList.add(sinkRunner);
+        sinkRunner.thread.start();
+        log.info("addSink({}, {}) - ring={}", sink.getName(), overflowPolicy,
+                getCapacity());
+        return this;
+    }
+
+    @Override
+    public void accept(TransactionLogInterface transactionLog) {
+        publish(transactionLog);
+    }
+
+    /**
+     * Safe to call from several threads; the sinks get the records in the
+     * order their sequences were claimed.
+     */
+    public void publish(TransactionLogInterface transactionLog) {
+        long sequence = claimSequence();
+        long lappedSequence = sequence - getCapacity();
+        if (lappedSequence >= 0)
+            for (SinkRunner sinkRunner : sinkRunnerList)
+                sinkRunner.beforeLapping(lappedSequence);
+        int index = (int) (sequence & mask);
+        while (!slotSequences.compareAndSet(index, lappedSequence, WRITING))
+            Thread.yield();
+        slots.set(index, new SinkRecord(transactionLog));
+        slotSequences.set(index, sequence);
+    }
+
+    private long claimSequence() {
+        long claimed = claimedCount.getAndUpdate(count ->
+                (count & CLOSED_BIT) != 0 ? count : count + 1);
+        if ((claimed & CLOSED_BIT) != 0)
+            throw new IllegalStateException("Already Closed !!!");
+        return claimed;
+    }
+
+    /**
+     * @return null unless the slot holds the whole record of the sequence
+     */
+    private SinkRecord read(long sequence) {
+        int index = (int) (sequence & mask);
+        if (slotSequences.get(index) != sequence)
+            return null;
+        SinkRecord sinkRecord = slots.get(index);
+        return slotSequences.get(index) == sequence ? sinkRecord : null;
+    }
+
+    private boolean isClosed() {
+        return (claimedCount.get() & CLOSED_BIT) != 0;
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    /**
+     * @return the sequences claimed, some of which may still be written
+     */
+    public long getPublishedCount() {
+        return claimedCount.get() & ~CLOSED_BIT;
+    }
+
+    public long getBackpressureCount() {
+        return backpressureCount.sum();
+    }
+
+    public List<SinkMetrics> getSinkMetricsList() {
+        return sinkRunnerList.stream().map(sinkRunner -> sinkRunner.metrics)
+                .collect(Collectors.toList());
+    }
+
+    public String getSummary() {
+        return "SinkFanOut(published=" + getPublishedCount() +
+                ", backpressure=" +
+                getBackpressureCount() + ", " + sinkRunnerList.stream()
+                .map(sinkRunner -> sinkRunner.metrics.toString())
+                .collect(Collectors.joining(", ")) + ")";
+    }
+
+    /**
+     * Lets every sink, except the lapped records of the
+     * {@link OverflowPolicy#DROP} ones, consume all the published records,
+     * then closes the sinks.
+     */
+    @Override
+    public void close() {
+        if ((claimedCount.getAndUpdate(count -> count | CLOSED_BIT) &
+                CLOSED_BIT) != 0)
+            return;
+        for (SinkRunner sinkRunner : sinkRunnerList) {
+            try {
+                sinkRunner.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        log.info("close() - {}", getSummary());
+    }
+
+    /**
+     * Counters of a sink, the lag being the records published but not yet
+     * consumed, dropped or spilled.
+     */
+    public class SinkMetrics {
+        private final String name;
+        private final OverflowPolicy overflowPolicy;
+        private final LongAdder consumedCount;
+        private final LongAdder failedCount;
+        private final LongAdder droppedCount;
+        private final LongAdder spilledCount;
+        private final AtomicLong cursor;
+        private volatile long maxLag;
+
+        private SinkMetrics(String name, OverflowPolicy overflowPolicy,
+                long cursor) {
+            this.name = name;
+            this.overflowPolicy = overflowPolicy;
+            this.consumedCount = new LongAdder();
+            this.failedCount = new LongAdder();
+            this.droppedCount = new LongAdder();
+            this.spilledCount = new LongAdder();
+            this.cursor = new AtomicLong(cursor);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public OverflowPolicy getOverflowPolicy() {
+            return overflowPolicy;
+        }
+
+        public long getConsumedCount() {
+            return consumedCount.sum();
+        }
+
+        public long getFailedCount() {
+            return failedCount.sum();
+        }
+
+        public long getDroppedCount() {
+            return droppedCount.sum();
+        }
+
+        public long getSpilledCount() {
+            return spilledCount.sum();
+        }
+
+        public long getLag() {
+            return Math.max(0, getPublishedCount() - cursor.get());
+        }
+
+        public long getMaxLag() {
+            return maxLag;
+        }
+
+        @Override
+        public String toString() {
+            return name + "=(" + overflowPolicy + ", consumed=" +
+                    getConsumedCount() + ", lag=" + getLag() + ", maxLag=" +
+                    maxLag + ", dropped=" + getDroppedCount() +
+                    ", spilled=" + getSpilledCount() + ", failed=" +
+                    getFailedCount() + ")";
+        }
+    }
+
+    private class SinkRunner {
+        private final TransactionLogSink sink;
+        private final OverflowPolicy overflowPolicy;
+        private final SinkMetrics metrics;
+        private final AtomicLong cursor;
+        private final Thread thread;
+        private final Object spillLock;
+        private volatile boolean spilling;
+        private FileChannel spillChannel;
+        private Path spillFilePath;
+        private long spillWritePosition;
+        private long spillReadPosition;
+
+        private SinkRunner(TransactionLogSink sink,
+                OverflowPolicy overflowPolicy, long cursor) {
+            this.sink = sink;
+            this.overflowPolicy = overflowPolicy;
+            this.metrics = new SinkMetrics(sink.getName(), overflowPolicy,
+                    cursor);
+            this.cursor = metrics.cursor;
+            this.spillLock = new Object();
+            this.thread = new Thread(this::run, "SinkFanOut-" +
+                    sink.getName());
+        }
+
+        /**
+         * Called by the publisher before the record of the lapped sequence
+         * gets overwritten.
+         */
+        private void beforeLapping(long lappedSequence) {
+            if (cursor.get() > lappedSequence)
+                return;
+            switch (overflowPolicy) {
+                case BLOCK:
+                    backpressureCount.increment();
+                    while (cursor.get() <= lappedSequence &&
+                            thread.isAlive())
+                        LockSupport.parkNanos(BLOCK_PARK_NANOS);
+                    return;
+                case SPILL:
+                    while (cursor.get() <= lappedSequence)
+                        if (!spillOldest(lappedSequence))
+                            Thread.yield();
+                    return;
+                default:
+            }
+        }
+
+        /**
+         * Gives up the lock while the oldest record is still being written,
+         * as its publisher may be waiting for it.
+         *
+         * @return false when the oldest record is not in its slot yet
+         */
+        private boolean spillOldest(long lappedSequence) {
+            synchronized (spillLock) {
+                this.spilling = true;
+                long sequence = cursor.get();
+                if (sequence > lappedSequence)
+                    return true;
+                SinkRecord sinkRecord = read(sequence);
+                if (sinkRecord == null)
+                    return false;
+                if (cursor.compareAndSet(sequence, sequence + 1))
+                    spill(sinkRecord);
+                return true;
+            }
+        }
+
+        private void spill(SinkRecord sinkRecord) {
+            try {
+                if (spillChannel == null) {
+                    this.spillFilePath = Files.createTempFile(spillDirectory,
+                            "spill-" + sink.getName() + "-", ".bin");
+                    this.spillChannel = FileChannel.open(spillFilePath,
+                            StandardOpenOption.READ,
+                            StandardOpenOption.WRITE);
+                }
+                byte[] bytes = sinkRecord.getBytes(LogFormat.BINARY);
+                ByteBuffer byteBuffer = ByteBuffer.allocate(4 + bytes.length);
+                byteBuffer.putInt(bytes.length).put(bytes).flip();
+                while (byteBuffer.hasRemaining())
+                    spillWritePosition += spillChannel
+                            .write(byteBuffer, spillWritePosition);
+                metrics.spilledCount.increment();
+            } catch (IOException e) {
+                metrics.droppedCount.increment();
+                log.error("spill() - {} {}", sink.getName(),
+                        sinkRecord.getTransactionLog(), e);
+            }
+        }
+
+        /**
+         * @return the oldest spilled record, null when the spill file is
+         * drained, which ends the spilling
+         */
+        private SinkRecord readSpilled() throws IOException {
+            synchronized (spillLock) {
+                if (spillReadPosition == spillWritePosition) {
+                    if (spillChannel != null)
+                        spillChannel.truncate(0);
+                    this.spillReadPosition = 0;
+                    this.spillWritePosition = 0;
+                    this.spilling = false;
+                    return null;
+                }
+                ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+                readFully(lengthBuffer, spillReadPosition);
+                ByteBuffer recordBuffer = ByteBuffer
+                        .allocate(lengthBuffer.getInt(0));
+                readFully(recordBuffer, spillReadPosition + 4);
+                this.spillReadPosition += 4 + recordBuffer.capacity();
+                return new SinkRecord(LogFormat.BINARY
+                        .decode(recordBuffer.array()), LogFormat.BINARY,
+                        recordBuffer.array());
+            }
+        }
+
+        private void readFully(ByteBuffer byteBuffer, long position)
+                throws IOException {
+            while (byteBuffer.hasRemaining()) {
+                int readCount = spillChannel.read(byteBuffer,
+                        position + byteBuffer.position());
+                if (readCount < 0)
+                    throw new IOException("Wrong Spill File !!! - " +
+                            spillFilePath);
+            }
+        }
+
+        private void run() {
+            boolean flushed = true;
+            while (true) {
+                SinkRecord sinkRecord = next();
+                if (sinkRecord != null) {
+                    consume(sinkRecord);
+                    flushed = false;
+                    continue;
+                }
+                if (!flushed) {
+                    flush();
+                    flushed = true;
+                }
+                if (isClosed() && cursor.get() >= getPublishedCount() &&
+                        !spilling)
+                    break;
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+            closeSpill();
+            try {
+                sink.close();
+            } catch (Exception e) {
+                log.error("close() - {}", sink.getName(), e);
+            }
+        }
+
+        /**
+         * @return null when there is nothing to consume yet, or the next
+         * record is still being written
+         */
+        private SinkRecord next() {
+            while (true) {
+                long sequence = cursor.get();
+                if (spilling) {
+                    try {
+                        SinkRecord spilled = readSpilled();
+                        if (spilled != null)
+                            return spilled;
+                    } catch (IOException e) {
+                        metrics.failedCount.increment();
+                        log.error("next() - {}", sink.getName(), e);
+                    }
+                    continue;
+                }
+                long published = getPublishedCount();
+                if (sequence >= published)
+                    return null;
+                if (published - sequence > metrics.maxLag)
+                    metrics.maxLag = published - sequence;
+                SinkRecord sinkRecord = read(sequence);
+                if (sinkRecord == null) {
+                    if (spilling || overflowPolicy == OverflowPolicy.DROP &&
+                            skipLapped(sequence, published))
+                        continue;
+                    return null;
+                }
+                if (cursor.compareAndSet(sequence, sequence + 1))
+                    return sinkRecord;
+            }
+        }
+
+        /**
+         * @return true when the cursor moved past the lapped records
+         */
+        private boolean skipLapped(long sequence, long published) {
+            long oldestSequence =
+                    published - getCapacity() + getCapacity() / 4;
+            if (oldestSequence <= sequence ||
+                    !cursor.compareAndSet(sequence, oldestSequence))
+                return false;
+            metrics.droppedCount.add(oldestSequence - sequence);
+            return true;
+        }
+
+        private void consume(SinkRecord sinkRecord) {
+            try {
+                sink.accept(sinkRecord);
+                metrics.consumedCount.increment();
+            } catch (Exception e) {
+                metrics.failedCount.increment();
+                log.error("consume() - {} {}", sink.getName(),
+                        sinkRecord.getTransactionLog(), e);
+            }
+        }
+
+        private void flush() {
+            try {
+                sink.flush();
+            } catch (Exception e) {
+                log.error("flush() - {}", sink.getName(), e);
+            }
+        }
+
+        private void closeSpill() {
+            synchronized (spillLock) {
+                if (spillChannel == null)
+                    return;
+                try {
+                    spillChannel.close();
+                    Files.deleteIfExists(spillFilePath);
+                } catch (IOException e) {
+                    log.warn("closeSpill() - {}", spillFilePath, e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package kr.jm.test.kkb.transaction.sink;
+
+import kr.jm.test.kkb.metrics.TransactionLogMetrics;
+import kr.jm.test.kkb.transaction.codec.LogFormat;
+import kr.jm.test.kkb.transaction.log.TransactionLogInterface;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A transaction log published to a {@link SinkFanOut} together with its
+ * encodings, so the sinks sharing a {@link LogFormat} encode it only once.
+ * The first sink asking for a format encodes it; sinks racing on that
+ * first time may both encode, and all of them get the bytes which won.
+ */
+public class SinkRecord {
+
+    private final TransactionLogInterface transactionLog;
+    private final AtomicReferenceArray<byte[]> encodedBytes;
+
+    public SinkRecord(TransactionLogInterface transactionLog) {
+        this.transactionLog = transactionLog;
+        this.encodedBytes =
+                new AtomicReferenceArray<>(LogFormat.values().length);
+    }
+
+    /**
+     * @param encodedBytes the record already encoded in the format
+     */
+    SinkRecord(TransactionLogInterface transactionLog, LogFormat logFormat,
+            byte[] encodedBytes) {
+        this(transactionLog);
+        this.encodedBytes.set(logFormat.ordinal(), encodedBytes);
+    }
+
+    public TransactionLogInterface getTransactionLog() {
+        return transactionLog;
+    }
+
+    public byte[] getBytes(LogFormat logFormat) {
+        return getBytes(logFormat, TransactionLogMetrics.DISABLED);
+    }
+
+    /**
+     * @param transactionLogMetrics times the encoding when this call does it
+     * @return the same array for every sink, which must not modify it
+     */
+    public byte[] getBytes(LogFormat logFormat,
+            TransactionLogMetrics transactionLogMetrics) {
+        int index = logFormat.ordinal();
+        byte[] bytes = encodedBytes.get(index);
+        if (bytes != null)
+            return bytes;
+        long startNanos = transactionLogMetrics.startNanos();
+        bytes = logFormat.encode(transactionLog);
+        transactionLogMetrics.recordSerialization(startNanos);
+        return encodedBytes.compareAndSet(index, null, bytes) ? bytes :
+                encodedBytes.get(index);
+    }
+}
@@ -0,0 +1,25 @@
+package kr.jm.test.kkb.transaction.sink;
+
+/**
+ * An output of the generated transaction logs, fed by its own thread of a
+ * {@link SinkFanOut}.
+ */
+public interface TransactionLogSink extends AutoCloseable {
+
+    String getName();
+
+    /**
+     * @param sinkRecord shared with the other sinks, whose encodings it
+     *                   keeps
+     */
+    void accept(SinkRecord sinkRecord) throws Exception;
+
+    /**
+     * Called whenever the sink has caught up with the published records.
+     */
+    default void flush() {
+    }
+
+    @Override
+    void close();
+}
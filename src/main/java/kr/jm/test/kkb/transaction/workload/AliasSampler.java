@@ -0,0 +1,63 @@
+package kr.jm.test.kkb.transaction.workload;
+
+import kr.jm.test.kkb.transaction.random.SplitMix64;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Vose's alias table over weighted indexes: any skew is sampled in O(1)
+ * from one random long, the high half picking a column and the low half
+ * choosing between the column and its alias.
+ */
+public class AliasSampler {
+
+    private final double[] probabilities;
+    private final int[] aliases;
+
+    public AliasSampler(double[] weights) {
+        int size = weights.length;
+        double sum = 0;
+        for (double weight : weights) {
+            if (weight < 0 || Double.isNaN(weight))
+                throw new IllegalArgumentException("Wrong Weight !!! - " +
+                        weight);
+            sum += weight;
+        }
+        if (size == 0 || sum <= 0)
+            throw new IllegalArgumentException("Wrong Weights !!! - size=" +
+                    size + ", sum=" + sum);
+        this.probabilities = new double[size];
+        this.aliases = new int[size];
+        double[] scaled = new double[size];
+        Deque<Integer> small = new ArrayDeque<>();
+        Deque<Integer> large = new ArrayDeque<>();
+        for (int i = 0; i < size; i++) {
+            scaled[i] = weights[i] * size / sum;
+            (scaled[i] < 1 ? small : large).push(i);
+        }
+        while (!small.isEmpty() && !large.isEmpty()) {
+            int less = small.pop();
+            int more = large.pop();
+            probabilities[less] = scaled[less];
+            aliases[less] = more;
+            scaled[more] += scaled[less] - 1;
+            (scaled[more] < 1 ? small : large).push(more);
+        }
+        while (!large.isEmpty())
+            probabilities[large.pop()] = 1;
+        while (!small.isEmpty())
+            probabilities[small.pop()] = 1;
+    }
+
+    public int size() {
+        return probabilities.length;
+    }
+
+    public int sample(SplitMix64 random) {
+        long bits = random.nextLong();
+        int column = (int) (((bits >>> 32) * probabilities.length) >>> 32);
+        return (bits & 0xFFFFFFFFL) * 0x1.0p-32 < probabilities[column] ?
+                column : aliases[column];
+    }
+}
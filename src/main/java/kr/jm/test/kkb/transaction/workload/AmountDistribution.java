@@ -0,0 +1,121 @@
+package kr.jm.test.kkb.transaction.workload;
+
+import kr.jm.test.kkb.transaction.random.SplitMix64;
+
+/**
+ * Amounts in multiples of a unit: {@code uniform:<min>:<max>} or
+ * {@code lognormal:<median>:<sigma>[:<max>]}, the latter looked up in a
+ * precomputed table of 4096 quantiles so a sample costs one random int.
+ */
+public class AmountDistribution {
+
+    public static final long AMOUNT_UNIT = 100;
+    public static final AmountDistribution DEFAULT = uniform(10000, 99900);
+
+    private static final int QUANTILE_COUNT = 4096;
+
+    private final String spec;
+    private final long min;
+    private final int unitCount;
+    private final long[] quantiles;
+
+    private AmountDistribution(String spec, long min, int unitCount,
+            long[] quantiles) {
+        this.spec = spec;
+        this.min = min;
+        this.unitCount = unitCount;
+        this.quantiles = quantiles;
+    }
+
+    public static AmountDistribution uniform(long min, long max) {
+        if (min < AMOUNT_UNIT || max < min)
+            throw new IllegalArgumentException("Wrong Amount Range !!! - " +
+                    min + " ~ " + max);
+        long roundedMin = roundToUnit(min);
+        return new AmountDistribution("uniform:" + min + ":" + max,
+                roundedMin, (int) ((max - roundedMin) / AMOUNT_UNIT) + 1,
+                null);
+    }
+
+    public static AmountDistribution logNormal(long median, double sigma,
+            long max) {
+        if (median < AMOUNT_UNIT || sigma <= 0 || max < median)
+            throw new IllegalArgumentException("Wrong Log Normal Amount !!! " +
+                    "- median=" + median + ", sigma=" + sigma + ", max=" +
+                    max);
+        long[] quantiles = new long[QUANTILE_COUNT];
+        for (int i = 0; i < QUANTILE_COUNT; i++)
+            quantiles[i] = Math.max(AMOUNT_UNIT, Math.min(max,
+                    roundToUnit(median * Math.exp(sigma *
+                            inverseNormal((i + 0.5) / QUANTILE_COUNT)))));
+        return new AmountDistribution("lognormal:" + median + ":" + sigma +
+                ":" + max, 0, 0, quantiles);
+    }
+
+    public static AmountDistribution parse(String spec) {
+        String[] parts = spec.trim().split(":");
+        try {
+            switch (parts[0].toLowerCase()) {
+                case "uniform":
+                    return uniform(Long.valueOf(parts[1]),
+                            Long.valueOf(parts[2]));
+                case "lognormal":
+                    long median = Long.valueOf(parts[1]);
+                    return logNormal(median, Double.valueOf(parts[2]),
+                            parts.length > 3 ? Long.valueOf(parts[3]) :
+                                    median * 100);
+                default:
+            }
+        } catch (RuntimeException e) {
+            throw new RuntimeException("Wrong Amount Distribution !!! - " +
+                    spec, e);
+        }
+        throw new RuntimeException("Wrong Amount Distribution !!! - " + spec);
+    }
+
+    private static long roundToUnit(double amount) {
+        return Math.round(amount / AMOUNT_UNIT) * AMOUNT_UNIT;
+    }
+
+    /**
+     * Acklam's rational approximation of the standard normal quantile,
+     * within 1.2e-9 of it.
+     */
+    static double inverseNormal(double p) {
+        double[] a = {-3.969683028665376e+01, 2.209460984245205e+02,
+                -2.759285104469687e+02, 1.383577518672690e+02,
+                -3.066479806614716e+01, 2.506628277459239e+00};
+        double[] b = {-5.447609879822406e+01, 1.615858368580409e+02,
+                -1.556989798598866e+02, 6.680131188771972e+01,
+                -1.328068155288572e+01};
+        double[] c = {-7.784894002430293e-03, -3.223964580411365e-01,
+                -2.400758277161838e+00, -2.549732539343734e+00,
+                4.374664141464968e+00, 2.938163982698783e+00};
+        double[] d = {7.784695709041462e-03, 3.224671290700398e-01,
+                2.445134137142996e+00, 3.754408661907416e+00};
+        double low = 0.02425;
+        if (p < low || p > 1 - low) {
+            double q = Math.sqrt(-2 * Math.log(p < low ? p : 1 - p));
+            double x = (((((c[0] * q + c[1]) * q + c[2]) * q + c[3]) * q +
+                    c[4]) * q + c[5]) /
+                    ((((d[0] * q + d[1]) * q + d[2]) * q + d[3]) * q + 1);
+            return p < low ? x : -x;
+        }
+        double q = p - 0.5;
+        double r = q * q;
+        return (((((a[0] * r + a[1]) * r + a[2]) * r + a[3]) * r + a[4]) * r +
+                a[5]) * q / (((((b[0] * r + b[1]) * r + b[2]) * r + b[3]) *
+                r + b[4]) * r + 1);
+    }
+
+    public long sample(SplitMix64 random) {
+        return quantiles == null ?
+                min + random.nextInt(unitCount) * AMOUNT_UNIT :
+                quantiles[random.nextInt(QUANTILE_COUNT)];
+    }
+
+    @Override
+    public String toString() {
+        return spec;
+    }
+}
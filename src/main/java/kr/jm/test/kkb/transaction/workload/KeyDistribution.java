@@ -0,0 +1,116 @@
+package kr.jm.test.kkb.transaction.workload;
+
+import kr.jm.test.kkb.transaction.random.SplitMix64;
+
+/**
+ * How often each of n ranked keys, users or the accounts of a user, is
+ * picked: {@code uniform}, {@code zipf:<exponent>}, the rank r weighing
+ * 1/(r+1)^exponent, or {@code hotspot:<hotFraction>:<hotShare>}, the first
+ * hotFraction of the keys taking hotShare of the picks.
+ */
+public class KeyDistribution {
+
+    public static final KeyDistribution UNIFORM =
+            new KeyDistribution(Kind.UNIFORM, 0, 0);
+
+    private enum Kind {
+        UNIFORM, ZIPF, HOTSPOT
+    }
+
+    private final Kind kind;
+    private final double first;
+    private final double second;
+
+    private KeyDistribution(Kind kind, double first, double second) {
+        this.kind = kind;
+        this.first = first;
+        this.second = second;
+    }
+
+    public static KeyDistribution zipf(double exponent) {
+        if (exponent <= 0)
+            throw new IllegalArgumentException("Wrong Zipf Exponent !!! - " +
+                    exponent);
+        return new KeyDistribution(Kind.ZIPF, exponent, 0);
+    }
+
+    public static KeyDistribution hotspot(double hotFraction,
+            double hotShare) {
+        if (hotFraction <= 0 || hotFraction > 1 || hotShare < 0 ||
+                hotShare > 1)
+            throw new IllegalArgumentException("Wrong Hotspot !!! - " +
+                    hotFraction + ", " + hotShare);
+        return new KeyDistribution(Kind.HOTSPOT, hotFraction, hotShare);
+    }
+
+    public static KeyDistribution parse(String spec) {
+        String[] parts = spec.trim().split(":");
+        try {
+            switch (parts[0].toLowerCase()) {
+                case "uniform":
+                    return UNIFORM;
+                case "zipf":
+                    return zipf(Double.valueOf(parts[1]));
+                case "hotspot":
+                    return hotspot(Double.valueOf(parts[1]),
+                            Double.valueOf(parts[2]));
+                default:
+            }
+        } catch (RuntimeException e) {
+            throw new RuntimeException("Wrong Key Distribution !!! - " + spec,
+                    e);
+        }
+        throw new RuntimeException("Wrong Key Distribution !!! - " + spec);
+    }
+
+    public boolean isUniform() {
+        return kind == Kind.UNIFORM;
+    }
+
+    public double[] weights(int keyCount) {
+        double[] weights = new double[keyCount];
+        int hotCount = (int) Math.ceil(first * keyCount);
+        for (int rank = 0; rank < keyCount; rank++) {
+            switch (kind) {
+                case ZIPF:
+                    weights[rank] = 1 / Math.pow(rank + 1, first);
+                    break;
+                case HOTSPOT:
+                    weights[rank] = rank < hotCount ? second / hotCount :
+                            (1 - second) / (keyCount - hotCount);
+                    break;
+                default:
+                    weights[rank] = 1;
+            }
+        }
+        return weights;
+    }
+
+    /**
+     * @return null for {@link #UNIFORM}, which needs no table
+     */
+    public AliasSampler samplerOf(int keyCount) {
+        return isUniform() ? null : new AliasSampler(weights(keyCount));
+    }
+
+    /**
+     * @param aliasSampler of {@link #samplerOf(int)} for the key count
+     */
+    public static int sample(AliasSampler aliasSampler, int keyCount,
+            SplitMix64 random) {
+        return aliasSampler == null ? random.nextInt(keyCount) :
+                aliasSampler.sample(random);
+    }
+
+    @Override
+    public String toString() {
+        switch (kind) {
+            case ZIPF:
+                return "zipf:" + first;
+            case HOTSPOT:
+                return "hotspot:" + first + ":" + second;
+            default:
+                return "uniform";
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package kr.jm.test.kkb.transaction.workload;
+
+import kr.jm.test.kkb.transaction.log.TransactionType;
+import kr.jm.test.kkb.transaction.random.SplitMix64;
+import kr.jm.test.kkb.transaction.schedule.RateShape;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.Collectors;
+
+/**
+ * Declarative mix of a generated workload, read from the properties file
+ * named by the {@code kkb.workload.profile} system property and
+ * {@code workload.} prefixed system properties:
+ * <pre>
+ * type.weights=OPENING_ACCOUNT:1,DEPOSIT:5,WITHDRAW:2,TRANSFER:2
+ * user.distribution=zipf:1.1
+ * account.distribution=hotspot:0.2:0.8
+ * rate.shape=diurnal:86400000:0.5
+ * amount.distribution=lognormal:30000:1.0
+ * </pre>
+ * The {@link #DEFAULT} is the mix above with uniform users and accounts, a
+ * constant rate and uniform amounts of 10,000 to 99,900.
+ * <p>
+ * Every choice is an O(1) lookup in a table built once, the account tables
+ * once per account count up to 1024; accounts of a user past the 1024th
+ * are only picked by the uniform distribution.
+ */
+public class WorkloadProfile {
+
+    public static final String PROFILE_FILE_PROPERTY = "kkb.workload.profile";
+    public static final String SYSTEM_PROPERTY_PREFIX = "workload.";
+    public static final String TYPE_WEIGHTS = "type.weights";
+    public static final String USER_DISTRIBUTION = "user.distribution";
+    public static final String ACCOUNT_DISTRIBUTION = "account.distribution";
+    public static final String RATE_SHAPE = "rate.shape";
+    public static final String AMOUNT_DISTRIBUTION = "amount.distribution";
+
+    private static final TransactionType[] TRANSACTION_TYPES =
+            {TransactionType.OPENING_ACCOUNT, TransactionType.DEPOSIT,
+                    TransactionType.WITHDRAW, TransactionType.TRANSFER};
+    private static final int MAX_ACCOUNT_RANKS = 1024;
+
+    public static final WorkloadProfile DEFAULT =
+            new WorkloadProfile(defaultTypeWeights(), KeyDistribution.UNIFORM,
+                    KeyDistribution.UNIFORM, RateShape.CONSTANT,
+                    AmountDistribution.DEFAULT);
+
+    private final Map<TransactionType, Double> typeWeights;
+    private final AliasSampler typeSampler;
+    private final KeyDistribution userDistribution;
+    private final KeyDistribution accountDistribution;
+    private final AtomicReferenceArray<AliasSampler> accountSamplers;
+    private final RateShape rateShape;
+    private final AmountDistribution amountDistribution;
+
+    /**
+     * @param typeWeights of OPENING_ACCOUNT, DEPOSIT, WITHDRAW and TRANSFER,
+     *                    the missing ones weighing 0
+     */
+    public WorkloadProfile(Map<TransactionType, Double> typeWeights,
+            KeyDistribution userDistribution,
+            KeyDistribution accountDistribution, RateShape rateShape,
+            AmountDistribution amountDistribution) {
+        this.typeWeights = new EnumMap<>(TransactionType.class);
+        this.typeSampler = new AliasSampler(Arrays.stream(TRANSACTION_TYPES)
+                .mapToDouble(type -> typeWeights.getOrDefault(type, 0d))
+                .toArray());
+        Arrays.stream(TRANSACTION_TYPES).forEach(type -> this.typeWeights
+                .put(type, typeWeights.getOrDefault(type, 0d)));
+        this.userDistribution = userDistribution;
+        this.accountDistribution = accountDistribution;
+        this.accountSamplers =
+                new AtomicReferenceArray<>(MAX_ACCOUNT_RANKS + 1);
+        this.rateShape = rateShape;
+        this.amountDistribution = amountDistribution;
+    }
+
+    private static Map<TransactionType, Double> defaultTypeWeights() {
+        return parseTypeWeights(
+                "OPENING_ACCOUNT:1,DEPOSIT:5,WITHDRAW:2,TRANSFER:2");
+    }
+
+    static Map<TransactionType, Double> parseTypeWeights(String spec) {
+        Map<TransactionType, Double> typeWeights =
+                new EnumMap<>(TransactionType.class);
+        try {
+            for (String typeWeight : spec.split(",")) {
+                String[] parts = typeWeight.trim().split(":");
+                TransactionType type =
+                        TransactionType.valueOf(parts[0].trim());
+                if (!Arrays.asList(TRANSACTION_TYPES).contains(type))
+                    throw new IllegalArgumentException(
+                            "Not Weighable Type - " + type);
+                typeWeights.put(type, Double.valueOf(parts[1]));
+            }
+        } catch (RuntimeException e) {
+            throw new RuntimeException("Wrong Type Weights !!! - " + spec, e);
+        }
+        return typeWeights;
+    }
+
+    public static WorkloadProfile fromSystemProperties() {
+        String profileFile = System.getProperty(PROFILE_FILE_PROPERTY);
+        Properties properties = profileFile == null ? new Properties() :
+                loadFile(Paths.get(profileFile));
+        System.getProperties().stringPropertyNames().stream()
+                .filter(key -> key.startsWith(SYSTEM_PROPERTY_PREFIX))
+                .forEach(key -> properties.setProperty(
+                        key.substring(SYSTEM_PROPERTY_PREFIX.length()),
+                        System.getProperty(key)));
+        return properties.isEmpty() ? DEFAULT : fromProperties(properties);
+    }
+
+    public static Properties loadFile(Path profileFile) {
+        try (Reader reader = Files
+                .newBufferedReader(profileFile, StandardCharsets.UTF_8)) {
+            Properties properties = new Properties();
+            properties.load(reader);
+            return properties;
+        } catch (IOException e) {
+            throw new RuntimeException("Wrong Workload Profile File !!! - " +
+                    profileFile, e);
+        }
+    }
+
+    /**
+     * @param properties the missing keys take the {@link #DEFAULT}
+     */
+    public static WorkloadProfile fromProperties(Properties properties) {
+        String typeWeights = properties.getProperty(TYPE_WEIGHTS);
+        String userDistribution = properties.getProperty(USER_DISTRIBUTION);
+        String accountDistribution =
+                properties.getProperty(ACCOUNT_DISTRIBUTION);
+        String rateShape = properties.getProperty(RATE_SHAPE);
+        String amountDistribution =
+                properties.getProperty(AMOUNT_DISTRIBUTION);
+        return new WorkloadProfile(typeWeights == null ?
+                DEFAULT.typeWeights : parseTypeWeights(typeWeights),
+                userDistribution == null ? DEFAULT.userDistribution :
+                        KeyDistribution.parse(userDistribution),
+                accountDistribution == null ? DEFAULT.accountDistribution :
+                        KeyDistribution.parse(accountDistribution),
+                rateShape == null ? DEFAULT.rateShape :
+                        RateShape.parse(rateShape),
+                amountDistribution == null ? DEFAULT.amountDistribution :
+                        AmountDistribution.parse(amountDistribution));
+    }
+
+    public TransactionType sampleTransactionType(SplitMix64 random) {
+        return TRANSACTION_TYPES[typeSampler.sample(random)];
+    }
+
+    /**
+     * @return the index of one of the accountCount accounts of a user
+     */
+    public int sampleAccountIndex(int accountCount, SplitMix64 random) {
+        if (accountDistribution.isUniform() || accountCount == 1)
+            return random.nextInt(accountCount);
+        int rankCount = Math.min(accountCount, MAX_ACCOUNT_RANKS);
+        AliasSampler accountSampler = accountSamplers.get(rankCount);
+        if (accountSampler == null) {
+            // racing threads build equal tables, any of them will do
+            accountSampler = accountDistribution.samplerOf(rankCount);
+            accountSamplers.set(rankCount, accountSampler);
+        }
+        return accountSampler.sample(random);
+    }
+
+    public long sampleAmount(SplitMix64 random) {
+        return amountDistribution.sample(random);
+    }
+
+    /**
+     * @return the sampler of user ranks to pass to
+     * {@link KeyDistribution#sample}, null when uniform
+     */
+    public AliasSampler buildUserSampler(int userCount) {
+        return userDistribution.samplerOf(userCount);
+    }
+
+    public KeyDistribution getUserDistribution() {
+        return userDistribution;
+    }
+
+    public KeyDistribution getAccountDistribution() {
+        return accountDistribution;
+    }
+
+    public RateShape getRateShape() {
+        return rateShape;
+    }
+
+    public AmountDistribution getAmountDistribution() {
+        return amountDistribution;
+    }
+
+    @Override
+    public String toString() {
+        return "WorkloadProfile(types=" + typeWeights.entrySet().stream()
+                .map(entry -> entry.getKey() + ":" + entry.getValue())
+                .collect(Collectors.joining(",")) + ", users=" +
+                userDistribution + ", accounts=" + accountDistribution +
+                ", rate=" + rateShape + ", amounts=" + amountDistribution +
+                ")";
+    }
+}
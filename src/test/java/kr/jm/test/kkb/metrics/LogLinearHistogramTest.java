@@ -0,0 +1,63 @@
+package kr.jm.test.kkb.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.stream.IntStream;
+
+public class LogLinearHistogramTest {
+
+    static {
+        System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", "warn");
+    }
+
+    @Test
+    public void testBucketBounds() {
+        long[] values = {0, 1, 15, 16, 17, 31, 32, 33, 1000, 123456789,
+                Long.MAX_VALUE};
+        for (long value : values) {
+            int index = LogLinearHistogram.bucketIndex(value);
+            Assert.assertTrue(value <=
+                    LogLinearHistogram.bucketUpperBound(index));
+            Assert.assertTrue(index == 0 || value >
+                    LogLinearHistogram.bucketUpperBound(index - 1));
+        }
+        Assert.assertEquals(959,
+                LogLinearHistogram.bucketIndex(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testPercentiles() {
+        LogLinearHistogram logLinearHistogram = new LogLinearHistogram();
+        IntStream.rangeClosed(1, 100000).parallel()
+                .forEach(logLinearHistogram::record);
+        Assert.assertEquals(100000, logLinearHistogram.getCount());
+        Assert.assertEquals(100000, logLinearHistogram.getMax());
+        Assert.assertEquals(50000.5, logLinearHistogram.getMean(), 0.001);
+        for (double percentile : new double[]{50, 90, 99, 99.9}) {
+            double expected = percentile * 1000;
+            Assert.assertEquals(expected,
+                    logLinearHistogram.getPercentile(percentile),
+                    expected * 0.07);
+        }
+        Assert.assertEquals(100000, logLinearHistogram.getPercentile(100));
+        System.out.println(logLinearHistogram);
+    }
+
+    @Test
+    public void testMinus() {
+        LogLinearHistogram logLinearHistogram = new LogLinearHistogram();
+        Random random = new Random(1);
+        for (int i = 0; i < 1000; i++)
+            logLinearHistogram.record(100000 + random.nextInt(1000));
+        LogLinearHistogram snapshot = logLinearHistogram.snapshot();
+        for (int i = 0; i < 1000; i++)
+            logLinearHistogram.record(random.nextInt(100));
+        LogLinearHistogram difference = logLinearHistogram.minus(snapshot);
+        Assert.assertEquals(1000, difference.getCount());
+        Assert.assertTrue(difference.getPercentile(99) < 100);
+        Assert.assertTrue(difference.getMax() < 100);
+        Assert.assertTrue(logLinearHistogram.getPercentile(99) >= 100000);
+    }
+}
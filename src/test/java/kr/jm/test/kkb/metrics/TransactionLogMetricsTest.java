@@ -0,0 +1,151 @@
+package kr.jm.test.kkb.metrics;
+
+import kr.jm.test.kkb.output.LineWriterInterface;
+import kr.jm.test.kkb.transaction.TransactionLogGenerator;
+import kr.jm.test.kkb.transaction.codec.LogFormat;
+import kr.jm.test.kkb.transaction.log.TransactionLogInterface;
+import kr.jm.test.kkb.transaction.log.TransactionType;
+import kr.jm.test.kkb.transaction.random.TransactionLogRandom;
+import kr.jm.test.kkb.transaction.sink.ArchiveSink;
+import kr.jm.test.kkb.transaction.sink.SinkRecord;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TransactionLogMetricsTest {
+
+    static {
+        System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", "warn");
+    }
+
+    private static final LineWriterInterface NO_LINE_WRITER =
+            new LineWriterInterface() {
+                @Override
+                public void appendLine(byte[] bytes, int offset, int length) {
+                }
+
+                @Override
+                public Path closeAndGetFilePath() {
+                    return null;
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+
+    @Test
+    public void testCountsGeneratedAndSerialized() throws Exception {
+        TransactionLogMetrics transactionLogMetrics =
+                new TransactionLogMetrics();
+        TransactionLogGenerator transactionLogGenerator =
+                new TransactionLogGenerator(0, 0,
+                        TransactionLogRandom.seeded(1));
+        transactionLogGenerator.setTransactionLogMetrics(transactionLogMetrics);
+        TransactionLogInterface[] transactionLogs = transactionLogGenerator
+                .generateAbout100TransactionLogEach("a", "b");
+        Assert.assertEquals(transactionLogs.length,
+                transactionLogMetrics.getGeneratedCount());
+        Map<String, Long> generatedCounts =
+                transactionLogMetrics.getGeneratedCounts();
+        Assert.assertEquals(2, generatedCounts
+                .get(TransactionType.NEW_USER.name()).longValue());
+        Assert.assertTrue(generatedCounts
+                .get(TransactionType.DEPOSIT.name()) > 0);
+
+        try (ArchiveSink archiveSink = new ArchiveSink("archive",
+                LogFormat.BINARY, NO_LINE_WRITER, transactionLogMetrics)) {
+            for (TransactionLogInterface transactionLog : transactionLogs)
+                archiveSink.accept(new SinkRecord(transactionLog));
+        }
+        Assert.assertEquals(transactionLogs.length, transactionLogMetrics
+                .getSerializationNanosHistogram().getCount());
+        Assert.assertEquals(transactionLogs.length, transactionLogMetrics
+                .getAppendNanosHistogram().getCount());
+        System.out.println(transactionLogMetrics.getSummary());
+    }
+
+    @Test
+    public void testDisabledRecordsNothing() {
+        TransactionLogMetrics transactionLogMetrics =
+                TransactionLogMetrics.DISABLED;
+        transactionLogMetrics.countGenerated(TransactionType.DEPOSIT);
+        Assert.assertEquals(0, transactionLogMetrics.startNanos());
+        transactionLogMetrics.recordSerialization(0);
+        transactionLogMetrics.registerQueueDepth("queue", () -> 1);
+        Assert.assertFalse(transactionLogMetrics.isEnabled());
+        Assert.assertEquals(0, transactionLogMetrics.getGeneratedCount());
+        Assert.assertEquals(0, transactionLogMetrics
+                .getSerializationNanosHistogram().getCount());
+        Assert.assertTrue(transactionLogMetrics.getQueueDepths().isEmpty());
+        Assert.assertSame(transactionLogMetrics,
+                transactionLogMetrics.registerMBean());
+    }
+
+    @Test
+    public void testMXBean() throws Exception {
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        ObjectName query =
+                new ObjectName("kr.jm.test.kkb:type=TransactionLogMetrics,*");
+        int registeredCount = mBeanServer.queryNames(query, null).size();
+        AtomicLong queueDepth = new AtomicLong(7);
+        try (TransactionLogMetrics transactionLogMetrics =
+                new TransactionLogMetrics().registerMBean()) {
+            transactionLogMetrics.registerQueueDepth("queue",
+                    queueDepth::get);
+            transactionLogMetrics.countGenerated(TransactionType.TRANSFER);
+            LogLinearHistogram ackLatencyMicrosHistogram =
+                    new LogLinearHistogram();
+            ackLatencyMicrosHistogram.record(1000);
+            transactionLogMetrics
+                    .bindAckLatencyMicrosHistogram(ackLatencyMicrosHistogram);
+            ObjectName objectName = mBeanServer.queryNames(query, null)
+                    .stream().filter(name -> {
+                        try {
+                            return mBeanServer.getAttribute(name,
+                                    "GeneratedCount").equals(1L);
+                        } catch (Exception e) {
+                            return false;
+                        }
+                    }).findFirst().orElseThrow(AssertionError::new);
+            Assert.assertEquals(1000L, mBeanServer.getAttribute(objectName,
+                    "AckLatencyP99Micros"));
+            Assert.assertTrue(mBeanServer.getAttribute(objectName,
+                    "Summary").toString().contains("queues={queue=7}"));
+        }
+        Assert.assertEquals(registeredCount,
+                mBeanServer.queryNames(query, null).size());
+    }
+
+    @Test
+    public void testSummaryReportsTheInterval() {
+        TransactionLogMetrics transactionLogMetrics =
+                new TransactionLogMetrics().startReporting(3_600_000);
+        LogLinearHistogram ackLatencyMicrosHistogram =
+                new LogLinearHistogram();
+        transactionLogMetrics
+                .bindAckLatencyMicrosHistogram(ackLatencyMicrosHistogram);
+        for (int i = 0; i < 100; i++)
+            ackLatencyMicrosHistogram.record(1000);
+        Assert.assertTrue(transactionLogMetrics.getSummary()
+                .contains("ackMicros=p50:1000/p99:1000"));
+        Assert.assertTrue(transactionLogMetrics.getSummary()
+                .contains("ackMicros=p50:1000/p99:1000"));
+        // the reporter starts a new interval on close, polling does not
+        transactionLogMetrics.close();
+        Assert.assertTrue(transactionLogMetrics.getSummary()
+                .contains("ackMicros=p50:0/p99:0"));
+        for (int i = 0; i < 100; i++)
+            ackLatencyMicrosHistogram.record(10);
+        Assert.assertTrue(transactionLogMetrics.getSummary()
+                .contains("ackMicros=p50:10/p99:10"));
+        Assert.assertEquals(1000,
+                transactionLogMetrics.getAckLatencyP99Micros());
+    }
+}
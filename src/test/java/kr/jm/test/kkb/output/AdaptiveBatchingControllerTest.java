@@ -0,0 +1,222 @@
+package kr.jm.test.kkb.output;
+
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+public class AdaptiveBatchingControllerTest {
+
+    static {
+        System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", "warn");
+    }
+
+    private List<Properties> createdProducerProperties;
+    private MetricsMockProducer mockProducer;
+    private AsyncKafkaSender asyncKafkaSender;
+
+    @Before
+    public void setUp() {
+        this.createdProducerProperties = new ArrayList<>();
+        this.mockProducer = buildMockProducer();
+        this.asyncKafkaSender = new AsyncKafkaSender(mockProducer, "topic",
+                1000, 1 << 20);
+    }
+
+    private static MetricsMockProducer buildMockProducer() {
+        return new MetricsMockProducer();
+    }
+
+    /**
+     * Reports the producer metrics it is given, none by default.
+     */
+    private static class MetricsMockProducer
+            extends MockProducer<String, byte[]> {
+        private final Map<MetricName, Metric> metrics = new HashMap<>();
+        private volatile boolean closed;
+
+        private MetricsMockProducer() {
+            super(false, new StringSerializer(), new ByteArraySerializer());
+        }
+
+        private void setMetric(String name, double value) {
+            MetricName metricName = new MetricName(name, "producer-metrics",
+                    "", Collections.emptyMap());
+            metrics.put(metricName, new Metric() {
+                @Override
+                public MetricName metricName() {
+                    return metricName;
+                }
+
+                @Override
+                public double value() {
+                    return value;
+                }
+            });
+        }
+
+        @Override
+        public Map<MetricName, Metric> metrics() {
+            return metrics;
+        }
+
+        @Override
+        public void close(long timeout, TimeUnit timeUnit) {
+            this.closed = true;
+        }
+    }
+
+    private Producer<String, byte[]> createProducer(
+            Properties producerProperties) {
+        createdProducerProperties.add(producerProperties);
+        this.mockProducer = buildMockProducer();
+        return mockProducer;
+    }
+
+    private AdaptiveBatchingController buildController(
+            AdaptiveBatchingController.Goal goal) {
+        Properties producerProperties = new Properties();
+        producerProperties.put(ProducerConfig.LINGER_MS_CONFIG, 8);
+        producerProperties.put(ProducerConfig.BATCH_SIZE_CONFIG, 16384);
+        return new AdaptiveBatchingController(asyncKafkaSender,
+                producerProperties, this::createProducer, goal, 2, 1, 32,
+                4096, 65536);
+    }
+
+    @Test
+    public void testThroughputGoal() {
+        AdaptiveBatchingController adaptiveBatchingController =
+                buildController(AdaptiveBatchingController.Goal.THROUGHPUT);
+        // no records or no metrics yet
+        Assert.assertArrayEquals(new int[]{8, 16384},
+                adaptiveBatchingController.nextSettings(0, 16000, 10, 5, 0, 0));
+        Assert.assertArrayEquals(new int[]{8, 16384},
+                adaptiveBatchingController.nextSettings(100, Double.NaN,
+                        Double.NaN, Double.NaN, 0, 0));
+        // full batches or records queued behind the requests
+        Assert.assertArrayEquals(new int[]{8, 32768},
+                adaptiveBatchingController.nextSettings(100, 16000, 10, 5, 0,
+                        0));
+        Assert.assertArrayEquals(new int[]{8, 32768},
+                adaptiveBatchingController.nextSettings(100, 8000, 50, 5, 0,
+                        0));
+        // mostly empty batches
+        Assert.assertArrayEquals(new int[]{8, 8192},
+                adaptiveBatchingController.nextSettings(100, 2000, 8, 5, 0,
+                        0));
+        // the linger follows the request latency, both ways
+        Assert.assertArrayEquals(new int[]{16, 16384},
+                adaptiveBatchingController.nextSettings(100, 8000, 20, 40, 0,
+                        0));
+        Assert.assertArrayEquals(new int[]{4, 16384},
+                adaptiveBatchingController.nextSettings(100, 8000, 8, 2, 0,
+                        0));
+        Assert.assertArrayEquals(new int[]{8, 16384},
+                adaptiveBatchingController.nextSettings(100, 8000, 8, 8, 0,
+                        0));
+
+        MetricsMockProducer firstProducer = mockProducer;
+        Assert.assertFalse(adaptiveBatchingController.adjust());
+        firstProducer.setMetric("batch-size-avg", 16000);
+        firstProducer.setMetric("record-queue-time-avg", 10);
+        firstProducer.setMetric("request-latency-avg", 5);
+        Assert.assertFalse(adaptiveBatchingController.adjust());
+        for (int i = 0; i < 10; i++)
+            asyncKafkaSender.send(String.valueOf(i), new byte[10]);
+        Assert.assertTrue(adaptiveBatchingController.adjust());
+        Assert.assertEquals(32768, adaptiveBatchingController.getBatchSize());
+        Assert.assertEquals(1, createdProducerProperties.size());
+        Assert.assertEquals(32768, createdProducerProperties.get(0)
+                .get(ProducerConfig.BATCH_SIZE_CONFIG));
+        // the old producer finished its records before the swap
+        Assert.assertTrue(firstProducer.closed);
+        Assert.assertEquals(10, asyncKafkaSender.getAckCount());
+        Assert.assertEquals(0, asyncKafkaSender.getInFlightRecords());
+        Assert.assertNotSame(firstProducer, mockProducer);
+        Assert.assertSame(mockProducer, asyncKafkaSender.getProducer());
+        asyncKafkaSender.send("next", new byte[10]);
+        Assert.assertEquals(1, mockProducer.history().size());
+        // no metrics on the new producer yet
+        Assert.assertFalse(adaptiveBatchingController.adjust());
+    }
+
+    @Test
+    public void testP99LatencyGoal() throws Exception {
+        AdaptiveBatchingController adaptiveBatchingController =
+                buildController(AdaptiveBatchingController.Goal.P99_LATENCY);
+        Assert.assertFalse(adaptiveBatchingController.adjust());
+        for (int i = 0; i < 10; i++)
+            asyncKafkaSender.send(String.valueOf(i), new byte[10]);
+        Thread.sleep(5);
+        while (mockProducer.completeNext()) ;
+        Assert.assertTrue(adaptiveBatchingController.adjust());
+        Assert.assertEquals(4, adaptiveBatchingController.getLingerMs());
+        Assert.assertFalse(adaptiveBatchingController.adjust());
+        Assert.assertArrayEquals(new int[]{2, 16384},
+                adaptiveBatchingController.nextSettings(10, 8000, 4, 20, 10,
+                        3000));
+        Assert.assertArrayEquals(new int[]{4, 16384},
+                adaptiveBatchingController.nextSettings(10, 8000, 4, 20, 10,
+                        1500));
+        Assert.assertArrayEquals(new int[]{8, 16384},
+                adaptiveBatchingController.nextSettings(10, 8000, 4, 20, 10,
+                        500));
+        Assert.assertArrayEquals(new int[]{4, 16384},
+                adaptiveBatchingController.nextSettings(10, Double.NaN,
+                        Double.NaN, Double.NaN, 10, 500));
+        asyncKafkaSender.send("in flight", new byte[10]);
+        Assert.assertEquals(1, asyncKafkaSender.close(100));
+    }
+
+    @Test
+    public void testStartFromProperties() throws Exception {
+        Path configFile = Files.createTempFile("kafka", ".properties");
+        try {
+            Files.write(configFile, ("linger.ms=20\n" +
+                    "compression.type=lz4\n" +
+                    "adaptive.batching.goal=P99_LATENCY\n" +
+                    "adaptive.batching.p99.target.ms=50\n")
+                    .getBytes(StandardCharsets.UTF_8));
+            Properties systemProperties = new Properties();
+            systemProperties.setProperty("kafka.linger.ms", "10");
+            systemProperties.setProperty("other.linger.ms", "30");
+            Properties properties = KafkaProducerProperties
+                    .load("localhost:9092", configFile, systemProperties);
+            Assert.assertEquals("10",
+                    properties.get(ProducerConfig.LINGER_MS_CONFIG));
+            Assert.assertEquals("lz4",
+                    properties.get(ProducerConfig.COMPRESSION_TYPE_CONFIG));
+            Assert.assertEquals("all",
+                    properties.get(ProducerConfig.ACKS_CONFIG));
+            Assert.assertFalse(KafkaProducerProperties
+                    .producerPropertiesOf(properties)
+                    .containsKey("adaptive.batching.goal"));
+            AdaptiveBatchingController adaptiveBatchingController =
+                    AdaptiveBatchingController.startFromProperties(
+                            asyncKafkaSender, properties,
+                            this::createProducer).get();
+            Assert.assertEquals(AdaptiveBatchingController.Goal.P99_LATENCY,
+                    adaptiveBatchingController.getGoal());
+            Assert.assertEquals(10, adaptiveBatchingController.getLingerMs());
+            adaptiveBatchingController.close();
+            Assert.assertFalse(AdaptiveBatchingController.startFromProperties(
+                    asyncKafkaSender, KafkaProducerProperties
+                            .producerPropertiesOf(properties),
+                    this::createProducer).isPresent());
+        } finally {
+            Files.deleteIfExists(configFile);
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package kr.jm.test.kkb.output;
+
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.errors.RecordTooLargeException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.function.ToLongFunction;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+public class ArchiveOutboxShipperTest {
+
+    static {
+        System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", "error");
+    }
+
+    private static final String TOPIC = "transaction-log";
+    private static final ToLongFunction<ByteBuffer> KEY_EXTRACTOR =
+            record -> record.getLong(record.position());
+
+    private Path directory;
+    private Map<Long, Integer> ackCountMap;
+    private Map<Long, String> ackedKeyMap;
+
+    @Before
+    public void setUp() throws Exception {
+        this.directory = Files.createTempDirectory("archive-outbox");
+        this.ackCountMap = new ConcurrentHashMap<>();
+        this.ackedKeyMap = new ConcurrentHashMap<>();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (Stream<Path> pathStream = Files.walk(directory)) {
+            pathStream.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Keeps a single segment besides the active one, so the shipper has to
+     * hold back the retention.
+     */
+    private SegmentedArchiveWriter buildWriter() {
+        return new SegmentedArchiveWriter(directory, "archive", 4096,
+                Long.MAX_VALUE, 0, 1, 1024, RecordFraming.LENGTH_PREFIXED);
+    }
+
+    private ArchiveOutboxShipper buildShipper(
+            SegmentedArchiveWriter segmentedArchiveWriter,
+            AsyncKafkaSender asyncKafkaSender) {
+        return new ArchiveOutboxShipper(segmentedArchiveWriter,
+                asyncKafkaSender, KEY_EXTRACTOR,
+                directory.resolve("archive.outbox"), 256, 1 << 20, 10);
+    }
+
+    private static long idOf(String key) {
+        return Long.valueOf(SequencedKeyPartitioner.partitionKeyOf(key));
+    }
+
+    private <T extends InMemoryKafkaProducer> T countAcks(T producer) {
+        producer.setAckListener((record, metadata) -> {
+            ackCountMap.merge(idOf(record.key()), 1, Integer::sum);
+            ackedKeyMap.put(idOf(record.key()), record.key());
+        });
+        return producer;
+    }
+
+    private static void append(SegmentedArchiveWriter segmentedArchiveWriter,
+            long fromId, long toId) {
+        for (long id = fromId; id < toId; id++)
+            segmentedArchiveWriter.appendLine(0,
+                    ByteBuffer.allocate(Long.BYTES).putLong(id).array());
+    }
+
+    private void assertEveryIdAckedOnce(long idCount) {
+        Assert.assertEquals(idCount, ackCountMap.size());
+        LongStream.range(0, idCount).forEach(id ->
+                Assert.assertEquals("id " + id, Integer.valueOf(1),
+                        ackCountMap.get(id)));
+    }
+
+    @Test
+    public void testResumeSkipsRecordsAckedPastTheCheckpoint()
+            throws Exception {
+        InMemoryKafkaProducer stuckProducer = countAcks(
+                new InMemoryKafkaProducer(4, 10, 0, 0) {
+                    @Override
+                    public Future<RecordMetadata> send(
+                            ProducerRecord<String, byte[]> record,
+                            Callback callback) {
+                        return idOf(record.key()) == 500 ?
+                                new CompletableFuture<>() :
+                                super.send(record, callback);
+                    }
+                });
+        AsyncKafkaSender asyncKafkaSender =
+                new AsyncKafkaSender(stuckProducer, TOPIC, 10000, 1 << 20);
+        SegmentedArchiveWriter segmentedArchiveWriter = buildWriter();
+        ArchiveOutboxShipper archiveOutboxShipper =
+                buildShipper(segmentedArchiveWriter, asyncKafkaSender);
+        append(segmentedArchiveWriter, 0, 1000);
+        segmentedArchiveWriter.close();
+        long deadlineMillis = System.currentTimeMillis() + 10000;
+        while (archiveOutboxShipper.getAckedCount() < 999 &&
+                System.currentTimeMillis() < deadlineMillis)
+            Thread.sleep(10);
+        Assert.assertEquals(1, archiveOutboxShipper.close(100));
+        asyncKafkaSender.close(100);
+        Assert.assertEquals(999, ackCountMap.size());
+
+        asyncKafkaSender = new AsyncKafkaSender(
+                countAcks(new InMemoryKafkaProducer(4, 10, 0, 0)), TOPIC,
+                10000, 1 << 20);
+        segmentedArchiveWriter = buildWriter();
+        archiveOutboxShipper =
+                buildShipper(segmentedArchiveWriter, asyncKafkaSender);
+        append(segmentedArchiveWriter, 1000, 1100);
+        segmentedArchiveWriter.close();
+        Assert.assertEquals(0, archiveOutboxShipper.close(10000));
+        asyncKafkaSender.close();
+        System.out.println(archiveOutboxShipper.getSummary());
+        Assert.assertTrue(archiveOutboxShipper.getDedupedCount() >= 499);
+        Assert.assertEquals(101, archiveOutboxShipper.getShippedCount());
+        assertEveryIdAckedOnce(1100);
+    }
+
+    @Test
+    public void testShipsOnlyWhatIsDurable() throws Exception {
+        AsyncKafkaSender asyncKafkaSender = new AsyncKafkaSender(
+                countAcks(new InMemoryKafkaProducer(4, 10, 0, 0)), TOPIC,
+                10000, 1 << 20);
+        SegmentedArchiveWriter segmentedArchiveWriter =
+                new SegmentedArchiveWriter(directory, "archive", 1 << 20,
+                        Long.MAX_VALUE, 0, 0, 1024,
+                        RecordFraming.LENGTH_PREFIXED,
+                        Durability.FSYNC_EVERY_N_RECORDS,
+                        100);
+        ArchiveOutboxShipper archiveOutboxShipper =
+                buildShipper(segmentedArchiveWriter, asyncKafkaSender);
+        append(segmentedArchiveWriter, 0, 250);
+        segmentedArchiveWriter.flush();
+        long deadlineMillis = System.currentTimeMillis() + 10000;
+        while (archiveOutboxShipper.getAckedCount() < 200 &&
+                System.currentTimeMillis() < deadlineMillis)
+            Thread.sleep(10);
+        Thread.sleep(100);
+        Assert.assertEquals(200, archiveOutboxShipper.getShippedCount());
+        segmentedArchiveWriter.close();
+        Assert.assertEquals(0, archiveOutboxShipper.close(10000));
+        asyncKafkaSender.close();
+        Assert.assertEquals(250, archiveOutboxShipper.getShippedCount());
+        assertEveryIdAckedOnce(250);
+    }
+
+    @Test
+    public void testResendsFailedRecordsUntilAcked() throws Exception {
+        AsyncKafkaSender asyncKafkaSender = new AsyncKafkaSender(
+                countAcks(new InMemoryKafkaProducer(4, 10, 0.7, 0)), TOPIC,
+                10000, 1 << 20);
+        SegmentedArchiveWriter segmentedArchiveWriter = buildWriter();
+        ArchiveOutboxShipper archiveOutboxShipper =
+                buildShipper(segmentedArchiveWriter, asyncKafkaSender);
+        append(segmentedArchiveWriter, 0, 1000);
+        segmentedArchiveWriter.close();
+        Assert.assertEquals(0, archiveOutboxShipper.close(10000));
+        asyncKafkaSender.close();
+        System.out.println(archiveOutboxShipper.getSummary());
+        Assert.assertTrue(archiveOutboxShipper.getResentCount() > 0);
+        Assert.assertNull(archiveOutboxShipper.getFatalException());
+        Assert.assertEquals(1000, archiveOutboxShipper.getAckedCount());
+        assertEveryIdAckedOnce(1000);
+    }
+
+    @Test
+    public void testStopsOnNonRetriableFailure() throws Exception {
+        String[] rejectedKey = new String[1];
+        InMemoryKafkaProducer rejectingProducer = countAcks(
+                new InMemoryKafkaProducer(4, 10, 0, 0) {
+                    @Override
+                    public Future<RecordMetadata> send(
+                            ProducerRecord<String, byte[]> record,
+                            Callback callback) {
+                        if (idOf(record.key()) != 500)
+                            return super.send(record, callback);
+                        rejectedKey[0] = record.key();
+                        RecordTooLargeException exception =
+                                new RecordTooLargeException("500");
+                        callback.onCompletion(null, exception);
+                        CompletableFuture<RecordMetadata> future =
+                                new CompletableFuture<>();
+                        future.completeExceptionally(exception);
+                        return future;
+                    }
+                });
+        AsyncKafkaSender asyncKafkaSender = new AsyncKafkaSender(
+                rejectingProducer, TOPIC, 10000, 1 << 20);
+        SegmentedArchiveWriter segmentedArchiveWriter = buildWriter();
+        ArchiveOutboxShipper archiveOutboxShipper =
+                buildShipper(segmentedArchiveWriter, asyncKafkaSender);
+        append(segmentedArchiveWriter, 0, 1000);
+        segmentedArchiveWriter.close();
+        Assert.assertTrue(archiveOutboxShipper.close(10000) > 0);
+        asyncKafkaSender.close();
+        Assert.assertTrue(archiveOutboxShipper
+                .getFatalException() instanceof RecordTooLargeException);
+        Assert.assertNull(ackCountMap.get(500L));
+
+        asyncKafkaSender = new AsyncKafkaSender(
+                countAcks(new InMemoryKafkaProducer(4, 10, 0, 0)), TOPIC,
+                10000, 1 << 20);
+        archiveOutboxShipper = buildShipper(buildWriter(), asyncKafkaSender);
+        Assert.assertEquals(0, archiveOutboxShipper.close(10000));
+        asyncKafkaSender.close();
+        Assert.assertEquals(1000, ackCountMap.size());
+        Assert.assertEquals(Integer.valueOf(1), ackCountMap.get(500L));
+        Assert.assertEquals(rejectedKey[0], ackedKeyMap.get(500L));
+        Assert.assertEquals(1000, ackedKeyMap.values().stream()
+                .map(SequencedKeyPartitioner::sequenceOf).distinct().count());
+    }
+}
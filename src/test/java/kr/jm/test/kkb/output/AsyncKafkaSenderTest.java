@@ -0,0 +1,191 @@
+package kr.jm.test.kkb.output;
+
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.internals.DefaultPartitioner;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.RecordTooLargeException;
+import org.apache.kafka.common.errors.TimeoutException;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class AsyncKafkaSenderTest {
+
+    static {
+        System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", "error");
+    }
+
+    private static final String TOPIC = "transaction-log";
+
+    private Cluster cluster;
+    private MockProducer<String, byte[]> mockProducer;
+
+    @Before
+    public void setUp() {
+        Node node = new Node(0, "localhost", 9092);
+        List<PartitionInfo> partitionInfoList = IntStream.range(0, 4)
+                .mapToObj(partition -> new PartitionInfo(TOPIC, partition,
+                        node, new Node[]{node}, new Node[]{node}))
+                .collect(Collectors.toList());
+        this.cluster = new Cluster("cluster", Collections.singletonList(node),
+                partitionInfoList, Collections.emptySet(),
+                Collections.emptySet());
+        this.mockProducer = new MockProducer<>(cluster, false,
+                new DefaultPartitioner(), new StringSerializer(),
+                new ByteArraySerializer());
+    }
+
+    @Test
+    public void testBackpressureOnInFlightRecords() throws Exception {
+        AsyncKafkaSender asyncKafkaSender =
+                new AsyncKafkaSender(mockProducer, TOPIC, 2, 1024);
+        Assert.assertTrue(asyncKafkaSender.send("1", new byte[10]));
+        Assert.assertTrue(asyncKafkaSender.send("2", new byte[10]));
+        CompletableFuture<Boolean> blockedSend = CompletableFuture
+                .supplyAsync(() -> asyncKafkaSender.send("3", new byte[10]));
+        Thread.sleep(100);
+        Assert.assertFalse(blockedSend.isDone());
+        Assert.assertEquals(2, asyncKafkaSender.getInFlightRecords());
+        Assert.assertEquals(20, asyncKafkaSender.getInFlightBytes());
+        mockProducer.completeNext();
+        Assert.assertTrue(blockedSend.get());
+        Assert.assertEquals(1, asyncKafkaSender.getBackpressureCount());
+        while (mockProducer.completeNext()) ;
+        Assert.assertEquals(0, asyncKafkaSender.close(1000));
+        Assert.assertEquals(3, asyncKafkaSender.getAckCount());
+        System.out.println(asyncKafkaSender.getSummary());
+    }
+
+    @Test
+    public void testBackpressureOnInFlightBytes() throws Exception {
+        AsyncKafkaSender asyncKafkaSender =
+                new AsyncKafkaSender(mockProducer, TOPIC, 100, 25);
+        asyncKafkaSender.send("1", new byte[10]);
+        asyncKafkaSender.send("2", new byte[10]);
+        CompletableFuture<Boolean> blockedSend = CompletableFuture
+                .supplyAsync(() -> asyncKafkaSender.send("3", new byte[10]));
+        Thread.sleep(100);
+        Assert.assertFalse(blockedSend.isDone());
+        mockProducer.completeNext();
+        Assert.assertTrue(blockedSend.get());
+        Assert.assertEquals(20, asyncKafkaSender.getInFlightBytes());
+    }
+
+    @Test
+    public void testAccountingPerPartition() throws Exception {
+        AsyncKafkaSender asyncKafkaSender =
+                new AsyncKafkaSender(mockProducer, TOPIC, 100, 1 << 20);
+        for (int i = 0; i < 8; i++)
+            asyncKafkaSender.send(String.valueOf(i), new byte[10]);
+        asyncKafkaSender.send(TOPIC, 3, "pinned", new byte[10], null);
+        mockProducer.errorNext(new TimeoutException("expired"));
+        mockProducer.errorNext(new RecordTooLargeException("too large"));
+        for (int i = 2; i < 8; i++)
+            mockProducer.completeNext();
+        mockProducer.errorNext(new TimeoutException("expired"));
+        while (asyncKafkaSender.getInFlightRecords() > 0) {
+            if (!mockProducer.completeNext())
+                Thread.sleep(1);
+        }
+        Assert.assertEquals(6, asyncKafkaSender.getAckCount());
+        Assert.assertEquals(3, asyncKafkaSender.getErrorCount());
+        Assert.assertEquals(9, mockProducer.history().size());
+        Assert.assertTrue(mockProducer.history().subList(0, 8).stream()
+                .allMatch(record -> record.partition() == null));
+        Assert.assertEquals(3,
+                mockProducer.history().get(8).partition().intValue());
+        Map<TopicPartition, AsyncKafkaSender.PartitionCounters>
+                partitionCounters = asyncKafkaSender.getPartitionCounters();
+        for (int i = 2; i < 8; i++)
+            Assert.assertTrue(partitionCounters.containsKey(
+                    new TopicPartition(TOPIC, AsyncKafkaSender
+                            .partitionOf(String.valueOf(i), 4))));
+        Assert.assertEquals(2, partitionCounters
+                .get(new TopicPartition(TOPIC, -1)).getErrorCount());
+        Assert.assertEquals(1, partitionCounters
+                .get(new TopicPartition(TOPIC, 3)).getErrorCount());
+        Assert.assertEquals(3, asyncKafkaSender.close(1000));
+        System.out.println(partitionCounters);
+    }
+
+    @Test
+    public void testRetriesAndErrorsPerPartition() {
+        InMemoryKafkaProducer inMemoryKafkaProducer =
+                new InMemoryKafkaProducer(4, 10, 0.5, 0.05);
+        AsyncKafkaSender asyncKafkaSender = new AsyncKafkaSender(
+                inMemoryKafkaProducer, TOPIC, 100, 1 << 20);
+        for (int i = 0; i < 200; i++)
+            asyncKafkaSender.send(String.valueOf(i), new byte[10]);
+        asyncKafkaSender.close(10000);
+        Map<TopicPartition, AsyncKafkaSender.PartitionCounters>
+                partitionCounters = asyncKafkaSender.getPartitionCounters();
+        Assert.assertEquals(IntStream.range(0, 4)
+                        .mapToObj(partition -> new TopicPartition(TOPIC,
+                                partition)).collect(Collectors.toSet()),
+                partitionCounters.keySet());
+        Assert.assertTrue(asyncKafkaSender.getRetryCount() > 0);
+        Assert.assertEquals(inMemoryKafkaProducer.getRetryCount(),
+                asyncKafkaSender.getRetryCount());
+        Assert.assertEquals(inMemoryKafkaProducer.getFailedCount(),
+                asyncKafkaSender.getErrorCount());
+        Assert.assertEquals(200, asyncKafkaSender.getAckCount() +
+                asyncKafkaSender.getErrorCount());
+        System.out.println(partitionCounters);
+    }
+
+    @Test
+    public void testCloseDrainsWithDeadline() throws Exception {
+        AsyncKafkaSender asyncKafkaSender =
+                new AsyncKafkaSender(mockProducer, TOPIC, 100, 1 << 20);
+        for (int i = 0; i < 5; i++)
+            asyncKafkaSender.send(String.valueOf(i), new byte[10]);
+        mockProducer.completeNext();
+        mockProducer.completeNext();
+        long startMillis = System.currentTimeMillis();
+        Assert.assertEquals(3, asyncKafkaSender.close(200));
+        Assert.assertTrue(System.currentTimeMillis() - startMillis >= 200);
+        Assert.assertFalse(asyncKafkaSender.send("5", new byte[10]));
+        Assert.assertEquals(4, asyncKafkaSender.getLostCount());
+        Assert.assertEquals(5, mockProducer.history().size());
+    }
+
+    @Test
+    public void testSequencedKeysKeepThePartitionOfTheirKey() {
+        DefaultPartitioner defaultPartitioner = new DefaultPartitioner();
+        SequencedKeyPartitioner sequencedKeyPartitioner =
+                new SequencedKeyPartitioner();
+        for (int i = 0; i < 100; i++) {
+            String key = String.valueOf(i);
+            String sequencedKey =
+                    SequencedKeyPartitioner.buildKey(key, "3:" + i);
+            int partition = defaultPartitioner.partition(TOPIC, key,
+                    key.getBytes(StandardCharsets.UTF_8), null, null,
+                    cluster);
+            Assert.assertEquals(partition, sequencedKeyPartitioner
+                    .partition(TOPIC, sequencedKey, sequencedKey
+                                    .getBytes(StandardCharsets.UTF_8), null,
+                            null, cluster));
+            Assert.assertEquals(partition, sequencedKeyPartitioner
+                    .partition(TOPIC, key, key
+                                    .getBytes(StandardCharsets.UTF_8), null,
+                            null, cluster));
+            Assert.assertEquals(partition,
+                    AsyncKafkaSender.partitionOf(sequencedKey, 4));
+            Assert.assertEquals("3:" + i,
+                    SequencedKeyPartitioner.sequenceOf(sequencedKey));
+        }
+    }
+}
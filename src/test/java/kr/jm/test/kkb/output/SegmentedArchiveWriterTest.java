@@ -0,0 +1,203 @@
+package kr.jm.test.kkb.output;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class SegmentedArchiveWriterTest {
+
+    static {
+        System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", "warn");
+    }
+
+    private Path directory;
+
+    @Before
+    public void setUp() throws Exception {
+        this.directory = Files.createTempDirectory("segmented-archive");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (Stream<Path> pathStream = Files.walk(directory)) {
+            pathStream.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        }
+    }
+
+    private static String buildLine(long logTimestamp) {
+        return "{\"transactionType\":\"DEPOSIT\",\"userNumber\":1," +
+                "\"logTimestamp\":" + logTimestamp + ",\"amount\":100}";
+    }
+
+    private List<String> readLines(SegmentedArchiveReader reader, long from,
+            long to) {
+        List<String> lines = new ArrayList<>();
+        reader.readLines(from, to, line -> {
+            byte[] bytes = new byte[line.remaining()];
+            line.get(bytes);
+            lines.add(new String(bytes, StandardCharsets.UTF_8));
+        });
+        return lines;
+    }
+
+    @Test
+    public void testRollRetentionAndTimeRangeRead() {
+        SegmentedArchiveWriter writer =
+                new SegmentedArchiveWriter(directory, "archive", 64 * 1024,
+                        60_000, 0, 5, 1024);
+        for (long logTimestamp = 0; logTimestamp < 20000; logTimestamp++)
+            writer.appendLine(buildLine(logTimestamp));
+        writer.close();
+
+        SegmentedArchiveReader reader =
+                new SegmentedArchiveReader(directory, "archive");
+        Assert.assertEquals(5, reader.getSegmentPaths().size());
+        List<String> lines = readLines(reader, 17000, 17999);
+        Assert.assertEquals(1000, lines.size());
+        for (int i = 0; i < lines.size(); i++)
+            Assert.assertEquals(buildLine(17000 + i), lines.get(i));
+        Assert.assertEquals(0, readLines(reader, 0, 100).size());
+
+        SegmentedArchiveWriter restartedWriter =
+                new SegmentedArchiveWriter(directory, "archive", 64 * 1024,
+                        60_000, 0, 5, 1024);
+        restartedWriter.appendLine(20000, buildLine(20000)
+                .getBytes(StandardCharsets.UTF_8));
+        restartedWriter.flush();
+        Assert.assertEquals(6, reader.getSegmentPaths().size());
+        Assert.assertEquals(restartedWriter.getActiveSegmentPath(),
+                reader.getSegmentPaths().get(5));
+        Assert.assertEquals(2, readLines(reader, 19999, 20000).size());
+        restartedWriter.close();
+    }
+
+    @Test
+    public void testReadsLinesAppendedOutOfOrder() {
+        SegmentedArchiveWriter writer =
+                new SegmentedArchiveWriter(directory, "archive", 16 * 1024,
+                        60_000, 0, 0, 512);
+        Random random = new Random(7);
+        List<Long> logTimestamps = new ArrayList<>();
+        for (long i = 0; i < 5000; i++) {
+            // mostly in order, now and then one far behind
+            long logTimestamp = random.nextInt(50) == 0 ?
+                    random.nextInt((int) i + 1) : i + random.nextInt(20);
+            logTimestamps.add(logTimestamp);
+            writer.appendLine(buildLine(logTimestamp));
+        }
+        writer.flush();
+
+        SegmentedArchiveReader reader =
+                new SegmentedArchiveReader(directory, "archive");
+        assertReadsAsFiltered(reader, logTimestamps);
+        writer.close();
+        assertReadsAsFiltered(reader, logTimestamps);
+    }
+
+    private void assertReadsAsFiltered(SegmentedArchiveReader reader,
+            List<Long> logTimestamps) {
+        for (long[] range : new long[][]{{0, 10}, {1000, 1100},
+                {2500, 2500}, {4900, 6000}, {-10, -1}}) {
+            List<String> expected = logTimestamps.stream()
+                    .filter(logTimestamp -> logTimestamp >= range[0] &&
+                            logTimestamp <= range[1])
+                    .map(SegmentedArchiveWriterTest::buildLine)
+                    .collect(Collectors.toList());
+            Assert.assertEquals(expected,
+                    readLines(reader, range[0], range[1]));
+        }
+    }
+
+    @Test
+    public void testFsyncEveryNRecordsAndIdleMillis() throws Exception {
+        SegmentedArchiveWriter writer =
+                new SegmentedArchiveWriter(directory, "archive", 64 * 1024,
+                        60_000, 0, 0, 1024, RecordFraming.LINE,
+                        Durability.FSYNC_EVERY_N_RECORDS,
+                        100);
+        for (long logTimestamp = 0; logTimestamp < 1050; logTimestamp++)
+            writer.appendLine(buildLine(logTimestamp));
+        Assert.assertEquals(10, writer.getFsyncCount());
+        writer.close();
+        Assert.assertEquals(11, writer.getFsyncCount());
+        Assert.assertEquals(1050 / 11d, writer.getAverageRecordsPerFsync(),
+                0.001);
+        Assert.assertEquals(100, writer.getMaxRecordsPerFsync());
+
+        SegmentedArchiveWriter idleWriter =
+                new SegmentedArchiveWriter(directory, "idle", 64 * 1024,
+                        60_000, 0, 0, 1024, RecordFraming.LINE,
+                        Durability.FSYNC_EVERY_N_MS, 20);
+        idleWriter.appendLine(buildLine(0));
+        Thread.sleep(300);
+        Assert.assertEquals(1, idleWriter.getFsyncCount());
+        Assert.assertEquals(1, new SegmentedArchiveReader(directory, "idle")
+                .readLines(0, 0, line -> {}));
+        // the last index entry is only written on close
+        idleWriter.close();
+        Assert.assertEquals(2, idleWriter.getFsyncCount());
+    }
+
+    @Test
+    public void testFailsOnFailedFsync() throws Exception {
+        Path devFull = Paths.get("/dev/full");
+        Assume.assumeTrue(Files.exists(devFull));
+        SegmentedArchiveWriter writer =
+                new SegmentedArchiveWriter(directory, "archive", 1024,
+                        60_000, 0, 0, 1024, RecordFraming.LINE,
+                        Durability.FSYNC_EVERY_N_RECORDS,
+                        1);
+        // the next segment fails every write with ENOSPC
+        Files.createSymbolicLink(SegmentedArchiveWriter
+                .getSegmentPath(directory, "archive", 1), devFull);
+        long failedCount = 0;
+        for (long logTimestamp = 0; logTimestamp < 30; logTimestamp++) {
+            try {
+                writer.appendLine(buildLine(logTimestamp));
+            } catch (RuntimeException e) {
+                failedCount++;
+            }
+        }
+        // the roll makes the first segment durable, then every append fails
+        Assert.assertEquals(30 - 1024 / (buildLine(0).length() + 1),
+                failedCount);
+        Assert.assertEquals("1:0", writer.getDurablePosition().toString());
+        writer.close();
+        Assert.assertEquals("1:0", writer.getDurablePosition().toString());
+    }
+
+    @Test
+    public void testRetentionBySize() {
+        SegmentedArchiveWriter writer =
+                new SegmentedArchiveWriter(directory, "archive", 16 * 1024,
+                        60_000, 64 * 1024, 0, 1024);
+        for (long logTimestamp = 0; logTimestamp < 10000; logTimestamp++)
+            writer.appendLine(buildLine(logTimestamp));
+        writer.close();
+        long totalBytes = new SegmentedArchiveReader(directory, "archive")
+                .getSegmentPaths().stream().mapToLong(path -> path.toFile()
+                        .length()).sum();
+        Assert.assertTrue(totalBytes <= 64 * 1024 + 16 * 1024);
+    }
+}
@@ -0,0 +1,124 @@
+package kr.jm.test.kkb.transaction;
+
+import kr.jm.test.kkb.transaction.log.AbstractAmountTransactionLog;
+import kr.jm.test.kkb.transaction.log.TransactionLogInterface;
+import kr.jm.test.kkb.transaction.random.TransactionLogRandom;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.IntStream;
+
+public class GeneratorCheckpointTest {
+
+    static {
+        System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", "warn");
+    }
+
+    private static String describe(TransactionLogInterface transactionLog) {
+        return transactionLog.getTransactionType() + " " +
+                transactionLog.getUserNumber() + " " +
+                (transactionLog instanceof AbstractAmountTransactionLog ?
+                        ((AbstractAmountTransactionLog) transactionLog)
+                                .getAccountNumber() + " " +
+                                ((AbstractAmountTransactionLog) transactionLog)
+                                        .getAmount() : "");
+    }
+
+    @Test
+    public void testWriteAndResume() throws IOException {
+        Path checkpointFile = Files.createTempFile("generator", ".checkpoint");
+        try {
+            TransactionLogGenerator original = new TransactionLogGenerator(100,
+                    12345678, TransactionLogRandom.seeded(42));
+            original.generateAbout100TransactionLogEach(IntStream
+                    .range(0, 1000).mapToObj(i -> "user" + i)
+                    .toArray(String[]::new));
+            Assert.assertEquals(1000, new GeneratorCheckpoint(original,
+                    checkpointFile).write());
+
+            TransactionLogGenerator resumed = new TransactionLogGenerator(100,
+                    12345678, TransactionLogRandom.seeded(42));
+            Assert.assertEquals(1000, new GeneratorCheckpoint(resumed,
+                    checkpointFile).resume());
+            Assert.assertEquals(1000, resumed.getUserCount());
+            IntStream.range(100, 1100).forEach(userNumber -> {
+                int[] accountNumbers = original.getUserAccountIndex()
+                        .getAccountNumbers(userNumber);
+                Assert.assertArrayEquals(accountNumbers, resumed
+                        .getUserAccountIndex().getAccountNumbers(userNumber));
+                for (int accountNumber : accountNumbers)
+                    Assert.assertEquals(original.getBalance(accountNumber),
+                            resumed.getBalance(accountNumber));
+                // the seeded streams continue where they were
+                Assert.assertEquals(describe(original
+                                .generateRandomTransactionLog(userNumber)),
+                        describe(resumed
+                                .generateRandomTransactionLog(userNumber)));
+            });
+            int maxAccountNumber = original.getUserAccountIndex().userNumbers()
+                    .flatMap(userNumber -> IntStream.of(original
+                            .getUserAccountIndex()
+                            .getAccountNumbers(userNumber))).max()
+                    .getAsInt();
+            Assert.assertTrue(resumed.generateNewUser("new").getUserNumber() >=
+                    1100);
+            Assert.assertTrue(resumed.generateOpeningAccount(100)
+                    .getAccountNumber() > maxAccountNumber);
+        } finally {
+            Files.deleteIfExists(checkpointFile);
+        }
+    }
+
+    @Test
+    public void testResumeSkipsNumbersLeasedAfterTheCheckpoint()
+            throws IOException {
+        Path checkpointFile = Files.createTempFile("generator", ".checkpoint");
+        GeneratorCheckpoint generatorCheckpoint = null;
+        try {
+            TransactionLogGenerator original = new TransactionLogGenerator(100,
+                    12345678, TransactionLogRandom.seeded(42));
+            generatorCheckpoint =
+                    new GeneratorCheckpoint(original, checkpointFile)
+                            .reserveLeases(2);
+            original.generateNewUserAndAccount(buildUserNames(0, 1000));
+            generatorCheckpoint.write();
+            // leased past the checkpoint, then lost in a crash
+            int maxUserNumber = original.generateNewUserAndAccount(
+                    buildUserNames(1000, 6000))[9998].getUserNumber();
+
+            TransactionLogGenerator resumed = new TransactionLogGenerator(100,
+                    12345678, TransactionLogRandom.seeded(42));
+            Assert.assertEquals(1000, new GeneratorCheckpoint(resumed,
+                    checkpointFile).resume());
+            Assert.assertTrue(resumed.generateNewUser("new").getUserNumber() >
+                    maxUserNumber);
+        } finally {
+            Files.deleteIfExists(checkpointFile);
+            if (generatorCheckpoint != null)
+                Files.deleteIfExists(generatorCheckpoint.getLeasesFile());
+        }
+    }
+
+    private static String[] buildUserNames(int from, int to) {
+        return IntStream.range(from, to).mapToObj(i -> "user" + i)
+                .toArray(String[]::new);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testResumeWithOtherSeedFails() throws IOException {
+        Path checkpointFile = Files.createTempFile("generator", ".checkpoint");
+        try {
+            TransactionLogGenerator original = new TransactionLogGenerator(0, 0,
+                    TransactionLogRandom.seeded(1));
+            original.generateNewUserAndAccount("user");
+            new GeneratorCheckpoint(original, checkpointFile).write();
+            new GeneratorCheckpoint(new TransactionLogGenerator(0, 0,
+                    TransactionLogRandom.seeded(2)), checkpointFile).resume();
+        } finally {
+            Files.deleteIfExists(checkpointFile);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package kr.jm.test.kkb.transaction;
+
+import kr.jm.test.kkb.transaction.codec.LogFormat;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class LoadTestHarnessTest {
+
+    static {
+        System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", "warn");
+    }
+
+    private Path archiveDirectory;
+
+    @Before
+    public void setUp() throws IOException {
+        this.archiveDirectory = Files.createTempDirectory("load-test");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> pathStream = Files.walk(archiveDirectory)) {
+            pathStream.sorted(Comparator.reverseOrder())
+                    .forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testSustainsTargetRate() {
+        LoadTestHarness.Result result = new LoadTestHarness(2000, 5000, 10,
+                8, 500, 0.05, 0, LogFormat.BINARY, archiveDirectory).run();
+        System.out.println(result);
+        List<String> violationList = result.check(3000, 1000, 0);
+        Assert.assertTrue(violationList.toString(), violationList.isEmpty());
+        Assert.assertEquals(result.getGeneratedCount(), result.getAckCount());
+        Assert.assertTrue(result.getRetryCount() > 0);
+        Assert.assertTrue(result.getEndToEndMillisHistogram().getCount() > 0);
+    }
+
+    @Test
+    public void testFailsOnLostRecords() {
+        LoadTestHarness.Result result = new LoadTestHarness(500, 0, 10, 8, 100,
+                0, 0.01, LogFormat.JSON, archiveDirectory).run();
+        System.out.println(result);
+        Assert.assertTrue(result.getLostCount() > 0);
+        Assert.assertEquals(result.getGeneratedCount(),
+                result.getAckCount() + result.getLostCount());
+        List<String> violationList = result.check(0, Long.MAX_VALUE, 0);
+        Assert.assertEquals(1, violationList.size());
+        Assert.assertTrue(violationList.get(0).startsWith("lost "));
+    }
+}
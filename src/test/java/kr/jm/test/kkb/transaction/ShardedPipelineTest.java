@@ -0,0 +1,88 @@
+package kr.jm.test.kkb.transaction;
+
+import kr.jm.test.kkb.output.AsyncKafkaSender;
+import kr.jm.test.kkb.transaction.log.TransactionLogInterface;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class ShardedPipelineTest {
+
+    static {
+        System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", "warn");
+    }
+
+    @Test
+    public void testShardsKeepUserOrderAndPartitions() {
+        int shardCount = 4;
+        int numPartitions = 10;
+        TransactionLogGenerator transactionLogGenerator =
+                new TransactionLogGenerator(100, 12345678);
+        String[] userNames = IntStream.range(0, 50)
+                .mapToObj(i -> "user" + i).toArray(String[]::new);
+        Map<Integer, List<TransactionLogInterface>> expectedMap =
+                new ConcurrentHashMap<>();
+        Map<Integer, List<TransactionLogInterface>> shardRecordsMap =
+                new ConcurrentHashMap<>();
+        Map<Integer, String> userThreadMap = new ConcurrentHashMap<>();
+        ShardedPipeline shardedPipeline = new ShardedPipeline(shardCount,
+                numPartitions, 16, shardIndex -> {
+            List<TransactionLogInterface> shardRecords = new ArrayList<>();
+            shardRecordsMap.put(shardIndex, shardRecords);
+            return transactionLog -> {
+                shardRecords.add(transactionLog);
+                String threadName = Thread.currentThread().getName();
+                Assert.assertEquals(threadName, userThreadMap.computeIfAbsent(
+                        transactionLog.getUserNumber(), key -> threadName));
+            };
+        });
+        try {
+            transactionLogGenerator.generateAbout100TransactionLogEach(
+                    transactionLog -> {
+                        expectedMap.computeIfAbsent(
+                                transactionLog.getUserNumber(),
+                                key -> new ArrayList<>()).add(transactionLog);
+                        shardedPipeline.accept(transactionLog);
+                    }, 0, userNames);
+        } finally {
+            shardedPipeline.close();
+        }
+        Assert.assertEquals(expectedMap.values().stream()
+                        .mapToLong(List::size).sum(),
+                shardedPipeline.getProcessedCount());
+        System.out.println(shardedPipeline.getSummary());
+        Assert.assertEquals(userNames.length, expectedMap.size());
+        for (int shardIndex = 0; shardIndex < shardCount; shardIndex++) {
+            Map<Integer, List<TransactionLogInterface>> userRecordsMap =
+                    shardRecordsMap.get(shardIndex).stream().collect(
+                            Collectors.groupingBy(
+                                    TransactionLogInterface::getUserNumber));
+            for (Map.Entry<Integer, List<TransactionLogInterface>> entry :
+                    userRecordsMap.entrySet()) {
+                Assert.assertEquals(shardIndex, AsyncKafkaSender.partitionOf(
+                        String.valueOf(entry.getKey()), numPartitions) %
+                        shardCount);
+                Assert.assertEquals(expectedMap.get(entry.getKey()),
+                        entry.getValue());
+            }
+        }
+        Assert.assertTrue(Arrays.stream(new int[]{0, 1, 2, 3}).allMatch(
+                shardIndex -> !shardRecordsMap.get(shardIndex).isEmpty()));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAcceptAfterClose() {
+        ShardedPipeline shardedPipeline = new ShardedPipeline(2, 2, 16,
+                shardIndex -> transactionLog -> {});
+        shardedPipeline.close();
+        shardedPipeline.accept(new TransactionLogGenerator(100, 12345678)
+                .generateNewUserAndAccount("jm")[0]);
+    }
+}
@@ -0,0 +1,47 @@
+package kr.jm.test.kkb.transaction;
+
+import kr.jm.test.kkb.transaction.log.TransactionLogInterface;
+import kr.jm.test.kkb.transaction.log.TransactionType;
+import kr.jm.test.kkb.transaction.schedule.RateController;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+public class SoakRunnerTest {
+
+    static {
+        System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", "warn");
+    }
+
+    @Test
+    public void testChurnKeepsPopulationAndEvicts() {
+        TransactionLogGenerator transactionLogGenerator =
+                new TransactionLogGenerator(0, 0);
+        LongAdder newUserCount = new LongAdder();
+        SoakRunner soakRunner = new SoakRunner(transactionLogGenerator,
+                transactionLog -> {
+                    if (transactionLog.getTransactionType() ==
+                            TransactionType.NEW_USER)
+                        newUserCount.increment();
+                }, 1000, 100000, 100000, 2);
+        List<SoakRunner.IntervalStats> intervalStatsList =
+                new CopyOnWriteArrayList<>();
+        soakRunner.setIntervalStatsListener(intervalStatsList::add);
+        SoakRunner.IntervalStats total = soakRunner.run(
+                RateController.ofEventsPerSecond(200000), 2000, 500);
+        System.out.println(total + " " + intervalStatsList);
+        Assert.assertTrue(intervalStatsList.size() >= 3);
+        Assert.assertEquals(1000, total.getActiveUserCount());
+        Assert.assertEquals(total.getArrivedCount(), total.getRetiredCount());
+        Assert.assertEquals(1000 + total.getArrivedCount(),
+                newUserCount.sum());
+        Assert.assertTrue(total.getArrivedCount() > 150000);
+        // 150K users and accounts free at least 2 chunks of each
+        Assert.assertTrue(total.getEvictedChunkCount() >= 4);
+        Assert.assertTrue(total.getGeneratedCount() > 300000);
+        Assert.assertEquals(1000, transactionLogGenerator.getUserCount());
+    }
+}
@@ -1,11 +1,16 @@
 package kr.jm.test.kkb.transaction;
 
 import kr.jm.test.kkb.transaction.log.*;
+import kr.jm.test.kkb.transaction.random.TransactionLogRandom;
+import kr.jm.test.kkb.transaction.schedule.RateController;
+import kr.jm.test.kkb.transaction.schedule.SimulatedClock;
+import kr.jm.test.kkb.transaction.workload.WorkloadProfile;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -55,6 +60,52 @@ public class TransactionLogGeneratorTest {
                     deTransactionLogs[i].toString());
     }
 
+    @Test
+    public void testWithdrawAndTransferNeedBalance() {
+        int userNumber = transactionLogGenerator.generateNewUser("balance")
+                .getUserNumber();
+        int accountNumber = transactionLogGenerator
+                .generateOpeningAccount(userNumber).getAccountNumber();
+        Assert.assertNull(transactionLogGenerator
+                .generateWithdraw(userNumber, accountNumber, 100));
+        transactionLogGenerator.generateDeposit(userNumber, accountNumber,
+                1000);
+        Assert.assertNull(transactionLogGenerator.generateTransfer(userNumber,
+                accountNumber, 1100, "Kakao Bank", 0, "toAccountUser"));
+        Assert.assertNotNull(transactionLogGenerator.generateTransfer(
+                userNumber, accountNumber, 1000, "Kakao Bank", 0,
+                "toAccountUser"));
+        Assert.assertEquals(0,
+                transactionLogGenerator.getBalance(accountNumber));
+    }
+
+    @Test
+    public void testGeneratedBalancesNeverGoNegative() {
+        List<TransactionLogInterface> transactionLogList =
+                Collections.synchronizedList(new ArrayList<>());
+        transactionLogGenerator.generateAbout100TransactionLogEach(
+                transactionLogList::add, 0, IntStream.range(0, 50)
+                        .mapToObj(i -> "user-" + i).toArray(String[]::new));
+        Map<Integer, Long> balanceMap = new HashMap<>();
+        for (TransactionLogInterface transactionLog : transactionLogList) {
+            if (!(transactionLog instanceof AbstractAmountTransactionLog))
+                continue;
+            AbstractAmountTransactionLog amountTransactionLog =
+                    (AbstractAmountTransactionLog) transactionLog;
+            long amount = amountTransactionLog.getAmount();
+            long balance = balanceMap.merge(
+                    amountTransactionLog.getAccountNumber(),
+                    transactionLog instanceof Deposit ? amount : -amount,
+                    Long::sum);
+            Assert.assertTrue(transactionLog.toString(), balance >= 0);
+        }
+        Assert.assertTrue(transactionLogList.stream()
+                .anyMatch(Withdraw.class::isInstance));
+        balanceMap.forEach((accountNumber, balance) -> Assert.assertEquals(
+                balance.longValue(),
+                transactionLogGenerator.getBalance(accountNumber)));
+    }
+
     @Test
     public void testGenerateNewUserAndAccount() throws Exception {
         TransactionLogInterface[] newUserAndAccountTransactionLogs =
@@ -104,4 +155,147 @@ public class TransactionLogGeneratorTest {
         Assert.assertTrue(183 < transactionLogList.size() &&
                 transactionLogList.size() < 225);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testAbout100EachFollowsTheUserDistribution() {
+        Properties properties = new Properties();
+        properties.setProperty(WorkloadProfile.TYPE_WEIGHTS, "DEPOSIT:1");
+        properties.setProperty(WorkloadProfile.USER_DISTRIBUTION,
+                "hotspot:0.1:0.9");
+        transactionLogGenerator
+                .setWorkloadProfile(WorkloadProfile.fromProperties(properties));
+        List<TransactionLogInterface> transactionLogList =
+                Collections.synchronizedList(new ArrayList<>());
+        transactionLogGenerator.generateAbout100TransactionLogEach(
+                transactionLogList::add, 0, IntStream.range(0, 10)
+                        .mapToObj(i -> "user" + i).toArray(String[]::new));
+        Map<Integer, Long> userCounts = transactionLogList.stream()
+                .skip(20).collect(Collectors.groupingBy(
+                        TransactionLogInterface::getUserNumber,
+                        Collectors.counting()));
+        int hotUserNumber = transactionLogList.get(0).getUserNumber();
+        long hotCount = userCounts.get(hotUserNumber);
+        Assert.assertTrue(hotCount + "", 810 <= hotCount && hotCount <= 990);
+        userCounts.forEach((userNumber, count) -> Assert.assertTrue(
+                count + "", userNumber == hotUserNumber ||
+                        10 <= count && count <= 13));
+    }
+
+    @Test
+    public void testSeededGenerationIsReproducible() {
+        String[] userNames =
+                IntStream.range(0, 20).mapToObj(i -> "user-" + i)
+                        .toArray(String[]::new);
+        Assert.assertEquals(generateSeededLogs(42, userNames),
+                generateSeededLogs(42, userNames));
+        Assert.assertNotEquals(generateSeededLogs(42, userNames),
+                generateSeededLogs(43, userNames));
+    }
+
+    @Test
+    public void testSeedFromSystemProperties() {
+        System.setProperty(TransactionLogRandom.SEED_PROPERTY, "42");
+        try {
+            Assert.assertEquals(42, TransactionLogRandom
+                    .fromSystemProperties().getMasterSeed());
+        } finally {
+            System.clearProperty(TransactionLogRandom.SEED_PROPERTY);
+        }
+        Assert.assertTrue(
+                TransactionLogRandom.fromSystemProperties().isSeeded());
+    }
+
+    private List<String> generateSeededLogs(long seed, String... userNames) {
+        TransactionLogGenerator seededGenerator = new TransactionLogGenerator(
+                0, 0, TransactionLogRandom.seeded(seed));
+        seededGenerator.setLogClock(new SimulatedClock(1500000000000L,
+                1600000000000L, 1000));
+        return Arrays.stream(seededGenerator
+                .generateAbout100TransactionLogEach(userNames))
+                .map(seededGenerator::toJsonStringLog)
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void testGenerateWithWorkloadProfile() {
+        Properties properties = new Properties();
+        properties.setProperty(WorkloadProfile.TYPE_WEIGHTS,
+                "DEPOSIT:1,WITHDRAW:1");
+        properties.setProperty(WorkloadProfile.USER_DISTRIBUTION,
+                "hotspot:0.1:0.9");
+        transactionLogGenerator
+                .setWorkloadProfile(WorkloadProfile.fromProperties(properties));
+        List<TransactionLogInterface> transactionLogList = new ArrayList<>();
+        transactionLogGenerator.generateWithWorkloadProfile(
+                transactionLogList::add, RateController.unlimited(), 10000,
+                IntStream.range(0, 10).mapToObj(i -> "user" + i)
+                        .toArray(String[]::new));
+        Assert.assertEquals(10020, transactionLogList.size());
+        Map<Integer, Long> userCounts = transactionLogList.stream()
+                .skip(20).collect(Collectors.groupingBy(
+                        TransactionLogInterface::getUserNumber,
+                        Collectors.counting()));
+        int hotUserNumber = transactionLogList.get(0).getUserNumber();
+        Assert.assertEquals(0.9, userCounts.get(hotUserNumber) / 10000d, 0.02);
+        Assert.assertTrue(transactionLogList.stream().skip(20)
+                .map(TransactionLogInterface::getTransactionType)
+                .allMatch(type -> type == TransactionType.DEPOSIT ||
+                        type == TransactionType.WITHDRAW));
+    }
+
+    @Test
+    public void testTypeMixFollowsTheProfileOnLowBalances() {
+        TransactionLogGenerator seededGenerator = new TransactionLogGenerator(
+                0, 0, TransactionLogRandom.seeded(18));
+        List<TransactionLogInterface> transactionLogList = new ArrayList<>();
+        seededGenerator.generateWithWorkloadProfile(transactionLogList::add,
+                RateController.unlimited(), 20000, IntStream.range(0, 200)
+                        .mapToObj(i -> "user" + i).toArray(String[]::new));
+        Map<TransactionType, Long> typeCounts = transactionLogList.stream()
+                .skip(400).collect(Collectors.groupingBy(
+                        TransactionLogInterface::getTransactionType,
+                        Collectors.counting()));
+        System.out.println(typeCounts + " unfunded=" +
+                seededGenerator.getUnfundedCount());
+        // every user starts on an empty account, so some are skipped, and
+        // the types resampled for them keep deposits a little above 0.5
+        Assert.assertTrue(seededGenerator.getUnfundedCount() > 0);
+        Assert.assertEquals(0.1, typeCounts.get(
+                TransactionType.OPENING_ACCOUNT) / 20000d, 0.03);
+        Assert.assertEquals(0.5,
+                typeCounts.get(TransactionType.DEPOSIT) / 20000d, 0.03);
+        Assert.assertEquals(0.2,
+                typeCounts.get(TransactionType.WITHDRAW) / 20000d, 0.03);
+        Assert.assertEquals(0.2,
+                typeCounts.get(TransactionType.TRANSFER) / 20000d, 0.03);
+    }
+
+    @Test
+    public void testBackfillKeepsPerUserTimestampOrder() {
+        long startMillis = 1500000000000L;
+        // a simulated day at 20 events per second
+        SimulatedClock simulatedClock = new SimulatedClock(startMillis,
+                startMillis + 86400000, 20);
+        Map<Integer, List<Long>> userTimestamps = new ConcurrentHashMap<>();
+        long count = transactionLogGenerator.backfill(
+                transactionLog -> userTimestamps.computeIfAbsent(
+                        transactionLog.getUserNumber(),
+                        userNumber -> Collections
+                                .synchronizedList(new ArrayList<>()))
+                        .add(transactionLog.getLogTimestamp()),
+                simulatedClock, 4, IntStream.range(0, 100)
+                        .mapToObj(i -> "user" + i).toArray(String[]::new));
+        System.out.println(count + " " + simulatedClock);
+        Assert.assertTrue(simulatedClock.isExhausted());
+        Assert.assertEquals(count, simulatedClock.getReadCount());
+        Assert.assertEquals(1728000, count, 4);
+        Assert.assertEquals(100, userTimestamps.size());
+        userTimestamps.values().forEach(timestamps -> {
+            for (int i = 1; i < timestamps.size(); i++)
+                Assert.assertTrue(timestamps.get(i - 1) <= timestamps.get(i));
+            Assert.assertTrue(timestamps.get(0) >= startMillis);
+            Assert.assertTrue(timestamps.get(timestamps.size() - 1) <
+                    startMillis + 86400000 + 1000);
+        });
+    }
+}
@@ -0,0 +1,155 @@
+package kr.jm.test.kkb.transaction;
+
+import kr.jm.test.kkb.output.LineFileWriter;
+import kr.jm.test.kkb.output.SegmentedArchiveWriter;
+import kr.jm.test.kkb.transaction.codec.LogFormat;
+import kr.jm.test.kkb.transaction.codec.TransactionLogJsonCodec;
+import kr.jm.test.kkb.transaction.log.Deposit;
+import kr.jm.test.kkb.transaction.log.TransactionLogInterface;
+import kr.jm.test.kkb.transaction.log.TransactionType;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class TransactionLogReplayerTest {
+
+    static {
+        System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", "warn");
+    }
+
+    private Path archivePath;
+    private TransactionLogInterface[] transactionLogs;
+
+    @Before
+    public void setUp() throws Exception {
+        this.archivePath = Files.createTempFile("archive", ".log");
+        TransactionLogGenerator transactionLogGenerator =
+                new TransactionLogGenerator(100, 12345678);
+        this.transactionLogs = transactionLogGenerator
+                .generateAbout100TransactionLogEach("jm", "라이언");
+        TransactionLogJsonCodec transactionLogJsonCodec =
+                new TransactionLogJsonCodec();
+        try (LineFileWriter lineFileWriter = new LineFileWriter(archivePath)) {
+            for (TransactionLogInterface transactionLog : transactionLogs)
+                lineFileWriter.appendLine(
+                        transactionLogJsonCodec.encode(transactionLog));
+            lineFileWriter.appendLine("not a transaction log");
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(archivePath);
+    }
+
+    @Test
+    public void testReplayAsFastAsPossible() throws Exception {
+        List<String> keys = new ArrayList<>();
+        List<String> lines = new ArrayList<>();
+        TransactionLogReplayer transactionLogReplayer =
+                new TransactionLogReplayer((key, bytes) -> {
+                    keys.add(key);
+                    lines.add(new String(bytes, StandardCharsets.UTF_8));
+                }, 0);
+        Assert.assertEquals(transactionLogs.length, transactionLogReplayer
+                .replay(Collections.singletonList(archivePath)));
+        Assert.assertEquals(1, transactionLogReplayer.getSkippedCount());
+        List<String> archivedLines =
+                Files.readAllLines(archivePath, StandardCharsets.UTF_8);
+        for (int i = 0; i < transactionLogs.length; i++) {
+            Assert.assertEquals(
+                    String.valueOf(transactionLogs[i].getUserNumber()),
+                    keys.get(i));
+            Assert.assertEquals(archivedLines.get(i), lines.get(i));
+        }
+        System.out.println(transactionLogReplayer.getSummary());
+    }
+
+    @Test
+    public void testReplayOnScaledTimeline() throws Exception {
+        TransactionLogJsonCodec transactionLogJsonCodec =
+                new TransactionLogJsonCodec();
+        Files.write(archivePath, Collections.emptyList());
+        try (LineFileWriter lineFileWriter = new LineFileWriter(archivePath)) {
+            for (int i = 0; i <= 40; i++)
+                lineFileWriter.appendLine(transactionLogJsonCodec.encode(
+                        new Deposit(i, 1526000000000L + i * 20, i, 100)));
+        }
+        TransactionLogReplayer transactionLogReplayer =
+                new TransactionLogReplayer((key, bytes) -> {}, 2,
+                        TransactionLogReplayer
+                                .buildTransactionTypeFilter("DEPOSIT"));
+        long startMillis = System.currentTimeMillis();
+        Assert.assertEquals(41, transactionLogReplayer
+                .replay(Collections.singletonList(archivePath)));
+        long tookMillis = System.currentTimeMillis() - startMillis;
+        System.out.println(tookMillis + " " +
+                transactionLogReplayer.getSummary());
+        Assert.assertTrue(tookMillis >= 400 && tookMillis < 1400);
+        Assert.assertEquals(50, transactionLogReplayer
+                .getOriginalEventsPerSecond(), 2);
+    }
+
+    @Test
+    public void testFilter() {
+        TransactionLogReplayer transactionLogReplayer =
+                new TransactionLogReplayer((key, bytes) -> {}, 0,
+                        TransactionLogReplayer
+                                .buildTransactionTypeFilter("NEW_USER"));
+        Assert.assertEquals(2, transactionLogReplayer
+                .replay(Collections.singletonList(archivePath)));
+        Assert.assertEquals(transactionLogs.length - 2,
+                transactionLogReplayer.getFilteredCount());
+        Assert.assertEquals(TransactionType.NEW_USER,
+                transactionLogs[0].getTransactionType());
+    }
+
+    @Test
+    public void testReplayBinarySegmentedArchive() throws Exception {
+        Path directory = Files.createTempDirectory("archive");
+        try {
+            try (SegmentedArchiveWriter segmentedArchiveWriter =
+                    new SegmentedArchiveWriter(directory, "archive", 1024,
+                            60000, 0, 0, 256,
+                            LogFormat.BINARY.getRecordFraming())) {
+                for (TransactionLogInterface transactionLog : transactionLogs)
+                    segmentedArchiveWriter.appendLine(
+                            transactionLog.getLogTimestamp(),
+                            LogFormat.BINARY.encode(transactionLog));
+            }
+            List<Path> archivePaths =
+                    TransactionLogReplayer.resolveArchivePaths(directory);
+            Assert.assertTrue(archivePaths.size() > 1);
+            List<byte[]> records = new ArrayList<>();
+            TransactionLogReplayer transactionLogReplayer =
+                    new TransactionLogReplayer((key, bytes) -> records
+                            .add(bytes), 0, TransactionLogReplayer
+                            .buildTransactionTypeFilter("NEW_USER,DEPOSIT"),
+                            LogFormat.BINARY);
+            long expectedCount = Arrays.stream(transactionLogs)
+                    .filter(transactionLog -> transactionLog
+                            .getTransactionType() == TransactionType.NEW_USER ||
+                            transactionLog.getTransactionType() ==
+                                    TransactionType.DEPOSIT).count();
+            Assert.assertEquals(expectedCount,
+                    transactionLogReplayer.replay(archivePaths));
+            Assert.assertEquals(0, transactionLogReplayer.getSkippedCount());
+            for (byte[] bytes : records)
+                Assert.assertTrue(LogFormat.BINARY.decode(bytes)
+                        .getTransactionType() != TransactionType.WITHDRAW);
+        } finally {
+            for (Path path : Files.list(directory).toArray(Path[]::new))
+                Files.delete(path);
+            Files.delete(directory);
+        }
+    }
+}
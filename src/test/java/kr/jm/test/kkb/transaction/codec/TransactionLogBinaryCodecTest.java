@@ -0,0 +1,132 @@
+package kr.jm.test.kkb.transaction.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import kr.jm.test.kkb.output.MappedLineScanner;
+import kr.jm.test.kkb.transaction.TransactionLogGenerator;
+import kr.jm.test.kkb.transaction.log.*;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+public class TransactionLogBinaryCodecTest {
+
+    static {
+        System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", "warn");
+    }
+
+    private ObjectMapper objectMapper;
+    private TransactionLogBinaryCodec transactionLogBinaryCodec;
+    private TransactionLogJsonCodec transactionLogJsonCodec;
+    private TransactionLogInterface[] transactionLogs;
+
+    @Before
+    public void setUp() {
+        this.objectMapper = new ObjectMapper();
+        this.transactionLogBinaryCodec = new TransactionLogBinaryCodec();
+        this.transactionLogJsonCodec = new TransactionLogJsonCodec();
+        this.transactionLogs = new TransactionLogGenerator(100, 12345678)
+                .generateAbout100TransactionLogEach("제민", "jemin");
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        TransactionLogInterface[] edgeLogs = {
+                new NewUser(0, 1526000000000L, "제민"),
+                new NewUser(-1, 0, "a\"b\\c/d\n\t\u0001 é😀"),
+                new NewUser(Integer.MAX_VALUE, Long.MIN_VALUE, null),
+                new NewUser(Integer.MIN_VALUE, Long.MAX_VALUE, ""),
+                new OpeningAccount(1, Long.MAX_VALUE, Integer.MIN_VALUE),
+                new Deposit(2, 1526000000001L, 12345678, Long.MAX_VALUE),
+                new Withdraw(3, 1526000000002L, 12345679, Long.MIN_VALUE),
+                new Transfer(4, 1526000000003L, 12345680, 5000, "카카오",
+                        987654321, "라이언"),
+                new Transfer(5, 1526000000004L, 12345681, 5000, "Kakao Bank",
+                        0, null)};
+        for (TransactionLogInterface transactionLog : edgeLogs) {
+            byte[] bytes = transactionLogBinaryCodec.encode(transactionLog);
+            assertSameLog(transactionLog,
+                    transactionLogBinaryCodec.decode(bytes));
+            ByteBuffer record = ByteBuffer.wrap(bytes);
+            Assert.assertEquals(transactionLog.getUserNumber(),
+                    TransactionLogBinaryCodec.extractUserNumber(record));
+            Assert.assertEquals(transactionLog.getLogTimestamp(),
+                    TransactionLogBinaryCodec.extractLogTimestamp(record));
+        }
+    }
+
+    @Test
+    public void testBinaryIsSmallerThanJson() {
+        long jsonBytes = Arrays.stream(transactionLogs).mapToLong(
+                transactionLog -> transactionLogJsonCodec
+                        .encode(transactionLog).length).sum();
+        long binaryBytes = Arrays.stream(transactionLogs).mapToLong(
+                transactionLog -> transactionLogBinaryCodec
+                        .encode(transactionLog).length).sum();
+        System.out.println(transactionLogs.length + " records - json " +
+                jsonBytes + " bytes, binary " + binaryBytes + " bytes");
+        Assert.assertTrue(binaryBytes * 3 < jsonBytes);
+    }
+
+    @Test
+    public void testConvertIsLossless() throws Exception {
+        for (TransactionLogInterface transactionLog : transactionLogs) {
+            byte[] jsonBytes = transactionLogJsonCodec.encode(transactionLog);
+            byte[] binaryBytes =
+                    TransactionLogFormatConverter.jsonToBinary(jsonBytes);
+            Assert.assertArrayEquals(
+                    transactionLogBinaryCodec.encode(transactionLog),
+                    binaryBytes);
+            Assert.assertArrayEquals(jsonBytes,
+                    TransactionLogFormatConverter.binaryToJson(binaryBytes));
+        }
+    }
+
+    @Test
+    public void testConvertFile() throws Exception {
+        Path jsonPath = Files.createTempFile("archive", ".json");
+        Path binaryPath = Files.createTempFile("archive", ".bin");
+        Path convertedPath = Files.createTempFile("archive", ".json");
+        try {
+            StringBuilder lines = new StringBuilder();
+            for (TransactionLogInterface transactionLog : transactionLogs)
+                lines.append(transactionLogJsonCodec
+                        .encodeToString(transactionLog)).append('\n');
+            Files.write(jsonPath,
+                    lines.toString().getBytes(StandardCharsets.UTF_8));
+            Assert.assertEquals(transactionLogs.length,
+                    TransactionLogFormatConverter.convertFile(LogFormat.JSON,
+                            LogFormat.BINARY, jsonPath, binaryPath));
+            Assert.assertTrue(Files.size(binaryPath) * 3 <
+                    Files.size(jsonPath));
+            long[] userNumberSum = {0};
+            Assert.assertEquals(transactionLogs.length, MappedLineScanner
+                    .scan(binaryPath, LogFormat.BINARY.getRecordFraming(),
+                            record -> userNumberSum[0] += LogFormat.BINARY
+                                    .extractUserNumber(record)));
+            Assert.assertEquals(Arrays.stream(transactionLogs)
+                            .mapToLong(TransactionLogInterface::getUserNumber)
+                            .sum(), userNumberSum[0]);
+            TransactionLogFormatConverter.convertFile(LogFormat.BINARY,
+                    LogFormat.JSON, binaryPath, convertedPath);
+            Assert.assertArrayEquals(Files.readAllBytes(jsonPath),
+                    Files.readAllBytes(convertedPath));
+        } finally {
+            Files.deleteIfExists(jsonPath);
+            Files.deleteIfExists(binaryPath);
+            Files.deleteIfExists(convertedPath);
+        }
+    }
+
+    private void assertSameLog(TransactionLogInterface expected,
+            TransactionLogInterface actual) throws Exception {
+        Assert.assertEquals(expected.getClass(), actual.getClass());
+        Assert.assertEquals(objectMapper.writeValueAsString(expected),
+                objectMapper.writeValueAsString(actual));
+    }
+}
@@ -0,0 +1,118 @@
+package kr.jm.test.kkb.transaction.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import kr.jm.test.kkb.transaction.TransactionLogGenerator;
+import kr.jm.test.kkb.transaction.log.*;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+public class TransactionLogJsonCodecTest {
+
+    static {
+        System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", "warn");
+    }
+
+    private ObjectMapper objectMapper;
+    private TransactionLogJsonCodec transactionLogJsonCodec;
+
+    @Before
+    public void setUp() {
+        this.objectMapper = new ObjectMapper();
+        this.transactionLogJsonCodec = new TransactionLogJsonCodec();
+    }
+
+    @Test
+    public void testEncodeIsByteCompatibleWithObjectMapper() throws Exception {
+        TransactionLogInterface[] transactionLogs = {
+                new NewUser(0, 1526000000000L, "제민"),
+                new NewUser(-1, 0, "a\"b\\c/d\n\t\r\b\f\u0001\u001f\u007f é😀"),
+                new NewUser(Integer.MAX_VALUE, Long.MIN_VALUE, null),
+                new OpeningAccount(1, Long.MAX_VALUE, Integer.MIN_VALUE),
+                new Deposit(2, 1526000000001L, 12345678, 10000),
+                new Withdraw(3, 1526000000002L, 12345679, -5000),
+                new Transfer(4, 1526000000003L, 12345680, 5000, "카카오",
+                        987654321, "라이언"),
+                new Transfer(5, 1526000000004L, 12345681, 5000, "Kakao Bank",
+                        0, null)};
+        for (TransactionLogInterface transactionLog : transactionLogs)
+            Assert.assertArrayEquals(objectMapper
+                            .writeValueAsString(transactionLog)
+                            .getBytes(StandardCharsets.UTF_8),
+                    transactionLogJsonCodec.encode(transactionLog));
+    }
+
+    @Test
+    public void testEncodeGeneratedLogs() throws Exception {
+        TransactionLogGenerator transactionLogGenerator =
+                new TransactionLogGenerator(100, 12345678);
+        TransactionLogInterface[] transactionLogs = transactionLogGenerator
+                .generateAbout100TransactionLogEach("제민", "jemin");
+        for (TransactionLogInterface transactionLog : transactionLogs)
+            Assert.assertEquals(
+                    objectMapper.writeValueAsString(transactionLog),
+                    transactionLogJsonCodec.encodeToString(transactionLog));
+        System.out.println(Arrays.stream(transactionLogs).count());
+    }
+
+    @Test
+    public void testDecodeRoundTrip() throws Exception {
+        TransactionLogInterface[] transactionLogs = {
+                new NewUser(-1, 0, "a\"b\\c/d\n\t\u0001 é😀"),
+                new NewUser(Integer.MAX_VALUE, Long.MIN_VALUE, null),
+                new OpeningAccount(1, Long.MAX_VALUE, Integer.MIN_VALUE),
+                new Withdraw(3, 1526000000002L, 12345679, -5000),
+                new Transfer(4, 1526000000003L, 12345680, 5000, "카카오",
+                        987654321, "라이언")};
+        for (TransactionLogInterface transactionLog : transactionLogs) {
+            String jsonString =
+                    transactionLogJsonCodec.encodeToString(transactionLog);
+            assertSameLog(transactionLog,
+                    transactionLogJsonCodec.decode(jsonString));
+            byte[] bytes = jsonString.getBytes(StandardCharsets.UTF_8);
+            assertSameLog(transactionLog,
+                    transactionLogJsonCodec.decode(bytes, 0, bytes.length));
+        }
+    }
+
+    @Test
+    public void testDecodeFallsBackOnUnusualLayout() throws Exception {
+        assertSameLog(new Deposit(2, 10, 3, 4000),
+                transactionLogJsonCodec.decode(
+                        " { \"amount\" : 4000, \"extra\": {\"a\": [1]}, " +
+                                "\"accountNumber\":3,\"logTimestamp\":10," +
+                                "\"userNumber\":2," +
+                                "\"transactionType\":\"DEPOSIT\"} "));
+        assertSameLog(new NewUser(1, 2, "\u00e9"),
+                transactionLogJsonCodec.decode("{\"transactionType\":" +
+                        "\"NEW_USER\",\"userNumber\":1," +
+                        "\"logTimestamp\":2,\"userName\":\"\\u00e9\"}"));
+    }
+
+    @Test
+    public void testDecodeLines() throws Exception {
+        TransactionLogInterface[] transactionLogs = new TransactionLogGenerator(
+                100, 12345678).generateAbout100TransactionLogEach("jm");
+        StringBuilder lines = new StringBuilder();
+        for (TransactionLogInterface transactionLog : transactionLogs)
+            lines.append(transactionLogJsonCodec.encodeToString(transactionLog))
+                    .append("\r\n\n");
+        List<TransactionLogInterface> decodedList = transactionLogJsonCodec
+                .decodeLines(lines.toString()
+                        .getBytes(StandardCharsets.UTF_8));
+        Assert.assertEquals(transactionLogs.length, decodedList.size());
+        for (int i = 0; i < transactionLogs.length; i++)
+            assertSameLog(transactionLogs[i], decodedList.get(i));
+    }
+
+    private void assertSameLog(TransactionLogInterface expected,
+            TransactionLogInterface actual) throws Exception {
+        Assert.assertEquals(expected.getClass(), actual.getClass());
+        Assert.assertEquals(objectMapper.writeValueAsString(expected),
+                objectMapper.writeValueAsString(actual));
+    }
+}
@@ -0,0 +1,151 @@
+package kr.jm.test.kkb.transaction.flow;
+
+import kr.jm.test.kkb.transaction.TransactionLogGenerator;
+import kr.jm.test.kkb.transaction.log.NewUser;
+import kr.jm.test.kkb.transaction.log.OpeningAccount;
+import kr.jm.test.kkb.transaction.log.TransactionLogInterface;
+import kr.jm.test.kkb.transaction.random.TransactionLogRandom;
+import kr.jm.test.kkb.transaction.schedule.SimulatedClock;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+public class TransactionLogPublisherTest {
+
+    static {
+        System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", "warn");
+    }
+
+    private TransactionLogGenerator transactionLogGenerator;
+
+    @Before
+    public void setUp() {
+        this.transactionLogGenerator = new TransactionLogGenerator(100,
+                12345678, TransactionLogRandom.seeded(7));
+    }
+
+    private static String[] buildUserNames(int userCount) {
+        return IntStream.range(0, userCount).mapToObj(i -> "user" + i)
+                .toArray(String[]::new);
+    }
+
+    private static void awaitReceived(RecordingSubscriber subscriber,
+            int count) throws InterruptedException {
+        long deadlineMillis = System.currentTimeMillis() + 10000;
+        while (subscriber.received.size() < count &&
+                System.currentTimeMillis() < deadlineMillis)
+            Thread.sleep(5);
+        Thread.sleep(50);
+    }
+
+    @Test
+    public void testGeneratesOnlyWhatIsRequested() throws Exception {
+        TransactionLogPublisher transactionLogPublisher =
+                transactionLogGenerator.publisher(Long.MAX_VALUE, 4,
+                        buildUserNames(8));
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        transactionLogPublisher.subscribe(subscriber);
+        Assert.assertEquals(0, transactionLogPublisher.getGeneratedCount());
+        subscriber.subscription.request(10);
+        awaitReceived(subscriber, 10);
+        Assert.assertEquals(10, subscriber.received.size());
+        Assert.assertEquals(10, transactionLogPublisher.getGeneratedCount());
+        subscriber.subscription.request(100);
+        awaitReceived(subscriber, 110);
+        Assert.assertEquals(110, subscriber.received.size());
+        Assert.assertEquals(110, transactionLogPublisher.getGeneratedCount());
+        subscriber.subscription.cancel();
+        Thread.sleep(50);
+        Assert.assertEquals(110, transactionLogPublisher.getGeneratedCount());
+        Assert.assertFalse(subscriber.completion.isDone());
+    }
+
+    @Test
+    public void testKeepsPerUserOrderAndCompletes() throws Exception {
+        transactionLogGenerator.setLogClock(
+                new SimulatedClock(0, Long.MAX_VALUE, 1000));
+        Map<Integer, List<TransactionLogInterface>> userLogs =
+                new HashMap<>();
+        ConsumerSubscriber<TransactionLogInterface> consumerSubscriber =
+                new ConsumerSubscriber<>(transactionLog -> userLogs
+                        .computeIfAbsent(transactionLog.getUserNumber(),
+                                userNumber -> new ArrayList<>())
+                        .add(transactionLog), 64);
+        TransactionLogPublisher transactionLogPublisher =
+                transactionLogGenerator.publisher(5000, 4,
+                        buildUserNames(16));
+        transactionLogPublisher.subscribe(consumerSubscriber);
+        Assert.assertEquals(5032, consumerSubscriber.getCompletion()
+                .get(10, TimeUnit.SECONDS).longValue());
+        Assert.assertEquals(5032, transactionLogPublisher.getGeneratedCount());
+        Assert.assertEquals(16, userLogs.size());
+        userLogs.values().forEach(logs -> {
+            Assert.assertTrue(logs.get(0) instanceof NewUser);
+            Assert.assertTrue(logs.get(1) instanceof OpeningAccount);
+            for (int i = 1; i < logs.size(); i++)
+                Assert.assertTrue(logs.get(i - 1).getLogTimestamp() <
+                        logs.get(i).getLogTimestamp());
+        });
+    }
+
+    @Test
+    public void testInlineGenerationAndSingleSubscriber() throws Exception {
+        TransactionLogPublisher transactionLogPublisher =
+                transactionLogGenerator.publisher(50, 1, buildUserNames(2));
+        List<TransactionLogInterface> received = new ArrayList<>();
+        ConsumerSubscriber<TransactionLogInterface> consumerSubscriber =
+                new ConsumerSubscriber<>(received::add, 1);
+        transactionLogPublisher.subscribe(consumerSubscriber);
+        Assert.assertEquals(54, consumerSubscriber.getCompletion().get()
+                .longValue());
+        Assert.assertEquals(54, received.size());
+        ConsumerSubscriber<TransactionLogInterface> secondSubscriber =
+                new ConsumerSubscriber<>(received::add, 1);
+        transactionLogPublisher.subscribe(secondSubscriber);
+        try {
+            secondSubscriber.getCompletion().get();
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    private static class RecordingSubscriber
+            implements Subscriber<TransactionLogInterface> {
+        private final List<TransactionLogInterface> received =
+                Collections.synchronizedList(new ArrayList<>());
+        private final CompletableFuture<Void> completion =
+                new CompletableFuture<>();
+        private volatile Subscription subscription;
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(TransactionLogInterface item) {
+            received.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            completion.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            completion.complete(null);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package kr.jm.test.kkb.transaction.id;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+public class IdAllocatorTest {
+
+    private static void assertUnique(int[] ids) {
+        Assert.assertEquals(ids.length, Arrays.stream(ids).distinct().count());
+    }
+
+    @Test
+    public void testSequentialOnOneThread() {
+        Assert.assertArrayEquals(IntStream.range(100, 3100).toArray(),
+                IdAllocator.sequential(100).next(3000));
+    }
+
+    @Test
+    public void testUniqueAcrossThreads() {
+        IdAllocator idAllocator = IdAllocator.sequential(0);
+        assertUnique(IntStream.range(0, 1000000).parallel()
+                .map(i -> idAllocator.next()).toArray());
+    }
+
+    @Test
+    public void testStripedInstancesAreDisjoint() {
+        IdAllocator[] instances = IntStream.range(0, 3)
+                .mapToObj(index -> new IdAllocator(
+                        new StripedIdBlockSource(12345678, 100, index, 3)))
+                .toArray(IdAllocator[]::new);
+        int[] ids = IntStream.range(0, 300000).parallel()
+                .map(i -> instances[i % 3].next()).toArray();
+        assertUnique(ids);
+        Assert.assertEquals(12345678, Arrays.stream(ids).min().getAsInt());
+        Assert.assertArrayEquals(IntStream.range(12345778, 12345878)
+                .toArray(), new IdAllocator(new StripedIdBlockSource(12345678,
+                100, 1, 3)).next(100));
+    }
+
+    @Test
+    public void testLeaseFileInstancesAreDisjointAndResume()
+            throws IOException {
+        Path leaseFile = Files.createTempFile("id", ".lease");
+        Files.delete(leaseFile);
+        try {
+            try (LeaseFileIdBlockSource first =
+                         new LeaseFileIdBlockSource(leaseFile, 100, 64);
+                 LeaseFileIdBlockSource second =
+                         new LeaseFileIdBlockSource(leaseFile, 100, 64)) {
+                IdAllocator[] instances = {new IdAllocator(first),
+                        new IdAllocator(second)};
+                int[] ids = IntStream.range(0, 20000).parallel()
+                        .map(i -> instances[i % 2].next()).toArray();
+                assertUnique(ids);
+                Assert.assertEquals(100, Arrays.stream(ids).min().getAsInt());
+            }
+            try (LeaseFileIdBlockSource restarted =
+                         new LeaseFileIdBlockSource(leaseFile, 100, 64)) {
+                Assert.assertTrue(restarted.leaseBlock() >= 20100);
+            }
+        } finally {
+            Files.deleteIfExists(leaseFile);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package kr.jm.test.kkb.transaction.index;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+public class BalanceLedgerTest {
+
+    @Test
+    public void testTryWithdraw() {
+        BalanceLedger balanceLedger = new BalanceLedger();
+        Assert.assertFalse(balanceLedger.tryWithdraw(12345678, 100));
+        Assert.assertEquals(1000, balanceLedger.deposit(12345678, 1000));
+        Assert.assertTrue(balanceLedger.tryWithdraw(12345678, 1000));
+        Assert.assertFalse(balanceLedger.tryWithdraw(12345678, 1));
+        Assert.assertEquals(0, balanceLedger.getBalance(12345678));
+    }
+
+    @Test
+    public void testWithdrawUpTo() {
+        BalanceLedger balanceLedger = new BalanceLedger();
+        balanceLedger.deposit(7, 1250);
+        Assert.assertEquals(1200, balanceLedger.withdrawUpTo(7, 5000, 100));
+        Assert.assertEquals(0, balanceLedger.withdrawUpTo(7, 5000, 100));
+        Assert.assertEquals(50, balanceLedger.getBalance(7));
+        balanceLedger.deposit(7, 10000);
+        Assert.assertEquals(300, balanceLedger.withdrawUpTo(7, 300, 100));
+    }
+
+    @Test
+    public void testConcurrentWithdrawNeverOverdraws() {
+        BalanceLedger balanceLedger = new BalanceLedger();
+        int accountCount = 1000;
+        IntStream.range(0, accountCount)
+                .forEach(account -> balanceLedger.deposit(account, 100000));
+        LongAdder withdrawnSum = new LongAdder();
+        IntStream.range(0, 1000000).parallel().forEach(i -> withdrawnSum.add(
+                balanceLedger.withdrawUpTo(i % accountCount, 300, 100)));
+        Assert.assertEquals(100000L * accountCount, withdrawnSum.sum());
+        IntStream.range(0, accountCount).forEach(account ->
+                Assert.assertEquals(0, balanceLedger.getBalance(account)));
+    }
+}
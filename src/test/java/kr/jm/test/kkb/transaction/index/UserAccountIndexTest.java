@@ -0,0 +1,132 @@
+package kr.jm.test.kkb.transaction.index;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+public class UserAccountIndexTest {
+
+    private UserAccountIndex userAccountIndex;
+
+    @Before
+    public void setUp() {
+        this.userAccountIndex = new UserAccountIndex();
+    }
+
+    @Test
+    public void testAddAndContains() {
+        Assert.assertTrue(userAccountIndex.addUser(100));
+        Assert.assertFalse(userAccountIndex.addUser(100));
+        Assert.assertTrue(userAccountIndex.addUser(-1));
+        Assert.assertFalse(userAccountIndex.addAccount(101, 12345678));
+        Assert.assertTrue(userAccountIndex.addAccount(100, 12345678));
+        Assert.assertFalse(userAccountIndex.addAccount(-1, 12345678));
+        Assert.assertTrue(userAccountIndex.addAccount(-1, 0));
+        Assert.assertTrue(userAccountIndex.containsAccount(100, 12345678));
+        Assert.assertFalse(userAccountIndex.containsAccount(-1, 12345678));
+        Assert.assertTrue(userAccountIndex.containsAccount(-1, 0));
+        Assert.assertFalse(userAccountIndex.containsAccount(100, 1));
+        Assert.assertEquals(2, userAccountIndex.getUserCount());
+        Assert.assertArrayEquals(new int[]{100, -1},
+                userAccountIndex.userNumbers().toArray());
+        Assert.assertEquals(12345678, userAccountIndex
+                .selectAccountNumber(100, accountCount -> accountCount - 1));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testSelectAccountNumberWithoutAccount() {
+        userAccountIndex.addUser(100);
+        userAccountIndex.selectAccountNumber(100, accountCount -> 0);
+    }
+
+    @Test
+    public void testConcurrentAppend() {
+        IntStream.range(0, 100).forEach(userAccountIndex::addUser);
+        IntStream.range(0, 100000).parallel().forEach(accountNumber ->
+                Assert.assertTrue(userAccountIndex
+                        .addAccount(accountNumber % 100, accountNumber)));
+        IntStream.range(0, 100).forEach(userNumber -> Assert.assertArrayEquals(
+                IntStream.range(0, 1000).map(i -> i * 100 + userNumber)
+                        .toArray(), IntStream.of(
+                        userAccountIndex.getAccountNumbers(userNumber))
+                        .sorted().toArray()));
+    }
+
+    @Test
+    public void testRemoveUserAndReleaseEmptyChunks() {
+        IntStream.range(0, 70000).forEach(userNumber -> {
+            userAccountIndex.addUser(userNumber);
+            userAccountIndex.addAccount(userNumber, userNumber + 1000000);
+        });
+        Assert.assertEquals(4, userAccountIndex.getAllocatedChunkCount());
+        IntStream.range(0, 65536).forEach(userNumber -> Assert.assertArrayEquals(
+                new int[]{userNumber + 1000000},
+                userAccountIndex.removeUser(userNumber)));
+        Assert.assertNull(userAccountIndex.removeUser(0));
+        Assert.assertFalse(userAccountIndex.containsUser(0));
+        Assert.assertEquals(-1 - Integer.MAX_VALUE,
+                userAccountIndex.getOwnerUserNumber(1000000));
+        Assert.assertEquals(70000 - 65536, userAccountIndex.getUserCount());
+        List<Integer> releasedList = new ArrayList<>();
+        // the accounts of the chunk from 983040 are all removed, not those
+        // of the next one
+        Assert.assertEquals(2, userAccountIndex
+                .releaseEmptyChunks(releasedList::add, releasedList::add));
+        Assert.assertEquals(Arrays.asList(0, 983040), releasedList);
+        Assert.assertEquals(2, userAccountIndex.getAllocatedChunkCount());
+        Assert.assertTrue(userAccountIndex.containsAccount(65536, 1065536));
+        Assert.assertTrue(userAccountIndex.addUser(1));
+        Assert.assertTrue(userAccountIndex.containsUser(1));
+    }
+
+    @Test
+    public void testAppendGrowsInPlace() {
+        userAccountIndex.addUser(7);
+        for (int accountNumber = 0; accountNumber < 100000; accountNumber++) {
+            Assert.assertTrue(userAccountIndex.addAccount(7, accountNumber));
+            Assert.assertEquals(accountNumber + 1,
+                    userAccountIndex.getAccountCount(7));
+        }
+        Assert.assertArrayEquals(IntStream.range(0, 100000).toArray(),
+                userAccountIndex.getAccountNumbers(7));
+        Assert.assertEquals(99999, userAccountIndex
+                .selectAccountNumber(7, accountCount -> accountCount - 1));
+        Assert.assertEquals(100000, userAccountIndex.removeUser(7).length);
+    }
+
+    @Test
+    public void testAppendRacingRemoval() throws Exception {
+        IntStream.range(0, 100).forEach(userAccountIndex::addUser);
+        List<int[]> removedAccountsList = new ArrayList<>();
+        Thread remover = new Thread(() -> IntStream.range(0, 100)
+                .forEach(userNumber -> {
+                    while (userAccountIndex.getAccountCount(userNumber) < 100)
+                        Thread.yield();
+                    removedAccountsList
+                            .add(userAccountIndex.removeUser(userNumber));
+                }));
+        remover.start();
+        int[] addedAccounts = IntStream.range(0, 100000).parallel()
+                .filter(accountNumber -> userAccountIndex
+                        .addAccount(accountNumber % 100, accountNumber))
+                .toArray();
+        remover.join();
+        Assert.assertEquals(0, userAccountIndex.getUserCount());
+        // every added account was removed with its user, the others given
+        // back, so no account keeps a chunk alive
+        Assert.assertTrue(addedAccounts.length >= 100 * 100);
+        Assert.assertArrayEquals(addedAccounts, removedAccountsList.stream()
+                .flatMapToInt(IntStream::of).sorted().toArray());
+        Assert.assertTrue(IntStream.range(0, 100000).allMatch(accountNumber ->
+                userAccountIndex.getOwnerUserNumber(accountNumber) ==
+                        Integer.MIN_VALUE));
+        Assert.assertEquals(3,
+                userAccountIndex.releaseEmptyChunks(i -> {}, i -> {}));
+        Assert.assertEquals(0, userAccountIndex.getAllocatedChunkCount());
+    }
+}
@@ -0,0 +1,96 @@
+package kr.jm.test.kkb.transaction.schedule;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+public class RateControllerTest {
+
+    /**
+     * Time only moves when a caller sleeps or the test advances it.
+     */
+    private static class ManualNanoClock implements NanoClock {
+        private final AtomicLong nanos = new AtomicLong();
+
+        @Override
+        public long nanoTime() {
+            return nanos.get();
+        }
+
+        @Override
+        public void sleepNanos(long nanos, long spinThresholdNanos) {
+            advance(nanos);
+        }
+
+        private void advance(long nanos) {
+            this.nanos.addAndGet(nanos);
+        }
+    }
+
+    @Test
+    public void testAcquireHoldsTargetRate() {
+        ManualNanoClock manualNanoClock = new ManualNanoClock();
+        RateController rateController = RateController
+                .ofEventsPerSecond(200000, RateShape.CONSTANT,
+                        manualNanoClock);
+        IntStream.range(0, 400000).forEach(i -> rateController.acquire());
+        System.out.println(rateController.getSummary());
+        Assert.assertEquals(400000, rateController.getIssuedCount());
+        // the last of 400000 slots 5us apart
+        Assert.assertEquals(TimeUnit.MICROSECONDS.toNanos(5) * 399999,
+                manualNanoClock.nanoTime());
+        Assert.assertEquals(0, rateController.getLaggedCount());
+        Assert.assertEquals(200000,
+                rateController.getAchievedEventsPerSecond(), 1);
+    }
+
+    @Test
+    public void testParallelAcquireIssuesEverySlot() {
+        RateController rateController =
+                RateController.ofEventsPerSecond(1000000);
+        IntStream.range(0, 100000).parallel()
+                .forEach(i -> rateController.acquire());
+        Assert.assertEquals(100000, rateController.getIssuedCount());
+    }
+
+    @Test
+    public void testSlowConsumerShowsUpAsLag() {
+        ManualNanoClock manualNanoClock = new ManualNanoClock();
+        RateController rateController = RateController
+                .ofEventsPerSecond(1000, RateShape.CONSTANT, manualNanoClock);
+        for (int i = 0; i < 20; i++) {
+            rateController.acquire();
+            manualNanoClock.advance(TimeUnit.MILLISECONDS.toNanos(5));
+        }
+        System.out.println(rateController.getSummary());
+        // the i-th slot is intended at i ms and issued at 5i ms
+        Assert.assertEquals(19, rateController.getLaggedCount());
+        Assert.assertEquals(76000, rateController.getMaxLagMicros());
+        Assert.assertEquals(80000, rateController.getCurrentLagMicros());
+    }
+
+    @Test
+    public void testUnlimited() {
+        RateController rateController = RateController.unlimited();
+        Assert.assertTrue(rateController.isUnlimited());
+        IntStream.range(0, 1000).forEach(i -> rateController.acquire());
+        Assert.assertEquals(0, rateController.getLaggedCount());
+    }
+
+    @Test
+    public void testShapedRateFollowsBurst() {
+        RateController rateController = RateController
+                .ofEventsPerSecond(1000, RateShape.burst(1000, 500, 10));
+        long startNanos = rateController.reserve();
+        long intendedNanos = startNanos;
+        for (int i = 1; i < 5500; i++)
+            intendedNanos = rateController.reserve();
+        // 5000 slots in the 500ms burst, then 500 in the next 500ms
+        Assert.assertEquals(1000, (intendedNanos - startNanos) / 1e6, 2);
+        Assert.assertEquals(10,
+                rateController.getRateShape().multiplierAt(0), 0);
+    }
+}
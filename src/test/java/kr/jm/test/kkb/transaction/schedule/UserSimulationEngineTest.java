@@ -0,0 +1,77 @@
+package kr.jm.test.kkb.transaction.schedule;
+
+import kr.jm.test.kkb.transaction.TransactionLogGenerator;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+public class UserSimulationEngineTest {
+
+    static {
+        System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", "warn");
+    }
+
+    private UserSimulationEngine userSimulationEngine;
+
+    @Before
+    public void setUp() {
+        this.userSimulationEngine =
+                new UserSimulationEngine(new TransactionLogGenerator(0, 0));
+    }
+
+    @After
+    public void tearDown() {
+        this.userSimulationEngine.close();
+    }
+
+    @Test
+    public void testSimulateManyConcurrentUsers() {
+        int userCount = 200000;
+        LongAdder transactionCount = new LongAdder();
+        Map<Integer, AtomicLong> lastTimestampMap = new ConcurrentHashMap<>();
+        userSimulationEngine.simulate(transactionLog -> {
+            transactionCount.increment();
+            AtomicLong lastTimestamp = lastTimestampMap
+                    .computeIfAbsent(transactionLog.getUserNumber(),
+                            i -> new AtomicLong());
+            Assert.assertTrue(lastTimestamp.get() <=
+                    transactionLog.getLogTimestamp());
+            lastTimestamp.set(transactionLog.getLogTimestamp());
+        }, 500, () -> 3, IntStream.range(0, userCount)
+                .mapToObj(i -> "user-" + i).toArray(String[]::new)).join();
+        System.out.println(userSimulationEngine.getSummary());
+        Assert.assertEquals(userCount * 2 + userCount * 3,
+                transactionCount.sum());
+        Assert.assertEquals(userCount, lastTimestampMap.size());
+        Assert.assertEquals(0, userSimulationEngine.getActiveUserCount());
+    }
+
+    @Test
+    public void testSimulate() {
+        LongAdder transactionCount = new LongAdder();
+        userSimulationEngine.simulate(transactionLog -> transactionCount
+                .increment(), 10, "제민", "jemin").join();
+        System.out.println(userSimulationEngine.getSummary());
+        Assert.assertTrue(183 < transactionCount.sum() &&
+                transactionCount.sum() < 225);
+    }
+
+    @Test
+    public void testCloseCancelsPendingSimulation() {
+        CompletableFuture<Void> completion = userSimulationEngine
+                .simulate(transactionLog -> {}, 60000, () -> 3, "제민",
+                        "jemin");
+        Assert.assertEquals(2, userSimulationEngine.getActiveUserCount());
+        userSimulationEngine.close();
+        Assert.assertTrue(completion.isCancelled());
+        Assert.assertEquals(0, userSimulationEngine.getActiveUserCount());
+    }
+}
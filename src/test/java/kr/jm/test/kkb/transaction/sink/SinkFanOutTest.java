@@ -0,0 +1,176 @@
+package kr.jm.test.kkb.transaction.sink;
+
+import kr.jm.test.kkb.transaction.codec.LogFormat;
+import kr.jm.test.kkb.transaction.log.Deposit;
+import kr.jm.test.kkb.transaction.log.TransactionLogInterface;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+public class SinkFanOutTest {
+
+    static {
+        System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", "warn");
+    }
+
+    private static TransactionLogInterface buildLog(long sequence) {
+        return new Deposit(1, sequence, 1, sequence);
+    }
+
+    private static List<Long> rangeOf(long count) {
+        return LongStream.range(0, count).boxed().collect(Collectors.toList());
+    }
+
+    @Test
+    public void testBlockKeepsEverySinkComplete() {
+        CollectingSink fastSink = new CollectingSink("fast", null);
+        CollectingSink slowSink = new CollectingSink("slow", null);
+        slowSink.delayMillis = 1;
+        SinkFanOut sinkFanOut = new SinkFanOut(16)
+                .addSink(fastSink, SinkFanOut.OverflowPolicy.BLOCK)
+                .addSink(slowSink, SinkFanOut.OverflowPolicy.BLOCK);
+        for (long i = 0; i < 200; i++)
+            sinkFanOut.publish(buildLog(i));
+        sinkFanOut.close();
+        Assert.assertEquals(rangeOf(200), fastSink.amountList);
+        Assert.assertEquals(rangeOf(200), slowSink.amountList);
+        Assert.assertTrue(sinkFanOut.getBackpressureCount() > 0);
+        Assert.assertTrue(slowSink.closed);
+        System.out.println(sinkFanOut.getSummary());
+    }
+
+    @Test
+    public void testDropDoesNotHoldBackOtherSinks() throws Exception {
+        CountDownLatch releaseLatch = new CountDownLatch(1);
+        CollectingSink stuckSink = new CollectingSink("stuck", releaseLatch);
+        CollectingSink blockSink = new CollectingSink("block", null);
+        SinkFanOut sinkFanOut = new SinkFanOut(16)
+                .addSink(stuckSink, SinkFanOut.OverflowPolicy.DROP)
+                .addSink(blockSink, SinkFanOut.OverflowPolicy.BLOCK);
+        for (long i = 0; i < 1000; i++)
+            sinkFanOut.publish(buildLog(i));
+        releaseLatch.countDown();
+        sinkFanOut.close();
+        Assert.assertEquals(rangeOf(1000), blockSink.amountList);
+        SinkFanOut.SinkMetrics stuckMetrics =
+                sinkFanOut.getSinkMetricsList().get(0);
+        Assert.assertTrue(stuckMetrics.getDroppedCount() > 0);
+        Assert.assertEquals(1000, stuckMetrics.getDroppedCount() +
+                stuckMetrics.getConsumedCount());
+        Assert.assertEquals(stuckSink.amountList.stream().sorted()
+                .collect(Collectors.toList()), stuckSink.amountList);
+        Assert.assertTrue(stuckMetrics.getMaxLag() >= 16);
+        System.out.println(sinkFanOut.getSummary());
+    }
+
+    @Test
+    public void testSpillKeepsOrder() throws Exception {
+        CountDownLatch releaseLatch = new CountDownLatch(1);
+        CollectingSink stuckSink = new CollectingSink("stuck", releaseLatch);
+        CollectingSink blockSink = new CollectingSink("block", null);
+        SinkFanOut sinkFanOut = new SinkFanOut(16)
+                .addSink(stuckSink, SinkFanOut.OverflowPolicy.SPILL)
+                .addSink(blockSink, SinkFanOut.OverflowPolicy.BLOCK);
+        for (long i = 0; i < 1000; i++) {
+            sinkFanOut.publish(buildLog(i));
+            if (i == 500)
+                releaseLatch.countDown();
+        }
+        sinkFanOut.close();
+        Assert.assertEquals(rangeOf(1000), blockSink.amountList);
+        Assert.assertEquals(rangeOf(1000), stuckSink.amountList);
+        SinkFanOut.SinkMetrics stuckMetrics =
+                sinkFanOut.getSinkMetricsList().get(0);
+        Assert.assertTrue(stuckMetrics.getSpilledCount() > 0);
+        Assert.assertEquals(0, stuckMetrics.getDroppedCount());
+        System.out.println(sinkFanOut.getSummary());
+    }
+
+    @Test
+    public void testSinksShareTheEncoding() {
+        CollectingSink firstSink = new CollectingSink("first", null);
+        CollectingSink secondSink = new CollectingSink("second", null);
+        SinkFanOut sinkFanOut = new SinkFanOut(16)
+                .addSink(firstSink, SinkFanOut.OverflowPolicy.BLOCK)
+                .addSink(secondSink, SinkFanOut.OverflowPolicy.BLOCK);
+        for (long i = 0; i < 100; i++)
+            sinkFanOut.publish(buildLog(i));
+        sinkFanOut.close();
+        Assert.assertEquals(100, firstSink.bytesList.size());
+        for (int i = 0; i < 100; i++)
+            Assert.assertSame(firstSink.bytesList.get(i),
+                    secondSink.bytesList.get(i));
+    }
+
+    @Test
+    public void testConcurrentPublishersKeepTheirOrder() {
+        CollectingSink blockSink = new CollectingSink("block", null);
+        CollectingSink spillSink = new CollectingSink("spill", null);
+        spillSink.delayMillis = 1;
+        SinkFanOut sinkFanOut = new SinkFanOut(16)
+                .addSink(blockSink, SinkFanOut.OverflowPolicy.BLOCK)
+                .addSink(spillSink, SinkFanOut.OverflowPolicy.SPILL);
+        CompletableFuture.allOf(IntStream.range(0, 4)
+                .mapToObj(publisher -> CompletableFuture.runAsync(() -> {
+                    for (long i = 0; i < 250; i++)
+                        sinkFanOut.publish(buildLog(publisher * 1000 + i));
+                })).toArray(CompletableFuture[]::new)).join();
+        sinkFanOut.close();
+        Assert.assertEquals(1000, sinkFanOut.getPublishedCount());
+        Assert.assertEquals(blockSink.amountList, spillSink.amountList);
+        for (int publisher = 0; publisher < 4; publisher++) {
+            int from = publisher * 1000;
+            Assert.assertEquals(LongStream.range(from, from + 250).boxed()
+                            .collect(Collectors.toList()),
+                    blockSink.amountList.stream().filter(amount ->
+                            amount >= from && amount < from + 1000)
+                            .collect(Collectors.toList()));
+        }
+    }
+
+    private static class CollectingSink implements TransactionLogSink {
+        private final String name;
+        private final CountDownLatch releaseLatch;
+        private final List<Long> amountList;
+        private final List<byte[]> bytesList;
+        private long delayMillis;
+        private volatile boolean closed;
+
+        private CollectingSink(String name, CountDownLatch releaseLatch) {
+            this.name = name;
+            this.releaseLatch = releaseLatch;
+            this.amountList = new CopyOnWriteArrayList<>();
+            this.bytesList = new ArrayList<>();
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public void accept(SinkRecord sinkRecord) throws Exception {
+            if (releaseLatch != null)
+                releaseLatch.await(10, TimeUnit.SECONDS);
+            if (delayMillis > 0)
+                Thread.sleep(delayMillis);
+            amountList.add(((Deposit) sinkRecord.getTransactionLog())
+                    .getAmount());
+            bytesList.add(sinkRecord.getBytes(LogFormat.BINARY));
+        }
+
+        @Override
+        public void close() {
+            this.closed = true;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package kr.jm.test.kkb.transaction.workload;
+
+import kr.jm.test.kkb.transaction.log.TransactionType;
+import kr.jm.test.kkb.transaction.random.SplitMix64;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Properties;
+
+public class WorkloadProfileTest {
+
+    @Test
+    public void testAliasSamplerMatchesWeights() {
+        double[] weights = {1, 0, 3, 6};
+        AliasSampler aliasSampler = new AliasSampler(weights);
+        SplitMix64 random = new SplitMix64(7);
+        int[] counts = new int[weights.length];
+        int sampleCount = 1000000;
+        for (int i = 0; i < sampleCount; i++)
+            counts[aliasSampler.sample(random)]++;
+        Assert.assertEquals(0, counts[1]);
+        for (int i = 0; i < weights.length; i++)
+            Assert.assertEquals(weights[i] / 10, (double) counts[i] /
+                    sampleCount, 0.005);
+    }
+
+    @Test
+    public void testZipfAndHotspotSkew() {
+        SplitMix64 random = new SplitMix64(11);
+        int keyCount = 10000;
+        int sampleCount = 1000000;
+        AliasSampler zipfSampler =
+                KeyDistribution.zipf(1.1).samplerOf(keyCount);
+        int[] counts = new int[keyCount];
+        for (int i = 0; i < sampleCount; i++)
+            counts[zipfSampler.sample(random)]++;
+        Assert.assertTrue(counts[0] > counts[1] && counts[1] > counts[9]);
+        // the top key of 10000 takes about 1/H(10000, 1.1) of the picks
+        Assert.assertTrue(counts[0] > sampleCount * 0.1);
+
+        AliasSampler hotspotSampler =
+                KeyDistribution.hotspot(0.01, 0.5).samplerOf(keyCount);
+        int hotCount = 0;
+        for (int i = 0; i < sampleCount; i++)
+            if (hotspotSampler.sample(random) < keyCount / 100)
+                hotCount++;
+        Assert.assertEquals(0.5, (double) hotCount / sampleCount, 0.005);
+        Assert.assertNull(KeyDistribution.UNIFORM.samplerOf(keyCount));
+    }
+
+    @Test
+    public void testAmountDistribution() {
+        SplitMix64 random = new SplitMix64(3);
+        AmountDistribution logNormal =
+                AmountDistribution.parse("lognormal:30000:1.0:1000000");
+        long below = 0;
+        for (int i = 0; i < 100000; i++) {
+            long amount = logNormal.sample(random);
+            Assert.assertEquals(0, amount % AmountDistribution.AMOUNT_UNIT);
+            Assert.assertTrue(amount >= 100 && amount <= 1000000);
+            if (amount < 30000)
+                below++;
+        }
+        Assert.assertEquals(0.5, below / 100000d, 0.02);
+        for (int i = 0; i < 100000; i++) {
+            long amount = AmountDistribution.DEFAULT.sample(random);
+            Assert.assertTrue(amount >= 10000 && amount <= 99900);
+        }
+        Assert.assertEquals(1.959964,
+                AmountDistribution.inverseNormal(0.975), 1e-6);
+    }
+
+    @Test
+    public void testFromProperties() {
+        Properties properties = new Properties();
+        properties.setProperty(WorkloadProfile.TYPE_WEIGHTS,
+                "DEPOSIT:1,TRANSFER:1");
+        properties.setProperty(WorkloadProfile.USER_DISTRIBUTION,
+                "zipf:1.2");
+        properties.setProperty(WorkloadProfile.RATE_SHAPE,
+                "burst:60000:5000:10");
+        WorkloadProfile workloadProfile =
+                WorkloadProfile.fromProperties(properties);
+        System.out.println(workloadProfile);
+        Assert.assertEquals("zipf:1.2",
+                workloadProfile.getUserDistribution().toString());
+        Assert.assertTrue(workloadProfile.getAccountDistribution().isUniform());
+        Assert.assertEquals(10,
+                workloadProfile.getRateShape().multiplierAt(61000), 0);
+        Assert.assertEquals(1,
+                workloadProfile.getRateShape().multiplierAt(6000), 0);
+        SplitMix64 random = new SplitMix64(5);
+        Map<TransactionType, Integer> typeCounts =
+                new EnumMap<>(TransactionType.class);
+        for (int i = 0; i < 10000; i++)
+            typeCounts.merge(workloadProfile.sampleTransactionType(random), 1,
+                    Integer::sum);
+        Assert.assertEquals(2, typeCounts.size());
+        Assert.assertTrue(typeCounts.get(TransactionType.DEPOSIT) > 4500);
+        properties.setProperty(WorkloadProfile.AMOUNT_DISTRIBUTION, "pareto");
+        try {
+            WorkloadProfile.fromProperties(properties);
+            Assert.fail();
+        } catch (RuntimeException e) {
+            Assert.assertTrue(e.getMessage().contains("pareto"));
+        }
+    }
+}